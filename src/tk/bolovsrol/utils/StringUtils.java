@@ -1,6 +1,7 @@
 package tk.bolovsrol.utils;
 
 import tk.bolovsrol.utils.properties.ReadOnlyProperties;
+import tk.bolovsrol.utils.textformatter.compiling.CompiledTemplateCache;
 import tk.bolovsrol.utils.textformatter.compiling.InvalidTemplateException;
 import tk.bolovsrol.utils.textformatter.compiling.TextFormatCompiler;
 import tk.bolovsrol.utils.textformatter.compiling.evaluators.ArrayEvaluator;
@@ -860,6 +861,7 @@ public final class StringUtils {
      * Форматирует строку при помощи {@link tk.bolovsrol.utils.textformatter.compiling.ProxyingCompiledFormatter текстового форматирователя}.
      * <p>
      * В качестве разделителей используются значения по умолчанию, описанные в {@link TextFormatCompiler}.
+     * Скомпилированный шаблон берётся из {@link CompiledTemplateCache#getShared() общего кэша}.
      * <p>
      * Этот метод прост и удобен для простых случаев,
      * а в сложных лучше работать непосредственно с форматирователем.
@@ -874,7 +876,7 @@ public final class StringUtils {
         if (template == null || template.isEmpty()) {
             return template;
         }
-        return new TextFormatCompiler().compile(template).format(new ReadOnlySourceEvaluator(pp));
+        return CompiledTemplateCache.getShared().get(template).format(new ReadOnlySourceEvaluator(pp));
     }
 
     /**
@@ -953,7 +955,7 @@ public final class StringUtils {
         if (template == null || template.isEmpty() || values == null || values.length == 0) {
             return template;
         }
-        return new TextFormatCompiler().compile(template).format(new ArrayEvaluator(values));
+        return CompiledTemplateCache.getShared().get(template).format(new ArrayEvaluator(values));
     }
 
     /**
@@ -0,0 +1,38 @@
+package tk.bolovsrol.utils.binaryserializer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Кодировщик, который пишет в {@link BinaryOutput} и читает из {@link BinaryInput}.
+ * <p/>
+ * Методы для {@link OutputStream} и массива с {@link PosContainer} работают через обёртки.
+ *
+ * @param <E> тип обслуживаемых объектов
+ */
+public abstract class AbstractBinaryFieldValueCodec<E> implements FieldValueCodec<E> {
+
+    @Override public abstract void encodeValue(BinaryOutput target, E value) throws IOException;
+
+    @Override public abstract E decodeValue(BinaryInput source, Class<? extends E> type) throws IOException;
+
+    @Override public void encodeValue(OutputStream target, E value) throws IOException {
+        StreamBinaryOutput out = new StreamBinaryOutput(target, 64);
+        encodeValue(out, value);
+        out.flush();
+    }
+
+    @Override public E decodeValue(byte[] source, PosContainer posContainer, Class<? extends E> type) {
+        int pos = posContainer.getPos();
+        ByteBufferInput in = new ByteBufferInput(ByteBuffer.wrap(source, pos, source.length - pos));
+        try {
+            E result = decodeValue(in, type);
+            posContainer.setPos(in.getBuffer().position());
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
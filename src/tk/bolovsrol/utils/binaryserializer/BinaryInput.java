@@ -0,0 +1,66 @@
+package tk.bolovsrol.utils.binaryserializer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Источник байтов для {@link FieldValueCodec декодировщиков}.
+ * <p/>
+ * Если данные кончились раньше, чем их прочитали, методы чтения выбрасывают {@link EOFException}.
+ *
+ * @see ByteBufferInput
+ * @see StreamBinaryInput
+ */
+public interface BinaryInput {
+
+    /**
+     * Выясняет, остались ли ещё непрочитанные данные. Потоковый источник может при этом
+     * заблокироваться в ожидании данных.
+     *
+     * @return true, если можно читать дальше
+     * @throws IOException
+     */
+    boolean hasRemaining() throws IOException;
+
+    /**
+     * Читает байт.
+     *
+     * @return байт со знаком, как он есть
+     * @throws IOException
+     */
+    byte read() throws IOException;
+
+    /**
+     * Читает ровно len байтов в массив.
+     *
+     * @param dst массив
+     * @param off куда класть
+     * @param len сколько прочитать
+     * @throws IOException
+     */
+    void readFully(byte[] dst, int off, int len) throws IOException;
+
+    /**
+     * Читает byteCount байтов и собирает из них беззнаковое число, старший байт первый.
+     *
+     * @param byteCount количество байтов, 0..8
+     * @return число
+     * @throws IOException
+     */
+    long readBigEndian(int byteCount) throws IOException;
+
+    /**
+     * Читает len байтов и декодирует их в строку.
+     *
+     * @param len длина в байтах
+     * @param charset кодировка
+     * @return строка
+     * @throws IOException
+     */
+    default String readString(int len, Charset charset) throws IOException {
+        byte[] bytes = new byte[len];
+        readFully(bytes, 0, len);
+        return new String(bytes, charset);
+    }
+}
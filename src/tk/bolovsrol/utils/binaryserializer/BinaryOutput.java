@@ -0,0 +1,46 @@
+package tk.bolovsrol.utils.binaryserializer;
+
+import java.io.IOException;
+
+/**
+ * Приёмник байтов для {@link FieldValueCodec кодировщиков}.
+ * <p/>
+ * В отличие от {@link java.io.OutputStream}, умеет записать несколько байтов числа одним вызовом,
+ * так что кодировщики чисел не дёргают приёмник на каждый байт.
+ *
+ * @see ByteBufferOutput
+ * @see StreamBinaryOutput
+ */
+public interface BinaryOutput {
+
+    /**
+     * Записывает младшие 8 битов значения.
+     *
+     * @param b байт
+     * @throws IOException
+     */
+    void write(int b) throws IOException;
+
+    /**
+     * Записывает кусок массива.
+     *
+     * @param src массив
+     * @param off начало куска
+     * @param len длина куска
+     * @throws IOException
+     */
+    void write(byte[] src, int off, int len) throws IOException;
+
+    default void write(byte[] src) throws IOException {
+        write(src, 0, src.length);
+    }
+
+    /**
+     * Записывает младшие byteCount байтов значения, начиная со старшего из них.
+     *
+     * @param value значение
+     * @param byteCount количество байтов, 0..8
+     * @throws IOException
+     */
+    void writeBigEndian(long value, int byteCount) throws IOException;
+}
@@ -0,0 +1,75 @@
+package tk.bolovsrol.utils.binaryserializer;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * Читает из {@link ByteBuffer} — из массива в куче, прямого буфера или отображённого в память файла —
+ * от текущей позиции до лимита, ничего не копируя.
+ */
+public class ByteBufferInput implements BinaryInput {
+
+    private final ByteBuffer buffer;
+
+    /** @param source буфер, чтение начнётся с его текущей позиции */
+    public ByteBufferInput(ByteBuffer source) {
+        this.buffer = source;
+    }
+
+    /** @param source массив, который надо прочитать целиком */
+    public ByteBufferInput(byte[] source) {
+        this(ByteBuffer.wrap(source));
+    }
+
+    private void require(int count) throws EOFException {
+        if (buffer.remaining() < count) {
+            throw new EOFException("Need " + count + " bytes at position " + buffer.position() + ", only " + buffer.remaining() + " remaining");
+        }
+    }
+
+    @Override public boolean hasRemaining() {
+        return buffer.hasRemaining();
+    }
+
+    @Override public byte read() throws EOFException {
+        require(1);
+        return buffer.get();
+    }
+
+    @Override public void readFully(byte[] dst, int off, int len) throws EOFException {
+        require(len);
+        buffer.get(dst, off, len);
+    }
+
+    @Override public long readBigEndian(int byteCount) throws EOFException {
+        require(byteCount);
+        if (byteCount == 8 && buffer.order() == ByteOrder.BIG_ENDIAN) {
+            return buffer.getLong();
+        }
+        long result = 0L;
+        for (int i = 0; i < byteCount; i++) {
+            result = (result << 8) | (buffer.get() & 0xffL);
+        }
+        return result;
+    }
+
+    @Override public String readString(int len, Charset charset) throws EOFException {
+        require(len);
+        if (buffer.hasArray()) {
+            int pos = buffer.position();
+            String result = new String(buffer.array(), buffer.arrayOffset() + pos, len, charset);
+            buffer.position(pos + len);
+            return result;
+        }
+        byte[] bytes = new byte[len];
+        buffer.get(bytes);
+        return new String(bytes, charset);
+    }
+
+    /** @return буфер, его позиция указывает на следующий непрочитанный байт */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+}
@@ -0,0 +1,115 @@
+package tk.bolovsrol.utils.binaryserializer;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Пишет в {@link ByteBuffer}.
+ * <p/>
+ * Если буфер создан самим объектом, то при нехватке места он заменяется на вдвое больший.
+ * Чужой буфер (например, прямой или отображённый в память файл) не растёт:
+ * при переполнении выбрасывается {@link BufferOverflowException}.
+ * <p/>
+ * Запись начинается с текущей позиции буфера, и эта позиция запоминается как начало данных.
+ */
+public class ByteBufferOutput implements BinaryOutput {
+
+    private ByteBuffer buffer;
+    private final boolean growable;
+    private final int start;
+
+    /**
+     * Создаёт растущий буфер в куче.
+     *
+     * @param initialCapacity начальная ёмкость
+     */
+    public ByteBufferOutput(int initialCapacity) {
+        this.buffer = ByteBuffer.allocate(initialCapacity);
+        this.growable = true;
+        this.start = 0;
+    }
+
+    /**
+     * Пишет в указанный буфер, начиная с его текущей позиции.
+     *
+     * @param target буфер
+     */
+    public ByteBufferOutput(ByteBuffer target) {
+        this.buffer = target;
+        this.growable = false;
+        this.start = target.position();
+    }
+
+    private void ensure(int count) {
+        if (buffer.remaining() < count) {
+            if (!growable) {
+                throw new BufferOverflowException();
+            }
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() << 1, buffer.position() + count));
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+
+    @Override public void write(int b) {
+        ensure(1);
+        buffer.put((byte) b);
+    }
+
+    @Override public void write(byte[] src, int off, int len) {
+        ensure(len);
+        buffer.put(src, off, len);
+    }
+
+    @Override public void writeBigEndian(long value, int byteCount) {
+        ensure(byteCount);
+        if (byteCount == 8 && buffer.order() == ByteOrder.BIG_ENDIAN) {
+            buffer.putLong(value);
+        } else {
+            for (int shift = (byteCount - 1) << 3; shift >= 0; shift -= 8) {
+                buffer.put((byte) (value >> shift));
+            }
+        }
+    }
+
+    /** @return буфер; для растущего буфера после записи это может быть уже не тот объект, что раньше */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /** @return количество записанных байтов */
+    public int size() {
+        return buffer.position() - start;
+    }
+
+    /** @return копия записанных байтов */
+    public byte[] toByteArray() {
+        byte[] result = new byte[size()];
+        ByteBuffer written = buffer.duplicate();
+        written.flip().position(start);
+        written.get(result);
+        return result;
+    }
+
+    /**
+     * Переписывает записанные байты в другой приёмник, по возможности без промежуточной копии.
+     *
+     * @param target приёмник
+     * @throws IOException
+     */
+    public void writeTo(BinaryOutput target) throws IOException {
+        if (buffer.hasArray()) {
+            target.write(buffer.array(), buffer.arrayOffset() + start, size());
+        } else {
+            target.write(toByteArray());
+        }
+    }
+
+    /** Забывает записанное, следующая запись пойдёт с начала. */
+    public void reset() {
+        buffer.position(start);
+    }
+}
@@ -0,0 +1,360 @@
+package tk.bolovsrol.utils.binaryserializer;
+
+import tk.bolovsrol.utils.binaryserializer.fieldcodec.FieldValueCodecs;
+import tk.bolovsrol.utils.binaryserializer.fieldcodec.IntegerFieldValueCodec;
+import tk.bolovsrol.utils.binaryserializer.fieldcodec.StringFieldValueCodec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Словарь классов и полей для {@link SchemaEncoder} и {@link SchemaDecoder}.
+ * <p/>
+ * Каждому классу словарь выдаёт постоянный номер, а каждому полю класса — постоянный номер внутри класса.
+ * Поле опознаётся по имени и типу, а не по месту в {@link Class#getDeclaredFields()},
+ * так что поля можно переставлять, добавлять и удалять:<br/>
+ * - новое поле получает новый номер при первой записи объекта;<br/>
+ * - удалённое поле при чтении старых данных пропускается;<br/>
+ * - поле, у которого сменился тип, считается удалённым старым полем плюс новым.<br/>
+ * Типы-примитивы и их обёртки (long и Long, int и Integer, boolean и Boolean) взаимозаменяемы.
+ * <p/>
+ * Словарь только растёт и хранится отдельно от данных, например, в файле рядом со снапшотом:
+ * {@link #writeTo(BinaryOutput)} и {@link #readFrom(BinaryInput)}. Когда в словарь что-то добавляется,
+ * увеличивается {@link #getRevision() ревизия}; по ней видно, что словарь пора сохранить заново.
+ * Сохранять его надо не позже данных, которые им закодированы.
+ * <p/>
+ * Чтобы пропустить значение удалённого поля, декодировщик должен знать его тип, поэтому классы
+ * типов (например, енумы) удалять нельзя, пока живы данные с такими полями. Ширина записи енума
+ * зависит от количества его констант (до 256 или больше), и менять её тоже нельзя.
+ * <p/>
+ * Словарь потокобезопасен.
+ */
+public class ClassDictionary {
+
+    /** «BSD1». */
+    private static final int MAGIC = 0x42534431;
+
+    private static final IntegerFieldValueCodec INT_CODEC = new IntegerFieldValueCodec();
+    private static final StringFieldValueCodec STRING_CODEC = new StringFieldValueCodec();
+
+    private static final Map<String, String> BOXED_TYPE_NAMES = new HashMap<>();
+    private static final Map<String, Class<?>> PRIMITIVE_TYPES = new HashMap<>();
+
+    static {
+        BOXED_TYPE_NAMES.put(long.class.getName(), Long.class.getName());
+        BOXED_TYPE_NAMES.put(int.class.getName(), Integer.class.getName());
+        BOXED_TYPE_NAMES.put(boolean.class.getName(), Boolean.class.getName());
+        for (Class<?> cl : new Class<?>[]{long.class, int.class, boolean.class, short.class, byte.class, char.class, double.class, float.class}) {
+            PRIMITIVE_TYPES.put(cl.getName(), cl);
+        }
+    }
+
+    /** Поле в словаре. */
+    private static final class FieldEntry {
+        final int id;
+        final String name;
+        final String typeName;
+
+        FieldEntry(int id, String name, String typeName) {
+            this.id = id;
+            this.name = name;
+            this.typeName = typeName;
+        }
+    }
+
+    /** Класс в словаре. */
+    private static final class ClassEntry {
+        final int id;
+        final String name;
+        /** Номер поля на 1 больше его места в массиве; массив подменяется при добавлении. */
+        volatile FieldEntry[] fields = new FieldEntry[0];
+        volatile DecodeBinding decodeBinding;
+
+        ClassEntry(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    /** Всё, что нужно для записи объектов класса. */
+    static final class EncodeBinding {
+        final int classId;
+        final EntityPlan plan;
+        /** Номера полей в порядке {@link EntityPlan#getFields()}. */
+        final int[] fieldIds;
+
+        EncodeBinding(int classId, EntityPlan plan, int[] fieldIds) {
+            this.classId = classId;
+            this.plan = plan;
+            this.fieldIds = fieldIds;
+        }
+    }
+
+    /** Всё, что нужно для чтения объектов класса: по номеру поля — поле текущего класса или способ пропустить значение. */
+    static final class DecodeBinding {
+        final String className;
+        final EntityPlan plan;
+        final EntityPlan.FieldPlan[] fields;
+        @SuppressWarnings("rawtypes") final FieldValueCodec[] skipCodecs;
+        final Class<?>[] skipTypes;
+
+        @SuppressWarnings("rawtypes")
+        DecodeBinding(String className, EntityPlan plan, EntityPlan.FieldPlan[] fields, FieldValueCodec[] skipCodecs, Class<?>[] skipTypes) {
+            this.className = className;
+            this.plan = plan;
+            this.fields = fields;
+            this.skipCodecs = skipCodecs;
+            this.skipTypes = skipTypes;
+        }
+    }
+
+    /** Номер класса равен месту в массиве; массив подменяется при добавлении. */
+    private volatile ClassEntry[] classes = new ClassEntry[0];
+    private final Map<String, ClassEntry> classesByName = new HashMap<>();
+    private final Map<Class<?>, EncodeBinding> encodeBindings = new ConcurrentHashMap<>();
+    private int revision = 0;
+
+    public ClassDictionary() {
+    }
+
+    /** @return количество классов в словаре */
+    public int size() {
+        return classes.length;
+    }
+
+    /** @return счётчик изменений словаря */
+    public synchronized int getRevision() {
+        return revision;
+    }
+
+    private static String normalizeTypeName(String typeName) {
+        String boxed = BOXED_TYPE_NAMES.get(typeName);
+        return boxed == null ? typeName : boxed;
+    }
+
+    private static boolean compatible(String typeName, Class<?> type) {
+        return normalizeTypeName(typeName).equals(normalizeTypeName(type.getName()));
+    }
+
+    /**
+     * Возвращает привязку класса для записи, при необходимости добавляя класс и его новые поля в словарь.
+     *
+     * @param cl класс
+     * @return привязка
+     * @throws EncodeException класс не годится для сериализации
+     */
+    EncodeBinding bindForEncoding(Class<?> cl) throws EncodeException {
+        EncodeBinding binding = encodeBindings.get(cl);
+        return binding != null ? binding : register(cl);
+    }
+
+    private synchronized EncodeBinding register(Class<?> cl) throws EncodeException {
+        EncodeBinding binding = encodeBindings.get(cl);
+        if (binding != null) {
+            return binding;
+        }
+        EntityPlan plan = EntityPlan.get(cl);
+        if (!plan.primarySubclass) {
+            throw new EncodeException("Object for serialization should be primary Object subclass");
+        }
+        if (plan.constructorProblem != null) {
+            throw new EncodeException("Object for serialization should have public no-argument constructor", plan.constructorProblem);
+        }
+
+        ClassEntry entry = classesByName.get(cl.getName());
+        if (entry == null) {
+            entry = addClass(cl.getName());
+        }
+        EntityPlan.FieldPlan[] fps = plan.getFields();
+        int[] fieldIds = new int[fps.length];
+        for (int i = 0; i < fps.length; i++) {
+            String name = fps[i].field.getName();
+            Class<?> type = fps[i].field.getType();
+            FieldEntry fieldEntry = null;
+            for (FieldEntry fe : entry.fields) {
+                if (fe.name.equals(name) && compatible(fe.typeName, type)) {
+                    fieldEntry = fe;
+                    break;
+                }
+            }
+            if (fieldEntry == null) {
+                fieldEntry = addField(entry, name, type.getName());
+            }
+            fieldIds[i] = fieldEntry.id;
+        }
+        binding = new EncodeBinding(entry.id, plan, fieldIds);
+        encodeBindings.put(cl, binding);
+        return binding;
+    }
+
+    private ClassEntry addClass(String name) {
+        ClassEntry entry = new ClassEntry(classes.length, name);
+        ClassEntry[] grown = Arrays.copyOf(classes, classes.length + 1);
+        grown[entry.id] = entry;
+        classes = grown;
+        classesByName.put(name, entry);
+        revision++;
+        return entry;
+    }
+
+    private FieldEntry addField(ClassEntry entry, String name, String typeName) {
+        FieldEntry[] fields = entry.fields;
+        FieldEntry fe = new FieldEntry(fields.length + 1, name, typeName);
+        FieldEntry[] grown = Arrays.copyOf(fields, fields.length + 1);
+        grown[fields.length] = fe;
+        entry.fields = grown;
+        revision++;
+        return fe;
+    }
+
+    /**
+     * Возвращает привязку класса с указанным номером для чтения.
+     *
+     * @param classId номер класса
+     * @return привязка
+     * @throws DecodeException номер неизвестен или класс недоступен
+     */
+    DecodeBinding bindForDecoding(int classId) throws DecodeException {
+        ClassEntry[] classes = this.classes;
+        if (classId < 0 || classId >= classes.length) {
+            throw new DecodeException("Unknown class id " + classId + ", dictionary contains " + classes.length + " classes");
+        }
+        ClassEntry entry = classes[classId];
+        DecodeBinding binding = entry.decodeBinding;
+        FieldEntry[] fields = entry.fields;
+        if (binding == null || binding.fields.length != fields.length) {
+            binding = createDecodeBinding(entry, fields);
+            entry.decodeBinding = binding;
+        }
+        return binding;
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static DecodeBinding createDecodeBinding(ClassEntry entry, FieldEntry[] fields) throws DecodeException {
+        Class<?> cl;
+        try {
+            cl = Class.forName(entry.name);
+        } catch (Exception e) {
+            throw new DecodeException("Cannot find class by name " + entry.name, e);
+        }
+        EntityPlan plan = EntityPlan.get(cl);
+        Map<String, EntityPlan.FieldPlan> byName = new HashMap<>();
+        for (EntityPlan.FieldPlan fp : plan.getFields()) {
+            byName.put(fp.field.getName(), fp);
+        }
+        EntityPlan.FieldPlan[] bound = new EntityPlan.FieldPlan[fields.length];
+        FieldValueCodec[] skipCodecs = new FieldValueCodec[fields.length];
+        Class<?>[] skipTypes = new Class<?>[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            FieldEntry fe = fields[i];
+            EntityPlan.FieldPlan fp = byName.get(fe.name);
+            if (fp != null && compatible(fe.typeName, fp.field.getType())) {
+                bound[i] = fp;
+            } else {
+                // поля больше нет или у него другой тип, значение придётся пропускать
+                Class<?> type = PRIMITIVE_TYPES.get(fe.typeName);
+                if (type == null) {
+                    try {
+                        type = Class.forName(fe.typeName);
+                    } catch (Exception ignore) {
+                    }
+                }
+                if (type != null) {
+                    skipTypes[i] = type;
+                    skipCodecs[i] = FieldValueCodecs.getCodec(type.isEnum() ? (Class) Enum.class : type);
+                }
+            }
+        }
+        return new DecodeBinding(entry.name, plan, bound, skipCodecs, skipTypes);
+    }
+
+    /**
+     * Возвращает описание поля для сообщений об ошибках.
+     *
+     * @param classId номер класса
+     * @param fieldId номер поля
+     * @return описание
+     */
+    String describeField(int classId, int fieldId) {
+        ClassEntry entry = classes[classId];
+        FieldEntry fe = entry.fields[fieldId - 1];
+        return entry.name + '.' + fe.name + " (" + fe.typeName + ')';
+    }
+
+    /**
+     * Записывает словарь целиком.
+     *
+     * @param target приёмник
+     * @throws IOException
+     */
+    public synchronized void writeTo(BinaryOutput target) throws IOException {
+        target.writeBigEndian(MAGIC, 4);
+        ClassEntry[] classes = this.classes;
+        INT_CODEC.encodeInt(target, classes.length);
+        for (ClassEntry entry : classes) {
+            STRING_CODEC.encodeValue(target, entry.name);
+            FieldEntry[] fields = entry.fields;
+            INT_CODEC.encodeInt(target, fields.length);
+            for (FieldEntry fe : fields) {
+                STRING_CODEC.encodeValue(target, fe.name);
+                STRING_CODEC.encodeValue(target, fe.typeName);
+            }
+        }
+    }
+
+    /**
+     * Записывает словарь целиком в поток.
+     *
+     * @param target поток
+     * @throws IOException
+     */
+    public void writeTo(OutputStream target) throws IOException {
+        StreamBinaryOutput out = new StreamBinaryOutput(target);
+        writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Читает словарь, записанный {@link #writeTo(BinaryOutput)}.
+     *
+     * @param source источник
+     * @return словарь
+     * @throws IOException ошибка чтения
+     * @throws DecodeException данные не похожи на словарь
+     */
+    public static ClassDictionary readFrom(BinaryInput source) throws IOException, DecodeException {
+        int magic = (int) source.readBigEndian(4);
+        if (magic != MAGIC) {
+            throw new DecodeException("Not a class dictionary, magic " + Integer.toHexString(magic));
+        }
+        ClassDictionary result = new ClassDictionary();
+        int classCount = INT_CODEC.decodeInt(source);
+        for (int i = 0; i < classCount; i++) {
+            ClassEntry entry = result.addClass(STRING_CODEC.decodeValue(source, String.class));
+            int fieldCount = INT_CODEC.decodeInt(source);
+            for (int j = 0; j < fieldCount; j++) {
+                String name = STRING_CODEC.decodeValue(source, String.class);
+                result.addField(entry, name, STRING_CODEC.decodeValue(source, String.class));
+            }
+        }
+        result.revision = 0;
+        return result;
+    }
+
+    /**
+     * Читает словарь из потока. Поток читается через буфер, так что после словаря в нём ничего не должно быть.
+     *
+     * @param source поток
+     * @return словарь
+     * @throws IOException ошибка чтения
+     * @throws DecodeException данные не похожи на словарь
+     */
+    public static ClassDictionary readFrom(InputStream source) throws IOException, DecodeException {
+        return readFrom(new StreamBinaryInput(source));
+    }
+}
@@ -0,0 +1,41 @@
+package tk.bolovsrol.utils.binaryserializer;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/** Ленивый итератор поверх метода, декодирующего очередной объект. */
+class DecodingIterator implements Iterator<Serializable> {
+
+    interface Source {
+        /** @return очередной объект или нул, если данные кончились */
+        Serializable decodeNext() throws DecodeException;
+    }
+
+    private final Source source;
+    private Serializable next;
+
+    DecodingIterator(Source source) {
+        this.source = source;
+    }
+
+    @Override public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = source.decodeNext();
+            } catch (DecodeException e) {
+                throw new UncheckedDecodeException(e);
+            }
+        }
+        return next != null;
+    }
+
+    @Override public Serializable next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Serializable result = next;
+        next = null;
+        return result;
+    }
+}
@@ -0,0 +1,409 @@
+package tk.bolovsrol.utils.binaryserializer;
+
+import tk.bolovsrol.utils.binaryserializer.fieldcodec.BooleanFieldValueCodec;
+import tk.bolovsrol.utils.binaryserializer.fieldcodec.FieldValueCodecs;
+import tk.bolovsrol.utils.binaryserializer.fieldcodec.IntegerFieldValueCodec;
+import tk.bolovsrol.utils.binaryserializer.fieldcodec.LongFieldValueCodec;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Скомпилированный план сериализации одного класса: упорядоченные поля с готовыми кодировщиками
+ * и аксессорами на {@link MethodHandle}, конструктор и serialVersionUID.
+ * <p/>
+ * Планы строятся один раз на класс и кешируются в {@link ClassValue}, так что кодировщик и декодировщик
+ * не лезут в рефлекшн на каждом объекте. Поля-примитивы long, int и boolean читаются и пишутся
+ * без боксинга.
+ * <p/>
+ * Проблемы класса (нет конструктора, не тот суперкласс, кривой serialVersionUID) при построении плана
+ * не выбрасываются, а запоминаются: кодировщик и декодировщик проверяют разное и ругаются каждый по-своему.
+ */
+final class EntityPlan {
+
+    private static final ClassValue<EntityPlan> PLANS = new ClassValue<EntityPlan>() {
+        @Override protected EntityPlan computeValue(Class<?> type) {
+            return new EntityPlan(type);
+        }
+    };
+
+    // модификаторы полей, которые нам не нужны
+    private static final int FORBIDDEN_MODIFIERS = Modifier.FINAL | Modifier.STATIC | Modifier.TRANSIENT;
+
+    private static final LongFieldValueCodec LONG_CODEC = new LongFieldValueCodec();
+    private static final IntegerFieldValueCodec INT_CODEC = new IntegerFieldValueCodec();
+    private static final BooleanFieldValueCodec BOOLEAN_CODEC = new BooleanFieldValueCodec();
+
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+    final Class<?> entityClass;
+    /** Является ли класс прямым наследником {@link Object}. */
+    final boolean primarySubclass;
+
+    final long serialVersionUID;
+    final Exception serialVersionUIDProblem;
+
+    private final MethodHandle constructor;
+    final Exception constructorProblem;
+
+    /** Номера полей занимают 2 байта, если в классе больше 255 полей, иначе 1 байт. */
+    final boolean wideIndex;
+    /** Сериализуемые поля в порядке объявления. */
+    private final FieldPlan[] fields;
+    /** Их номера в {@link StatefulEncoder исходном формате}: на 1 больше номера поля в рефлекшне. */
+    private final int[] declaredIndexes;
+    private final IndexWriter declaredIndexWriter = this::writeIndex;
+    /** Те же поля по индексу в {@link Class#getDeclaredFields()}, несериализуемым соответствует нул. */
+    private final FieldPlan[] fieldsByIndex;
+
+    /**
+     * Возвращает план для класса, при необходимости строит его.
+     *
+     * @param cl класс
+     * @return план
+     */
+    static EntityPlan get(Class<?> cl) {
+        return PLANS.get(cl);
+    }
+
+    private EntityPlan(Class<?> cl) {
+        this.entityClass = cl;
+        this.primarySubclass = cl.getSuperclass() == Object.class;
+
+        MethodHandles.Lookup lookup;
+        try {
+            lookup = MethodHandles.privateLookupIn(cl, MethodHandles.lookup());
+        } catch (IllegalAccessException e) {
+            lookup = null;
+        }
+
+        long uid = 0L;
+        Exception uidProblem = null;
+        try {
+            Field serialVersionUIDField = cl.getDeclaredField("serialVersionUID");
+            serialVersionUIDField.setAccessible(true);
+            uid = (Long) serialVersionUIDField.get(null);
+        } catch (NoSuchFieldException ignore) {
+        } catch (Exception e) {
+            uidProblem = e;
+        }
+        this.serialVersionUID = uid;
+        this.serialVersionUIDProblem = uidProblem;
+
+        MethodHandle ctor = null;
+        Exception ctorProblem = null;
+        try {
+            ctor = MethodHandles.publicLookup().unreflectConstructor(cl.getConstructor()).asType(CONSTRUCTOR_TYPE);
+        } catch (Exception e) {
+            ctorProblem = e;
+        }
+        this.constructor = ctor;
+        this.constructorProblem = ctorProblem;
+
+        Field[] declaredFields = cl.getDeclaredFields();
+        this.wideIndex = declaredFields.length > 255;
+        this.fieldsByIndex = new FieldPlan[declaredFields.length];
+        List<FieldPlan> fieldList = new ArrayList<>(declaredFields.length);
+        for (int i = 0; i < declaredFields.length; i++) {
+            Field field = declaredFields[i];
+            if ((field.getModifiers() & FORBIDDEN_MODIFIERS) != 0) {
+                continue;
+            }
+            FieldPlan fp = createFieldPlan(lookup, i + 1, field);
+            fieldsByIndex[i] = fp;
+            fieldList.add(fp);
+        }
+        this.fields = fieldList.toArray(new FieldPlan[fieldList.size()]);
+        this.declaredIndexes = new int[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            declaredIndexes[i] = fields[i].index;
+        }
+    }
+
+    /** @return сериализуемые поля в порядке объявления; массив не трогать */
+    FieldPlan[] getFields() {
+        return fields;
+    }
+
+    private static FieldPlan createFieldPlan(MethodHandles.Lookup lookup, int index, Field field) {
+        MethodHandle getter;
+        MethodHandle setter;
+        try {
+            if (lookup != null) {
+                getter = lookup.unreflectGetter(field);
+                setter = lookup.unreflectSetter(field);
+            } else {
+                field.setAccessible(true);
+                getter = MethodHandles.lookup().unreflectGetter(field);
+                setter = MethodHandles.lookup().unreflectSetter(field);
+            }
+        } catch (Exception e) {
+            return new BrokenFieldPlan(index, field, e);
+        }
+        Class<?> type = field.getType();
+        if (type == long.class) {
+            return new LongFieldPlan(index, field, getter, setter);
+        } else if (type == int.class) {
+            return new IntFieldPlan(index, field, getter, setter);
+        } else if (type == boolean.class) {
+            return new BooleanFieldPlan(index, field, getter, setter);
+        } else {
+            return new ObjectFieldPlan(index, field, getter, setter);
+        }
+    }
+
+    /**
+     * Создаёт новый экземпляр класса.
+     *
+     * @return экземпляр
+     * @throws DecodeException у класса нет публичного конструктора без параметров или он выбросил исключение
+     */
+    Object newInstance() throws DecodeException {
+        if (constructor == null) {
+            throw new DecodeException("Cannot instantinate object " + entityClass, constructorProblem);
+        }
+        try {
+            return (Object) constructor.invokeExact();
+        } catch (Throwable e) {
+            throw new DecodeException("Cannot instantinate object " + entityClass, e);
+        }
+    }
+
+    /**
+     * Записывает непустые поля объекта и терминатор в {@link StatefulEncoder исходном формате}.
+     *
+     * @param target куда писать
+     * @param entity объект класса этого плана
+     * @throws EncodeException не удалось прочитать значение поля
+     * @throws IOException ошибка записи
+     */
+    void encodeFields(BinaryOutput target, Object entity) throws EncodeException, IOException {
+        encodeFields(target, declaredIndexWriter, declaredIndexes, entity);
+    }
+
+    /**
+     * Записывает непустые поля объекта, предваряя каждое его номером из indexes, и терминатор — номер 0.
+     *
+     * @param target куда писать
+     * @param indexWriter как писать номера
+     * @param indexes номера полей в порядке {@link #getFields()}, больше нуля
+     * @param entity объект класса этого плана
+     * @throws EncodeException не удалось прочитать значение поля
+     * @throws IOException ошибка записи
+     */
+    void encodeFields(BinaryOutput target, IndexWriter indexWriter, int[] indexes, Object entity) throws EncodeException, IOException {
+        for (int i = 0; i < fields.length; i++) {
+            FieldPlan fp = fields[i];
+            try {
+                fp.encode(target, indexWriter, indexes[i], entity);
+            } catch (IOException | RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new EncodeException("Cannot read field " + fp.field + " value", e);
+            }
+        }
+        indexWriter.writeIndex(target, 0);
+    }
+
+    /**
+     * Читает значение одного поля и прописывает его объекту.
+     *
+     * @param fp поле этого плана
+     * @param source источник
+     * @param entity объект класса этого плана
+     * @throws DecodeException не удалось прописать значение
+     * @throws IOException ошибка чтения или данные кончились
+     */
+    void decodeField(FieldPlan fp, BinaryInput source, Object entity) throws DecodeException, IOException {
+        try {
+            fp.decode(source, entity);
+        } catch (IOException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new DecodeException("Error reading field " + fp.field + " value", e);
+        }
+    }
+
+    private void writeIndex(BinaryOutput target, int index) throws IOException {
+        if (wideIndex) {
+            target.writeBigEndian(index, 2);
+        } else {
+            target.write(index);
+        }
+    }
+
+    private int readIndex(BinaryInput source) throws IOException {
+        return wideIndex ? (int) source.readBigEndian(2) : source.read() & 0xff;
+    }
+
+    /**
+     * Читает значения полей до терминатора и прописывает их объекту.
+     *
+     * @param source закодированные данные
+     * @param entity объект класса этого плана
+     * @throws DecodeException данные не соответствуют классу
+     * @throws IOException ошибка чтения или данные кончились
+     */
+    void decodeFields(BinaryInput source, Object entity) throws DecodeException, IOException {
+        try {
+            while (true) {
+                int fieldIndex = readIndex(source) - 1;
+                if (fieldIndex < 0) {
+                    return;
+                }
+                FieldPlan fp = fieldIndex < fieldsByIndex.length ? fieldsByIndex[fieldIndex] : null;
+                if (fp == null) {
+                    throw new DecodeException("Unexpected field index " + (fieldIndex + 1));
+                }
+                fp.decode(source, entity);
+            }
+        } catch (IOException | DecodeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new DecodeException("Error reading field values for entity " + entityClass, e);
+        }
+    }
+
+    /** Как записывать номера полей. */
+    interface IndexWriter {
+        void writeIndex(BinaryOutput target, int index) throws IOException;
+    }
+
+    /** Поле и способ его закодировать и раскодировать. */
+    abstract static class FieldPlan {
+        final int index;
+        final Field field;
+
+        FieldPlan(int index, Field field) {
+            this.index = index;
+            this.field = field;
+        }
+
+        /** Записывает номер и значение поля, если значение не нул. */
+        abstract void encode(BinaryOutput target, IndexWriter indexWriter, int index, Object entity) throws Throwable;
+
+        /** Читает значение поля, индекс уже прочитан. */
+        abstract void decode(BinaryInput source, Object entity) throws Throwable;
+    }
+
+    private static final class LongFieldPlan extends FieldPlan {
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        LongFieldPlan(int index, Field field, MethodHandle getter, MethodHandle setter) {
+            super(index, field);
+            this.getter = getter.asType(MethodType.methodType(long.class, Object.class));
+            this.setter = setter.asType(MethodType.methodType(void.class, Object.class, long.class));
+        }
+
+        @Override void encode(BinaryOutput target, IndexWriter indexWriter, int index, Object entity) throws Throwable {
+            indexWriter.writeIndex(target, index);
+            LONG_CODEC.encodeLong(target, (long) getter.invokeExact(entity));
+        }
+
+        @Override void decode(BinaryInput source, Object entity) throws Throwable {
+            setter.invokeExact(entity, LONG_CODEC.decodeLong(source));
+        }
+    }
+
+    private static final class IntFieldPlan extends FieldPlan {
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        IntFieldPlan(int index, Field field, MethodHandle getter, MethodHandle setter) {
+            super(index, field);
+            this.getter = getter.asType(MethodType.methodType(int.class, Object.class));
+            this.setter = setter.asType(MethodType.methodType(void.class, Object.class, int.class));
+        }
+
+        @Override void encode(BinaryOutput target, IndexWriter indexWriter, int index, Object entity) throws Throwable {
+            indexWriter.writeIndex(target, index);
+            INT_CODEC.encodeInt(target, (int) getter.invokeExact(entity));
+        }
+
+        @Override void decode(BinaryInput source, Object entity) throws Throwable {
+            setter.invokeExact(entity, INT_CODEC.decodeInt(source));
+        }
+    }
+
+    private static final class BooleanFieldPlan extends FieldPlan {
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        BooleanFieldPlan(int index, Field field, MethodHandle getter, MethodHandle setter) {
+            super(index, field);
+            this.getter = getter.asType(MethodType.methodType(boolean.class, Object.class));
+            this.setter = setter.asType(MethodType.methodType(void.class, Object.class, boolean.class));
+        }
+
+        @Override void encode(BinaryOutput target, IndexWriter indexWriter, int index, Object entity) throws Throwable {
+            indexWriter.writeIndex(target, index);
+            BOOLEAN_CODEC.encodeBoolean(target, (boolean) getter.invokeExact(entity));
+        }
+
+        @Override void decode(BinaryInput source, Object entity) throws Throwable {
+            setter.invokeExact(entity, BOOLEAN_CODEC.decodeBoolean(source));
+        }
+    }
+
+    /** Поле-объект или примитив без специального плана, значение боксится. */
+    private static final class ObjectFieldPlan extends FieldPlan {
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+        @SuppressWarnings("rawtypes") private final FieldValueCodec codec;
+        @SuppressWarnings("rawtypes") private final Class type;
+
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        ObjectFieldPlan(int index, Field field, MethodHandle getter, MethodHandle setter) {
+            super(index, field);
+            this.getter = getter.asType(MethodType.methodType(Object.class, Object.class));
+            this.setter = setter.asType(MethodType.methodType(void.class, Object.class, Object.class));
+            this.type = field.getType();
+            this.codec = FieldValueCodecs.getCodec(type.isEnum() ? (Class) Enum.class : type);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override void encode(BinaryOutput target, IndexWriter indexWriter, int index, Object entity) throws Throwable {
+            Object value = (Object) getter.invokeExact(entity);
+            if (value != null) {
+                if (codec == null) {
+                    throw new IllegalArgumentException("Don't know how to encode class " + type + " (field " + field + ')');
+                }
+                indexWriter.writeIndex(target, index);
+                codec.encodeValue(target, value);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override void decode(BinaryInput source, Object entity) throws Throwable {
+            if (codec == null) {
+                throw new IllegalArgumentException("Don't know how to decode class " + type + " (field " + field + ')');
+            }
+            setter.invokeExact(entity, codec.decodeValue(source, type));
+        }
+    }
+
+    /** Поле, до которого не удалось добраться; пока оно не встретится, никто и не заметит. */
+    private static final class BrokenFieldPlan extends FieldPlan {
+        private final Exception problem;
+
+        BrokenFieldPlan(int index, Field field, Exception problem) {
+            super(index, field);
+            this.problem = problem;
+        }
+
+        @Override void encode(BinaryOutput target, IndexWriter indexWriter, int index, Object entity) throws Throwable {
+            throw problem;
+        }
+
+        @Override void decode(BinaryInput source, Object entity) throws Throwable {
+            throw problem;
+        }
+    }
+}
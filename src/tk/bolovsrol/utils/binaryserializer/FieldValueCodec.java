@@ -1,10 +1,19 @@
 package tk.bolovsrol.utils.binaryserializer;
 
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * Кодировщик и декодировщих объектов определённого типа..
+ * <p/>
+ * Кодировщику достаточно реализовать методы для {@link OutputStream} и массива с {@link PosContainer}.
+ * Методы для {@link BinaryOutput} и {@link BinaryInput} по умолчанию работают через них,
+ * причём декодировать так получится только из {@link ByteBufferInput}.
+ * Кодировщики, которые хотят писать и читать хоть массив, хоть {@link ByteBuffer}, хоть поток или канал
+ * без промежуточных копий, переопределяют и их, см. {@link AbstractBinaryFieldValueCodec}.
  *
  * @param <E> тип обслуживаемых объектов
  */
@@ -27,4 +36,61 @@ public interface FieldValueCodec<E> {
      * @return
      */
     E decodeValue(byte[] source, PosContainer posContainer, Class<? extends E> type);
+
+    /**
+     * Кодирует значение и записывает его в приёмник.
+     * <p/>
+     * По умолчанию кодирует значение в массив методом {@link #encodeValue(OutputStream, Object)}
+     * и переписывает массив в приёмник.
+     *
+     * @param target приёмник
+     * @param value значение, не нул
+     * @throws IOException
+     */
+    default void encodeValue(BinaryOutput target, E value) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(64);
+        encodeValue(baos, value);
+        target.write(baos.toByteArray());
+    }
+
+    /**
+     * Читает и декодирует значение.
+     * <p/>
+     * По умолчанию декодирует значение методом {@link #decodeValue(byte[], PosContainer, Class)}
+     * прямо из массива буфера {@link ByteBufferInput}. Длина значения заранее неизвестна,
+     * поэтому из других источников так читать нельзя, и метод выкидывает {@link IOException}.
+     *
+     * @param source источник
+     * @param type ожидаемый тип значения
+     * @return распознанное значение
+     * @throws IOException
+     */
+    default E decodeValue(BinaryInput source, Class<? extends E> type) throws IOException {
+        if (!(source instanceof ByteBufferInput)) {
+            throw new IOException("Codec " + getClass().getName() + " cannot decode from " + source.getClass().getSimpleName()
+                  + ", it should override decodeValue(BinaryInput, Class)");
+        }
+        ByteBuffer buffer = ((ByteBufferInput) source).getBuffer();
+        int start = buffer.position();
+        byte[] array;
+        int offset;
+        if (buffer.hasArray() && buffer.arrayOffset() + buffer.limit() == buffer.array().length) {
+            array = buffer.array();
+            offset = buffer.arrayOffset();
+        } else {
+            array = new byte[buffer.remaining()];
+            buffer.duplicate().get(array);
+            offset = -start;
+        }
+        PlainPosContainer pos = new PlainPosContainer();
+        pos.setPos(offset + start);
+        E result;
+        try {
+            result = decodeValue(array, pos, type);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw (EOFException) new EOFException("Value truncated").initCause(e);
+        }
+        buffer.position(pos.getPos() - offset);
+        return result;
+    }
 }
@@ -1,5 +1,10 @@
 package tk.bolovsrol.utils.binaryserializer;
 
+/**
+ * @deprecated кодеки полей ими больше не пользуются, числа пишут и читают
+ * {@link BinaryInput#readBigEndian(int)}
+ */
+@Deprecated
 public interface NumberReader {
     int readFrom(byte[] buf, PosContainer pos);
 
@@ -3,6 +3,11 @@ package tk.bolovsrol.utils.binaryserializer;
 import java.io.IOException;
 import java.io.OutputStream;
 
+/**
+ * @deprecated кодеки полей ими больше не пользуются, числа пишут и читают
+ * {@link BinaryOutput#writeBigEndian(long, int)}
+ */
+@Deprecated
 public interface NumberWriter {
     void writeTo(OutputStream os, int value) throws IOException;
 
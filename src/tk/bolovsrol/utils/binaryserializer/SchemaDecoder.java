@@ -0,0 +1,119 @@
+package tk.bolovsrol.utils.binaryserializer;
+
+import tk.bolovsrol.utils.binaryserializer.fieldcodec.IntegerFieldValueCodec;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Восстанавливает объекты, записанные {@link SchemaEncoder}, при помощи того же {@link ClassDictionary словаря}
+ * (или его сохранённой копии не старше данных).
+ * <p/>
+ * Значения полей, которых в текущей версии класса нет или которые поменяли тип, пропускаются,
+ * а поля, которых не было в данных, остаются такими, какими их сделал конструктор.
+ * <p/>
+ * Декодировщик не хранит состояния, так что один экземпляр можно использовать из нескольких тредов.
+ */
+public class SchemaDecoder {
+
+    private static final IntegerFieldValueCodec INT_CODEC = new IntegerFieldValueCodec();
+
+    private final ClassDictionary dictionary;
+
+    public SchemaDecoder(ClassDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Декодирует очередной объект из источника.
+     *
+     * @param source источник
+     * @return объект или нул, если источник исчерпан
+     * @throws DecodeException декодирование не удалось, в том числе если данные оборвались посреди объекта
+     */
+    @SuppressWarnings("unchecked")
+    public Serializable decodeNext(BinaryInput source) throws DecodeException {
+        try {
+            if (!source.hasRemaining()) {
+                return null;
+            }
+            int classId = INT_CODEC.decodeInt(source);
+            ClassDictionary.DecodeBinding binding = dictionary.bindForDecoding(classId);
+            Serializable entity = (Serializable) binding.plan.newInstance();
+            while (true) {
+                int fieldId = INT_CODEC.decodeInt(source);
+                if (fieldId == 0) {
+                    return entity;
+                }
+                int i = fieldId - 1;
+                if (i < 0 || i >= binding.fields.length) {
+                    throw new DecodeException("Unknown field id " + fieldId + " for class " + binding.className);
+                }
+                EntityPlan.FieldPlan fp = binding.fields[i];
+                if (fp != null) {
+                    binding.plan.decodeField(fp, source, entity);
+                } else if (binding.skipCodecs[i] != null) {
+                    binding.skipCodecs[i].decodeValue(source, binding.skipTypes[i]);
+                } else {
+                    throw new DecodeException("Cannot skip value of removed field " + dictionary.describeField(classId, fieldId));
+                }
+            }
+        } catch (IOException e) {
+            throw new DecodeException("Cannot read encoded data", e);
+        }
+    }
+
+    /**
+     * Декодирует объекты от текущей позиции буфера до его лимита, возвращая их список.
+     *
+     * @param encoded закодированные данные
+     * @return список декодированных объектов
+     * @throws DecodeException декодирование не удалось
+     */
+    public List<Serializable> decode(ByteBuffer encoded) throws DecodeException {
+        ByteBufferInput source = new ByteBufferInput(encoded);
+        List<Serializable> result = new ArrayList<>();
+        Serializable entity;
+        while ((entity = decodeNext(source)) != null) {
+            result.add(entity);
+        }
+        return result;
+    }
+
+    public List<Serializable> decode(byte[] encoded) throws DecodeException {
+        return decode(ByteBuffer.wrap(encoded));
+    }
+
+    /**
+     * Возвращает ленивый итератор, декодирующий объекты из источника по одному.
+     * Ошибки декодирования итератор выбрасывает как {@link UncheckedDecodeException}.
+     *
+     * @param source источник
+     * @return итератор
+     */
+    public Iterator<Serializable> iterator(BinaryInput source) {
+        return new DecodingIterator(() -> decodeNext(source));
+    }
+
+    /**
+     * Возвращает последовательный стрим объектов, лениво декодируемых из источника.
+     *
+     * @param source источник
+     * @return стрим
+     */
+    public Stream<Serializable> stream(BinaryInput source) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(source), Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    public ClassDictionary getDictionary() {
+        return dictionary;
+    }
+}
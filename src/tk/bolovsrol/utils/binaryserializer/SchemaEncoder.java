@@ -0,0 +1,75 @@
+package tk.bolovsrol.utils.binaryserializer;
+
+import tk.bolovsrol.utils.binaryserializer.fieldcodec.IntegerFieldValueCodec;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+
+/**
+ * Кодирует объекты в формат со схемой, опирающийся на внешний {@link ClassDictionary словарь}.
+ * <p/>
+ * В отличие от {@link StatefulEncoder}, не пишет в данные названий классов и не держит состояния между записями:
+ * каждая запись самодостаточна при наличии словаря. Поэтому формат годится для долгоживущих
+ * потоков и файлов на диске, а поля классов можно добавлять, удалять и переставлять
+ * (подробности в {@link ClassDictionary}).
+ * <p/>
+ * Запись:<br/>
+ * - номер класса в словаре (целое переменной длины, формат {@link IntegerFieldValueCodec});<br/>
+ * - пары «номер поля, значение поля» для непустых полей, номера полей того же формата;<br/>
+ * - терминатор — номер поля 0.
+ * <p/>
+ * Кодировщик может добавлять в словарь новые классы и поля, так что после записи словарь
+ * следует сохранить, если изменилась его {@link ClassDictionary#getRevision() ревизия}.
+ *
+ * @see SchemaDecoder
+ */
+public class SchemaEncoder implements Flushable {
+
+    private static final IntegerFieldValueCodec INT_CODEC = new IntegerFieldValueCodec();
+    private static final EntityPlan.IndexWriter FIELD_ID_WRITER = INT_CODEC::encodeInt;
+
+    private final ClassDictionary dictionary;
+    private final BinaryOutput target;
+
+    public SchemaEncoder(ClassDictionary dictionary, BinaryOutput target) {
+        this.dictionary = dictionary;
+        this.target = target;
+    }
+
+    public SchemaEncoder(ClassDictionary dictionary, OutputStream target) {
+        this(dictionary, new StreamBinaryOutput(target));
+    }
+
+    /**
+     * Записывает объект.
+     *
+     * @param entity объект
+     * @throws EncodeException класс объекта не годится для сериализации или запись не удалась
+     */
+    public void append(Serializable entity) throws EncodeException {
+        ClassDictionary.EncodeBinding binding = dictionary.bindForEncoding(entity.getClass());
+        try {
+            INT_CODEC.encodeInt(target, binding.classId);
+            binding.plan.encodeFields(target, FIELD_ID_WRITER, binding.fieldIds, entity);
+        } catch (IOException e) {
+            throw new EncodeException("Cannot write entity " + entity.getClass(), e);
+        }
+    }
+
+    /**
+     * Проталкивает записанное в приёмник, если приёмник это умеет.
+     *
+     * @throws IOException
+     */
+    @Override public void flush() throws IOException {
+        if (target instanceof Flushable) {
+            ((Flushable) target).flush();
+        }
+    }
+
+    public ClassDictionary getDictionary() {
+        return dictionary;
+    }
+}
@@ -0,0 +1,120 @@
+package tk.bolovsrol.utils.binaryserializer;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Лениво декодирует сегменты, записанные {@link SegmentedEncoder}, из {@link ByteBuffer}
+ * (удобно — из отображённого в память файла), по одному объекту за раз.
+ * <p/>
+ * Делится по границам сегментов: заголовки сегментов пробегаются без декодирования,
+ * так что параллельный стрим раздаёт тредам примерно равные по объёму куски.
+ * Каждый сегмент декодируется собственным {@link StatefulDecoder}.
+ * <p/>
+ * Ошибки декодирования выбрасываются как {@link UncheckedDecodeException}.
+ */
+public class SegmentSpliterator implements Spliterator<Serializable> {
+
+    /** Сегменты короче этого по суммарному объёму делить не стоит. */
+    private static final int MIN_SPLIT_BYTES = 4096;
+
+    private final ByteBuffer data;
+    /** Начало следующего непочатого сегмента. */
+    private int next;
+    private final int end;
+
+    /** Текущий начатый сегмент или нул. */
+    private ByteBufferInput current;
+    private StatefulDecoder currentDecoder;
+
+    /** @param segments сегменты от текущей позиции до лимита буфера; сам буфер не меняется */
+    public SegmentSpliterator(ByteBuffer segments) {
+        this(segments.duplicate(), segments.position(), segments.limit());
+    }
+
+    private SegmentSpliterator(ByteBuffer data, int next, int end) {
+        this.data = data;
+        this.next = next;
+        this.end = end;
+    }
+
+    private int segmentEnd(int segmentStart) {
+        if (end - segmentStart < 4) {
+            throw new UncheckedDecodeException(new DecodeException("Truncated segment header at " + segmentStart));
+        }
+        int len = data.getInt(segmentStart);
+        if (len < 0 || len > end - segmentStart - 4) {
+            throw new UncheckedDecodeException(new DecodeException("Bad segment length " + len + " at " + segmentStart));
+        }
+        return segmentStart + 4 + len;
+    }
+
+    @Override public boolean tryAdvance(Consumer<? super Serializable> action) {
+        while (true) {
+            if (current != null) {
+                Serializable entity;
+                try {
+                    entity = currentDecoder.decodeNext(current);
+                } catch (DecodeException e) {
+                    throw new UncheckedDecodeException(e);
+                }
+                if (entity != null) {
+                    action.accept(entity);
+                    return true;
+                }
+                current = null;
+                currentDecoder = null;
+            }
+            if (next >= end) {
+                return false;
+            }
+            int segmentEnd = segmentEnd(next);
+            ByteBuffer slice = data.duplicate();
+            slice.limit(segmentEnd).position(next + 4);
+            current = new ByteBufferInput(slice.slice());
+            currentDecoder = new StatefulDecoder();
+            next = segmentEnd;
+        }
+    }
+
+    /**
+     * Отдаёт префикс: начатый сегмент, если он есть, и сегменты примерно до середины оставшегося объёма.
+     * Себе оставляет остальное.
+     */
+    @Override public Spliterator<Serializable> trySplit() {
+        if (end - next < MIN_SPLIT_BYTES) {
+            return null;
+        }
+        int mid = next + (end - next) / 2;
+        int boundary = next;
+        int last = next;
+        while (boundary < mid) {
+            last = boundary;
+            boundary = segmentEnd(boundary);
+        }
+        if (boundary >= end) {
+            boundary = last;
+        }
+        if (boundary <= next && current == null) {
+            return null;
+        }
+        SegmentSpliterator prefix = new SegmentSpliterator(data, next, boundary);
+        prefix.current = current;
+        prefix.currentDecoder = currentDecoder;
+        current = null;
+        currentDecoder = null;
+        next = boundary;
+        return prefix;
+    }
+
+    /** @return количество оставшихся непочатых байтов — количества объектов мы не знаем, но оно им пропорционально */
+    @Override public long estimateSize() {
+        return end - next;
+    }
+
+    @Override public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+}
@@ -0,0 +1,83 @@
+package tk.bolovsrol.utils.binaryserializer;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+
+/**
+ * Пишет объекты в приёмник независимыми сегментами, которые можно декодировать по отдельности
+ * и параллельно при помощи {@link SegmentSpliterator}.
+ * <p/>
+ * Сегмент — это 4 байта длины (big-endian) и данные {@link StatefulEncoder} с чистым кешем рефренсов,
+ * так что для декодирования сегмента ничего, кроме него самого, не нужно. Платой за независимость
+ * служит повтор описаний классов в каждом сегменте, поэтому сегменты лучше делать не слишком мелкими.
+ * <p/>
+ * Объекты копятся в буфере, пока сегмент не дорастёт до заданного размера, после чего сегмент целиком
+ * уходит в приёмник. Недописанный сегмент выталкивается методами {@link #flush()} и {@link #close()}.
+ */
+public class SegmentedEncoder implements Flushable, Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+
+    private final BinaryOutput target;
+    private final int segmentSize;
+    private final ByteBufferOutput segment;
+    private final StatefulEncoder encoder;
+
+    public SegmentedEncoder(OutputStream target) {
+        this(new StreamBinaryOutput(target), DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param target приёмник
+     * @param segmentSize примерный размер сегмента в байтах; сегмент закрывается, как только его превысит
+     */
+    public SegmentedEncoder(BinaryOutput target, int segmentSize) {
+        this.target = target;
+        this.segmentSize = segmentSize;
+        this.segment = new ByteBufferOutput(segmentSize + segmentSize / 4 + 64);
+        this.encoder = new StatefulEncoder(segment);
+    }
+
+    /**
+     * Добавляет объект в текущий сегмент, а если сегмент заполнился, отправляет его в приёмник.
+     *
+     * @param entity объект
+     * @throws EncodeException
+     * @throws IOException ошибка записи в приёмник
+     */
+    public void append(Serializable entity) throws EncodeException, IOException {
+        encoder.append(entity);
+        if (segment.size() >= segmentSize) {
+            writeSegment();
+        }
+    }
+
+    private void writeSegment() throws IOException {
+        if (segment.size() == 0) {
+            return;
+        }
+        target.writeBigEndian(segment.size(), 4);
+        segment.writeTo(target);
+        segment.reset();
+        encoder.resetClassReferences();
+    }
+
+    /** Отправляет недописанный сегмент в приёмник и проталкивает приёмник. */
+    @Override public void flush() throws IOException {
+        writeSegment();
+        if (target instanceof Flushable) {
+            ((Flushable) target).flush();
+        }
+    }
+
+    /** Отправляет недописанный сегмент и закрывает приёмник, если тот закрываемый. */
+    @Override public void close() throws IOException {
+        flush();
+        if (target instanceof Closeable) {
+            ((Closeable) target).close();
+        }
+    }
+}
@@ -1,30 +1,37 @@
 package tk.bolovsrol.utils.binaryserializer;
 
 import tk.bolovsrol.utils.binaryserializer.fieldcodec.FieldValueCodecs;
+import tk.bolovsrol.utils.binaryserializer.fieldcodec.LongFieldValueCodec;
 
+import java.io.IOException;
 import java.io.Serializable;
-import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.TreeMap;
-
-/** Восстанавливает объекты, сериализованные при помощи {@link StatefulEncoder}. */
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Восстанавливает объекты, сериализованные при помощи {@link StatefulEncoder}.
+ * <p/>
+ * Декодировать можно как массив или {@link ByteBuffer} целиком, так и по одному объекту
+ * из любого {@link BinaryInput}, например, из {@link StreamBinaryInput} поверх канала,
+ * не дожидаясь, пока придут все данные.
+ */
 public class StatefulDecoder {
 
     // используем эти читатели в декодировании
     public static final FieldValueCodec<String> STRING_CODEC = FieldValueCodecs.getCodec(String.class);
-    private static final FieldValueCodec<Long> LONG_CODEC = FieldValueCodecs.getCodec(Long.class);
-
-    /** Контейнер с указателем на текущий байт в читаемом буфере. */
-    private final PosContainer posContainer = new PlainPosContainer();
+    private static final LongFieldValueCodec LONG_CODEC = new LongFieldValueCodec();
 
     /** Известные классы. */
     private final Map<Integer, Class<? extends Serializable>> classReferences = new TreeMap<>();
 
-    /** Данные для декодирования. */
-    private byte[] encoded;
-
     private boolean autoResetClassReferences = false;
 
     /** Очищает список запомненных известных классов. */
@@ -47,70 +54,102 @@ public class StatefulDecoder {
      * @throws DecodeException декодирование не удалось
      */
     public List<Serializable> decode(byte[] encoded) throws DecodeException {
-        this.encoded = encoded;
+        return decode(ByteBuffer.wrap(encoded));
+    }
+
+    /**
+     * Декодирует объекты от текущей позиции буфера до его лимита, возвращая их список.
+     * Буфер может быть и прямым, и отображённым в память файлом.
+     *
+     * @param encoded закодированные данные
+     * @return список декодированных объектов
+     * @throws DecodeException декодирование не удалось
+     */
+    public List<Serializable> decode(ByteBuffer encoded) throws DecodeException {
         if (autoResetClassReferences) {
             classReferences.clear();
         }
+        ByteBufferInput source = new ByteBufferInput(encoded);
         List<Serializable> result = new ArrayList<>();
-        posContainer.setPos(0);
-        int encodedLength = encoded.length;
-        while (posContainer.getPos() < encodedLength) {
-            int signature = encoded[posContainer.getPosAndInc()];
-            Serializable entity = createEntity(retrieveEntityClass(signature));
-            loadFields(entity);
+        Serializable entity;
+        while ((entity = decodeNext(source)) != null) {
             result.add(entity);
         }
         return result;
     }
 
     /**
-     * Прописывает значения полям объекта.
+     * Декодирует очередной объект из источника.
+     * <p/>
+     * Рефренсы классов при этом накапливаются, а режим {@link #setAutoResetClassReferences(boolean) автоочистки}
+     * не действует: где кончается одна порция данных и начинается другая, знает только вызывающий.
      *
-     * @param entity восстанавливаемый объект.
-     * @throws DecodeException
+     * @param source источник
+     * @return объект или нул, если источник исчерпан
+     * @throws DecodeException декодирование не удалось, в том числе если данные оборвались посреди объекта
      */
-    private void loadFields(Serializable entity) throws DecodeException {
-        Field[] declaredFields = entity.getClass().getDeclaredFields();
-        NumberReader indexReader = declaredFields.length > 255 ?
-                NumberReader.SHORT_NUMBER_READER :
-                NumberReader.BYTE_NUMBER_READER;
+    public Serializable decodeNext(BinaryInput source) throws DecodeException {
         try {
-            while (true) {
-                int fieldIndex = indexReader.readFrom(encoded, posContainer) - 1;
-                if (fieldIndex < 0) {
-                    return;
-                }
-                Field f = declaredFields[fieldIndex];
-                f.setAccessible(true);
-                @SuppressWarnings("rawtypes") // иначе компиляция не проходит из-за каких-то багов в джава-конпилере
-                      FieldValueCodec codec = FieldValueCodecs.getCodec(f.getType().isEnum() ? (Class) Enum.class : f.getType());
-                //noinspection unchecked
-                f.set(entity, codec.decodeValue(encoded, posContainer, f.getType()));
+            if (!source.hasRemaining()) {
+                return null;
             }
-        } catch (Exception e) {
-            throw new DecodeException("Error reading field values for entity " + entity.getClass(), e);
+            int signature = source.read();
+            EntityPlan plan = EntityPlan.get(retrieveEntityClass(source, signature));
+            Serializable entity = (Serializable) plan.newInstance();
+            plan.decodeFields(source, entity);
+            return entity;
+        } catch (IOException e) {
+            throw new DecodeException("Cannot read encoded data", e);
         }
     }
 
-    private static Serializable createEntity(Class<? extends Serializable> cl) throws DecodeException {
-        Serializable entity;
-        try {
-            entity = cl.getConstructor().newInstance();
-        } catch (Exception e) {
-            throw new DecodeException("Cannot instantinate object " + cl, e);
-        }
+    /**
+     * Возвращает ленивый итератор, декодирующий объекты из источника по одному,
+     * так что в памяти не приходится держать все объекты сразу.
+     * <p/>
+     * Ошибки декодирования итератор выбрасывает как {@link UncheckedDecodeException}.
+     *
+     * @param source источник
+     * @return итератор
+     * @see #decodeNext(BinaryInput)
+     */
+    public Iterator<Serializable> iterator(BinaryInput source) {
+        return new DecodingIterator(() -> decodeNext(source));
+    }
 
-        return entity;
+    /**
+     * Возвращает последовательный стрим объектов, лениво декодируемых из источника.
+     *
+     * @param source источник
+     * @return стрим
+     * @see #iterator(BinaryInput)
+     */
+    public Stream<Serializable> stream(BinaryInput source) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(source), Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Возвращает стрим объектов, лениво декодируемых из сегментов {@link SegmentedEncoder}.
+     * Параллельный стрим декодирует разные сегменты в разных тредах.
+     *
+     * @param segments сегменты от текущей позиции до лимита буфера
+     * @param parallel сделать ли стрим параллельным
+     * @return стрим
+     * @see SegmentSpliterator
+     */
+    public static Stream<Serializable> streamSegments(ByteBuffer segments, boolean parallel) {
+        return StreamSupport.stream(new SegmentSpliterator(segments), parallel);
     }
 
     /**
      * Выясняет соответствующий сигнатуре класс объекта.
      *
+     * @param source источник, из которого при необходимости читается описание класса
      * @param signature
      * @return объект для восстановления
      * @throws DecodeException
      */
-    private Class<? extends Serializable> retrieveEntityClass(int signature) throws DecodeException {
+    private Class<? extends Serializable> retrieveEntityClass(BinaryInput source, int signature) throws DecodeException, IOException {
         int classIndex = signature & 0x7f;
         boolean knownSignature = (signature & 0x80) == 0;
 
@@ -125,7 +164,7 @@ public class StatefulDecoder {
             // восстанавливаем новый класс. Читаем описание и проверяем считанное
             String className;
             try {
-                className = STRING_CODEC.decodeValue(encoded, posContainer, String.class);
+                className = STRING_CODEC.decodeValue(source, String.class);
             } catch (Exception e) {
                 throw new DecodeException("Cannot read class name after signature " + signature, e);
             }
@@ -136,16 +175,12 @@ public class StatefulDecoder {
                 throw new DecodeException("Cannot find class by name " + className, e);
             }
 
-            long expectedUid = LONG_CODEC.decodeValue(encoded, posContainer, Long.class);
-            long actualUid = 0L;
-            try {
-                Field serialVersionUIDField = cl.getDeclaredField("serialVersionUID");
-                serialVersionUIDField.setAccessible(true);
-                actualUid = (Long) serialVersionUIDField.get(null);
-            } catch (NoSuchFieldException ignore) {
-            } catch (Exception e) {
-                throw new DecodeException("Cannot retrieve serialVersionUID value from class " + cl, e);
+            long expectedUid = LONG_CODEC.decodeLong(source);
+            EntityPlan plan = EntityPlan.get(cl);
+            if (plan.serialVersionUIDProblem != null) {
+                throw new DecodeException("Cannot retrieve serialVersionUID value from class " + cl, plan.serialVersionUIDProblem);
             }
+            long actualUid = plan.serialVersionUID;
             if (expectedUid != actualUid) {
                 throw new DecodeException("For Class " + cl + " expected serialVersionUID=" + expectedUid
                         + ", but provided serialVersionUID=" + actualUid);
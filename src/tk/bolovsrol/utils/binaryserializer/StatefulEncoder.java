@@ -1,13 +1,13 @@
 package tk.bolovsrol.utils.binaryserializer;
 
 import tk.bolovsrol.utils.binaryserializer.fieldcodec.FieldValueCodecs;
+import tk.bolovsrol.utils.binaryserializer.fieldcodec.LongFieldValueCodec;
 import tk.bolovsrol.utils.binaryserializer.fieldcodec.StringFieldValueCodec;
 
-import java.io.ByteArrayOutputStream;
+import java.io.Flushable;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -28,6 +28,9 @@ import java.util.Map;
  * - описание данных;<br/>
  * - терминатор класса (один нулевой байт, если в классе меньше 255 полей, или 2 нулевых байта, если больше).
  * <p/>
+ * Рефлекшн используется только однажды на класс: поля, аксессоры и кодировщики собираются
+ * в план, который кешируется на всё время жизни класса.
+ * <p/>
  * Рефренс класса представляет собой комбинацию: установленный старший бит означает, что за рефренсом следует описание класса.
  * Остальные биты являются индексом описания, который увеличивается с 0.
  * <p/>
@@ -47,17 +50,17 @@ import java.util.Map;
  * - номер поля, на 1 больше номера поля в рефлекшне (один байт, если в классе меньше 255 полей, или 2 байта, если больше);<br/>
  * - данные поля (длина зависит от типа поля).
  */
-public class StatefulEncoder {
+public class StatefulEncoder implements Flushable {
 
     // кодировщики для записи данных
     private static final FieldValueCodec<String> STRING_CODEC = FieldValueCodecs.getCodec(String.class);
-    private static final FieldValueCodec<Long> LONG_CODEC = FieldValueCodecs.getCodec(Long.class);
+    private static final LongFieldValueCodec LONG_CODEC = new LongFieldValueCodec();
 
-    // модификаторы полей, которые нам не нужны
-    private static final int FORBIDDEN_MODIFIERS = Modifier.FINAL | Modifier.STATIC | Modifier.TRANSIENT;
+    /** Собственный буфер для записи или нул, если кодировщик пишет в чужой приёмник. */
+    private final ByteBufferOutput buffer;
 
-    /** Буфер для записи. */
-    private final ByteArrayOutputStream b = new ByteArrayOutputStream(8192);
+    /** Куда пишем. */
+    private final BinaryOutput b;
 
     /** Список рефренсов классов. */
     private final LinkedHashMap<Class<?>, Integer> classReferences = new LinkedHashMap<>();
@@ -66,13 +69,41 @@ public class StatefulEncoder {
     private boolean autoResetClassReferences = false;
 
     public StatefulEncoder() {
+        this.buffer = new ByteBufferOutput(8192);
+        this.b = buffer;
     }
 
     /** @param autoResetClassReferences режим автоматической очистки кеша рефренсов после каждого кодирования */
     public StatefulEncoder(boolean autoResetClassReferences) {
+        this();
         this.autoResetClassReferences = autoResetClassReferences;
     }
 
+    /**
+     * Создаёт кодировщик, который пишет прямо в указанный приёмник, например, в {@link StreamBinaryOutput}
+     * поверх сокета или в {@link ByteBufferOutput} поверх отображённого в память файла.
+     * <p/>
+     * Метод {@link #getEncodedAndReset()} у такого кодировщика не работает, а рефренсы классов
+     * живут, пока их не сбросят явно методом {@link #resetClassReferences()}.
+     *
+     * @param target приёмник
+     */
+    public StatefulEncoder(BinaryOutput target) {
+        this.buffer = null;
+        this.b = target;
+    }
+
+    /**
+     * Создаёт кодировщик, который пишет объекты в поток по мере добавления через буфер
+     * {@link StreamBinaryOutput}, а не копит их в памяти. Не забывайте вызывать {@link #flush()}.
+     *
+     * @param target поток
+     * @see #StatefulEncoder(BinaryOutput)
+     */
+    public StatefulEncoder(OutputStream target) {
+        this(new StreamBinaryOutput(target));
+    }
+
     /** Очищает кэш рефренсов. */
     public void resetClassReferences() {
         classReferences.clear();
@@ -85,59 +116,30 @@ public class StatefulEncoder {
      * @throws EncodeException
      */
     public void append(Serializable entity) throws EncodeException {
-        writeClassIndex(entity);
-        writeClassData(entity);
-    }
-
-    private void writeClassData(Serializable entity) throws EncodeException {
-        Field[] declaredFields = entity.getClass().getDeclaredFields();
-        int declaredFieldsLength = declaredFields.length;
-        NumberWriter indexWriter = declaredFieldsLength > 255 ?
-                NumberWriter.SHORT_NUMBER_WRITER :
-                NumberWriter.BYTE_NUMBER_WRITER;
         try {
-            for (int i = 0; i < declaredFieldsLength; i++) {
-                Field field = declaredFields[i];
-                if ((field.getModifiers() & FORBIDDEN_MODIFIERS) != 0) {
-                    continue;
-                }
-                field.setAccessible(true);
-                Object value;
-                try {
-                    value = field.get(entity);
-                } catch (IllegalAccessException e) {
-                    throw new EncodeException("Cannot read field " + field + " value", e);
-                }
-                if (value != null) {
-                    indexWriter.writeTo(b, i + 1);
-                    @SuppressWarnings("rawtypes") FieldValueCodec fvc = FieldValueCodecs.getCodec(field.getType().isEnum() ? (Class) Enum.class : field.getType());
-                    if (fvc == null) {
-                        throw new IllegalArgumentException("Don't know how to encode class " + field.getType() + " (field " + field + ')');
-                    }
-                    //noinspection unchecked
-                    fvc.encodeValue(b, value);
-                }
-            }
-            indexWriter.writeTo(b, 0);
-        } catch (IOException wontHappen) {
-            // won't happen
+            writeClassIndex(entity);
+            EntityPlan.get(entity.getClass()).encodeFields(b, entity);
+        } catch (IOException e) {
+            throw new EncodeException("Cannot write entity " + entity.getClass(), e);
         }
     }
 
-    private void writeClassIndex(Serializable entity) throws EncodeException {
+    private void writeClassIndex(Serializable entity) throws EncodeException, IOException {
         Integer classIndex = classReferences.get(entity.getClass());
         if (classIndex != null) {
             // Объект известного класса. Запишем его сущность.
             b.write(classIndex & 0x7f);
         } else {
             // Объект нового класса. Проверим его и запишем в словарик.
-            if (entity.getClass().getSuperclass() != Object.class) {
+            EntityPlan plan = EntityPlan.get(entity.getClass());
+            if (!plan.primarySubclass) {
                 throw new EncodeException("Object for serialization should be primary Object subclass");
             }
-            try {
-                entity.getClass().getConstructor();
-            } catch (NoSuchMethodException e) {
-                throw new EncodeException("Object for serialization should have public no-argument constructor", e);
+            if (plan.constructorProblem != null) {
+                throw new EncodeException("Object for serialization should have public no-argument constructor", plan.constructorProblem);
+            }
+            if (plan.serialVersionUIDProblem != null) {
+                throw new EncodeException("Cannot retrieve serialVersionUID value from class " + entity.getClass(), plan.serialVersionUIDProblem);
             }
 
             // выясним его индекс и запомним его.
@@ -151,25 +153,20 @@ public class StatefulEncoder {
             classReferences.put(entity.getClass(), classIndex);
 
             // записываем описание класса
-            try {
-
-                long uid = 0L;
-                try {
-                    Field serialVersionUIDField = entity.getClass().getDeclaredField("serialVersionUID");
-                    serialVersionUIDField.setAccessible(true);
-                    uid = (Long) serialVersionUIDField.get(null);
-                } catch (NoSuchFieldException ignore) {
-                } catch (Exception e) {
-                    throw new EncodeException("Cannot retrieve serialVersionUID value from class " + entity.getClass(), e);
-                }
-
-                b.write(classIndex.intValue() | 0x80);
-                STRING_CODEC.encodeValue(b, entity.getClass().getName());
-                LONG_CODEC.encodeValue(b, uid);
-
-            } catch (IOException wontHappen) {
-                // won't happen
-            }
+            b.write(classIndex.intValue() | 0x80);
+            STRING_CODEC.encodeValue(b, entity.getClass().getName());
+            LONG_CODEC.encodeLong(b, plan.serialVersionUID);
+        }
+    }
+
+    /**
+     * Проталкивает записанное в приёмник, если приёмник это умеет.
+     *
+     * @throws IOException
+     */
+    @Override public void flush() throws IOException {
+        if (b instanceof Flushable) {
+            ((Flushable) b).flush();
         }
     }
 
@@ -179,8 +176,11 @@ public class StatefulEncoder {
      * @return закодированный массив
      */
     public byte[] getEncodedAndReset() {
-        byte[] result = b.toByteArray();
-        b.reset();
+        if (buffer == null) {
+            throw new IllegalStateException("Encoder writes to external target");
+        }
+        byte[] result = buffer.toByteArray();
+        buffer.reset();
         if (autoResetClassReferences) {
             classReferences.clear();
         }
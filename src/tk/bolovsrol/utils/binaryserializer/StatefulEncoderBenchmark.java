@@ -0,0 +1,118 @@
+package tk.bolovsrol.utils.binaryserializer;
+
+import tk.bolovsrol.utils.benchmark.Comparer;
+import tk.bolovsrol.utils.benchmark.Repeater;
+import tk.bolovsrol.utils.binaryserializer.fieldcodec.FieldValueCodecs;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.List;
+
+/**
+ * Сравнивает кодирование полей через {@link EntityPlan} с прежним рефлекшн-кодированием
+ * (getDeclaredFields, setAccessible, поиск кодировщика и Field.get на каждое поле каждого объекта),
+ * а также замеряет полный цикл кодирования и декодирования.
+ * <p>
+ * Запуск: <code>java tk.bolovsrol.utils.binaryserializer.StatefulEncoderBenchmark [количество объектов] [итерации]</code>
+ */
+public class StatefulEncoderBenchmark {
+
+    public static class Sample implements Serializable {
+        private static final long serialVersionUID = 1L;
+        long id;
+        int count;
+        boolean active;
+        String name;
+        Long parentId;
+
+        public Sample() {
+        }
+    }
+
+    private static final int FORBIDDEN_MODIFIERS = Modifier.FINAL | Modifier.STATIC | Modifier.TRANSIENT;
+
+    /** Так поля кодировались до появления планов. */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static void encodeReflectively(ByteBufferOutput b, Object entity) throws Exception {
+        Field[] declaredFields = entity.getClass().getDeclaredFields();
+        for (int i = 0; i < declaredFields.length; i++) {
+            Field field = declaredFields[i];
+            if ((field.getModifiers() & FORBIDDEN_MODIFIERS) != 0) {
+                continue;
+            }
+            field.setAccessible(true);
+            Object value = field.get(entity);
+            if (value != null) {
+                b.write(i + 1);
+                FieldValueCodec fvc = FieldValueCodecs.getCodec(field.getType().isEnum() ? (Class) Enum.class : field.getType());
+                fvc.encodeValue(b, value);
+            }
+        }
+        b.write(0);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        Sample[] samples = new Sample[count];
+        for (int i = 0; i < count; i++) {
+            Sample sample = new Sample();
+            sample.id = i * 7919L;
+            sample.count = i & 0xffff;
+            sample.active = (i & 1) == 0;
+            sample.name = (i & 3) == 0 ? null : "sample" + (i & 0xff);
+            sample.parentId = (i & 7) == 0 ? Long.valueOf(i >> 3) : null;
+            samples[i] = sample;
+        }
+
+        ByteBufferOutput b = new ByteBufferOutput(count * 16);
+        long[] sink = new long[2];
+        Comparer fields = new Comparer(
+                new Repeater() {
+                    @Override public void iteration() {
+                        b.reset();
+                        try {
+                            for (Sample sample : samples) {
+                                encodeReflectively(b, sample);
+                            }
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                        sink[0] += b.size();
+                    }
+                },
+                new Repeater() {
+                    @Override public void iteration() {
+                        b.reset();
+                        EntityPlan plan = EntityPlan.get(Sample.class);
+                        try {
+                            for (Sample sample : samples) {
+                                plan.encodeFields(b, sample);
+                            }
+                        } catch (IOException | EncodeException e) {
+                            throw new RuntimeException(e);
+                        }
+                        sink[1] += b.size();
+                    }
+                });
+        fields.run(1, iterations);
+        System.out.println("fields: " + fields.getAverageReport());
+        System.out.println("sizes:  " + (sink[0] == sink[1] ? "match" : "MISMATCH"));
+
+        StatefulEncoder encoder = new StatefulEncoder();
+        StatefulDecoder decoder = new StatefulDecoder();
+        long start = System.nanoTime();
+        for (Sample sample : samples) {
+            encoder.append(sample);
+        }
+        byte[] encoded = encoder.getEncodedAndReset();
+        long encodedAt = System.nanoTime();
+        List<Serializable> decoded = decoder.decode(encoded);
+        long decodedAt = System.nanoTime();
+        System.out.println("encode: " + (encodedAt - start) / 1_000_000L + " ms, " + encoded.length + " bytes");
+        System.out.println("decode: " + (decodedAt - encodedAt) / 1_000_000L + " ms, " + decoded.size() + " entities");
+    }
+}
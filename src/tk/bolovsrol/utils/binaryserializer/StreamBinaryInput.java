@@ -0,0 +1,145 @@
+package tk.bolovsrol.utils.binaryserializer;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Читает из потока или канала через собственный буфер, подчитывая данные по мере надобности,
+ * так что декодировать можно, не имея на руках всех данных сразу.
+ * <p/>
+ * Канал должен быть блокирующим.
+ */
+public class StreamBinaryInput implements BinaryInput, Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final InputStream stream;
+    private final ReadableByteChannel channel;
+    /** Буфер в режиме чтения: между позицией и лимитом лежат непрочитанные данные. */
+    private final ByteBuffer buffer;
+    private boolean eof = false;
+
+    public StreamBinaryInput(InputStream source) {
+        this(source, DEFAULT_BUFFER_SIZE);
+    }
+
+    public StreamBinaryInput(InputStream source, int bufferSize) {
+        this.stream = source;
+        this.channel = null;
+        this.buffer = ByteBuffer.allocate(Math.max(bufferSize, 8));
+        this.buffer.limit(0);
+    }
+
+    public StreamBinaryInput(ReadableByteChannel source) {
+        this(source, DEFAULT_BUFFER_SIZE);
+    }
+
+    public StreamBinaryInput(ReadableByteChannel source, int bufferSize) {
+        this.stream = null;
+        this.channel = source;
+        this.buffer = ByteBuffer.allocateDirect(Math.max(bufferSize, 8));
+        this.buffer.limit(0);
+    }
+
+    /**
+     * Подчитывает данные, пока в буфере не наберётся хотя бы count байтов или не кончится источник.
+     *
+     * @param count сколько нужно, не больше ёмкости буфера
+     * @return true, если набралось
+     * @throws IOException
+     */
+    private boolean fill(int count) throws IOException {
+        if (buffer.remaining() >= count) {
+            return true;
+        }
+        if (eof) {
+            return false;
+        }
+        buffer.compact();
+        try {
+            while (buffer.position() < count) {
+                int read;
+                if (stream != null) {
+                    read = stream.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                    if (read > 0) {
+                        buffer.position(buffer.position() + read);
+                    }
+                } else {
+                    read = channel.read(buffer);
+                }
+                if (read < 0) {
+                    eof = true;
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            buffer.flip();
+        }
+    }
+
+    private void require(int count) throws IOException {
+        if (!fill(count)) {
+            throw new EOFException("Need " + count + " bytes, only " + buffer.remaining() + " remaining before end of stream");
+        }
+    }
+
+    @Override public boolean hasRemaining() throws IOException {
+        return fill(1);
+    }
+
+    @Override public byte read() throws IOException {
+        require(1);
+        return buffer.get();
+    }
+
+    @Override public void readFully(byte[] dst, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!buffer.hasRemaining()) {
+                require(1);
+            }
+            int chunk = Math.min(len, buffer.remaining());
+            buffer.get(dst, off, chunk);
+            off += chunk;
+            len -= chunk;
+        }
+    }
+
+    @Override public long readBigEndian(int byteCount) throws IOException {
+        require(byteCount);
+        if (byteCount == 8) {
+            return buffer.getLong();
+        }
+        long result = 0L;
+        for (int i = 0; i < byteCount; i++) {
+            result = (result << 8) | (buffer.get() & 0xffL);
+        }
+        return result;
+    }
+
+    @Override public String readString(int len, Charset charset) throws IOException {
+        if (len <= buffer.capacity()) {
+            require(len);
+            if (buffer.hasArray()) {
+                int pos = buffer.position();
+                String result = new String(buffer.array(), buffer.arrayOffset() + pos, len, charset);
+                buffer.position(pos + len);
+                return result;
+            }
+        }
+        return BinaryInput.super.readString(len, charset);
+    }
+
+    @Override public void close() throws IOException {
+        if (stream != null) {
+            stream.close();
+        } else {
+            channel.close();
+        }
+    }
+}
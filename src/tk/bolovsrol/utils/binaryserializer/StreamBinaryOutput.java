@@ -0,0 +1,120 @@
+package tk.bolovsrol.utils.binaryserializer;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Пишет в поток или в канал через собственный буфер, который сливается целиком,
+ * когда заполнится, и по {@link #flush()}.
+ * <p/>
+ * Не забывайте вызывать {@link #flush()} или {@link #close()}, иначе хвост останется в буфере.
+ */
+public class StreamBinaryOutput implements BinaryOutput, Flushable, Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final OutputStream stream;
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+
+    public StreamBinaryOutput(OutputStream target) {
+        this(target, DEFAULT_BUFFER_SIZE);
+    }
+
+    public StreamBinaryOutput(OutputStream target, int bufferSize) {
+        this.stream = target;
+        this.channel = null;
+        this.buffer = ByteBuffer.allocate(Math.max(bufferSize, 8));
+    }
+
+    public StreamBinaryOutput(WritableByteChannel target) {
+        this(target, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Канал должен быть блокирующим.
+     *
+     * @param target канал
+     * @param bufferSize размер буфера
+     */
+    public StreamBinaryOutput(WritableByteChannel target, int bufferSize) {
+        this.stream = null;
+        this.channel = target;
+        this.buffer = ByteBuffer.allocateDirect(Math.max(bufferSize, 8));
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        if (stream != null) {
+            stream.write(buffer.array(), buffer.arrayOffset(), buffer.limit());
+        } else {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        buffer.clear();
+    }
+
+    @Override public void write(int b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            drain();
+        }
+        buffer.put((byte) b);
+    }
+
+    @Override public void write(byte[] src, int off, int len) throws IOException {
+        if (buffer.remaining() >= len) {
+            buffer.put(src, off, len);
+            return;
+        }
+        drain();
+        if (len <= buffer.capacity()) {
+            buffer.put(src, off, len);
+        } else if (stream != null) {
+            stream.write(src, off, len);
+        } else {
+            ByteBuffer wrapped = ByteBuffer.wrap(src, off, len);
+            while (wrapped.hasRemaining()) {
+                channel.write(wrapped);
+            }
+        }
+    }
+
+    @Override public void writeBigEndian(long value, int byteCount) throws IOException {
+        if (buffer.remaining() < byteCount) {
+            drain();
+        }
+        if (byteCount == 8) {
+            buffer.putLong(value);
+        } else {
+            for (int shift = (byteCount - 1) << 3; shift >= 0; shift -= 8) {
+                buffer.put((byte) (value >> shift));
+            }
+        }
+    }
+
+    /** Сливает буфер и сбрасывает поток. */
+    @Override public void flush() throws IOException {
+        drain();
+        if (stream != null) {
+            stream.flush();
+        }
+    }
+
+    /** Сливает буфер и закрывает поток или канал. */
+    @Override public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            if (stream != null) {
+                stream.close();
+            } else {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package tk.bolovsrol.utils.binaryserializer;
+
+/**
+ * Обёртка для {@link DecodeException} там, где проверяемые исключения не пролезают:
+ * в итераторах, сплитераторах и стримах.
+ */
+public class UncheckedDecodeException extends RuntimeException {
+    private static final long serialVersionUID = -377616111051624816L;
+
+    public UncheckedDecodeException(DecodeException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override public synchronized DecodeException getCause() {
+        return (DecodeException) super.getCause();
+    }
+}
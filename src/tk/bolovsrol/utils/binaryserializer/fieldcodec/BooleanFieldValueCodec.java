@@ -1,23 +1,27 @@
 package tk.bolovsrol.utils.binaryserializer.fieldcodec;
 
-import tk.bolovsrol.utils.binaryserializer.FieldValueCodec;
-import tk.bolovsrol.utils.binaryserializer.PosContainer;
+import tk.bolovsrol.utils.binaryserializer.AbstractBinaryFieldValueCodec;
+import tk.bolovsrol.utils.binaryserializer.BinaryInput;
+import tk.bolovsrol.utils.binaryserializer.BinaryOutput;
 
 import java.io.IOException;
-import java.io.OutputStream;
 
-public class BooleanFieldValueCodec implements FieldValueCodec<Boolean> {
-    @Override public void encodeValue(OutputStream target, Boolean value) throws IOException {
-        if (value.booleanValue()) {
-            target.write(0xff);
-        } else {
-            target.write(0);
-        }
+public class BooleanFieldValueCodec extends AbstractBinaryFieldValueCodec<Boolean> {
+    @Override public void encodeValue(BinaryOutput target, Boolean value) throws IOException {
+        encodeBoolean(target, value.booleanValue());
     }
 
-    @Override public Boolean decodeValue(byte[] source, PosContainer posContainer, Class<? extends Boolean> notUsed) {
-        Boolean result = source[posContainer.getPos()] == 0 ? Boolean.FALSE : Boolean.TRUE;
-        posContainer.incPos();
-        return result;
+    /** То же, что {@link #encodeValue(BinaryOutput, Boolean)}, только без боксинга. */
+    public void encodeBoolean(BinaryOutput target, boolean value) throws IOException {
+        target.write(value ? 0xff : 0);
+    }
+
+    @Override public Boolean decodeValue(BinaryInput source, Class<? extends Boolean> notUsed) throws IOException {
+        return decodeBoolean(source) ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    /** То же, что {@link #decodeValue(BinaryInput, Class)}, только без боксинга. */
+    public boolean decodeBoolean(BinaryInput source) throws IOException {
+        return source.read() != 0;
     }
 }
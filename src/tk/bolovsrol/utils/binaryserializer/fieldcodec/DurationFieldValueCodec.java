@@ -1,21 +1,21 @@
 package tk.bolovsrol.utils.binaryserializer.fieldcodec;
 
-import tk.bolovsrol.utils.binaryserializer.FieldValueCodec;
-import tk.bolovsrol.utils.binaryserializer.PosContainer;
+import tk.bolovsrol.utils.binaryserializer.AbstractBinaryFieldValueCodec;
+import tk.bolovsrol.utils.binaryserializer.BinaryInput;
+import tk.bolovsrol.utils.binaryserializer.BinaryOutput;
 import tk.bolovsrol.utils.time.Duration;
 
 import java.io.IOException;
-import java.io.OutputStream;
 
-public class DurationFieldValueCodec implements FieldValueCodec<Duration> {
+public class DurationFieldValueCodec extends AbstractBinaryFieldValueCodec<Duration> {
 
     private static final LongFieldValueCodec LONG_CODEC = new LongFieldValueCodec();
 
-    @Override public void encodeValue(OutputStream target, Duration value) throws IOException {
-        LONG_CODEC.encodeValue(target, value.getMillis());
+    @Override public void encodeValue(BinaryOutput target, Duration value) throws IOException {
+        LONG_CODEC.encodeLong(target, value.getMillis());
     }
 
-    @Override public Duration decodeValue(byte[] source, PosContainer posContainer, Class<? extends Duration> notUsed) {
-        return new Duration(LONG_CODEC.decodeValue(source, posContainer, Long.class));
+    @Override public Duration decodeValue(BinaryInput source, Class<? extends Duration> notUsed) throws IOException {
+        return new Duration(LONG_CODEC.decodeLong(source));
     }
 }
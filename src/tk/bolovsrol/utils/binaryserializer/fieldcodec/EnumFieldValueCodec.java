@@ -1,30 +1,30 @@
 package tk.bolovsrol.utils.binaryserializer.fieldcodec;
 
-import tk.bolovsrol.utils.binaryserializer.FieldValueCodec;
-import tk.bolovsrol.utils.binaryserializer.NumberReader;
-import tk.bolovsrol.utils.binaryserializer.NumberWriter;
-import tk.bolovsrol.utils.binaryserializer.PosContainer;
+import tk.bolovsrol.utils.binaryserializer.AbstractBinaryFieldValueCodec;
+import tk.bolovsrol.utils.binaryserializer.BinaryInput;
+import tk.bolovsrol.utils.binaryserializer.BinaryOutput;
 
 import java.io.IOException;
-import java.io.OutputStream;
 
 /**
  * Сохраняет {@link Enum#ordinal()} енума в одном байте, если в классе не более 256 енумов,
  * и в двух байтах, если больше.
  */
-public class EnumFieldValueCodec implements FieldValueCodec<Enum<?>> {
+public class EnumFieldValueCodec extends AbstractBinaryFieldValueCodec<Enum<?>> {
     @Override
-    public void encodeValue(OutputStream target, Enum<?> value) throws IOException {
-        (value.getClass().getEnumConstants().length > 256 ?
-                NumberWriter.SHORT_NUMBER_WRITER :
-                NumberWriter.BYTE_NUMBER_WRITER).writeTo(target, value.ordinal());
+    public void encodeValue(BinaryOutput target, Enum<?> value) throws IOException {
+        if (value.getDeclaringClass().getEnumConstants().length > 256) {
+            target.writeBigEndian(value.ordinal(), 2);
+        } else {
+            target.write(value.ordinal());
+        }
     }
 
     @Override
-    public Enum<?> decodeValue(byte[] source, PosContainer posContainer, Class<? extends Enum<?>> type) {
+    public Enum<?> decodeValue(BinaryInput source, Class<? extends Enum<?>> type) throws IOException {
         Enum<?>[] enumConstants = type.getEnumConstants();
-        return enumConstants[(enumConstants.length > 256 ?
-                NumberReader.SHORT_NUMBER_READER :
-                NumberReader.BYTE_NUMBER_READER).readFrom(source, posContainer)];
+        return enumConstants[enumConstants.length > 256 ?
+                (int) source.readBigEndian(2) :
+                source.read() & 0xff];
     }
 }
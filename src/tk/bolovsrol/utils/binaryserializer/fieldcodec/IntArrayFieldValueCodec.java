@@ -1,27 +1,27 @@
 package tk.bolovsrol.utils.binaryserializer.fieldcodec;
 
-import tk.bolovsrol.utils.binaryserializer.FieldValueCodec;
-import tk.bolovsrol.utils.binaryserializer.PosContainer;
+import tk.bolovsrol.utils.binaryserializer.AbstractBinaryFieldValueCodec;
+import tk.bolovsrol.utils.binaryserializer.BinaryInput;
+import tk.bolovsrol.utils.binaryserializer.BinaryOutput;
 
 import java.io.IOException;
-import java.io.OutputStream;
 
-public class IntArrayFieldValueCodec implements FieldValueCodec<int[]> {
+public class IntArrayFieldValueCodec extends AbstractBinaryFieldValueCodec<int[]> {
 
     private static final IntegerFieldValueCodec INT_CODEC = new IntegerFieldValueCodec();
 
-    @Override public void encodeValue(OutputStream target, int[] value) throws IOException {
-        INT_CODEC.encodeValue(target, value.length);
+    @Override public void encodeValue(BinaryOutput target, int[] value) throws IOException {
+        INT_CODEC.encodeInt(target, value.length);
         for (int integer : value) {
-            INT_CODEC.encodeValue(target, integer);
+            INT_CODEC.encodeInt(target, integer);
         }
     }
 
-    @Override public int[] decodeValue(byte[] source, PosContainer posContainer, Class<? extends int[]> type) {
-        int arrayLen = INT_CODEC.decodeValue(source, posContainer, Integer.class);
+    @Override public int[] decodeValue(BinaryInput source, Class<? extends int[]> type) throws IOException {
+        int arrayLen = INT_CODEC.decodeInt(source);
         int[] result = new int[arrayLen];
         for (int i = 0; i < arrayLen; i++) {
-            result[i] = INT_CODEC.decodeValue(source, posContainer, Integer.class);
+            result[i] = INT_CODEC.decodeInt(source);
         }
         return result;
     }
@@ -1,10 +1,10 @@
 package tk.bolovsrol.utils.binaryserializer.fieldcodec;
 
-import tk.bolovsrol.utils.binaryserializer.FieldValueCodec;
-import tk.bolovsrol.utils.binaryserializer.PosContainer;
+import tk.bolovsrol.utils.binaryserializer.AbstractBinaryFieldValueCodec;
+import tk.bolovsrol.utils.binaryserializer.BinaryInput;
+import tk.bolovsrol.utils.binaryserializer.BinaryOutput;
 
 import java.io.IOException;
-import java.io.OutputStream;
 
 /**
  * Два старших бита (7 и 6) означают расположение значащих битов (big-endian):<br/>
@@ -12,70 +12,47 @@ import java.io.OutputStream;
  * 0x40 — в битах 5..0 этого байта и в следующем байте,<br/>
  * 0x80 — в битах 5..0 этого байта и в двух следующих байтах,<br/>
  * 0xc0 — если хотя бы один бит 5..0 этого байта установлен, то в них и в трёх следующих байтах, иначе в четырёх следующих байтах.
+ * <p/>
+ * Заголовок и значащие байты пишутся одним вызовом {@link BinaryOutput#writeBigEndian(long, int)}.
  */
-public class IntegerFieldValueCodec implements FieldValueCodec<Integer> {
+public class IntegerFieldValueCodec extends AbstractBinaryFieldValueCodec<Integer> {
 
-    @Override public void encodeValue(OutputStream target, Integer value) throws IOException {
-        int val = value.intValue();
+    @Override public void encodeValue(BinaryOutput target, Integer value) throws IOException {
+        encodeInt(target, value.intValue());
+    }
+
+    /** То же, что {@link #encodeValue(BinaryOutput, Integer)}, только без боксинга. */
+    public void encodeInt(BinaryOutput target, int val) throws IOException {
         int lzc = Integer.numberOfLeadingZeros(val);
         if (lzc >= 26) {
             target.write(val);
-        } else if (lzc >= 18) {
-            target.write((val >> 8) | 0x40);
-            target.write(val);
-        } else if (lzc >= 10) {
-            target.write((val >> 16) | 0x80);
-            target.write(val >> 8);
-            target.write(val);
-        } else if (lzc >= 2) {
-            target.write((val >> 24) | 0xc0);
-            target.write(val >> 16);
-            target.write(val >> 8);
-            target.write(val);
+        } else if (lzc >= 10 || lzc <= 7 && lzc >= 2) {
+            // количество байтов после заголовка, 1..3;
+            // при 8..9 ведущих нулях биты 5..0 заголовка оказались бы нулевыми, а это другой формат
+            int tail = (33 - lzc) >> 3;
+            target.writeBigEndian((val & 0xffffffffL) | ((long) (tail << 6) << (tail << 3)), tail + 1);
         } else {
             target.write(0xc0);
-            target.write(val >> 24);
-            target.write(val >> 16);
-            target.write(val >> 8);
-            target.write(val);
+            target.writeBigEndian(val, 4);
         }
     }
 
-    @Override public Integer decodeValue(byte[] source, PosContainer posContainer, Class<? extends Integer> type) {
-        int ref = source[posContainer.getPosAndInc()];
-        int val;
-        switch (ref & 0xC0) {
-        case 0x00:
-            val = ref & 0x3f;
-            break;
-        case 0x40:
-            val = ((ref & 0x3f) << 8)
-                    | (source[posContainer.getPosAndInc()] & 0xff);
-            break;
-        case 0x80:
-            val = ((ref & 0x3f) << 16)
-                    | ((source[posContainer.getPosAndInc()] & 0xff) << 8)
-                    | (source[posContainer.getPosAndInc()] & 0xff);
-            break;
-        case 0xC0:
-            int highVal = ref & 0x3f;
-            if (highVal != 0) {
-                val = (highVal << 24)
-                        | ((source[posContainer.getPosAndInc()] & 0xff) << 16)
-                        | ((source[posContainer.getPosAndInc()] & 0xff) << 8)
-                        | (source[posContainer.getPosAndInc()] & 0xff);
-            } else {
-                val = (source[posContainer.getPosAndInc()] << 24)
-                        | ((source[posContainer.getPosAndInc()] & 0xff) << 16)
-                        | ((source[posContainer.getPosAndInc()] & 0xff) << 8)
-                        | (source[posContainer.getPosAndInc()] & 0xff);
-            }
-            break;
-        default:
-            throw new RuntimeException("OMG! This won't happen!");
-        }
-
-        return Integer.valueOf(val);
+    @Override public Integer decodeValue(BinaryInput source, Class<? extends Integer> type) throws IOException {
+        return Integer.valueOf(decodeInt(source));
     }
 
+    /** То же, что {@link #decodeValue(BinaryInput, Class)}, только без боксинга. */
+    public int decodeInt(BinaryInput source) throws IOException {
+        int ref = source.read();
+        int tail = (ref & 0xc0) >>> 6;
+        if (tail < 3) {
+            return ((ref & 0x3f) << (tail << 3)) | (int) source.readBigEndian(tail);
+        }
+        int highVal = ref & 0x3f;
+        if (highVal != 0) {
+            return (highVal << 24) | (int) source.readBigEndian(3);
+        } else {
+            return (int) source.readBigEndian(4);
+        }
+    }
 }
@@ -1,10 +1,10 @@
 package tk.bolovsrol.utils.binaryserializer.fieldcodec;
 
-import tk.bolovsrol.utils.binaryserializer.FieldValueCodec;
-import tk.bolovsrol.utils.binaryserializer.PosContainer;
+import tk.bolovsrol.utils.binaryserializer.AbstractBinaryFieldValueCodec;
+import tk.bolovsrol.utils.binaryserializer.BinaryInput;
+import tk.bolovsrol.utils.binaryserializer.BinaryOutput;
 
 import java.io.IOException;
-import java.io.OutputStream;
 
 /**
  * Три старших бита (7..5) означают расположение значащих битов (big-endian):<br/>
@@ -14,140 +14,47 @@ import java.io.OutputStream;
  * ...<br/>
  * 0xc0 — в битах 4..0 этого байта и в шести следующих байтах,<br/>
  * 0xe0 — если хотя бы один бит 4..0 этого байта установлен, то в них и семи следующих байтах, иначе в восьми следующих байтах.
+ * <p/>
+ * Заголовок и значащие байты пишутся одним вызовом {@link BinaryOutput#writeBigEndian(long, int)}.
  */
-public class LongFieldValueCodec implements FieldValueCodec<Long> {
+public class LongFieldValueCodec extends AbstractBinaryFieldValueCodec<Long> {
 
-    @Override public void encodeValue(OutputStream target, Long value) throws IOException {
-        long val = value.longValue();
+    @Override public void encodeValue(BinaryOutput target, Long value) throws IOException {
+        encodeLong(target, value.longValue());
+    }
+
+    /** То же, что {@link #encodeValue(BinaryOutput, Long)}, только без боксинга. */
+    public void encodeLong(BinaryOutput target, long val) throws IOException {
         int lzc = Long.numberOfLeadingZeros(val);
         if (lzc >= 59) {
             target.write((int) val);
-        } else if (lzc >= 51) {
-            target.write((int) (val >> 8) | 0x20);
-            target.write((int) val);
-        } else if (lzc >= 43) {
-            target.write((int) (val >> 16) | 0x40);
-            target.write((int) (val >> 8));
-            target.write((int) val);
-        } else if (lzc >= 35) {
-            target.write((int) (val >> 24) | 0x60);
-            target.write((int) (val >> 16));
-            target.write((int) (val >> 8));
-            target.write((int) val);
-        } else if (lzc >= 27) {
-            target.write((int) (val >> 32) | 0x80);
-            target.write((int) (val >> 24));
-            target.write((int) (val >> 16));
-            target.write((int) (val >> 8));
-            target.write((int) val);
-        } else if (lzc >= 19) {
-            target.write((int) (val >> 40) | 0xa0);
-            target.write((int) (val >> 32));
-            target.write((int) (val >> 24));
-            target.write((int) (val >> 16));
-            target.write((int) (val >> 8));
-            target.write((int) val);
-        } else if (lzc >= 11) {
-            target.write((int) (val >> 48) | 0xc0);
-            target.write((int) (val >> 40));
-            target.write((int) (val >> 32));
-            target.write((int) (val >> 24));
-            target.write((int) (val >> 16));
-            target.write((int) (val >> 8));
-            target.write((int) val);
-        } else if (lzc >= 3) {
-            target.write((int) (val >> 56) | 0xe0);
-            target.write((int) (val >> 48));
-            target.write((int) (val >> 40));
-            target.write((int) (val >> 32));
-            target.write((int) (val >> 24));
-            target.write((int) (val >> 16));
-            target.write((int) (val >> 8));
-            target.write((int) val);
+        } else if (lzc >= 11 || lzc <= 7 && lzc >= 3) {
+            // количество байтов после заголовка, 1..7;
+            // при 8..10 ведущих нулях биты 4..0 заголовка оказались бы нулевыми, а это другой формат
+            int tail = (66 - lzc) >> 3;
+            target.writeBigEndian(val | ((long) (tail << 5) << (tail << 3)), tail + 1);
         } else {
             target.write(0xe0);
-            target.write((int) (val >> 56));
-            target.write((int) (val >> 48));
-            target.write((int) (val >> 40));
-            target.write((int) (val >> 32));
-            target.write((int) (val >> 24));
-            target.write((int) (val >> 16));
-            target.write((int) (val >> 8));
-            target.write((int) val);
+            target.writeBigEndian(val, 8);
         }
     }
 
-    @Override public Long decodeValue(byte[] source, PosContainer posContainer, Class<? extends Long> type) {
-        int ref = source[posContainer.getPosAndInc()];
-        long val;
-        switch (ref & 0xe0) {
-        case 0x00:
-            val = ref & 0x1fL;
-            break;
-        case 0x20:
-            val = ((ref & 0x1fL) << 8)
-                    | (source[posContainer.getPosAndInc()] & 0xffL);
-            break;
-        case 0x40:
-            val = ((ref & 0x1fL) << 16)
-                    | ((source[posContainer.getPosAndInc()] & 0xffL) << 8)
-                    | (source[posContainer.getPosAndInc()] & 0xffL);
-            break;
-        case 0x60:
-            val = ((ref & 0x1fL) << 24)
-                    | ((source[posContainer.getPosAndInc()] & 0xffL) << 16)
-                    | ((source[posContainer.getPosAndInc()] & 0xffL) << 8)
-                    | (source[posContainer.getPosAndInc()] & 0xffL);
-            break;
-        case 0x80:
-            val = ((ref & 0x1fL) << 32)
-                    | ((source[posContainer.getPosAndInc()] & 0xffL) << 24)
-                    | ((source[posContainer.getPosAndInc()] & 0xffL) << 16)
-                    | ((source[posContainer.getPosAndInc()] & 0xffL) << 8)
-                    | (source[posContainer.getPosAndInc()] & 0xffL);
-            break;
-        case 0xa0:
-            val = ((ref & 0x1fL) << 40)
-                    | ((source[posContainer.getPosAndInc()] & 0xffL) << 32)
-                    | ((source[posContainer.getPosAndInc()] & 0xffL) << 24)
-                    | ((source[posContainer.getPosAndInc()] & 0xffL) << 16)
-                    | ((source[posContainer.getPosAndInc()] & 0xffL) << 8)
-                    | (source[posContainer.getPosAndInc()] & 0xffL);
-            break;
-        case 0xc0:
-            val = ((ref & 0x1fL) << 48)
-                    | ((source[posContainer.getPosAndInc()] & 0xffL) << 40)
-                    | ((source[posContainer.getPosAndInc()] & 0xffL) << 32)
-                    | ((source[posContainer.getPosAndInc()] & 0xffL) << 24)
-                    | ((source[posContainer.getPosAndInc()] & 0xffL) << 16)
-                    | ((source[posContainer.getPosAndInc()] & 0xffL) << 8)
-                    | (source[posContainer.getPosAndInc()] & 0xffL);
-            break;
-        case 0xe0:
-            int highVal = ref & 0x1f;
-            if (highVal != 0) {
-                val = ((long) highVal << 56)
-                        | ((source[posContainer.getPosAndInc()] & 0xffL) << 48)
-                        | ((source[posContainer.getPosAndInc()] & 0xffL) << 40)
-                        | ((source[posContainer.getPosAndInc()] & 0xffL) << 32)
-                        | ((source[posContainer.getPosAndInc()] & 0xffL) << 24)
-                        | ((source[posContainer.getPosAndInc()] & 0xffL) << 16)
-                        | ((source[posContainer.getPosAndInc()] & 0xffL) << 8)
-                        | (source[posContainer.getPosAndInc()] & 0xffL);
-            } else {
-                val = ((long) source[posContainer.getPosAndInc()] << 56)
-                        | ((source[posContainer.getPosAndInc()] & 0xffL) << 48)
-                        | ((source[posContainer.getPosAndInc()] & 0xffL) << 40)
-                        | ((source[posContainer.getPosAndInc()] & 0xffL) << 32)
-                        | ((source[posContainer.getPosAndInc()] & 0xffL) << 24)
-                        | ((source[posContainer.getPosAndInc()] & 0xffL) << 16)
-                        | ((source[posContainer.getPosAndInc()] & 0xffL) << 8)
-                        | (source[posContainer.getPosAndInc()] & 0xffL);
-            }
-            break;
-        default:
-            throw new RuntimeException("OMG! This won't happen!");
+    @Override public Long decodeValue(BinaryInput source, Class<? extends Long> type) throws IOException {
+        return Long.valueOf(decodeLong(source));
+    }
+
+    /** То же, что {@link #decodeValue(BinaryInput, Class)}, только без боксинга. */
+    public long decodeLong(BinaryInput source) throws IOException {
+        int ref = source.read();
+        int tail = (ref & 0xe0) >>> 5;
+        if (tail < 7) {
+            return ((ref & 0x1fL) << (tail << 3)) | source.readBigEndian(tail);
+        }
+        int highVal = ref & 0x1f;
+        if (highVal != 0) {
+            return ((long) highVal << 56) | source.readBigEndian(7);
+        } else {
+            return source.readBigEndian(8);
         }
-        return Long.valueOf(val);
     }
 }
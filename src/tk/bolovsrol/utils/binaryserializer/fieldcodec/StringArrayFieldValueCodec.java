@@ -1,28 +1,28 @@
 package tk.bolovsrol.utils.binaryserializer.fieldcodec;
 
-import tk.bolovsrol.utils.binaryserializer.FieldValueCodec;
-import tk.bolovsrol.utils.binaryserializer.PosContainer;
+import tk.bolovsrol.utils.binaryserializer.AbstractBinaryFieldValueCodec;
+import tk.bolovsrol.utils.binaryserializer.BinaryInput;
+import tk.bolovsrol.utils.binaryserializer.BinaryOutput;
 
 import java.io.IOException;
-import java.io.OutputStream;
 
-public class StringArrayFieldValueCodec implements FieldValueCodec<String[]> {
+public class StringArrayFieldValueCodec extends AbstractBinaryFieldValueCodec<String[]> {
 
     private static final IntegerFieldValueCodec INT_CODEC = new IntegerFieldValueCodec();
     private static final StringFieldValueCodec STRING_CODEC = new StringFieldValueCodec();
 
-    @Override public void encodeValue(OutputStream target, String[] value) throws IOException {
-        INT_CODEC.encodeValue(target, value.length);
+    @Override public void encodeValue(BinaryOutput target, String[] value) throws IOException {
+        INT_CODEC.encodeInt(target, value.length);
         for (String string : value) {
             STRING_CODEC.encodeValue(target, string);
         }
     }
 
-    @Override public String[] decodeValue(byte[] source, PosContainer posContainer, Class<? extends String[]> type) {
-        int arrayLen = INT_CODEC.decodeValue(source, posContainer, Integer.class);
+    @Override public String[] decodeValue(BinaryInput source, Class<? extends String[]> type) throws IOException {
+        int arrayLen = INT_CODEC.decodeInt(source);
         String[] result = new String[arrayLen];
         for (int i = 0; i < arrayLen; i++) {
-            result[i] = STRING_CODEC.decodeValue(source, posContainer, String.class);
+            result[i] = STRING_CODEC.decodeValue(source, String.class);
         }
         return result;
     }
@@ -1,10 +1,10 @@
 package tk.bolovsrol.utils.binaryserializer.fieldcodec;
 
-import tk.bolovsrol.utils.binaryserializer.FieldValueCodec;
-import tk.bolovsrol.utils.binaryserializer.PosContainer;
+import tk.bolovsrol.utils.binaryserializer.AbstractBinaryFieldValueCodec;
+import tk.bolovsrol.utils.binaryserializer.BinaryInput;
+import tk.bolovsrol.utils.binaryserializer.BinaryOutput;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.nio.charset.Charset;
 
 /**
@@ -12,18 +12,18 @@ import java.nio.charset.Charset;
  * - рефренс длины (1..5 байтов);<br/>
  * - строка в UTF-8 указанной длины.
  */
-public class StringFieldValueCodec implements FieldValueCodec<String> {
+public class StringFieldValueCodec extends AbstractBinaryFieldValueCodec<String> {
     public static final Charset CHARSET = Charset.forName("UTF-8");
     private final IntegerFieldValueCodec integerFieldValueCodec = new IntegerFieldValueCodec();
 
-    @Override public void encodeValue(OutputStream target, String value) throws IOException {
+    @Override public void encodeValue(BinaryOutput target, String value) throws IOException {
         byte[] bytes = value.getBytes(CHARSET);
-        integerFieldValueCodec.encodeValue(target, bytes.length);
+        integerFieldValueCodec.encodeInt(target, bytes.length);
         target.write(bytes);
     }
 
-    @Override public String decodeValue(byte[] source, PosContainer posContainer, Class<? extends String> type) {
-        int len = integerFieldValueCodec.decodeValue(source, posContainer, Integer.class);
-        return new String(source, posContainer.getPosAndInc(len), len, CHARSET);
+    @Override public String decodeValue(BinaryInput source, Class<? extends String> type) throws IOException {
+        int len = integerFieldValueCodec.decodeInt(source);
+        return source.readString(len, CHARSET);
     }
 }
@@ -1,27 +1,27 @@
 package tk.bolovsrol.utils.binaryserializer.fieldcodec;
 
-import tk.bolovsrol.utils.binaryserializer.FieldValueCodec;
-import tk.bolovsrol.utils.binaryserializer.PosContainer;
+import tk.bolovsrol.utils.binaryserializer.AbstractBinaryFieldValueCodec;
+import tk.bolovsrol.utils.binaryserializer.BinaryInput;
+import tk.bolovsrol.utils.binaryserializer.BinaryOutput;
 import tk.bolovsrol.utils.time.TwofacedTime;
 
 import java.io.IOException;
-import java.io.OutputStream;
 
-public class TwofacedTimeFieldValueCodec implements FieldValueCodec<TwofacedTime> {
+public class TwofacedTimeFieldValueCodec extends AbstractBinaryFieldValueCodec<TwofacedTime> {
 
     private final BooleanFieldValueCodec one = new BooleanFieldValueCodec();
     private final LongFieldValueCodec two = new LongFieldValueCodec();
 
-    @Override public void encodeValue(OutputStream target, TwofacedTime value) throws IOException {
-        one.encodeValue(target, value.isRelative());
-        two.encodeValue(target, value.getMillis());
+    @Override public void encodeValue(BinaryOutput target, TwofacedTime value) throws IOException {
+        one.encodeBoolean(target, value.isRelative());
+        two.encodeLong(target, value.getMillis());
     }
 
     @Override
-    public TwofacedTime decodeValue(byte[] source, PosContainer posContainer, Class<? extends TwofacedTime> type) {
+    public TwofacedTime decodeValue(BinaryInput source, Class<? extends TwofacedTime> type) throws IOException {
         return new TwofacedTime(
-                one.decodeValue(source, posContainer, Boolean.class),
-                two.decodeValue(source, posContainer, Long.class)
+                one.decodeBoolean(source),
+                two.decodeLong(source)
         );
     }
 }
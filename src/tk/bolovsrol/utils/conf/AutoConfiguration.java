@@ -1,50 +1,29 @@
 package tk.bolovsrol.utils.conf;
 
-import tk.bolovsrol.utils.BooleanUtils;
 import tk.bolovsrol.utils.Flag;
-import tk.bolovsrol.utils.HostPort;
-import tk.bolovsrol.utils.Ip4Range;
 import tk.bolovsrol.utils.Json;
-import tk.bolovsrol.utils.NumberUtils;
-import tk.bolovsrol.utils.RegexUtils;
 import tk.bolovsrol.utils.Spell;
 import tk.bolovsrol.utils.StringDumpBuilder;
-import tk.bolovsrol.utils.StringUtils;
 import tk.bolovsrol.utils.Uri;
 import tk.bolovsrol.utils.log.LogDome;
-import tk.bolovsrol.utils.mail.MailAddress;
 import tk.bolovsrol.utils.properties.ReadOnlyProperties;
 import tk.bolovsrol.utils.properties.sources.ReadOnlySource;
 import tk.bolovsrol.utils.properties.sources.SourceUnavailableException;
-import tk.bolovsrol.utils.textformatter.compiling.CompiledFormatter;
-import tk.bolovsrol.utils.textformatter.compiling.TextFormatCompiler;
-import tk.bolovsrol.utils.time.Duration;
-import tk.bolovsrol.utils.time.TwofacedTime;
 import tk.bolovsrol.utils.xml.Element;
 import tk.bolovsrol.utils.xml.ElementUtils;
 
-import java.io.File;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
-import java.nio.charset.Charset;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 /**
  * «Автоматическая» конфигурация.
@@ -141,28 +120,30 @@ public class AutoConfiguration implements Cloneable, ReadOnlySource {
         loadDefaults(log);
         Set<String> usedKeys = new HashSet<>();
         loadInternal(log, cfg, usedKeys);
-        Map<String, String> unusedKeys = new LinkedHashMap<>(cfg.dump());
-        unusedKeys.keySet().removeAll(usedKeys);
+        Map<String, String> unusedKeys;
+        if ((unusedKeyAction == null || unusedKeyAction == UnusedKeyAction.IGNORE) && !AutoConfigurationPlan.get(getClass()).isAfterLoadOverridden()) {
+            // неиспользованные ключи никому не нужны, незачем дампить проперти
+            unusedKeys = Collections.emptyMap();
+        } else {
+            unusedKeys = new LinkedHashMap<>(cfg.dump());
+            unusedKeys.keySet().removeAll(usedKeys);
+        }
         afterLoad(log, cfg, unusedKeys, unusedKeyAction);
     }
 
     /**
      * Собственно процедура загрузки.
+     * <p>
+     * Поля, их ключи, разборщики значений и сеттеры выясняются один раз на класс
+     * и хранятся в {@link AutoConfigurationPlan}, так что загрузка рефлекшн не трогает.
      *
      * @param log
      * @param cfg
      * @param usedKeys
      */
     protected void loadInternal(LogDome log, ReadOnlyProperties cfg, Set<String> usedKeys) throws InvalidConfigurationException {
-        for (Map.Entry<Field, AutoConfiguration> entry : confFields().entrySet()) {
-            Field f = entry.getKey();
-            Param c = f.getAnnotation(Param.class);
-            if (c != null) {
-                loadLocalField(log, cfg, f, c, usedKeys);
-            } else {
-                // либо парам, либо инклюд
-                processIncludeField(log, cfg, f, entry.getValue(), usedKeys);
-            }
+        for (AutoConfigurationPlan.Binding binding : AutoConfigurationPlan.get(getClass()).getBindings()) {
+            binding.load(this, log, cfg, usedKeys);
         }
     }
 
@@ -202,80 +183,7 @@ public class AutoConfiguration implements Cloneable, ReadOnlySource {
         }
     }
 
-    /**
-     * Загружает значение в локальное поле, учитывая требования аннотации.
-     *
-     * @param log
-     * @param cfg
-     * @param f
-     * @param c
-     * @param usedKeys
-     * @throws MandatoryFieldMissingException
-     * @throws InvalidFieldValueException
-     */
-    @SuppressWarnings("deprecation")
-    private void loadLocalField(LogDome log, ReadOnlyProperties cfg, Field f, Param c, Set<String> usedKeys) throws MandatoryFieldMissingException, InvalidFieldValueException {
-        String key = getParamName(f, c);
-
-//
-//        if (c.deprecatedKeys().length > 0) {
-//            usedKeys.addAll(Arrays.asList(c.deprecatedKeys()));
-//        }
-//        if (c.aka().length > 0) {
-//            usedKeys.keySet().removeAll(Arrays.asList(c.aka()));
-//        }
-
-        if (c.custom()) {
-            return;
-        }
-
-        String val = cfg.get(key);
-        for (String deprecatedKey : c.deprecatedKeys()) {
-            String deprecatedVal = cfg.get(deprecatedKey);
-            if (deprecatedVal != null) {
-                usedKeys.add(deprecatedKey);
-                if (val == null) {
-                    log.warning("Key " + Spell.get(cfg.expand(deprecatedKey)) + " is deprecated. Should be renamed to " + Spell.get(cfg.expand(key)));
-                    val = deprecatedVal;
-                } else {
-                    log.warning("Key " + Spell.get(cfg.expand(deprecatedKey)) + " is deprecated and should be removed. Key " + Spell.get(cfg.expand(key)) + " (which is defined) used instead.");
-                }
-            }
-        }
-        if (val == null) {
-            for (String akaKey : c.aka()) {
-                val = cfg.get(akaKey);
-                if (val != null) {
-                    usedKeys.add(akaKey);
-                    break;
-                }
-            }
-        } else {
-            usedKeys.add(key);
-        }
-        if (val == null) {
-            if (c.mandatory()) {
-                String fieldName = cfg.expand(key);
-                throw new MandatoryFieldMissingException("No value for mandatory field " + Spell.get(fieldName) + " is specified", fieldName);
-            }
-        } else {
-            try {
-                if (c.viaParse() || c.viaParseCompile()) {
-                    Class<?> cl = this.getClass();
-                    Method setter = cl.getMethod("parse" + Character.toUpperCase(f.getName().charAt(0)) + f.getName().substring(1), String.class);
-                    setter.setAccessible(true);
-                    setter.invoke(this, val);
-                } else {
-                    putStringValue(f, c, c.transf().transformConf(val));
-                }
-            } catch (Exception e) {
-                String fieldName = cfg.expand(key);
-                throw new InvalidFieldValueException("Error loading field " + Spell.get(fieldName) + " with value " + Spell.get(val), e, fieldName, val);
-            }
-        }
-    }
-
-    private static String getParamName(Field f, Param c) {
+    static String getParamName(Field f, Param c) {
         return c.keyPrefix() + (c.key().isEmpty() ? f.getName() : c.key());
     }
 
@@ -295,108 +203,8 @@ public class AutoConfiguration implements Cloneable, ReadOnlySource {
      * @param value текстовое представление значения  @throws Exception
      * @see #load(tk.bolovsrol.utils.log.LogDome, tk.bolovsrol.utils.properties.ReadOnlyProperties)
      */
-    @SuppressWarnings("rawtypes")
     protected void putStringValue(Field field, Param param, String value) throws Exception {
-        Class<?> fieldClass = field.getType();
-        if (fieldClass.isPrimitive()) {
-            if (int.class.isAssignableFrom(fieldClass)) {
-                field.setInt(this, Integer.decode(value).intValue());
-            } else if (long.class.isAssignableFrom(fieldClass)) {
-                field.setLong(this, Long.decode(value).longValue());
-            } else if (char.class.isAssignableFrom(fieldClass)) {
-                field.setChar(this, value.charAt(0));
-            } else if (byte.class.isAssignableFrom(fieldClass)) {
-                field.setByte(this, Byte.decode(value).byteValue());
-            } else if (boolean.class.isAssignableFrom(fieldClass)) {
-                field.setBoolean(this, BooleanUtils.parse(value).booleanValue());
-            } else if (float.class.isAssignableFrom(fieldClass)) {
-                field.setFloat(this, Float.parseFloat(value));
-            } else if (double.class.isAssignableFrom(fieldClass)) {
-                field.setDouble(this, Double.parseDouble(value));
-            } else if (short.class.isAssignableFrom(fieldClass)) {
-                field.setShort(this, Short.parseShort(value));
-            } else {
-                throw new UnsupportedOperationException("Don't know how to deserialize privitive " + Spell.get(field));
-            }
-        } else if (fieldClass.isEnum()) {
-//            field.set(target, Enum.valueOf((Class<? extends Enum<?>>) fieldClass, value));
-            //noinspection unchecked
-            field.set(this, Enum.valueOf((Class) fieldClass, value.toUpperCase()));
-        } else if (String.class.isAssignableFrom(fieldClass)) {
-            field.set(this, value);
-        } else if (Long.class.isAssignableFrom(fieldClass)) {
-            field.set(this, Long.decode(value));
-        } else if (Integer.class.isAssignableFrom(fieldClass)) {
-            field.set(this, Integer.decode(value));
-        } else if (BigDecimal.class.isAssignableFrom(fieldClass)) {
-            field.set(this, new BigDecimal(value));
-        } else if (Uri.class.isAssignableFrom(fieldClass)) {
-            field.set(this, Uri.parseUri(value));
-        } else if (HostPort.class.isAssignableFrom(fieldClass)) {
-            field.set(this, HostPort.parse(value));
-        } else if (File.class.isAssignableFrom(fieldClass)) {
-            field.set(this, new File(value));
-        } else if (Path.class.isAssignableFrom(fieldClass)) {
-            field.set(this, Paths.get(value));
-        } else if (Duration.class.isAssignableFrom(fieldClass)) {
-            field.set(this, new Duration(value));
-        } else if (TwofacedTime.class.isAssignableFrom(fieldClass)) {
-            field.set(this, TwofacedTime.parseHumanReadable(value));
-        } else if (SimpleDateFormat.class.isAssignableFrom(fieldClass)) {
-            field.set(this, new SimpleDateFormat(value));
-        } else if (Charset.class.isAssignableFrom(fieldClass)) {
-            field.set(this, Charset.forName(value));
-        } else if (Boolean.class.isAssignableFrom(fieldClass)) {
-            field.set(this, BooleanUtils.parse(value));
-        } else if (CompiledFormatter.class.isAssignableFrom(fieldClass)) {
-            field.set(this, new TextFormatCompiler().compile(value));
-        } else if (Pattern.class.isAssignableFrom(fieldClass)) {
-            field.set(this, RegexUtils.compilePattern(value));
-        } else if (MailAddress.class.isAssignableFrom(fieldClass)) {
-            field.set(this, MailAddress.parse(value));
-        } else if (LocalTime.class.isAssignableFrom(fieldClass)) {
-            field.set(this, param.pattern().isEmpty() ? LocalTime.parse(value) : LocalTime.parse(value, DateTimeFormatter.ofPattern(param.pattern())));
-        } else if (Date.class.isAssignableFrom(fieldClass)) {
-            field.set(this, new SimpleDateFormat(param.pattern()).parse(value));
-        } else if (Json.class.isAssignableFrom(fieldClass)) {
-            field.set(this, Json.parse(value));
-        } else if (Ip4Range.class.isAssignableFrom(fieldClass)) {
-            field.set(this, Ip4Range.parse(value));
-        } else if (fieldClass.isArray()) {
-            if (int.class.isAssignableFrom(fieldClass.getComponentType())) {
-                field.set(this, NumberUtils.parseIntValues(StringUtils.parseDelimited(value)));
-            } else if (String.class.isAssignableFrom(fieldClass.getComponentType())) {
-                field.set(this, StringUtils.parseDelimited(value));
-            } else if (Long.class.isAssignableFrom(fieldClass.getComponentType())) {
-                field.set(this, NumberUtils.parseLongs(StringUtils.parseDelimited(value)));
-            } else if (BigDecimal.class.isAssignableFrom(fieldClass.getComponentType())) {
-                field.set(this, NumberUtils.parseBigDecimals(StringUtils.parseDelimited(value)));
-            } else if (Uri.class.isAssignableFrom(fieldClass.getComponentType())) {
-                field.set(this, Uri.parseUris(StringUtils.parseDelimited(value)));
-            } else if (HostPort.class.isAssignableFrom(fieldClass.getComponentType())) {
-                field.set(this, HostPort.parse(StringUtils.parseDelimited(value)));
-            } else if (Duration.class.isAssignableFrom(fieldClass.getComponentType())) {
-                field.set(this, Duration.parse(StringUtils.parseDelimited(value)));
-            } else if (Ip4Range.class.isAssignableFrom(fieldClass.getComponentType())) {
-                List<Ip4Range> ip4Ranges = Ip4Range.parseBunch(value);
-                field.set(this, ip4Ranges.toArray(new Ip4Range[ip4Ranges.size()]));
-            } else {
-                throw new UnsupportedOperationException("Don't know how to deserialize array " + Spell.get(field));
-            }
-        } else {
-            throw new UnsupportedOperationException("Don't know how to deserialize " + Spell.get(field));
-        }
-    }
-
-    private static void processIncludeField(LogDome log, ReadOnlyProperties cfg, Field field, AutoConfiguration includeConf, Set<String> usedKeys) throws InvalidConfigurationException {
-        Include i = field.getAnnotation(Include.class);
-        if (!i.prefix().isEmpty()) {
-            Set<String> prefixedUsedKeys = new HashSet<>();
-            includeConf.loadInternal(log, cfg.getBranch(i.prefix()), prefixedUsedKeys);
-            prefixedUsedKeys.stream().map(s -> i.prefix() + s).collect(Collectors.toCollection(() -> usedKeys));
-        } else {
-            includeConf.loadInternal(log, cfg, usedKeys);
-        }
+        field.set(this, AutoConfigurationPlan.parserFor(field, param).parse(value));
     }
 
     /**
@@ -419,31 +227,12 @@ public class AutoConfiguration implements Cloneable, ReadOnlySource {
     }
 
     private Map<Field, AutoConfiguration> gatherFields() {
-        Set<String> overridenNames = new TreeSet<>();
-        Map<Field, AutoConfiguration> fields = Collections.emptyMap();
-        Class<?> cl = this.getClass();
-        while (true) {
-            Field[] declaredFields = cl.getDeclaredFields();
-            Map<Field, AutoConfiguration> localFields = new LinkedHashMap<>(fields.size() + declaredFields.length);
-            for (Field f : declaredFields) {
-                f.setAccessible(true);
-                boolean annotation = false;
-                if ((f.isAnnotationPresent(Param.class) || (annotation = f.isAnnotationPresent(Include.class))) && overridenNames.add(f.getName())) {
-                    if (annotation) {
-                        AutoConfiguration includeConf = getIncludeConf(f);
-                        localFields.put(f, includeConf);
-                    } else {
-                        localFields.put(f, null);
-                    }
-                }
-            }
-            localFields.putAll(fields);
-            if (cl == AutoConfiguration.class) {
-                return localFields;
-            }
-            fields = localFields;
-            cl = cl.getSuperclass();
+        AutoConfigurationPlan.Binding[] bindings = AutoConfigurationPlan.get(getClass()).getBindings();
+        Map<Field, AutoConfiguration> fields = new LinkedHashMap<>(bindings.length * 2);
+        for (AutoConfigurationPlan.Binding binding : bindings) {
+            fields.put(binding.field, binding.isInclude() ? getIncludeConf(binding.field) : null);
         }
+        return fields;
     }
 
     private AutoConfiguration getIncludeConf(Field field) {
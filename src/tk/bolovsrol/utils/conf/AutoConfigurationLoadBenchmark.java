@@ -0,0 +1,224 @@
+package tk.bolovsrol.utils.conf;
+
+import tk.bolovsrol.utils.Spell;
+import tk.bolovsrol.utils.benchmark.Comparer;
+import tk.bolovsrol.utils.benchmark.Repeater;
+import tk.bolovsrol.utils.log.Log;
+import tk.bolovsrol.utils.log.LogDome;
+import tk.bolovsrol.utils.properties.ReadOnlyProperties;
+import tk.bolovsrol.utils.time.Duration;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Сравнивает загрузку небольшой конфигурации на 20 полей с инклюдом
+ * прежним способом, когда каждый экземпляр заново обходит поля рефлекшном и читает аннотации,
+ * с загрузкой по плану, который строится один раз на класс.
+ * <p/>
+ * Запуск: <code>java tk.bolovsrol.utils.conf.AutoConfigurationLoadBenchmark [загрузок] [итерации]</code>
+ */
+public class AutoConfigurationLoadBenchmark {
+
+    public enum Mode {FAST, SAFE}
+
+    public static class PoolConf extends AutoConfiguration {
+        @Param public int minSize = 1;
+        @Param public int maxSize = 10;
+        @Param public Duration idleTimeout = new Duration(60000L);
+        @Param public boolean validate = false;
+    }
+
+    public static class RouteConf extends AutoConfiguration {
+        @Param(mandatory = true) public String name;
+        @Param public String host = "localhost";
+        @Param public int port = 80;
+        @Param public long quota = 0L;
+        @Param public Integer priority;
+        @Param public Long tenantId;
+        @Param public boolean enabled = true;
+        @Param public Boolean trace;
+        @Param public Mode mode = Mode.SAFE;
+        @Param public BigDecimal price;
+        @Param public Duration timeout = new Duration(5000L);
+        @Param public Duration retryDelay;
+        @Param(key = "retry.count") public int retryCount = 3;
+        @Param(aka = "user") public String login;
+        @Param(password = true) public String password;
+        @Param public String[] tags;
+        @Param public int[] codes;
+        @Param public double weight = 1.0;
+        @Param(deprecatedKeys = "charset") public String encoding = "UTF-8";
+        @Param public char separator = ';';
+        @Include(prefix = "pool.") public final PoolConf pool = new PoolConf();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Map<String, String> values = new LinkedHashMap<>();
+        values.put("name", "sms-gate");
+        values.put("host", "10.0.0.1");
+        values.put("port", "8080");
+        values.put("quota", "1000000");
+        values.put("priority", "5");
+        values.put("tenantId", "123456789");
+        values.put("enabled", "true");
+        values.put("trace", "false");
+        values.put("mode", "fast");
+        values.put("price", "0.15");
+        values.put("timeout", "3");
+        values.put("retryDelay", "0.500");
+        values.put("retry.count", "5");
+        values.put("user", "router");
+        values.put("password", "secret");
+        values.put("tags", "a,b,c");
+        values.put("codes", "200,201,204");
+        values.put("weight", "0.5");
+        values.put("encoding", "cp1251");
+        values.put("separator", ",");
+        values.put("pool.minSize", "2");
+        values.put("pool.maxSize", "50");
+        values.put("pool.validate", "yes");
+        ReadOnlyProperties cfg = new ReadOnlyProperties(values);
+        LogDome log = Log.getInstance();
+
+        RouteConf legacy = new RouteConf();
+        LegacyLoader.load(legacy, log, cfg);
+        RouteConf planned = new RouteConf();
+        planned.load(log, cfg);
+        System.out.println("sample: " + planned);
+        System.out.println("output: " + (legacy.toString().equals(planned.toString()) ? "match" : "MISMATCH"));
+
+        long[] sink = new long[1];
+        Comparer comparer = new Comparer(
+              new Repeater() {
+                  @Override public void iteration() {
+                      try {
+                          for (int i = 0; i < count; i++) {
+                              RouteConf conf = new RouteConf();
+                              LegacyLoader.load(conf, log, cfg);
+                              sink[0] += conf.port;
+                          }
+                      } catch (InvalidConfigurationException e) {
+                          throw new RuntimeException(e);
+                      }
+                  }
+              },
+              new Repeater() {
+                  @Override public void iteration() {
+                      try {
+                          for (int i = 0; i < count; i++) {
+                              RouteConf conf = new RouteConf();
+                              conf.load(log, cfg);
+                              sink[0] -= conf.port;
+                          }
+                      } catch (InvalidConfigurationException e) {
+                          throw new RuntimeException(e);
+                      }
+                  }
+              });
+        comparer.run(1, iterations);
+        System.out.println("load: " + comparer.getAverageReport());
+        System.out.println("ports: " + (sink[0] == 0L ? "match" : "MISMATCH"));
+    }
+
+    /** Загрузка, как она была устроена до {@link AutoConfigurationPlan}. */
+    private static final class LegacyLoader {
+
+        static void load(AutoConfiguration conf, LogDome log, ReadOnlyProperties cfg) throws InvalidConfigurationException {
+            conf.loadDefaults(log);
+            Set<String> usedKeys = new HashSet<>();
+            loadInternal(conf, log, cfg, usedKeys);
+            Map<String, String> unusedKeys = new LinkedHashMap<>(cfg.dump());
+            unusedKeys.keySet().removeAll(usedKeys);
+            conf.afterLoad(log, cfg, unusedKeys, UnusedKeyAction.IGNORE);
+        }
+
+        private static void loadInternal(AutoConfiguration conf, LogDome log, ReadOnlyProperties cfg, Set<String> usedKeys) throws InvalidConfigurationException {
+            for (Map.Entry<Field, AutoConfiguration> entry : gatherFields(conf).entrySet()) {
+                Field f = entry.getKey();
+                Param c = f.getAnnotation(Param.class);
+                if (c != null) {
+                    loadLocalField(conf, log, cfg, f, c, usedKeys);
+                } else {
+                    Include i = f.getAnnotation(Include.class);
+                    Set<String> prefixedUsedKeys = new HashSet<>();
+                    loadInternal(entry.getValue(), log, cfg.getBranch(i.prefix()), prefixedUsedKeys);
+                    for (String key : prefixedUsedKeys) {
+                        usedKeys.add(i.prefix() + key);
+                    }
+                }
+            }
+        }
+
+        private static void loadLocalField(AutoConfiguration conf, LogDome log, ReadOnlyProperties cfg, Field f, Param c, Set<String> usedKeys) throws InvalidConfigurationException {
+            String key = c.keyPrefix() + (c.key().isEmpty() ? f.getName() : c.key());
+            String val = cfg.get(key);
+            for (String deprecatedKey : c.deprecatedKeys()) {
+                String deprecatedVal = cfg.get(deprecatedKey);
+                if (deprecatedVal != null) {
+                    usedKeys.add(deprecatedKey);
+                    if (val == null) {
+                        val = deprecatedVal;
+                    }
+                }
+            }
+            if (val == null) {
+                for (String akaKey : c.aka()) {
+                    val = cfg.get(akaKey);
+                    if (val != null) {
+                        usedKeys.add(akaKey);
+                        break;
+                    }
+                }
+            } else {
+                usedKeys.add(key);
+            }
+            if (val == null) {
+                if (c.mandatory()) {
+                    throw new MandatoryFieldMissingException("No value for mandatory field " + Spell.get(key) + " is specified", key);
+                }
+            } else {
+                try {
+                    conf.putStringValue(f, c, c.transf().transformConf(val));
+                } catch (Exception e) {
+                    throw new InvalidFieldValueException("Error loading field " + Spell.get(key) + " with value " + Spell.get(val), e, key, val);
+                }
+            }
+        }
+
+        private static Map<Field, AutoConfiguration> gatherFields(AutoConfiguration conf) throws InvalidConfigurationException {
+            Set<String> overridenNames = new TreeSet<>();
+            Map<Field, AutoConfiguration> fields = new LinkedHashMap<>();
+            Class<?> cl = conf.getClass();
+            while (true) {
+                Field[] declaredFields = cl.getDeclaredFields();
+                Map<Field, AutoConfiguration> localFields = new LinkedHashMap<>(fields.size() + declaredFields.length);
+                for (Field f : declaredFields) {
+                    f.setAccessible(true);
+                    boolean annotation = false;
+                    if ((f.isAnnotationPresent(Param.class) || (annotation = f.isAnnotationPresent(Include.class))) && overridenNames.add(f.getName())) {
+                        try {
+                            localFields.put(f, annotation ? (AutoConfiguration) f.get(conf) : null);
+                        } catch (IllegalAccessException e) {
+                            throw new InvalidFieldException(e, f.getName());
+                        }
+                    }
+                }
+                localFields.putAll(fields);
+                if (cl == AutoConfiguration.class) {
+                    return localFields;
+                }
+                fields = localFields;
+                cl = cl.getSuperclass();
+            }
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package tk.bolovsrol.utils.conf;
+
+import tk.bolovsrol.utils.BooleanUtils;
+import tk.bolovsrol.utils.HostPort;
+import tk.bolovsrol.utils.Ip4Range;
+import tk.bolovsrol.utils.Json;
+import tk.bolovsrol.utils.NumberUtils;
+import tk.bolovsrol.utils.RegexUtils;
+import tk.bolovsrol.utils.Spell;
+import tk.bolovsrol.utils.StringUtils;
+import tk.bolovsrol.utils.Uri;
+import tk.bolovsrol.utils.log.LogDome;
+import tk.bolovsrol.utils.mail.MailAddress;
+import tk.bolovsrol.utils.properties.ReadOnlyProperties;
+import tk.bolovsrol.utils.textformatter.compiling.CompiledFormatter;
+import tk.bolovsrol.utils.textformatter.compiling.TextFormatCompiler;
+import tk.bolovsrol.utils.time.Duration;
+import tk.bolovsrol.utils.time.TwofacedTime;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * План загрузки класса {@link AutoConfiguration}: поля с параметрами и инклюды
+ * с заранее выясненными ключами, разборщиками значений и сеттерами.
+ * <p>
+ * Рефлекшн, аннотации и выбор разборщика по типу поля отрабатывают один раз на класс,
+ * а загрузка экземпляра только читает проперти и вызывает готовые {@link MethodHandle}'ы.
+ * <p>
+ * Если класс конфигурации переопределяет {@link AutoConfiguration#putStringValue(Field, Param, String)},
+ * значения простых параметров проставляются через него, как и раньше.
+ */
+final class AutoConfigurationPlan {
+
+    private static final ClassValue<AutoConfigurationPlan> PLANS = new ClassValue<AutoConfigurationPlan>() {
+        @Override protected AutoConfigurationPlan computeValue(Class<?> type) {
+            return new AutoConfigurationPlan(type);
+        }
+    };
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, AutoConfiguration.class, Object.class);
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, AutoConfiguration.class);
+    private static final MethodType PARSE_METHOD_TYPE = MethodType.methodType(void.class, AutoConfiguration.class, String.class);
+
+    /** Разбирает текстовое значение параметра в значение поля. */
+    @FunctionalInterface interface ValueParser {
+        Object parse(String value) throws Exception;
+    }
+
+    /** Загрузчик одного поля конфигурации. */
+    abstract static class Binding {
+        final Field field;
+
+        Binding(Field field) {
+            this.field = field;
+        }
+
+        /** @return true для инклюда, false для параметра */
+        abstract boolean isInclude();
+
+        abstract void load(AutoConfiguration conf, LogDome log, ReadOnlyProperties cfg, Set<String> usedKeys) throws InvalidConfigurationException;
+    }
+
+    private final Binding[] bindings;
+    private final boolean afterLoadOverridden;
+
+    static AutoConfigurationPlan get(Class<? extends AutoConfiguration> type) {
+        return PLANS.get(type);
+    }
+
+    private AutoConfigurationPlan(Class<?> type) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        boolean putOverridden = overrides(type, "putStringValue", Field.class, Param.class, String.class);
+        this.afterLoadOverridden = overrides(type, "afterLoad", LogDome.class, ReadOnlyProperties.class, Map.class, UnusedKeyAction.class);
+        List<Binding> bindings = new ArrayList<>();
+        for (Field field : gatherFields(type)) {
+            Param param = field.getAnnotation(Param.class);
+            if (param != null) {
+                bindings.add(new ParamBinding(lookup, type, field, param, putOverridden));
+            } else {
+                bindings.add(new IncludeBinding(lookup, type, field));
+            }
+        }
+        this.bindings = bindings.toArray(new Binding[0]);
+    }
+
+    Binding[] getBindings() {
+        return bindings;
+    }
+
+    /** @return true, если класс переопределяет {@link AutoConfiguration#afterLoad}, и ему могут быть нужны неиспользованные ключи */
+    boolean isAfterLoadOverridden() {
+        return afterLoadOverridden;
+    }
+
+    /**
+     * Собирает поля конфигурации: сначала поля предков, потом наследников,
+     * поле наследника перекрывает одноимённое поле предка.
+     */
+    private static List<Field> gatherFields(Class<?> type) {
+        Set<String> overridenNames = new TreeSet<>();
+        List<Field> fields = new ArrayList<>();
+        Class<?> cl = type;
+        while (true) {
+            Field[] declaredFields = cl.getDeclaredFields();
+            List<Field> localFields = new ArrayList<>(fields.size() + declaredFields.length);
+            for (Field f : declaredFields) {
+                if ((f.isAnnotationPresent(Param.class) || f.isAnnotationPresent(Include.class)) && overridenNames.add(f.getName())) {
+                    f.setAccessible(true);
+                    localFields.add(f);
+                }
+            }
+            localFields.addAll(fields);
+            fields = localFields;
+            if (cl == AutoConfiguration.class) {
+                return fields;
+            }
+            cl = cl.getSuperclass();
+        }
+    }
+
+    private static boolean overrides(Class<?> type, String name, Class<?>... parameterTypes) {
+        for (Class<?> cl = type; cl != AutoConfiguration.class; cl = cl.getSuperclass()) {
+            try {
+                cl.getDeclaredMethod(name, parameterTypes);
+                return true;
+            } catch (NoSuchMethodException ignored) {
+                // смотрим предка
+            }
+        }
+        return false;
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        } else if (e instanceof Error) {
+            throw (Error) e;
+        }
+        throw new RuntimeException(e);
+    }
+
+    /** Параметр. */
+    private static final class ParamBinding extends Binding {
+        private final Param param;
+        private final String key;
+        private final boolean custom;
+        private final boolean mandatory;
+        private final String[] deprecatedKeys;
+        private final String[] aka;
+        private final ValueTransformation transf;
+        private final boolean viaParse;
+        private final String parseMethodName;
+        private final MethodHandle parseMethod;
+        private final boolean putOverridden;
+        private final ValueParser parser;
+        private final MethodHandle setter;
+
+        @SuppressWarnings("deprecation")
+        ParamBinding(MethodHandles.Lookup lookup, Class<?> type, Field field, Param param, boolean putOverridden) {
+            super(field);
+            this.param = param;
+            this.key = AutoConfiguration.getParamName(field, param);
+            this.custom = param.custom();
+            this.mandatory = param.mandatory();
+            this.deprecatedKeys = param.deprecatedKeys();
+            this.aka = param.aka();
+            this.transf = param.transf();
+            this.viaParse = param.viaParse() || param.viaParseCompile();
+            this.putOverridden = putOverridden;
+            if (viaParse) {
+                this.parseMethodName = "parse" + Character.toUpperCase(field.getName().charAt(0)) + field.getName().substring(1);
+                this.parseMethod = findParseMethod(lookup, type, parseMethodName);
+                this.parser = null;
+                this.setter = null;
+            } else {
+                this.parseMethodName = null;
+                this.parseMethod = null;
+                this.parser = putOverridden ? null : parserFor(field, param);
+                this.setter = putOverridden ? null : unreflectSetter(lookup, field);
+            }
+        }
+
+        private static MethodHandle findParseMethod(MethodHandles.Lookup lookup, Class<?> type, String name) {
+            try {
+                Method method = type.getMethod(name, String.class);
+                method.setAccessible(true);
+                return lookup.unreflect(method).asType(PARSE_METHOD_TYPE);
+            } catch (NoSuchMethodException | IllegalAccessException | RuntimeException e) {
+                // ругнёмся при загрузке, если значение будет
+                return null;
+            }
+        }
+
+        private static MethodHandle unreflectSetter(MethodHandles.Lookup lookup, Field field) {
+            try {
+                return lookup.unreflectSetter(field).asType(SETTER_TYPE);
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("Cannot reach field " + Spell.get(field), e);
+            }
+        }
+
+        @Override boolean isInclude() {
+            return false;
+        }
+
+        @Override void load(AutoConfiguration conf, LogDome log, ReadOnlyProperties cfg, Set<String> usedKeys) throws InvalidConfigurationException {
+            if (custom) {
+                return;
+            }
+
+            String val = cfg.get(key);
+            for (String deprecatedKey : deprecatedKeys) {
+                String deprecatedVal = cfg.get(deprecatedKey);
+                if (deprecatedVal != null) {
+                    usedKeys.add(deprecatedKey);
+                    if (val == null) {
+                        log.warning("Key " + Spell.get(cfg.expand(deprecatedKey)) + " is deprecated. Should be renamed to " + Spell.get(cfg.expand(key)));
+                        val = deprecatedVal;
+                    } else {
+                        log.warning("Key " + Spell.get(cfg.expand(deprecatedKey)) + " is deprecated and should be removed. Key " + Spell.get(cfg.expand(key)) + " (which is defined) used instead.");
+                    }
+                }
+            }
+            if (val == null) {
+                for (String akaKey : aka) {
+                    val = cfg.get(akaKey);
+                    if (val != null) {
+                        usedKeys.add(akaKey);
+                        break;
+                    }
+                }
+            } else {
+                usedKeys.add(key);
+            }
+            if (val == null) {
+                if (mandatory) {
+                    String fieldName = cfg.expand(key);
+                    throw new MandatoryFieldMissingException("No value for mandatory field " + Spell.get(fieldName) + " is specified", fieldName);
+                }
+            } else {
+                try {
+                    put(conf, val);
+                } catch (Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    String fieldName = cfg.expand(key);
+                    throw new InvalidFieldValueException("Error loading field " + Spell.get(fieldName) + " with value " + Spell.get(val), e, fieldName, val);
+                }
+            }
+        }
+
+        private void put(AutoConfiguration conf, String val) throws Throwable {
+            if (viaParse) {
+                if (parseMethod == null) {
+                    throw new NoSuchMethodException(conf.getClass().getName() + '.' + parseMethodName + "(java.lang.String)");
+                }
+                parseMethod.invokeExact(conf, val);
+            } else if (putOverridden) {
+                conf.putStringValue(field, param, transf.transformConf(val));
+            } else {
+                setter.invokeExact(conf, parser.parse(transf.transformConf(val)));
+            }
+        }
+    }
+
+    /** Вложенная конфигурация. */
+    private static final class IncludeBinding extends Binding {
+        private final Class<?> type;
+        private final String prefix;
+        private final MethodHandle getter;
+
+        IncludeBinding(MethodHandles.Lookup lookup, Class<?> type, Field field) {
+            super(field);
+            Class<?> fieldClass = field.getType();
+            if (!AutoConfiguration.class.isAssignableFrom(fieldClass)) {
+                throw new IllegalArgumentException(
+                    "Include field " + Spell.get(field) + " in class " + Spell.get(type)
+                        + " has unexpected type " + Spell.get(fieldClass)
+                );
+            }
+            this.type = type;
+            this.prefix = field.getAnnotation(Include.class).prefix();
+            try {
+                this.getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("Cannot reach instance of include field " + Spell.get(field) + " in class " + Spell.get(type), e);
+            }
+        }
+
+        @Override boolean isInclude() {
+            return true;
+        }
+
+        @Override void load(AutoConfiguration conf, LogDome log, ReadOnlyProperties cfg, Set<String> usedKeys) throws InvalidConfigurationException {
+            AutoConfiguration includeConf;
+            try {
+                includeConf = (AutoConfiguration) (Object) getter.invokeExact(conf);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+            if (includeConf == null) {
+                throw new IllegalArgumentException(
+                    "Include field " + Spell.get(field) + " in class " + Spell.get(type)
+                        + " is not initialized"
+                );
+            }
+            if (!prefix.isEmpty()) {
+                Set<String> prefixedUsedKeys = new HashSet<>();
+                includeConf.loadInternal(log, cfg.getBranch(prefix), prefixedUsedKeys);
+                for (String key : prefixedUsedKeys) {
+                    usedKeys.add(prefix + key);
+                }
+            } else {
+                includeConf.loadInternal(log, cfg, usedKeys);
+            }
+        }
+    }
+
+    // ------------ разборщики
+
+    /**
+     * Подбирает разборщик значения по типу поля.
+     * <p>
+     * Для типов, которые разбирать не умеем, возвращает разборщик,
+     * который выкидывает {@link UnsupportedOperationException}.
+     *
+     * @param field поле
+     * @param param параметры поля
+     * @return разборщик
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    static ValueParser parserFor(Field field, Param param) {
+        Class<?> fieldClass = field.getType();
+        if (fieldClass.isPrimitive()) {
+            if (int.class.isAssignableFrom(fieldClass)) {
+                return Integer::decode;
+            } else if (long.class.isAssignableFrom(fieldClass)) {
+                return Long::decode;
+            } else if (char.class.isAssignableFrom(fieldClass)) {
+                return value -> value.charAt(0);
+            } else if (byte.class.isAssignableFrom(fieldClass)) {
+                return Byte::decode;
+            } else if (boolean.class.isAssignableFrom(fieldClass)) {
+                return value -> BooleanUtils.parse(value).booleanValue();
+            } else if (float.class.isAssignableFrom(fieldClass)) {
+                return Float::valueOf;
+            } else if (double.class.isAssignableFrom(fieldClass)) {
+                return Double::valueOf;
+            } else if (short.class.isAssignableFrom(fieldClass)) {
+                return Short::valueOf;
+            } else {
+                return unsupported("Don't know how to deserialize privitive " + Spell.get(field));
+            }
+        } else if (fieldClass.isEnum()) {
+            Class enumClass = fieldClass;
+            return value -> Enum.valueOf(enumClass, value.toUpperCase());
+        } else if (String.class.isAssignableFrom(fieldClass)) {
+            return value -> value;
+        } else if (Long.class.isAssignableFrom(fieldClass)) {
+            return Long::decode;
+        } else if (Integer.class.isAssignableFrom(fieldClass)) {
+            return Integer::decode;
+        } else if (BigDecimal.class.isAssignableFrom(fieldClass)) {
+            return BigDecimal::new;
+        } else if (Uri.class.isAssignableFrom(fieldClass)) {
+            return Uri::parseUri;
+        } else if (HostPort.class.isAssignableFrom(fieldClass)) {
+            return HostPort::parse;
+        } else if (File.class.isAssignableFrom(fieldClass)) {
+            return File::new;
+        } else if (Path.class.isAssignableFrom(fieldClass)) {
+            return value -> Paths.get(value);
+        } else if (Duration.class.isAssignableFrom(fieldClass)) {
+            return Duration::new;
+        } else if (TwofacedTime.class.isAssignableFrom(fieldClass)) {
+            return TwofacedTime::parseHumanReadable;
+        } else if (SimpleDateFormat.class.isAssignableFrom(fieldClass)) {
+            return SimpleDateFormat::new;
+        } else if (Charset.class.isAssignableFrom(fieldClass)) {
+            return Charset::forName;
+        } else if (Boolean.class.isAssignableFrom(fieldClass)) {
+            return BooleanUtils::parse;
+        } else if (CompiledFormatter.class.isAssignableFrom(fieldClass)) {
+            return value -> new TextFormatCompiler().compile(value);
+        } else if (Pattern.class.isAssignableFrom(fieldClass)) {
+            return RegexUtils::compilePattern;
+        } else if (MailAddress.class.isAssignableFrom(fieldClass)) {
+            return MailAddress::parse;
+        } else if (LocalTime.class.isAssignableFrom(fieldClass)) {
+            if (param.pattern().isEmpty()) {
+                return LocalTime::parse;
+            }
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern(param.pattern());
+            return value -> LocalTime.parse(value, formatter);
+        } else if (Date.class.isAssignableFrom(fieldClass)) {
+            String pattern = param.pattern();
+            return value -> new SimpleDateFormat(pattern).parse(value);
+        } else if (Json.class.isAssignableFrom(fieldClass)) {
+            return Json::parse;
+        } else if (Ip4Range.class.isAssignableFrom(fieldClass)) {
+            return Ip4Range::parse;
+        } else if (fieldClass.isArray()) {
+            Class<?> componentType = fieldClass.getComponentType();
+            if (int.class.isAssignableFrom(componentType)) {
+                return value -> NumberUtils.parseIntValues(StringUtils.parseDelimited(value));
+            } else if (String.class.isAssignableFrom(componentType)) {
+                return StringUtils::parseDelimited;
+            } else if (Long.class.isAssignableFrom(componentType)) {
+                return value -> NumberUtils.parseLongs(StringUtils.parseDelimited(value));
+            } else if (BigDecimal.class.isAssignableFrom(componentType)) {
+                return value -> NumberUtils.parseBigDecimals(StringUtils.parseDelimited(value));
+            } else if (Uri.class.isAssignableFrom(componentType)) {
+                return value -> Uri.parseUris(StringUtils.parseDelimited(value));
+            } else if (HostPort.class.isAssignableFrom(componentType)) {
+                return value -> HostPort.parse(StringUtils.parseDelimited(value));
+            } else if (Duration.class.isAssignableFrom(componentType)) {
+                return value -> Duration.parse(StringUtils.parseDelimited(value));
+            } else if (Ip4Range.class.isAssignableFrom(componentType)) {
+                return value -> {
+                    List<Ip4Range> ip4Ranges = Ip4Range.parseBunch(value);
+                    return ip4Ranges.toArray(new Ip4Range[ip4Ranges.size()]);
+                };
+            } else {
+                return unsupported("Don't know how to deserialize array " + Spell.get(field));
+            }
+        } else {
+            return unsupported("Don't know how to deserialize " + Spell.get(field));
+        }
+    }
+
+    private static ValueParser unsupported(String message) {
+        return value -> {
+            throw new UnsupportedOperationException(message);
+        };
+    }
+}
@@ -8,14 +8,28 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 
-/** Стрим, который умеет читать строки. */
+/**
+ * Стрим, который умеет читать строки.
+ * <p/>
+ * По умолчанию строки читаются из исходного потока побайтно, так что дочитанный до конца строки
+ * исходный поток можно читать дальше в обход этого объекта (так устроен, например, разбор HTTP).
+ * Если исходный поток принадлежит целиком этому объекту, лучше создать его с буфером
+ * ({@link #LineInputStream(InputStream, Charset, int)}): тогда исходный поток читается кусками,
+ * а строки раскодируются прямо из буфера.
+ */
 public class LineInputStream extends InputStream {
 
     private Charset charset;
     private final InputStream src;
     private final ByteArrayOutputStream baos = new ByteArrayOutputStream();
 
+    /** Буфер или нул, если читаем побайтно. */
+    private final byte[] buf;
+    private int pos;
+    private int limit;
+
     /**
      * Создаёт поток с указанием кодировки, в которой будут раскодировать строки.
      *
@@ -25,6 +39,22 @@ public class LineInputStream extends InputStream {
     public LineInputStream(InputStream src, Charset charset) {
         this.src = src;
         this.charset = charset;
+        this.buf = null;
+    }
+
+    /**
+     * Создаёт поток с буфером и указанием кодировки, в которой будут раскодировать строки.
+     * <p/>
+     * Исходный поток вычитывается наперёд, поэтому читать из него в обход этого объекта нельзя.
+     *
+     * @param src
+     * @param charset
+     * @param bufferSize размер буфера
+     */
+    public LineInputStream(InputStream src, Charset charset, int bufferSize) {
+        this.src = src;
+        this.charset = charset;
+        this.buf = new byte[bufferSize];
     }
 
     /**
@@ -80,14 +110,80 @@ public class LineInputStream extends InputStream {
      * @throws IOException
      */
     public String readLine() throws IOException {
+        if (buf != null) {
+            return readBufferedLine();
+        }
         byte[] bytes = readUntilLineSeparator();
+        return bytes == null ? null : decode(bytes, 0, bytes.length);
+    }
+
+    private String decode(byte[] bytes, int offset, int length) throws IOException {
         try {
-            return bytes == null ? null : StringUtils.decodeOrDie(bytes, charset);
+            return StringUtils.decodeOrDie(bytes, offset, length, charset);
         } catch (CharacterCodingException e) {
-            throw new IOException("Error decoding read bytes " + Spell.get(bytes) + " into " + charset + " string", e);
+            throw new IOException("Error decoding read bytes " + Spell.get(Arrays.copyOfRange(bytes, offset, offset + length)) + " into " + charset + " string", e);
+        }
+    }
+
+    /** Если строка целиком в буфере и в ней нет лишних CR, раскодируем её прямо из буфера. */
+    private String readBufferedLine() throws IOException {
+        baos.reset();
+        while (true) {
+            if (pos >= limit && !fill()) {
+                return baos.size() == 0 ? null : decode(baos.toByteArray(), 0, baos.size());
+            }
+            int i = pos;
+            int firstCr = -1;
+            while (i < limit) {
+                byte b = buf[i];
+                if (b == 0xa) {
+                    break;
+                } else if (b == 0xd && firstCr < 0) {
+                    firstCr = i;
+                }
+                i++;
+            }
+            if (i == limit) {
+                appendWithoutCr(pos, limit);
+                pos = limit;
+                continue;
+            }
+            String result;
+            if (baos.size() == 0 && firstCr < 0) {
+                result = decode(buf, pos, i - pos);
+            } else if (baos.size() == 0 && firstCr == i - 1) {
+                result = decode(buf, pos, firstCr - pos);
+            } else {
+                appendWithoutCr(pos, i);
+                result = decode(baos.toByteArray(), 0, baos.size());
+            }
+            pos = i + 1;
+            return result;
+        }
+    }
+
+    private void appendWithoutCr(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] != 0xd) {
+                baos.write(buf[i]);
+            }
         }
     }
 
+    /** @return false, если исходный поток кончился */
+    private boolean fill() throws IOException {
+        int read;
+        do {
+            read = src.read(buf, 0, buf.length);
+        } while (read == 0);
+        if (read < 0) {
+            return false;
+        }
+        pos = 0;
+        limit = read;
+        return true;
+    }
+
     /**
      * Создаёт строку из переданных байтов. Если , если считанные
      *
@@ -102,7 +198,7 @@ public class LineInputStream extends InputStream {
     public byte[] readUntilLineSeparator() throws IOException {
         baos.reset();
         while (true) {
-            int val = src.read();
+            int val = read();
             switch (val) {
                 case -1:
                     return baos.size() == 0 ? null : baos.toByteArray();
@@ -122,7 +218,13 @@ public class LineInputStream extends InputStream {
 
     @Override
     public int read() throws IOException {
-        return src.read();
+        if (buf == null) {
+            return src.read();
+        }
+        if (pos >= limit && !fill()) {
+            return -1;
+        }
+        return buf[pos++] & 0xff;
     }
 
     @Override
@@ -132,36 +234,58 @@ public class LineInputStream extends InputStream {
 
     @Override
     public int read(byte[] b) throws IOException {
-        return src.read(b);
+        return read(b, 0, b.length);
     }
 
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
+        if (buf == null || len == 0) {
+            return src.read(b, off, len);
+        }
+        if (pos < limit) {
+            int count = Math.min(len, limit - pos);
+            System.arraycopy(buf, pos, b, off, count);
+            pos += count;
+            return count;
+        }
         return src.read(b, off, len);
     }
 
     @Override
     public long skip(long n) throws IOException {
+        if (buf == null || n <= 0L) {
+            return src.skip(n);
+        }
+        if (pos < limit) {
+            int count = (int) Math.min(n, (long) (limit - pos));
+            pos += count;
+            return count;
+        }
         return src.skip(n);
     }
 
     @Override
     public int available() throws IOException {
-        return src.available();
+        return buf == null ? src.available() : limit - pos + src.available();
     }
 
     @Override
     public synchronized void mark(int readlimit) {
-        src.mark(readlimit);
+        if (buf == null) {
+            src.mark(readlimit);
+        }
     }
 
     @Override
     public synchronized void reset() throws IOException {
+        if (buf != null) {
+            throw new IOException("mark/reset not supported");
+        }
         src.reset();
     }
 
     @Override
     public boolean markSupported() {
-        return src.markSupported();
+        return buf == null && src.markSupported();
     }
 }
@@ -0,0 +1,121 @@
+package tk.bolovsrol.utils.localcache;
+
+import java.util.Collection;
+import java.util.function.ToLongFunction;
+
+/**
+ * Локальный кэш, извещающий одноимённые кэши на других узлах об изменениях через {@link InvalidationBus}.
+ * <p>
+ * {@link #drop(Comparable)} и {@link #dropBunch(Collection)} удаляют объект на всех узлах.
+ * {@link #put(Comparable, Object)} записывает объект локально, а на прочих узлах
+ * удаляет объекты с версией младше записанной. Если функция версии не указана,
+ * запись удаляет объект на прочих узлах безусловно.
+ * <p>
+ * Объекты, загруженные фабрикой при промахе, никуда не рассылаются.
+ * <p>
+ * Доставка событий не гарантирована, поэтому таймаут хранилища всё же стоит ограничить
+ * разумным сроком, но уже не секундами, а часами.
+ *
+ * @param <I> идентификатор кешируемых объектов
+ * @param <O> кешируемый объект
+ */
+public class DistributedLocalCache<I extends Comparable<? super I>, O> extends LocalCache<I, O> {
+
+    private final InvalidationBus bus;
+    private final String name;
+    private final InvalidationIdCodec<I> idCodec;
+    private final ToLongFunction<O> versionOf;
+
+    /**
+     * Создаёт кэш с хранилищем по умолчанию.
+     *
+     * @param bus шина
+     * @param name имя кэша, одинаковое на всех узлах
+     * @param idCodec кодек идентификаторов
+     * @param versionOfOrNull функция, возвращающая версию объекта, или нул
+     * @param factory фабрика объектов
+     */
+    public DistributedLocalCache(InvalidationBus bus, String name, InvalidationIdCodec<I> idCodec, ToLongFunction<O> versionOfOrNull, LocalCacheObjectFactory<I, O> factory) {
+        super(factory);
+        this.bus = bus;
+        this.name = name;
+        this.idCodec = idCodec;
+        this.versionOf = versionOfOrNull;
+        bus.register(name, this);
+    }
+
+    /**
+     * Создаёт кэш с указанным хранилищем.
+     *
+     * @param bus шина
+     * @param name имя кэша, одинаковое на всех узлах
+     * @param idCodec кодек идентификаторов
+     * @param versionOfOrNull функция, возвращающая версию объекта, или нул
+     * @param container хранилище
+     * @param factory фабрика объектов
+     */
+    public DistributedLocalCache(InvalidationBus bus, String name, InvalidationIdCodec<I> idCodec, ToLongFunction<O> versionOfOrNull, LocalCacheStorage<I, O> container, LocalCacheObjectFactory<I, O> factory) {
+        super(container, factory);
+        this.bus = bus;
+        this.name = name;
+        this.idCodec = idCodec;
+        this.versionOf = versionOfOrNull;
+        bus.register(name, this);
+    }
+
+    @Override public void put(I id, O o) {
+        super.put(id, o);
+        if (versionOf == null) {
+            bus.publishDrop(name, idCodec.encode(id));
+        } else {
+            bus.publish(name, idCodec.encode(id), versionOf.applyAsLong(o));
+        }
+    }
+
+    /** Загруженный фабрикой объект — не новость для других узлов, поэтому он записывается молча. */
+    @Override protected void putLoaded(I id, O o) {
+        super.put(id, o);
+    }
+
+    @Override public void drop(I id) {
+        super.drop(id);
+        bus.publishDrop(name, idCodec.encode(id));
+    }
+
+    @Override public void dropBunch(Collection<I> ids) {
+        super.dropBunch(ids);
+        for (I id : ids) {
+            bus.publishDrop(name, idCodec.encode(id));
+        }
+    }
+
+    /**
+     * Обрабатывает событие, пришедшее с другого узла.
+     *
+     * @param encodedId закодированный ид
+     * @param drop объект удалён безусловно
+     * @param version версия объекта, записанного на другом узле, если это не удаление
+     * @throws IllegalArgumentException ид не удалось раскодировать
+     */
+    void receive(String encodedId, boolean drop, long version) throws IllegalArgumentException {
+        I id = idCodec.decode(encodedId);
+        LocalCacheStorage<I, O> storage = getStorage();
+        if (drop || versionOf == null) {
+            storage.remove(id);
+        } else {
+            O local = storage.get(id);
+            if (local != null && versionOf.applyAsLong(local) < version) {
+                storage.remove(id, local);
+            }
+        }
+    }
+
+    /** Отключает кэш от шины. Кэшем можно продолжать пользоваться, но уже только локально. */
+    public void detach() {
+        bus.unregister(name, this);
+    }
+
+    public String getName() {
+        return name;
+    }
+}
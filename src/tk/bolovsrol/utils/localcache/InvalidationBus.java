@@ -0,0 +1,292 @@
+package tk.bolovsrol.utils.localcache;
+
+import tk.bolovsrol.utils.Spell;
+import tk.bolovsrol.utils.conf.AutoConfiguration;
+import tk.bolovsrol.utils.conf.Param;
+import tk.bolovsrol.utils.log.LogDome;
+import tk.bolovsrol.utils.threads.HaltableThread;
+import tk.bolovsrol.utils.threads.ShutdownException;
+import tk.bolovsrol.utils.time.Duration;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Шина инвалидации локальных кэшей, работающих на разных узлах.
+ * <p>
+ * Кэши {@link DistributedLocalCache} регистрируются в шине под уникальными именами
+ * и сообщают ей об удалении объектов и о записи новых версий объектов.
+ * Шина копит эти события в течение {@link Conf#batchDelay}, схлопывает повторы
+ * (удаление перекрывает запись, из нескольких записей остаётся старшая версия)
+ * и рассылает пачкой через {@link InvalidationTransport}. Получив пачку от другого узла,
+ * шина передаёт события одноимённым кэшам, и те выбрасывают устаревшие объекты.
+ * <p>
+ * Формат пакета: сигнатура, ид узла-отправителя, затем до конца пакета записи
+ * «имя кэша, ид объекта, признак удаления, версия». У удаления версия не используется,
+ * так что любое значение версии остаётся настоящей версией.
+ */
+public class InvalidationBus {
+
+    private static final int MAGIC = 0x4c434942;
+
+    public static class Conf extends AutoConfiguration {
+        @Param(desc = "время накопления исходящих событий перед отправкой пачки")
+        public Duration batchDelay = new Duration(20L);
+
+        @Param(desc = "количество накопленных событий, при котором пачка отправляется, не дожидаясь batchDelay")
+        public int maxBatchSize = 4096;
+    }
+
+    private final LogDome log;
+    private final InvalidationTransport transport;
+    private final Conf conf;
+
+    /** Ид узла, чтобы отличать свои пакеты, вернувшиеся через транспорт. */
+    private final long nodeId = new SecureRandom().nextLong();
+
+    private final ConcurrentMap<String, DistributedLocalCache<?, ?>> caches = new ConcurrentHashMap<>();
+
+    private final Object lock = new Object();
+    /** Накопленные события: имя кэша → ид объекта → событие. */
+    private Map<String, Map<String, Event>> pending = new LinkedHashMap<>();
+    private int pendingCount = 0;
+
+    private final Sender sender;
+
+    public InvalidationBus(LogDome log, InvalidationTransport transport, Conf conf) throws IOException {
+        this.log = log;
+        this.transport = transport;
+        this.conf = conf;
+        log.info("Invalidation bus " + Spell.get(transport.getCaption()) + " node " + Long.toHexString(nodeId) + ' ' + conf);
+        transport.open(this::receive);
+        this.sender = new Sender();
+        sender.start();
+    }
+
+    /**
+     * Регистрирует кэш под указанным именем. На всех узлах один и тот же кэш должен называться одинаково.
+     *
+     * @param cacheName имя кэша
+     * @param cache кэш
+     * @throws IllegalStateException кэш с таким именем уже зарегистрирован
+     */
+    void register(String cacheName, DistributedLocalCache<?, ?> cache) {
+        if (caches.putIfAbsent(cacheName, cache) != null) {
+            throw new IllegalStateException("Cache " + Spell.get(cacheName) + " is already registered");
+        }
+    }
+
+    void unregister(String cacheName, DistributedLocalCache<?, ?> cache) {
+        caches.remove(cacheName, cache);
+    }
+
+    /**
+     * Событие об объекте: удаление или запись версии. Удаление перекрывает запись,
+     * из записей остаётся старшая версия.
+     */
+    private static final class Event {
+        private final boolean drop;
+        private final long version;
+
+        private Event(boolean drop, long version) {
+            this.drop = drop;
+            this.version = version;
+        }
+
+        private Event merge(Event other) {
+            if (drop) {
+                return this;
+            }
+            if (other.drop) {
+                return other;
+            }
+            return version >= other.version ? this : other;
+        }
+    }
+
+    private static final Event DROP = new Event(true, 0L);
+
+    /**
+     * Ставит в очередь на отправку запись новой версии объекта.
+     *
+     * @param cacheName имя кэша
+     * @param encodedId закодированный ид объекта
+     * @param version версия записанного объекта
+     */
+    void publish(String cacheName, String encodedId, long version) {
+        enqueue(cacheName, encodedId, new Event(false, version));
+    }
+
+    /**
+     * Ставит в очередь на отправку безусловное удаление объекта.
+     *
+     * @param cacheName имя кэша
+     * @param encodedId закодированный ид объекта
+     */
+    void publishDrop(String cacheName, String encodedId) {
+        enqueue(cacheName, encodedId, DROP);
+    }
+
+    private void enqueue(String cacheName, String encodedId, Event event) {
+        synchronized (lock) {
+            Map<String, Event> events = pending.computeIfAbsent(cacheName, k -> new LinkedHashMap<>());
+            Event queued = events.get(encodedId);
+            if (queued != null) {
+                // ид уже ждёт отправки, считать его второй раз незачем
+                events.put(encodedId, queued.merge(event));
+                return;
+            }
+            events.put(encodedId, event);
+            pendingCount++;
+            if (pendingCount == 1 || pendingCount >= conf.maxBatchSize) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void receive(byte[] packet) {
+        try {
+            DataInputStream dis = new DataInputStream(new ByteArrayInputStream(packet));
+            if (dis.readInt() != MAGIC) {
+                log.warning("Unexpected invalidation packet of " + packet.length + " byte(s) ignored");
+                return;
+            }
+            if (dis.readLong() == nodeId) {
+                return;
+            }
+            while (dis.available() > 0) {
+                String cacheName = dis.readUTF();
+                String encodedId = dis.readUTF();
+                boolean drop = dis.readBoolean();
+                long version = dis.readLong();
+                DistributedLocalCache<?, ?> cache = caches.get(cacheName);
+                if (cache != null) {
+                    try {
+                        cache.receive(encodedId, drop, version);
+                    } catch (IllegalArgumentException e) {
+                        log.warning("Invalid id " + Spell.get(encodedId) + " for cache " + Spell.get(cacheName) + " ignored: " + e.getMessage());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.warning("Malformed invalidation packet of " + packet.length + " byte(s) ignored: " + e.getMessage());
+        }
+    }
+
+    private Map<String, Map<String, Event>> takeBatch(boolean wait) throws InterruptedException {
+        synchronized (lock) {
+            if (wait) {
+                while (pendingCount == 0) {
+                    lock.wait();
+                }
+                long deadline = System.currentTimeMillis() + conf.batchDelay.getMillis();
+                long rest;
+                while (pendingCount < conf.maxBatchSize && (rest = deadline - System.currentTimeMillis()) > 0L) {
+                    lock.wait(rest);
+                }
+            }
+            Map<String, Map<String, Event>> batch = pending;
+            pending = new LinkedHashMap<>();
+            pendingCount = 0;
+            return batch;
+        }
+    }
+
+    private void send(Map<String, Map<String, Event>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        int maxPacketSize = transport.getMaxPacketSize();
+        ByteArrayOutputStream packet = new ByteArrayOutputStream(maxPacketSize);
+        ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+        DataOutputStream packetDos = new DataOutputStream(packet);
+        DataOutputStream recordDos = new DataOutputStream(record);
+        int count = 0;
+        try {
+            writeHeader(packetDos);
+            int headerSize = packet.size();
+            for (Map.Entry<String, Map<String, Event>> cacheEntry : batch.entrySet()) {
+                for (Map.Entry<String, Event> entry : cacheEntry.getValue().entrySet()) {
+                    record.reset();
+                    recordDos.writeUTF(cacheEntry.getKey());
+                    recordDos.writeUTF(entry.getKey());
+                    recordDos.writeBoolean(entry.getValue().drop);
+                    recordDos.writeLong(entry.getValue().version);
+                    if (headerSize + record.size() > maxPacketSize) {
+                        log.warning("Invalidation record for " + Spell.get(cacheEntry.getKey()) + " id " + Spell.get(entry.getKey()) + " exceeds max packet size, skipped");
+                        continue;
+                    }
+                    if (packet.size() + record.size() > maxPacketSize) {
+                        transport.send(packet.toByteArray(), packet.size());
+                        packet.reset();
+                        writeHeader(packetDos);
+                    }
+                    record.writeTo(packet);
+                    count++;
+                }
+            }
+            if (packet.size() > headerSize) {
+                transport.send(packet.toByteArray(), packet.size());
+            }
+            log.trace("Sent " + count + " invalidation record(s)");
+        } catch (IOException e) {
+            log.warning("Error sending invalidation batch, " + count + " record(s) sent, the rest is lost: " + e.getMessage());
+        }
+    }
+
+    private void writeHeader(DataOutputStream dos) throws IOException {
+        dos.writeInt(MAGIC);
+        dos.writeLong(nodeId);
+    }
+
+    /**
+     * Останавливает шину: отправляет накопленные события и закрывает транспорт.
+     *
+     * @throws InterruptedException
+     * @throws ShutdownException
+     */
+    public void shutdown() throws InterruptedException, ShutdownException {
+        try {
+            sender.shutdown();
+        } finally {
+            try {
+                transport.close();
+            } catch (IOException e) {
+                log.warning(e);
+            }
+        }
+    }
+
+    private class Sender extends HaltableThread {
+        Sender() {
+            super("InvalidationBus-" + transport.getCaption());
+            setDaemon(true);
+        }
+
+        @Override public void run() {
+            try {
+                while (!isInterrupted()) {
+                    send(takeBatch(true));
+                }
+            } catch (InterruptedException e) {
+                // quit
+            } finally {
+                try {
+                    send(takeBatch(false));
+                } catch (InterruptedException e) {
+                    // не может быть, мы не ждём
+                }
+                log.info(getName() + " stopped.");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+package tk.bolovsrol.utils.localcache;
+
+import tk.bolovsrol.utils.log.Log;
+import tk.bolovsrol.utils.log.LogDome;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Проверяет шину инвалидации на одной машине: поднимает два узла в одной джава-машине,
+ * связывает их мультикастом через петлевой интерфейс и смотрит,
+ * что записи и удаления на одном узле выбрасывают устаревшие объекты на другом,
+ * а более свежие объекты и объекты, загруженные фабрикой, остаются на месте.
+ * <p/>
+ * Запуск: <code>java tk.bolovsrol.utils.localcache.InvalidationBusLoopbackCheck [интерфейс] [порт]</code>
+ */
+public class InvalidationBusLoopbackCheck {
+
+    private static final long TIMEOUT = 5000L;
+
+    private static final class Item {
+        private final long version;
+
+        private Item(long version) {
+            this.version = version;
+        }
+    }
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        LogDome log = Log.getInstance();
+        MulticastInvalidationTransport.Conf transportConf = new MulticastInvalidationTransport.Conf();
+        transportConf.networkInterface = args.length > 0 ? args[0] : "lo";
+        if (args.length > 1) {
+            transportConf.port = Integer.parseInt(args[1]);
+        }
+        InvalidationBus.Conf busConf = new InvalidationBus.Conf();
+
+        InvalidationBus busA = new InvalidationBus(log, new MulticastInvalidationTransport(log, transportConf), busConf);
+        InvalidationBus busB = new InvalidationBus(log, new MulticastInvalidationTransport(log, transportConf), busConf);
+        try {
+            TimedLocalCacheStorage<Long, Item> storageA = new TimedLocalCacheStorage<>(60000L);
+            TimedLocalCacheStorage<Long, Item> storageB = new TimedLocalCacheStorage<>(60000L);
+            DistributedLocalCache<Long, Item> a = new DistributedLocalCache<>(busA, "items", InvalidationIdCodec.LONG, item -> item.version, storageA, id -> new Item(100L));
+            DistributedLocalCache<Long, Item> b = new DistributedLocalCache<>(busB, "items", InvalidationIdCodec.LONG, item -> item.version, storageB, id -> new Item(100L));
+
+            b.put(1L, new Item(1L));
+            a.put(1L, new Item(2L));
+            check("newer version on A evicts older on B", () -> storageB.get(1L) == null);
+            check("A keeps its own value", () -> storageA.get(1L) != null && storageA.get(1L).version == 2L);
+
+            b.put(2L, new Item(5L));
+            a.put(2L, new Item(3L));
+            b.put(3L, new Item(Long.MAX_VALUE));
+            a.put(3L, new Item(Long.MAX_VALUE - 1L));
+            b.put(4L, new Item(9L));
+            a.get(4L);
+            b.get(5L);
+            a.drop(5L);
+            check("drop on A evicts on B", () -> storageB.get(5L) == null);
+            // всё, что A отправил до удаления, B уже получил
+            check("older version on A keeps newer on B", () -> storageB.get(2L) != null && storageB.get(2L).version == 5L);
+            check("max version is an ordinary version", () -> storageB.get(3L) != null);
+            check("factory-loaded object on A is not published", () -> storageB.get(4L) != null);
+        } finally {
+            busA.shutdown();
+            busB.shutdown();
+        }
+        System.out.println(failures == 0 ? "loopback: ok" : "loopback: " + failures + " FAILED");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static void check(String caption, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                System.out.println("FAILED: " + caption);
+                failures++;
+                return;
+            }
+            Thread.sleep(10L);
+        }
+        System.out.println("ok: " + caption);
+    }
+}
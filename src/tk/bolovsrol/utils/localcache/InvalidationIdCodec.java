@@ -0,0 +1,39 @@
+package tk.bolovsrol.utils.localcache;
+
+/**
+ * Превращает идентификатор кэшированного объекта в строку для передачи по шине инвалидации и обратно.
+ *
+ * @param <I> идентификатор кешируемых объектов
+ * @see InvalidationBus
+ */
+public interface InvalidationIdCodec<I> {
+
+    InvalidationIdCodec<Long> LONG = new InvalidationIdCodec<Long>() {
+        @Override public String encode(Long id) { return id.toString(); }
+
+        @Override public Long decode(String encoded) { return Long.valueOf(encoded); }
+    };
+
+    InvalidationIdCodec<Integer> INTEGER = new InvalidationIdCodec<Integer>() {
+        @Override public String encode(Integer id) { return id.toString(); }
+
+        @Override public Integer decode(String encoded) { return Integer.valueOf(encoded); }
+    };
+
+    InvalidationIdCodec<String> STRING = new InvalidationIdCodec<String>() {
+        @Override public String encode(String id) { return id; }
+
+        @Override public String decode(String encoded) { return encoded; }
+    };
+
+    String encode(I id);
+
+    /**
+     * Восстанавливает идентификатор из строки.
+     *
+     * @param encoded строка, созданная методом {@link #encode(Object)}
+     * @return идентификатор
+     * @throws IllegalArgumentException строка не является корректным идентификатором
+     */
+    I decode(String encoded) throws IllegalArgumentException;
+}
@@ -0,0 +1,45 @@
+package tk.bolovsrol.utils.localcache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Транспорт шины инвалидации {@link InvalidationBus}: доставляет пакеты всем прочим узлам.
+ * <p>
+ * Транспорт ничего не знает о содержимом пакетов, его дело — разослать пакет
+ * и передать получателю пакеты, пришедшие от других узлов. Свои собственные пакеты
+ * транспорт может и вернуть, шина их опознает и проигнорирует.
+ * <p>
+ * Доставка не гарантируется, поэтому длинные таймауты кэша всё равно следует
+ * выбирать с оглядкой на возможные потери.
+ */
+public interface InvalidationTransport extends Closeable {
+
+    /**
+     * Начинает приём пакетов. Пакеты передаются получателю из треда транспорта.
+     *
+     * @param receiver получатель входящих пакетов
+     * @throws IOException не удалось подключиться
+     */
+    void open(Consumer<byte[]> receiver) throws IOException;
+
+    /**
+     * Рассылает пакет всем узлам.
+     *
+     * @param packet буфер с пакетом
+     * @param length длина пакета в буфере
+     * @throws IOException
+     */
+    void send(byte[] packet, int length) throws IOException;
+
+    /** @return максимальный размер пакета, который транспорт способен доставить за раз */
+    int getMaxPacketSize();
+
+    /**
+     * Возвращает краткое описание транспорта для человеческого восприятия.
+     *
+     * @return краткое описание транспорта
+     */
+    String getCaption();
+}
@@ -69,10 +69,28 @@ public class LocalCache<I extends Comparable<? super I>, O> {
         this.factory = factory;
     }
 
+    /** @return хранилище данных кэша */
+    protected LocalCacheStorage<I, O> getStorage() {
+        return container;
+    }
+
     public void put(I id, O o) {
         container.put(id, o);
     }
 
+    /**
+     * Кладёт в кэш объект, который только что создала фабрика.
+     * <p>
+     * Здесь это просто {@link #put(Comparable, Object)}, но наследник может
+     * отличать загруженные объекты от записанных снаружи.
+     *
+     * @param id
+     * @param o
+     */
+    protected void putLoaded(I id, O o) {
+        put(id, o);
+    }
+
     public void drop(I id) {
         container.remove(id);
     }
@@ -86,7 +104,7 @@ public class LocalCache<I extends Comparable<? super I>, O> {
         if (o == null) {
             o = factory.newObject(id);
             if (o != null) {
-                put(id, o);
+                putLoaded(id, o);
             }
         }
         return o;
@@ -122,7 +140,7 @@ public class LocalCache<I extends Comparable<? super I>, O> {
         if (!missedIds.isEmpty()) {
             Map<I, O> ios = createBunch(missedIds);
             for (Map.Entry<I, O> entry : ios.entrySet()) {
-                put(entry.getKey(), entry.getValue());
+                putLoaded(entry.getKey(), entry.getValue());
             }
             result.putAll(ios);
         }
@@ -177,7 +195,7 @@ public class LocalCache<I extends Comparable<? super I>, O> {
             try {
                 o = factory.newObject(id);
                 if (o != null) {
-                    put(id, o);
+                    putLoaded(id, o);
                     return o;
                 }
             } catch (ObjectCreationFailedException e) {
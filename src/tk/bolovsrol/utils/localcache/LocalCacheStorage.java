@@ -1,6 +1,7 @@
 package tk.bolovsrol.utils.localcache;
 
 import java.util.Collection;
+import java.util.Objects;
 
 /**
  * Хранилище информации для локал-кэша.
@@ -25,6 +26,21 @@ public interface LocalCacheStorage<I extends Comparable<? super I>, O> {
      */
     void remove(I id);
 
+    /**
+     * Удаляет элемент из кэша, только если под ид всё ещё хранится равный ему объект
+     * (по {@link Object#equals(Object)}, как {@link java.util.concurrent.ConcurrentMap#remove(Object, Object)}).
+     * <p>
+     * Реализация по умолчанию не атомарна, хранилища на конкурентных картах делают это атомарно.
+     *
+     * @param id
+     * @param object
+     */
+    default void remove(I id, O object) {
+        if (Objects.equals(get(id), object)) {
+            remove(id);
+        }
+    }
+
     /**
      * Удаляет больше не нужные элементы из кэша.
      *
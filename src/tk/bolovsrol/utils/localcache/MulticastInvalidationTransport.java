@@ -0,0 +1,120 @@
+package tk.bolovsrol.utils.localcache;
+
+import tk.bolovsrol.utils.conf.AutoConfiguration;
+import tk.bolovsrol.utils.conf.Param;
+import tk.bolovsrol.utils.log.LogDome;
+import tk.bolovsrol.utils.socket.multicast.MulticastGroupSocket;
+import tk.bolovsrol.utils.socket.multicast.MulticastSocketFactory;
+import tk.bolovsrol.utils.socket.multicast.PlainMulticastSocketFactory;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Транспорт шины инвалидации поверх UDP multicast, см. {@link MulticastGroupSocket}.
+ * <p>
+ * Все узлы, подписанные на одну группу и порт, получают пакеты друг друга.
+ * Для проверки на одной машине достаточно указать сетевой интерфейс <code>lo</code>,
+ * см. {@link InvalidationBusLoopbackCheck}.
+ */
+public class MulticastInvalidationTransport implements InvalidationTransport {
+
+    public static class Conf extends AutoConfiguration {
+        @Param(desc = "адрес мультикаст-группы")
+        public String group = "239.255.76.73";
+
+        @Param(desc = "порт мультикаст-группы")
+        public int port = 47673;
+
+        @Param(desc = "название сетевого интерфейса; если не указано, используется интерфейс по умолчанию")
+        public String networkInterface = null;
+
+        @Param(desc = "TTL исходящих пакетов; 1 — не выходить за пределы подсети")
+        public int timeToLive = 1;
+
+        @Param(desc = "максимальный размер пакета, байт; больше MTU ставить не стоит")
+        public int maxPacketSize = 1400;
+    }
+
+    private final LogDome log;
+    private final Conf conf;
+    private final MulticastSocketFactory socketFactory;
+
+    private MulticastGroupSocket socket;
+    private volatile boolean closed;
+
+    public MulticastInvalidationTransport(LogDome log, Conf conf) {
+        this(log, conf, PlainMulticastSocketFactory.getStatic());
+    }
+
+    public MulticastInvalidationTransport(LogDome log, Conf conf, MulticastSocketFactory socketFactory) {
+        this.log = log;
+        this.conf = conf;
+        this.socketFactory = socketFactory;
+    }
+
+    @Override public synchronized void open(Consumer<byte[]> receiver) throws IOException {
+        if (socket != null) {
+            throw new IllegalStateException("Transport is already open.");
+        }
+        socket = new MulticastGroupSocket(socketFactory, conf.group, conf.port, conf.networkInterface, conf.timeToLive);
+        log.info("Joined multicast group " + socket);
+        Thread thread = new Receiver(receiver);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override public void send(byte[] packet, int length) throws IOException {
+        socket.send(packet, length);
+    }
+
+    @Override public int getMaxPacketSize() {
+        return conf.maxPacketSize;
+    }
+
+    @Override public String getCaption() {
+        return "multicast:" + conf.group + ':' + conf.port;
+    }
+
+    @Override public synchronized void close() throws IOException {
+        if (socket == null || closed) {
+            return;
+        }
+        closed = true;
+        socket.close();
+    }
+
+    @Override public String toString() {
+        return getCaption();
+    }
+
+    private class Receiver extends Thread {
+        private final Consumer<byte[]> receiver;
+
+        Receiver(Consumer<byte[]> receiver) {
+            super("InvalidationReceiver-" + conf.group + ':' + conf.port);
+            this.receiver = receiver;
+        }
+
+        @Override public void run() {
+            byte[] buf = new byte[65536];
+            DatagramPacket dp = new DatagramPacket(buf, buf.length);
+            while (!closed) {
+                try {
+                    dp.setLength(buf.length);
+                    socket.receive(dp);
+                    receiver.accept(Arrays.copyOfRange(buf, dp.getOffset(), dp.getOffset() + dp.getLength()));
+                } catch (IOException e) {
+                    if (!closed) {
+                        log.warning(e);
+                    }
+                } catch (Throwable e) {
+                    log.exception(e);
+                }
+            }
+            log.trace(getName() + " stopped.");
+        }
+    }
+}
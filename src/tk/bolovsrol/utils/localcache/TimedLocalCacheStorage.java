@@ -49,6 +49,10 @@ public class TimedLocalCacheStorage<I extends Comparable<? super I>, O> implemen
         data.remove(id);
     }
 
+    @Override public void remove(I id, O object) {
+        data.remove(id, object);
+    }
+
     @Override public void removeAll(Collection<I> ids) {
         data.keySet().removeAll(ids);
     }
@@ -40,6 +40,10 @@ class WatchedLocalCacheStorage<I extends Comparable<? super I>, O> implements Lo
         data.remove(id);
     }
 
+    @Override public void remove(I id, O object) {
+        data.remove(id, object);
+    }
+
     @Override public void removeAll(Collection<I> ids) {
         data.keySet().removeAll(ids);
     }
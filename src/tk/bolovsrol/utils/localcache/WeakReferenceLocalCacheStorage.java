@@ -1,6 +1,7 @@
 package tk.bolovsrol.utils.localcache;
 
 import java.util.Collection;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -20,6 +21,13 @@ public class WeakReferenceLocalCacheStorage<I extends Comparable<? super I>, O>
         }
     }
 
+    @Override public void remove(I id, O object) {
+        CachedObjectReference<I, O> sr = data.get(id);
+        if (sr != null && Objects.equals(sr.get(), object) && data.remove(id, sr)) {
+            sr.clear();
+        }
+    }
+
     @Override public void removeAll(Collection<I> ids) {
         for (I id : ids) {
             remove(id);
@@ -0,0 +1,255 @@
+package tk.bolovsrol.utils.objectpool;
+
+import tk.bolovsrol.utils.StringDumpBuilder;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Ограниченный пул объектов одного типа для горячих мест: буферов, кодеков и прочего добра,
+ * которое дорого создавать и нельзя использовать несколькими тредами одновременно.
+ * <p/>
+ * В отличие от {@link ObjectPool}, пул держит объекты жёсткими ссылками, зато их количество ограничено,
+ * и при возврате объекта ничего не аллоцируется.
+ * <p/>
+ * У каждого треда есть свой магазин на {@code magazineSize} объектов, с которым тред работает без всякой
+ * синхронизации. Когда магазин пуст или переполнен, тред обращается к общему хранилищу на {@code sharedCapacity}
+ * объектов — массиву ячеек, которые занимаются и освобождаются через CAS. Если и там места нет,
+ * возвращаемый объект просто выкидывается. Так что всего пул удерживает не более
+ * {@code sharedCapacity + magazineSize × количество тредов} объектов.
+ * <p/>
+ * При возврате объект можно привести в исходное состояние хуком {@code recycler};
+ * если хук вернёт false, объект в пул не попадёт (например, буфер слишком распух).
+ * <p/>
+ * Использовать предполагается как-то так:
+ * <pre>
+ * BoundedObjectPool&lt;byte[]&gt; bufferPool = new BoundedObjectPool&lt;&gt;(() -&gt; new byte[8192], null, 64, 8);
+ * ...
+ * byte[] buf = bufferPool.get();
+ * try {
+ *     work(buf);
+ * } finally {
+ *     bufferPool.put(buf);
+ * }
+ * </pre>
+ *
+ * @param <O> тип объектов пула
+ */
+public class BoundedObjectPool<O> {
+
+    public static final int DEFAULT_MAGAZINE_SIZE = 8;
+
+    private static final class Magazine {
+        final Object[] items;
+        int size;
+
+        Magazine(int capacity) {
+            this.items = new Object[capacity];
+        }
+    }
+
+    private final Supplier<? extends O> factory;
+    private final Predicate<? super O> recycler;
+
+    private final AtomicReferenceArray<O> shared;
+    /** Примерное количество занятых ячеек общего хранилища, чтобы не перебирать его впустую. */
+    private final AtomicInteger sharedCount = new AtomicInteger();
+    private final int magazineSize;
+    private final ThreadLocal<Magazine> magazines;
+
+    private final LongAdder magazineHits = new LongAdder();
+    private final LongAdder sharedHits = new LongAdder();
+    private final LongAdder creations = new LongAdder();
+    private final LongAdder returns = new LongAdder();
+    private final LongAdder discards = new LongAdder();
+
+    /**
+     * Создаёт пул с магазинами размера {@link #DEFAULT_MAGAZINE_SIZE}.
+     *
+     * @param factory создатель новых объектов
+     * @param recyclerOrNull хук, приводящий возвращаемый объект в исходное состояние, или нул
+     * @param sharedCapacity ёмкость общего хранилища
+     */
+    public BoundedObjectPool(Supplier<? extends O> factory, Predicate<? super O> recyclerOrNull, int sharedCapacity) {
+        this(factory, recyclerOrNull, sharedCapacity, DEFAULT_MAGAZINE_SIZE);
+    }
+
+    /**
+     * Создаёт пул.
+     *
+     * @param factory создатель новых объектов
+     * @param recyclerOrNull хук, приводящий возвращаемый объект в исходное состояние
+     * и возвращающий false, если объект больше не годится; или нул
+     * @param sharedCapacity ёмкость общего хранилища
+     * @param magazineSize ёмкость магазина каждого треда; 0 — без магазинов
+     */
+    public BoundedObjectPool(Supplier<? extends O> factory, Predicate<? super O> recyclerOrNull, int sharedCapacity, int magazineSize) {
+        if (sharedCapacity < 0 || magazineSize < 0) {
+            throw new IllegalArgumentException("Negative capacity: shared " + sharedCapacity + ", magazine " + magazineSize);
+        }
+        this.factory = factory;
+        this.recycler = recyclerOrNull;
+        this.shared = new AtomicReferenceArray<>(sharedCapacity);
+        this.magazineSize = magazineSize;
+        this.magazines = magazineSize == 0 ? null : ThreadLocal.withInitial(() -> new Magazine(magazineSize));
+    }
+
+    /**
+     * Отдаёт свободный объект или, если свободных нет, создаёт новый.
+     * <p/>
+     * После использования объект следует вернуть методом {@link #put(Object)}.
+     *
+     * @return объект
+     */
+    @SuppressWarnings("unchecked")
+    public O get() {
+        if (magazines != null) {
+            Magazine magazine = magazines.get();
+            if (magazine.size > 0) {
+                int i = --magazine.size;
+                O result = (O) magazine.items[i];
+                magazine.items[i] = null;
+                magazineHits.increment();
+                return result;
+            }
+        }
+        O result = pollShared();
+        if (result != null) {
+            sharedHits.increment();
+            return result;
+        }
+        creations.increment();
+        return factory.get();
+    }
+
+    /**
+     * Возвращает объект в пул. Можно передать нул, тогда метод ничего не будет делать.
+     *
+     * @param object объект или нул
+     */
+    public void put(O object) {
+        if (object == null) {
+            return;
+        }
+        if (recycler != null && !recycler.test(object)) {
+            discards.increment();
+            return;
+        }
+        returns.increment();
+        if (magazines != null) {
+            Magazine magazine = magazines.get();
+            if (magazine.size < magazineSize) {
+                magazine.items[magazine.size++] = object;
+                return;
+            }
+        }
+        if (!offerShared(object)) {
+            discards.increment();
+        }
+    }
+
+    private O pollShared() {
+        int capacity = shared.length();
+        if (capacity == 0 || sharedCount.get() <= 0) {
+            return null;
+        }
+        int start = probeStart(capacity);
+        for (int n = 0; n < capacity; n++) {
+            int i = start + n;
+            if (i >= capacity) {
+                i -= capacity;
+            }
+            if (shared.get(i) != null) {
+                O result = shared.getAndSet(i, null);
+                if (result != null) {
+                    sharedCount.decrementAndGet();
+                    return result;
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean offerShared(O object) {
+        int capacity = shared.length();
+        if (sharedCount.get() >= capacity) {
+            return false;
+        }
+        int start = probeStart(capacity);
+        for (int n = 0; n < capacity; n++) {
+            int i = start + n;
+            if (i >= capacity) {
+                i -= capacity;
+            }
+            if (shared.get(i) == null && shared.compareAndSet(i, null, object)) {
+                sharedCount.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Разные треды начинают перебор ячеек с разных мест, чтобы меньше толкаться. */
+    private static int probeStart(int capacity) {
+        int h = (int) Thread.currentThread().getId() * 0x9e3779b9;
+        return (h >>> 1) % capacity;
+    }
+
+    /** Забывает все объекты общего хранилища и магазина текущего треда. */
+    public void clear() {
+        if (magazines != null) {
+            magazines.remove();
+        }
+        for (int i = 0; i < shared.length(); i++) {
+            if (shared.getAndSet(i, null) != null) {
+                sharedCount.decrementAndGet();
+            }
+        }
+    }
+
+    /** @return количество объектов, выданных из магазинов тредов */
+    public long getMagazineHits() {
+        return magazineHits.sum();
+    }
+
+    /** @return количество объектов, выданных из общего хранилища */
+    public long getSharedHits() {
+        return sharedHits.sum();
+    }
+
+    /** @return количество промахов, то есть созданных объектов */
+    public long getCreations() {
+        return creations.sum();
+    }
+
+    /** @return количество принятых обратно объектов */
+    public long getReturns() {
+        return returns.sum();
+    }
+
+    /** @return количество выкинутых объектов: отвергнутых хуком или не поместившихся */
+    public long getDiscards() {
+        return discards.sum();
+    }
+
+    /** @return примерное количество объектов в общем хранилище */
+    public int getSharedSize() {
+        return sharedCount.get();
+    }
+
+    @Override public String toString() {
+        return new StringDumpBuilder()
+                .append("sharedCapacity", shared.length())
+                .append("magazineSize", magazineSize)
+                .append("shared", sharedCount.get())
+                .append("magazineHits", magazineHits.sum())
+                .append("sharedHits", sharedHits.sum())
+                .append("creations", creations.sum())
+                .append("returns", returns.sum())
+                .append("discards", discards.sum())
+                .toString();
+    }
+}
@@ -32,6 +32,8 @@ import java.util.concurrent.ConcurrentMap;
  *     foobarPool.put(foobar);
  * }
  * </pre>
+ * <p/>
+ * Для объектов одного класса на горячих путях лучше подходит {@link BoundedObjectPool}.
  */
 public class ObjectPool<O> {
 
@@ -0,0 +1,91 @@
+package tk.bolovsrol.utils.pherialize;
+
+import tk.bolovsrol.utils.benchmark.Comparer;
+import tk.bolovsrol.utils.benchmark.Repeater;
+import tk.bolovsrol.utils.io.NullOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сравнивает работу со строкой целиком (сериализация в строку и её перекодирование в байты,
+ * десериализация из строки) с потоковой работой (сериализация прямо в {@link java.io.OutputStream},
+ * десериализация из {@link java.io.InputStream}) на посылке заданного размера.
+ * <p>
+ * Прежний сериализатор искал ссылки перебором всей истории, то есть работал за квадрат от количества
+ * массивов и объектов, так что на посылках в сотню мегабайт его не дождаться, и здесь он не участвует.
+ * <p>
+ * Запуск: <code>java tk.bolovsrol.utils.pherialize.PherializeBenchmark [размер посылки, МБ] [итерации]</code>
+ */
+public class PherializeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        List<Object> payload = new ArrayList<>();
+        long bytes = 0L;
+        for (int i = 0; bytes < megabytes * 1024L * 1024L; i++) {
+            Map<String, Object> record = new LinkedHashMap<>();
+            record.put("id", i);
+            record.put("name", "Запись номер " + i);
+            record.put("score", i / 7.0);
+            record.put("active", (i & 1) == 0);
+            List<String> tags = new ArrayList<>();
+            for (int j = 0; j < (i & 3); j++) {
+                tags.add("tag" + j);
+            }
+            record.put("tags", tags);
+            payload.add(record);
+            bytes += 120L + (i & 3) * 15L;
+        }
+        Serializer serializer = new Serializer();
+        byte[] encoded = serializer.serialize(payload).getBytes(StandardCharsets.UTF_8);
+        System.out.println("payload:     " + payload.size() + " records, " + encoded.length / 1024L / 1024L + " MB");
+
+        long[] sink = new long[2];
+        Comparer serialize = new Comparer(
+              new Repeater() {
+                  @Override public void iteration() {
+                      sink[0] += serializer.serialize(payload).getBytes(StandardCharsets.UTF_8).length;
+                  }
+              },
+              new Repeater() {
+                  @Override public void iteration() {
+                      try {
+                          serializer.serialize(payload, NullOutputStream.getInstance());
+                      } catch (IOException e) {
+                          throw new RuntimeException(e);
+                      }
+                  }
+              });
+        serialize.run(1, iterations);
+        System.out.println("serialize:   " + serialize.getAverageReport());
+
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream(encoded.length);
+        serializer.serialize(payload, streamed);
+        System.out.println("output:      " + (java.util.Arrays.equals(encoded, streamed.toByteArray()) ? "match" : "MISMATCH"));
+
+        Comparer unserialize = new Comparer(
+              new Repeater() {
+                  @Override public void iteration() {
+                      String data = new String(encoded, StandardCharsets.UTF_8);
+                      sink[1] += new Unserializer(data).unserializeObject().toArray().size();
+                  }
+              },
+              new Repeater() {
+                  @Override public void iteration() {
+                      sink[1] -= new Unserializer(new ByteArrayInputStream(encoded), StandardCharsets.UTF_8).unserializeObject().toArray().size();
+                  }
+              });
+        unserialize.run(1, iterations);
+        System.out.println("unserialize: " + unserialize.getAverageReport());
+        System.out.println("records:     " + (sink[1] == 0L ? "match" : "MISMATCH"));
+    }
+}
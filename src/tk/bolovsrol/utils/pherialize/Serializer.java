@@ -25,12 +25,19 @@ package tk.bolovsrol.utils.pherialize;
 
 import tk.bolovsrol.utils.pherialize.exceptions.SerializeException;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -38,6 +45,11 @@ import java.util.Map;
 
 /**
  * Serializes Java objects in a PHP serializer format string.
+ * <p>
+ * The result can be returned as a string or written to a {@link Writer} or
+ * {@link OutputStream} while it is produced, so large payloads don't have to
+ * be kept in memory. A serializer is not thread safe, and each serialize call
+ * starts with a fresh reference table.
  *
  * @author Klaus Reimer (k.reimer@iplabs.de)
  * @version $Revision$
@@ -50,6 +62,39 @@ public class Serializer {
     /** The object history for resolving references */
     private final List<Object> history;
 
+    /** Index of the first occurrence of each referenceable object in the history */
+    private final Map<Object, Integer> historyIndex;
+
+    /** Writer the buffer is drained into, or null when serializing into a string */
+    private Writer sink;
+
+    /** Buffer length at which it is drained into the sink */
+    private static final int SINK_THRESHOLD = 8192;
+
+    /** Fields serialized for each class */
+    private static final ClassValue<Field[]> SERIALIZED_FIELDS = new ClassValue<Field[]>() {
+        @Override protected Field[] computeValue(final Class<?> type) {
+            List<Field> result = new ArrayList<Field>();
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    if (Modifier.isVolatile(field.getModifiers())) {
+                        continue;
+                    }
+                    try {
+                        field.setAccessible(true);
+                        result.add(field);
+                    } catch (final RuntimeException e) {
+                        // Field is just ignored when it is not accessible
+                    }
+                }
+            }
+            return result.toArray(new Field[result.size()]);
+        }
+    };
+
 
     /**
      * Constructor
@@ -68,6 +113,7 @@ public class Serializer {
         super();
         this.charset = charset;
         this.history = new ArrayList<Object>();
+        this.historyIndex = new IdentityHashMap<Object, Integer>();
     }
 
 
@@ -79,14 +125,134 @@ public class Serializer {
      */
 
     public String serialize(final Object object) {
-        StringBuffer buffer;
+        StringBuilder buffer;
 
-        buffer = new StringBuffer();
+        buffer = new StringBuilder();
+        resetHistory();
         serializeObject(object, buffer);
         return buffer.toString();
     }
 
 
+    /**
+     * Serializes the specified object into the writer. The writer is neither
+     * flushed nor closed.
+     *
+     * @param object The object
+     * @param writer The writer
+     * @throws IOException When writing fails
+     */
+
+    public void serialize(final Object object, final Writer writer) throws IOException {
+        StringBuilder buffer;
+
+        buffer = new StringBuilder(SINK_THRESHOLD * 2);
+        resetHistory();
+        this.sink = writer;
+        try {
+            serializeObject(object, buffer);
+            writer.append(buffer);
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            this.sink = null;
+        }
+    }
+
+
+    /**
+     * Serializes the specified object into the stream, encoding it with the
+     * charset of this serializer. The stream is flushed but not closed.
+     *
+     * @param object The object
+     * @param stream The stream
+     * @throws IOException When writing fails
+     */
+
+    public void serialize(final Object object, final OutputStream stream) throws IOException {
+        Writer writer;
+
+        writer = new OutputStreamWriter(stream, this.charset);
+        serialize(object, writer);
+        writer.flush();
+    }
+
+
+    /**
+     * Forgets objects serialized by previous calls.
+     */
+
+    private void resetHistory() {
+        this.history.clear();
+        this.historyIndex.clear();
+    }
+
+
+    /**
+     * Adds the object to the history.
+     *
+     * @param object The object
+     */
+
+    private void addToHistory(final Object object) {
+        if (isReferenceable(object)) {
+            this.historyIndex.putIfAbsent(object, Integer.valueOf(this.history.size()));
+        }
+        this.history.add(object);
+    }
+
+
+    /**
+     * Removes the last added object from the history.
+     */
+
+    private void removeLastFromHistory() {
+        int last;
+        Object object;
+
+        last = this.history.size() - 1;
+        object = this.history.remove(last);
+        if (isReferenceable(object)) {
+            this.historyIndex.remove(object, Integer.valueOf(last));
+        }
+    }
+
+
+    /**
+     * Checks if a reference may be serialized instead of the object.
+     * References are not allowed for simple types because here PHP and
+     * Java are VERY different and the best way it to simply disallow
+     * references for these types.
+     *
+     * @param object The object
+     * @return If the object can be referenced
+     */
+
+    private static boolean isReferenceable(final Object object) {
+        return object != null && !(object instanceof Number || object instanceof Boolean ||
+                object instanceof String);
+    }
+
+
+    /**
+     * Drains the buffer into the sink, if there is one, when the buffer has
+     * grown large enough.
+     *
+     * @param buffer The string buffer
+     */
+
+    private void drain(final StringBuilder buffer) {
+        if (this.sink != null && buffer.length() >= SINK_THRESHOLD) {
+            try {
+                this.sink.append(buffer);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buffer.setLength(0);
+        }
+    }
+
+
     /**
      * This method is used internally for recursively scanning the object while
      * serializing. It just calls the other serializeObject method defaulting
@@ -96,7 +262,7 @@ public class Serializer {
      * @param buffer The string buffer to append serialized data to
      */
 
-    private void serializeObject(final Object object, final StringBuffer buffer) {
+    private void serializeObject(final Object object, final StringBuilder buffer) {
         serializeObject(object, buffer, true);
     }
 
@@ -112,8 +278,9 @@ public class Serializer {
      * @param allowReference If reference is allowed for this object
      */
 
-    private void serializeObject(final Object object, final StringBuffer buffer,
+    private void serializeObject(final Object object, final StringBuilder buffer,
             final boolean allowReference) {
+        drain(buffer);
         if (object == null) {
             serializeNull(buffer);
         } else if (allowReference && serializeReference(object, buffer)) {
@@ -156,7 +323,7 @@ public class Serializer {
                     + object.getClass().getName());
         }
 
-        this.history.add(object);
+        addToHistory(object);
     }
 
 
@@ -170,33 +337,21 @@ public class Serializer {
      * @return If a reference was serialized or not
      */
 
-    private boolean serializeReference(final Object object, final StringBuffer buffer) {
-        Iterator<?> iterator;
-        int index;
-        boolean isReference;
+    private boolean serializeReference(final Object object, final StringBuilder buffer) {
+        Integer index;
 
-        // Don't allow references for simple types because here PHP and
-        // Java are VERY different and the best way it to simply disallow
-        // References for these types
-        if (object instanceof Number || object instanceof Boolean ||
-                object instanceof String) {
+        if (!isReferenceable(object)) {
             return false;
         }
 
-        iterator = this.history.iterator();
-        index = 0;
-        isReference = false;
-        while (iterator.hasNext()) {
-            if (iterator.next() == object) {
-                buffer.append("R:");
-                buffer.append(index + 1);
-                buffer.append(';');
-                isReference = true;
-                break;
-            }
-            index++;
+        index = this.historyIndex.get(object);
+        if (index == null) {
+            return false;
         }
-        return isReference;
+        buffer.append("R:");
+        buffer.append(index.intValue() + 1);
+        buffer.append(';');
+        return true;
     }
 
 
@@ -208,7 +363,7 @@ public class Serializer {
      * @param buffer The string buffer to append serialized data to
      */
 
-    private void serializeMixed(final Mixed mixed, final StringBuffer buffer) {
+    private void serializeMixed(final Mixed mixed, final StringBuilder buffer) {
         serializeObject(mixed.getValue(), buffer);
     }
 
@@ -221,17 +376,53 @@ public class Serializer {
      * @param buffer The string buffer to append serialized data to
      */
 
-    private void serializeString(final String string, final StringBuffer buffer) {
-        String decoded = Unserializer.decode(string, charset);
-
+    private void serializeString(final String string, final StringBuilder buffer) {
         buffer.append("s:");
-        buffer.append(decoded.length());
+        buffer.append(byteLength(string));
         buffer.append(":\"");
         buffer.append(string);
         buffer.append("\";");
     }
 
 
+    /**
+     * Returns the length of the string encoded in the charset of this
+     * serializer, which is what PHP counts. UTF-8 is counted without encoding.
+     *
+     * @param string The string
+     * @return The length in bytes
+     */
+
+    private int byteLength(final String string) {
+        int length;
+        int max;
+        char c;
+
+        if (this.charset != StandardCharsets.UTF_8) {
+            return string.getBytes(this.charset).length;
+        }
+        length = 0;
+        max = string.length();
+        for (int i = 0; i < max; i++) {
+            c = string.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < max && Character.isLowSurrogate(string.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate is encoded as '?'
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+
     /**
      * Serializes the specified character and appends it to the serialization
      * buffer.
@@ -240,7 +431,7 @@ public class Serializer {
      * @param buffer The string buffer to append serialized data to
      */
 
-    private void serializeCharacter(final Character value, final StringBuffer buffer) {
+    private void serializeCharacter(final Character value, final StringBuilder buffer) {
         buffer.append("s:1:\"");
         buffer.append(value);
         buffer.append("\";");
@@ -253,7 +444,7 @@ public class Serializer {
      * @param buffer The string buffer to append serialized data to
      */
 
-    private void serializeNull(final StringBuffer buffer) {
+    private void serializeNull(final StringBuilder buffer) {
         buffer.append("N;");
     }
 
@@ -266,7 +457,7 @@ public class Serializer {
      * @param buffer The string buffer to append serialized data to
      */
 
-    private void serializeInteger(final int number, final StringBuffer buffer) {
+    private void serializeInteger(final int number, final StringBuilder buffer) {
         buffer.append("i:");
         buffer.append(number);
         buffer.append(';');
@@ -281,7 +472,7 @@ public class Serializer {
      * @param buffer The string buffer to append serialized data to
      */
 
-    private void serializeLong(final long number, final StringBuffer buffer) {
+    private void serializeLong(final long number, final StringBuilder buffer) {
         if ((number >= Integer.MIN_VALUE) && (number <= Integer.MAX_VALUE)) {
             buffer.append("i:");
         } else {
@@ -300,7 +491,7 @@ public class Serializer {
      * @param buffer The string buffer to append serialized data to
      */
 
-    private void serializeDouble(final double number, final StringBuffer buffer) {
+    private void serializeDouble(final double number, final StringBuilder buffer) {
         buffer.append("d:");
         buffer.append(number);
         buffer.append(';');
@@ -315,7 +506,7 @@ public class Serializer {
      * @param buffer The string buffer to append serialized data to
      */
 
-    private void serializeBoolean(final Boolean value, final StringBuffer buffer) {
+    private void serializeBoolean(final Boolean value, final StringBuilder buffer) {
         buffer.append("b:");
         buffer.append(value.booleanValue() ? 1 : 0);
         buffer.append(';');
@@ -330,11 +521,11 @@ public class Serializer {
      * @param buffer     The string buffer to append serialized data to
      */
 
-    private void serializeCollection(final Collection<?> collection, final StringBuffer buffer) {
+    private void serializeCollection(final Collection<?> collection, final StringBuilder buffer) {
         Iterator<?> iterator;
         int index;
 
-        this.history.add(collection);
+        addToHistory(collection);
         buffer.append("a:");
         buffer.append(collection.size());
         buffer.append(":{");
@@ -342,7 +533,7 @@ public class Serializer {
         index = 0;
         while (iterator.hasNext()) {
             serializeObject(Integer.valueOf(index), buffer, false);
-            this.history.remove(this.history.size() - 1);
+            removeLastFromHistory();
             serializeObject(iterator.next(), buffer);
             index++;
         }
@@ -358,17 +549,17 @@ public class Serializer {
      * @param buffer The string buffer to append serialized data to
      */
 
-    private void serializeArray(final Object[] array, final StringBuffer buffer) {
+    private void serializeArray(final Object[] array, final StringBuilder buffer) {
         int max;
 
-        this.history.add(array);
+        addToHistory(array);
         buffer.append("a:");
         max = array.length;
         buffer.append(max);
         buffer.append(":{");
         for (int i = 0; i < max; i++) {
             serializeObject(Integer.valueOf(i), buffer, false);
-            this.history.remove(this.history.size() - 1);
+            removeLastFromHistory();
             serializeObject(array[i], buffer);
         }
         buffer.append('}');
@@ -382,11 +573,11 @@ public class Serializer {
      * @param buffer The string buffer to append serialized data to
      */
 
-    private void serializeMap(final Map<?, ?> map, final StringBuffer buffer) {
+    private void serializeMap(final Map<?, ?> map, final StringBuilder buffer) {
         Iterator<?> iterator;
         Object key;
 
-        this.history.add(map);
+        addToHistory(map);
         buffer.append("a:");
         buffer.append(map.size());
         buffer.append(":{");
@@ -394,7 +585,7 @@ public class Serializer {
         while (iterator.hasNext()) {
             key = iterator.next();
             serializeObject(key, buffer, false);
-            this.history.remove(this.history.size() - 1);
+            removeLastFromHistory();
             serializeObject(map.get(key), buffer);
         }
         buffer.append('}');
@@ -402,66 +593,39 @@ public class Serializer {
 
 
     /**
-     * Serializes a serializable object
+     * Serializes a serializable object. The non-static, non-volatile fields
+     * of each class are looked up once and cached.
      *
      * @param object The serializable object
      * @param buffer The string buffer to append serialized data to
      */
 
-    private void serializeSerializable(final Serializable object, final StringBuffer buffer) {
+    private void serializeSerializable(final Serializable object, final StringBuilder buffer) {
         String className;
-        Class<?> c;
         Field[] fields;
-        int i, max;
-        Field field;
-        String key;
         Object value;
-        StringBuffer fieldBuffer;
-        int fieldCount;
 
-        this.history.add(object);
-        c = object.getClass();
-        className = c.getSimpleName();
+        addToHistory(object);
+        className = object.getClass().getSimpleName();
         buffer.append("O:");
         buffer.append(className.length());
         buffer.append(":\"");
         buffer.append(className);
         buffer.append("\":");
 
-        fieldBuffer = new StringBuffer();
-        fieldCount = 0;
-        while (c != null) {
-            fields = c.getDeclaredFields();
-            for (i = 0, max = fields.length; i < max; i++) {
-                field = fields[i];
-                if (Modifier.isStatic(field.getModifiers())) {
-                    continue;
-                }
-                if (Modifier.isVolatile(field.getModifiers())) {
-                    continue;
-                }
-
-                try {
-                    field.setAccessible(true);
-                    key = field.getName();
-                    value = field.get(object);
-                    serializeObject(key, fieldBuffer);
-                    this.history.remove(this.history.size() - 1);
-                    serializeObject(value, fieldBuffer);
-                    fieldCount++;
-                } catch (final SecurityException e) {
-                    // Field is just ignored when this exception is thrown
-                } catch (final IllegalArgumentException e) {
-                    // Field is just ignored when this exception is thrown
-                } catch (final IllegalAccessException e) {
-                    // Field is just ignored when this exception is thrown
-                }
+        fields = SERIALIZED_FIELDS.get(object.getClass());
+        buffer.append(fields.length);
+        buffer.append(":{");
+        for (Field field : fields) {
+            try {
+                value = field.get(object);
+            } catch (final IllegalAccessException e) {
+                throw new SerializeException("Unable to read field " + field, e);
             }
-            c = c.getSuperclass();
+            serializeObject(field.getName(), buffer);
+            removeLastFromHistory();
+            serializeObject(value, buffer);
         }
-        buffer.append(fieldCount);
-        buffer.append(":{");
-        buffer.append(fieldBuffer);
         buffer.append("}");
     }
 }
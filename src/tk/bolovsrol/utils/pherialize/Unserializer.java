@@ -25,25 +25,50 @@ package tk.bolovsrol.utils.pherialize;
 
 import tk.bolovsrol.utils.pherialize.exceptions.UnserializeException;
 
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
 
 /**
  * Unserializes a PHP serialize format string into a Java object.
+ * <p>
+ * The data is parsed as bytes, because that's what string lengths in the
+ * format count, and string values are decoded with the charset. Besides a
+ * string, the data can be read from an {@link InputStream} or a
+ * {@link Reader} as it arrives: only the object being built and a small
+ * buffer are kept in memory. Consecutive calls to {@link #unserializeObject()}
+ * read consecutive values. The streams are not closed.
  *
  * @author Klaus Reimer (k@ailis.de)
  * @version $Revision$
  */
 
 public class Unserializer {
+    /** Size of the read buffer for streams */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The data to unserialize */
+    private byte[] data;
+
     /** The current pointer in the data */
     private int pos;
 
-    /** The data to unserialize */
-    private final String data;
+    /** The end of valid data in the buffer */
+    private int limit;
+
+    /** The stream to read more data from, or null when all data is in the buffer */
+    private final InputStream stream;
 
     /** The original charset of the input data. */
     private final Charset charset;
@@ -71,13 +96,169 @@ public class Unserializer {
 
     public Unserializer(final String data, Charset charset) {
         super();
-        this.data = decode(data, charset);
+        this.data = data.getBytes(charset);
+        this.limit = this.data.length;
+        this.stream = null;
         this.charset = charset;
         this.pos = 0;
         this.history = new ArrayList<Object>();
     }
 
 
+    /**
+     * Constructor
+     *
+     * @param stream  The stream with data to unserialize
+     * @param charset The charset of the data
+     */
+
+    public Unserializer(final InputStream stream, final Charset charset) {
+        super();
+        this.data = new byte[BUFFER_SIZE];
+        this.limit = 0;
+        this.stream = stream;
+        this.charset = charset;
+        this.pos = 0;
+        this.history = new ArrayList<Object>();
+    }
+
+
+    /**
+     * Constructor. The characters are encoded back with the charset to count
+     * string lengths.
+     *
+     * @param reader  The reader with data to unserialize
+     * @param charset The charset the string lengths were counted in
+     */
+
+    public Unserializer(final Reader reader, final Charset charset) {
+        this(new EncodingInputStream(reader, charset), charset);
+    }
+
+
+    /**
+     * Makes sure at least the specified number of bytes is available in the
+     * buffer starting at the current position.
+     *
+     * @param count The number of bytes
+     * @return If enough bytes are available
+     */
+
+    private boolean fill(final int count) {
+        if (this.limit - this.pos >= count) {
+            return true;
+        }
+        if (this.stream == null) {
+            return false;
+        }
+        if (this.pos > 0) {
+            System.arraycopy(this.data, this.pos, this.data, 0, this.limit - this.pos);
+            this.limit -= this.pos;
+            this.pos = 0;
+        }
+        if (count > this.data.length) {
+            byte[] grown = new byte[Math.max(count, this.data.length * 2)];
+            System.arraycopy(this.data, 0, grown, 0, this.limit);
+            this.data = grown;
+        }
+        try {
+            while (this.limit < count) {
+                int read = this.stream.read(this.data, this.limit, this.data.length - this.limit);
+                if (read < 0) {
+                    return false;
+                }
+                this.limit += read;
+            }
+        } catch (final IOException e) {
+            throw new UnserializeException("Unable to read data", e);
+        }
+        return true;
+    }
+
+
+    /**
+     * Makes sure the specified number of bytes is available or fails.
+     *
+     * @param count The number of bytes
+     */
+
+    private void require(final int count) {
+        if (!fill(count)) {
+            throw new UnserializeException("Unexpected end of data");
+        }
+    }
+
+
+    /**
+     * Skips the specified number of bytes.
+     *
+     * @param count The number of bytes
+     */
+
+    private void skip(final int count) {
+        require(count);
+        this.pos += count;
+    }
+
+
+    /**
+     * Reads bytes up to the terminator and skips the terminator.
+     *
+     * @param terminator The terminator
+     * @return The bytes as ASCII string
+     */
+
+    private String readToken(final char terminator) {
+        int end;
+
+        end = this.pos;
+        while (true) {
+            if (end == this.limit) {
+                int offset = end - this.pos;
+                require(offset + 1);
+                end = this.pos + offset;
+            }
+            if (this.data[end] == terminator) {
+                break;
+            }
+            end++;
+        }
+        String token = new String(this.data, this.pos, end - this.pos, StandardCharsets.ISO_8859_1);
+        this.pos = end + 1;
+        return token;
+    }
+
+
+    /**
+     * Reads a non-negative decimal number up to the terminator and skips the
+     * terminator.
+     *
+     * @param terminator The terminator
+     * @return The number
+     */
+
+    private int readLength(final char terminator) {
+        int result;
+        int digits;
+        byte b;
+
+        result = 0;
+        digits = 0;
+        while (true) {
+            require(1);
+            b = this.data[this.pos++];
+            if (b == terminator && digits > 0) {
+                return result;
+            }
+            if (b < '0' || b > '9' || digits == 9) {
+                throw new UnserializeException("Invalid length at byte " + b);
+            }
+            result = result * 10 + (b - '0');
+            digits++;
+        }
+    }
+
+
     /**
      * Unserializes the next object in the data stream.
      *
@@ -88,7 +269,8 @@ public class Unserializer {
         char type;
         Mixed result;
 
-        type = this.data.charAt(this.pos);
+        require(1);
+        type = (char) (this.data[this.pos] & 0xff);
         switch (type) {
         case 's':
             result = unserializeString();
@@ -128,19 +310,33 @@ public class Unserializer {
 
 
     /**
-     * Unserializes the next object in the data stream into a String.
+     * Checks if there is more data to unserialize.
+     *
+     * @return If there is more data
+     */
+
+    public boolean hasMore() {
+        return fill(1);
+    }
+
+
+    /**
+     * Unserializes the next object in the data stream into a String. The
+     * length is counted in bytes of the charset.
      *
      * @return The unserialized String
      */
 
     private Mixed unserializeString() {
-        int pos, length;
-
-        pos = this.data.indexOf(':', this.pos + 2);
-        length = Integer.parseInt(this.data.substring(this.pos + 2, pos));
-        this.pos = pos + length + 4;
-        String unencoded = this.data.substring(pos + 2, pos + 2 + length);
-        return new Mixed(encode(unencoded, charset));
+        int length;
+        String result;
+
+        skip(2);
+        length = readLength(':');
+        require(length + 3);
+        result = new String(this.data, this.pos + 1, length, this.charset);
+        this.pos += length + 3;
+        return new Mixed(result);
     }
 
 
@@ -151,13 +347,8 @@ public class Unserializer {
      */
 
     private Mixed unserializeInteger() {
-        Integer result;
-        int pos;
-
-        pos = this.data.indexOf(';', this.pos + 2);
-        result = Integer.valueOf(this.data.substring(this.pos + 2, pos));
-        this.pos = pos + 1;
-        return new Mixed(result);
+        skip(2);
+        return new Mixed(Integer.valueOf(readToken(';')));
     }
 
 
@@ -168,13 +359,8 @@ public class Unserializer {
      */
 
     private Mixed unserializeDouble() {
-        Double result;
-        int pos;
-
-        pos = this.data.indexOf(';', this.pos + 2);
-        result = Double.valueOf(this.data.substring(this.pos + 2, pos));
-        this.pos = pos + 1;
-        return new Mixed(result);
+        skip(2);
+        return new Mixed(Double.valueOf(readToken(';')));
     }
 
 
@@ -186,11 +372,12 @@ public class Unserializer {
 
     private Mixed unserializeReference() {
         int index;
-        int pos;
 
-        pos = this.data.indexOf(';', this.pos + 2);
-        index = Integer.parseInt(this.data.substring(this.pos + 2, pos));
-        this.pos = pos + 1;
+        skip(2);
+        index = readLength(';');
+        if (index < 1 || index > this.history.size()) {
+            throw new UnserializeException("Invalid reference " + index);
+        }
         return (Mixed) this.history.get(index - 1);
     }
 
@@ -204,7 +391,8 @@ public class Unserializer {
     private Mixed unserializeBoolean() {
         Boolean result;
 
-        result = Boolean.valueOf(this.data.charAt(this.pos + 2) == '1');
+        require(4);
+        result = Boolean.valueOf(this.data[this.pos + 2] == '1');
         this.pos += 4;
         return new Mixed(result);
     }
@@ -217,7 +405,7 @@ public class Unserializer {
      */
 
     private Mixed unserializeNull() {
-        this.pos += 2;
+        skip(2);
         return null;
     }
 
@@ -233,14 +421,13 @@ public class Unserializer {
     private Mixed unserializeArray() {
         Mixed result;
         MixedArray array;
-        int pos;
         int max;
         int i;
         Object key, value;
 
-        pos = this.data.indexOf(':', this.pos + 2);
-        max = Integer.parseInt(this.data.substring(this.pos + 2, pos));
-        this.pos = pos + 2;
+        skip(2);
+        max = readLength(':');
+        skip(1);
         array = new MixedArray(max);
         result = new Mixed(array);
         this.history.add(result);
@@ -250,25 +437,87 @@ public class Unserializer {
             value = unserializeObject();
             array.put(key, value);
         }
-        this.pos++;
+        skip(1);
         return result;
     }
 
 
-    static String decode(String encoded, Charset charset) {
-        try {
-            return new String(encoded.getBytes(charset), "ISO-8859-1");
-        } catch (UnsupportedEncodingException e) {
-            return encoded;
+    /**
+     * Encodes characters from a reader back into bytes, the way
+     * {@link String#getBytes(Charset)} does.
+     */
+
+    private static final class EncodingInputStream extends InputStream {
+        /** The reader */
+        private final Reader reader;
+
+        /** The encoder */
+        private final CharsetEncoder encoder;
+
+        /** Characters read but not encoded yet */
+        private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+
+        /** Encoded bytes not read yet */
+        private final ByteBuffer bytes;
+
+        /** If the reader is exhausted */
+        private boolean eof;
+
+
+        /**
+         * Constructor
+         *
+         * @param reader  The reader
+         * @param charset The charset
+         */
+
+        EncodingInputStream(final Reader reader, final Charset charset) {
+            this.reader = reader;
+            this.encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            this.bytes = ByteBuffer.allocate((int) Math.ceil(BUFFER_SIZE * this.encoder.maxBytesPerChar()));
+            this.bytes.flip();
+            this.chars.flip();
         }
-    }
 
 
-    static String encode(String decoded, Charset charset) {
-        try {
-            return new String(decoded.getBytes("ISO-8859-1"), charset);
-        } catch (UnsupportedEncodingException e) {
-            return decoded;
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (!this.bytes.hasRemaining()) {
+                if (this.eof && !this.chars.hasRemaining()) {
+                    return -1;
+                }
+                if (!this.eof) {
+                    this.chars.compact();
+                    int read = this.reader.read(this.chars);
+                    this.chars.flip();
+                    if (read < 0) {
+                        this.eof = true;
+                    }
+                }
+                this.bytes.clear();
+                CoderResult result = this.encoder.encode(this.chars, this.bytes, this.eof);
+                if (this.eof && result.isUnderflow()) {
+                    this.encoder.flush(this.bytes);
+                    // a dangling high surrogate at the very end can't be encoded
+                    this.chars.position(this.chars.limit());
+                }
+                this.bytes.flip();
+            }
+            int count = Math.min(len, this.bytes.remaining());
+            this.bytes.get(b, off, count);
+            return count;
         }
     }
 }
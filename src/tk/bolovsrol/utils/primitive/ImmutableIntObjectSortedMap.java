@@ -97,6 +97,25 @@ public class ImmutableIntObjectSortedMap<V> {
         return sortAndCreateNew(buf);
     }
 
+    /**
+     * Создаёт карту из хэш-карты без промежуточных объектов:
+     * сортирует массив ключей и достаёт значения по ключам.
+     *
+     * @param source хэш-карта или нул
+     * @return новая карта или нул, если передан нул
+     */
+    @SuppressWarnings("unchecked") public static <V> ImmutableIntObjectSortedMap<V> from(IntObjectHashMap<? extends V> source) {
+        if (source == null) { return null; }
+        if (source.isEmpty()) { return empty(); }
+        int[] keys = source.keys();
+        Arrays.sort(keys);
+        V[] values = (V[]) new Object[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = source.get(keys[i]);
+        }
+        return new ImmutableIntObjectSortedMap<>(keys, values);
+    }
+
     @SuppressWarnings("unchecked")
     private static <V> ImmutableIntObjectSortedMap<V> sortAndCreateNew(Object[] buf) {
         Arrays.parallelSort(buf, Comparator.comparingInt(o -> ((Entry<V>) o).key));
@@ -125,13 +125,24 @@ public class ImmutableLongLongSortedMap {
         return sortAndCreateNew(buf);
     }
 
-//    public static ImmutableLongLongSortedMap from(LongLongMap source) {
-//        if (source == null) { return null; }
-//        Object[] buf = new Object[source.size()];
-//        IntContainer index = new IntContainer(0);
-//        source.forEachKeyValue((key, value) -> buf[index.getAndInc()] = new Entry(key, value));
-//        return sortAndCreateNew(buf);
-//    }
+    /**
+     * Создаёт карту из хэш-карты без боксинга и промежуточных объектов:
+     * сортирует массив ключей и достаёт значения по ключам.
+     *
+     * @param source хэш-карта или нул
+     * @return новая карта или нул, если передан нул
+     */
+    public static ImmutableLongLongSortedMap from(LongLongHashMap source) {
+        if (source == null) { return null; }
+        if (source.isEmpty()) { return EMPTY; }
+        long[] keys = source.keys();
+        Arrays.sort(keys);
+        long[] values = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = source.get(keys[i], 0L);
+        }
+        return new ImmutableLongLongSortedMap(keys, values);
+    }
 
     @SuppressWarnings("unchecked") private static ImmutableLongLongSortedMap sortAndCreateNew(Object[] buf) {
         Arrays.parallelSort(buf, Comparator.comparingLong(o -> ((Entry) o).key));
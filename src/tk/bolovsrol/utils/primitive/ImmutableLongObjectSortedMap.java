@@ -112,6 +112,25 @@ public class ImmutableLongObjectSortedMap<V> {
         return sortAndCreateNew(buf);
     }
 
+    /**
+     * Создаёт карту из хэш-карты без промежуточных объектов:
+     * сортирует массив ключей и достаёт значения по ключам.
+     *
+     * @param source хэш-карта или нул
+     * @return новая карта или нул, если передан нул
+     */
+    @SuppressWarnings("unchecked") public static <V> ImmutableLongObjectSortedMap<V> from(LongObjectHashMap<? extends V> source) {
+        if (source == null) { return null; }
+        if (source.isEmpty()) { return empty(); }
+        long[] keys = source.keys();
+        Arrays.sort(keys);
+        V[] values = (V[]) new Object[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = source.get(keys[i]);
+        }
+        return new ImmutableLongObjectSortedMap<>(keys, values);
+    }
+
     @SuppressWarnings("unchecked") @NotNull
     private static <V> ImmutableLongObjectSortedMap<V> sortAndCreateNew(Object[] buf) {
         Arrays.parallelSort(buf, Comparator.comparingLong(o -> ((Entry<V>) o).key));
@@ -0,0 +1,5 @@
+package tk.bolovsrol.utils.primitive;
+
+@FunctionalInterface public interface IntObjectConsumer<V> {
+    void accept(int key, V value);
+}
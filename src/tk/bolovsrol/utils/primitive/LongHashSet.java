@@ -0,0 +1,193 @@
+package tk.bolovsrol.utils.primitive;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Изменяемое хэш-множество long без боксинга.
+ * <p>
+ * Открытая адресация с линейным пробированием, удаление со сдвигом, так что надгробий нет.
+ * Не синхронизировано.
+ */
+public class LongHashSet {
+
+    private long[] keys;
+    private int mask;
+    private int maxFill;
+    private int size;
+
+    private boolean hasZero;
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    /** @param expectedSize ожидаемое количество элементов */
+    public LongHashSet(int expectedSize) {
+        allocate(OpenHashing.capacityFor(expectedSize));
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        mask = capacity - 1;
+        maxFill = OpenHashing.maxFill(capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private int find(long key) {
+        int pos = OpenHashing.mix(key) & mask;
+        long k;
+        while ((k = keys[pos]) != 0L) {
+            if (k == key) {
+                return pos;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return -1;
+    }
+
+    public boolean contains(long key) {
+        return key == 0L ? hasZero : find(key) >= 0;
+    }
+
+    /**
+     * Добавляет элемент.
+     *
+     * @param key элемент
+     * @return true, если элемента в множестве не было
+     */
+    public boolean add(long key) {
+        if (key == 0L) {
+            if (hasZero) {
+                return false;
+            }
+            hasZero = true;
+            size++;
+            return true;
+        }
+        int pos = OpenHashing.mix(key) & mask;
+        long k;
+        while ((k = keys[pos]) != 0L) {
+            if (k == key) {
+                return false;
+            }
+            pos = (pos + 1) & mask;
+        }
+        keys[pos] = key;
+        if (++size > maxFill) {
+            rehash(keys.length << 1);
+        }
+        return true;
+    }
+
+    /**
+     * Удаляет элемент.
+     *
+     * @param key элемент
+     * @return true, если элемент был в множестве
+     */
+    public boolean remove(long key) {
+        if (key == 0L) {
+            if (!hasZero) {
+                return false;
+            }
+            hasZero = false;
+            size--;
+            return true;
+        }
+        int pos = find(key);
+        if (pos < 0) {
+            return false;
+        }
+        size--;
+        shiftKeys(pos);
+        return true;
+    }
+
+    private void shiftKeys(int pos) {
+        while (true) {
+            int last = pos;
+            pos = (pos + 1) & mask;
+            long k;
+            while (true) {
+                if ((k = keys[pos]) == 0L) {
+                    keys[last] = 0L;
+                    return;
+                }
+                if (OpenHashing.canShift(last, OpenHashing.mix(k) & mask, pos)) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            keys[last] = k;
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        allocate(newCapacity);
+        for (int i = oldKeys.length - 1; i >= 0; i--) {
+            long k = oldKeys[i];
+            if (k != 0L) {
+                int pos = OpenHashing.mix(k) & mask;
+                while (keys[pos] != 0L) {
+                    pos = (pos + 1) & mask;
+                }
+                keys[pos] = k;
+            }
+        }
+    }
+
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        Arrays.fill(keys, 0L);
+        hasZero = false;
+        size = 0;
+    }
+
+    public void forEach(LongConsumer consumer) {
+        if (hasZero) {
+            consumer.accept(0L);
+        }
+        for (long k : keys) {
+            if (k != 0L) {
+                consumer.accept(k);
+            }
+        }
+    }
+
+    /** @return новый массив элементов в произвольном порядке */
+    public long[] toArray() {
+        long[] result = new long[size];
+        int j = 0;
+        if (hasZero) {
+            result[j++] = 0L;
+        }
+        for (long k : keys) {
+            if (k != 0L) {
+                result[j++] = k;
+            }
+        }
+        return result;
+    }
+
+    @Override public String toString() {
+        StringBuilder sb = new StringBuilder(size * 8 + 2).append('[');
+        forEach(key -> {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(key);
+        });
+        return sb.append(']').toString();
+    }
+}
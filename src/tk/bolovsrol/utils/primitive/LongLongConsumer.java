@@ -0,0 +1,5 @@
+package tk.bolovsrol.utils.primitive;
+
+@FunctionalInterface public interface LongLongConsumer {
+    void accept(long key, long value);
+}
@@ -0,0 +1,262 @@
+package tk.bolovsrol.utils.primitive;
+
+import java.util.Arrays;
+
+/**
+ * Изменяемая хэш-карта long → long без боксинга.
+ * <p>
+ * Открытая адресация с линейным пробированием, удаление со сдвигом, так что надгробий нет.
+ * Не синхронизирована.
+ * <p>
+ * Для отсутствующих ключей методы возвращают переданное значение по умолчанию.
+ * Чтобы получить из наполненной карты {@link ImmutableLongLongSortedMap},
+ * есть {@link ImmutableLongLongSortedMap#from(LongLongHashMap)}.
+ */
+public class LongLongHashMap {
+
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int maxFill;
+    private int size;
+
+    private boolean hasZeroKey;
+    private long zeroValue;
+
+    public LongLongHashMap() {
+        this(16);
+    }
+
+    /** @param expectedSize ожидаемое количество элементов */
+    public LongLongHashMap(int expectedSize) {
+        allocate(OpenHashing.capacityFor(expectedSize));
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+        maxFill = OpenHashing.maxFill(capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private int find(long key) {
+        int pos = OpenHashing.mix(key) & mask;
+        long k;
+        while ((k = keys[pos]) != 0L) {
+            if (k == key) {
+                return pos;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return -1;
+    }
+
+    public boolean containsKey(long key) {
+        return key == 0L ? hasZeroKey : find(key) >= 0;
+    }
+
+    public long get(long key, long defaultValue) {
+        if (key == 0L) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        int pos = find(key);
+        return pos >= 0 ? values[pos] : defaultValue;
+    }
+
+    /**
+     * Кладёт значение в карту.
+     *
+     * @param key ключ
+     * @param value значение
+     * @param defaultValue что вернуть, если ключа в карте не было
+     * @return предыдущее значение или defaultValue
+     */
+    public long put(long key, long value, long defaultValue) {
+        if (key == 0L) {
+            long prev = hasZeroKey ? zeroValue : defaultValue;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return prev;
+        }
+        int pos = OpenHashing.mix(key) & mask;
+        long k;
+        while ((k = keys[pos]) != 0L) {
+            if (k == key) {
+                long prev = values[pos];
+                values[pos] = value;
+                return prev;
+            }
+            pos = (pos + 1) & mask;
+        }
+        keys[pos] = key;
+        values[pos] = value;
+        if (++size > maxFill) {
+            rehash(keys.length << 1);
+        }
+        return defaultValue;
+    }
+
+    public void put(long key, long value) {
+        put(key, value, 0L);
+    }
+
+    /**
+     * Прибавляет к значению ключа указанную величину; отсутствующее значение считается нулём.
+     *
+     * @param key ключ
+     * @param delta прибавка
+     * @return новое значение
+     */
+    public long addTo(long key, long delta) {
+        if (key == 0L) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            return zeroValue += delta;
+        }
+        int pos = OpenHashing.mix(key) & mask;
+        long k;
+        while ((k = keys[pos]) != 0L) {
+            if (k == key) {
+                return values[pos] += delta;
+            }
+            pos = (pos + 1) & mask;
+        }
+        keys[pos] = key;
+        values[pos] = delta;
+        if (++size > maxFill) {
+            rehash(keys.length << 1);
+        }
+        return delta;
+    }
+
+    /**
+     * Удаляет ключ из карты.
+     *
+     * @param key ключ
+     * @param defaultValue что вернуть, если ключа в карте не было
+     * @return удалённое значение или defaultValue
+     */
+    public long remove(long key, long defaultValue) {
+        if (key == 0L) {
+            if (!hasZeroKey) {
+                return defaultValue;
+            }
+            hasZeroKey = false;
+            size--;
+            return zeroValue;
+        }
+        int pos = find(key);
+        if (pos < 0) {
+            return defaultValue;
+        }
+        long prev = values[pos];
+        size--;
+        shiftKeys(pos);
+        return prev;
+    }
+
+    public boolean remove(long key) {
+        if (!containsKey(key)) {
+            return false;
+        }
+        remove(key, 0L);
+        return true;
+    }
+
+    private void shiftKeys(int pos) {
+        while (true) {
+            int last = pos;
+            pos = (pos + 1) & mask;
+            long k;
+            while (true) {
+                if ((k = keys[pos]) == 0L) {
+                    keys[last] = 0L;
+                    values[last] = 0L;
+                    return;
+                }
+                if (OpenHashing.canShift(last, OpenHashing.mix(k) & mask, pos)) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            keys[last] = k;
+            values[last] = values[pos];
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = oldKeys.length - 1; i >= 0; i--) {
+            long k = oldKeys[i];
+            if (k != 0L) {
+                int pos = OpenHashing.mix(k) & mask;
+                while (keys[pos] != 0L) {
+                    pos = (pos + 1) & mask;
+                }
+                keys[pos] = k;
+                values[pos] = oldValues[i];
+            }
+        }
+    }
+
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        Arrays.fill(keys, 0L);
+        hasZeroKey = false;
+        size = 0;
+    }
+
+    public void forEach(LongLongConsumer consumer) {
+        if (hasZeroKey) {
+            consumer.accept(0L, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0L) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /** @return новый массив ключей в произвольном порядке */
+    public long[] keys() {
+        long[] result = new long[size];
+        int j = 0;
+        if (hasZeroKey) {
+            result[j++] = 0L;
+        }
+        for (long k : keys) {
+            if (k != 0L) {
+                result[j++] = k;
+            }
+        }
+        return result;
+    }
+
+    @Override public String toString() {
+        StringBuilder sb = new StringBuilder(size * 16 + 2).append('{');
+        forEach((key, value) -> {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(key).append('=').append(value);
+        });
+        return sb.append('}').toString();
+    }
+}
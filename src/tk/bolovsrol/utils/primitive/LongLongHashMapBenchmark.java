@@ -0,0 +1,85 @@
+package tk.bolovsrol.utils.primitive;
+
+import tk.bolovsrol.utils.benchmark.Comparer;
+import tk.bolovsrol.utils.benchmark.Repeater;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Сравнивает {@link LongLongHashMap} с {@link HashMap HashMap&lt;Long, Long&gt;}
+ * на заполнении и на поиске существующих и отсутствующих ключей.
+ * <p>
+ * Запуск: <code>java tk.bolovsrol.utils.primitive.LongLongHashMapBenchmark [количество ключей] [итерации]</code>
+ */
+public class LongLongHashMapBenchmark {
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        Random random = new Random(42L);
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = random.nextLong();
+        }
+        long[] probes = new long[count];
+        for (int i = 0; i < count; i++) {
+            probes[i] = (i & 1) == 0 ? keys[random.nextInt(count)] : random.nextLong();
+        }
+
+        Comparer put = new Comparer(
+                new Repeater() {
+                    @Override public void iteration() {
+                        Map<Long, Long> map = new HashMap<>();
+                        for (long key : keys) {
+                            map.put(key, key);
+                        }
+                    }
+                },
+                new Repeater() {
+                    @Override public void iteration() {
+                        LongLongHashMap map = new LongLongHashMap();
+                        for (long key : keys) {
+                            map.put(key, key);
+                        }
+                    }
+                });
+        put.run(1, iterations);
+        System.out.println("put:  " + put.getAverageReport());
+
+        Map<Long, Long> boxed = new HashMap<>();
+        LongLongHashMap primitive = new LongLongHashMap();
+        for (long key : keys) {
+            boxed.put(key, key);
+            primitive.put(key, key);
+        }
+        long[] sink = new long[2];
+        Comparer get = new Comparer(
+                new Repeater() {
+                    @Override public void iteration() {
+                        long sum = 0L;
+                        for (long probe : probes) {
+                            Long value = boxed.get(probe);
+                            if (value != null) {
+                                sum += value;
+                            }
+                        }
+                        sink[0] += sum;
+                    }
+                },
+                new Repeater() {
+                    @Override public void iteration() {
+                        long sum = 0L;
+                        for (long probe : probes) {
+                            sum += primitive.get(probe, 0L);
+                        }
+                        sink[1] += sum;
+                    }
+                });
+        get.run(1, iterations);
+        System.out.println("get:  " + get.getAverageReport());
+        System.out.println("sums: " + (sink[0] == sink[1] ? "match" : "MISMATCH"));
+    }
+}
@@ -0,0 +1,5 @@
+package tk.bolovsrol.utils.primitive;
+
+@FunctionalInterface public interface LongObjectConsumer<V> {
+    void accept(long key, V value);
+}
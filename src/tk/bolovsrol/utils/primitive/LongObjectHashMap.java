@@ -0,0 +1,243 @@
+package tk.bolovsrol.utils.primitive;
+
+import java.util.Arrays;
+import java.util.function.LongFunction;
+
+/**
+ * Изменяемая хэш-карта long → объект без боксинга ключей.
+ * <p>
+ * Открытая адресация с линейным пробированием, удаление со сдвигом, так что надгробий нет.
+ * Не синхронизирована. Значения нул не хранятся: положить нул — всё равно что удалить ключ.
+ * <p>
+ * Чтобы получить из наполненной карты {@link ImmutableLongObjectSortedMap},
+ * есть {@link ImmutableLongObjectSortedMap#from(LongObjectHashMap)}.
+ *
+ * @param <V> значение
+ */
+public class LongObjectHashMap<V> {
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int maxFill;
+    private int size;
+
+    private V zeroValue;
+
+    public LongObjectHashMap() {
+        this(16);
+    }
+
+    /** @param expectedSize ожидаемое количество элементов */
+    public LongObjectHashMap(int expectedSize) {
+        allocate(OpenHashing.capacityFor(expectedSize));
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        maxFill = OpenHashing.maxFill(capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private int find(long key) {
+        int pos = OpenHashing.mix(key) & mask;
+        long k;
+        while ((k = keys[pos]) != 0L) {
+            if (k == key) {
+                return pos;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return -1;
+    }
+
+    public boolean containsKey(long key) {
+        return key == 0L ? zeroValue != null : find(key) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if (key == 0L) {
+            return zeroValue;
+        }
+        int pos = find(key);
+        return pos >= 0 ? (V) values[pos] : null;
+    }
+
+    /**
+     * Кладёт значение в карту.
+     *
+     * @param key ключ
+     * @param value значение; нул удаляет ключ
+     * @return предыдущее значение или нул
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            return remove(key);
+        }
+        if (key == 0L) {
+            V prev = zeroValue;
+            if (prev == null) {
+                size++;
+            }
+            zeroValue = value;
+            return prev;
+        }
+        int pos = OpenHashing.mix(key) & mask;
+        long k;
+        while ((k = keys[pos]) != 0L) {
+            if (k == key) {
+                V prev = (V) values[pos];
+                values[pos] = value;
+                return prev;
+            }
+            pos = (pos + 1) & mask;
+        }
+        keys[pos] = key;
+        values[pos] = value;
+        if (++size > maxFill) {
+            rehash(keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Возвращает значение ключа, а если его нет, создаёт его функцией и кладёт в карту.
+     *
+     * @param key ключ
+     * @param function создатель значения; если вернёт нул, в карту ничего не попадёт
+     * @return значение
+     */
+    public V computeIfAbsent(long key, LongFunction<? extends V> function) {
+        V value = get(key);
+        if (value == null) {
+            value = function.apply(key);
+            if (value != null) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Удаляет ключ из карты.
+     *
+     * @param key ключ
+     * @return удалённое значение или нул
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        if (key == 0L) {
+            V prev = zeroValue;
+            if (prev != null) {
+                zeroValue = null;
+                size--;
+            }
+            return prev;
+        }
+        int pos = find(key);
+        if (pos < 0) {
+            return null;
+        }
+        V prev = (V) values[pos];
+        size--;
+        shiftKeys(pos);
+        return prev;
+    }
+
+    private void shiftKeys(int pos) {
+        while (true) {
+            int last = pos;
+            pos = (pos + 1) & mask;
+            long k;
+            while (true) {
+                if ((k = keys[pos]) == 0L) {
+                    keys[last] = 0L;
+                    values[last] = null;
+                    return;
+                }
+                if (OpenHashing.canShift(last, OpenHashing.mix(k) & mask, pos)) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            keys[last] = k;
+            values[last] = values[pos];
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = oldKeys.length - 1; i >= 0; i--) {
+            long k = oldKeys[i];
+            if (k != 0L) {
+                int pos = OpenHashing.mix(k) & mask;
+                while (keys[pos] != 0L) {
+                    pos = (pos + 1) & mask;
+                }
+                keys[pos] = k;
+                values[pos] = oldValues[i];
+            }
+        }
+    }
+
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        Arrays.fill(keys, 0L);
+        Arrays.fill(values, null);
+        zeroValue = null;
+        size = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(LongObjectConsumer<? super V> consumer) {
+        if (zeroValue != null) {
+            consumer.accept(0L, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0L) {
+                consumer.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    /** @return новый массив ключей в произвольном порядке */
+    public long[] keys() {
+        long[] result = new long[size];
+        int j = 0;
+        if (zeroValue != null) {
+            result[j++] = 0L;
+        }
+        for (long k : keys) {
+            if (k != 0L) {
+                result[j++] = k;
+            }
+        }
+        return result;
+    }
+
+    @Override public String toString() {
+        StringBuilder sb = new StringBuilder(size * 16 + 2).append('{');
+        forEach((key, value) -> {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(key).append('=').append(value);
+        });
+        return sb.append('}').toString();
+    }
+}
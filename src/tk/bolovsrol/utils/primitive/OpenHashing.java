@@ -0,0 +1,64 @@
+package tk.bolovsrol.utils.primitive;
+
+/**
+ * Общая арифметика карт и множеств с открытой адресацией и линейным пробированием.
+ * <p>
+ * Ёмкость таблицы всегда степень двойки, ключ 0 означает пустую ячейку,
+ * поэтому настоящий нулевой ключ хранится отдельно от таблицы.
+ */
+final class OpenHashing {
+
+    static final float LOAD_FACTOR = 0.75f;
+    static final int MIN_CAPACITY = 4;
+    static final int MAX_CAPACITY = 1 << 30;
+
+    private OpenHashing() {
+    }
+
+    static int mix(long key) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        h ^= h >>> 32;
+        return (int) (h ^ (h >>> 16));
+    }
+
+    static int mix(int key) {
+        int h = key * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @param expectedSize ожидаемое количество элементов
+     * @return ёмкость таблицы, вмещающей столько элементов без расширения
+     */
+    static int capacityFor(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Negative expected size " + expectedSize);
+        }
+        long needed = (long) Math.ceil(expectedSize / (double) LOAD_FACTOR) + 1L;
+        if (needed > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Expected size " + expectedSize + " is too large");
+        }
+        return Math.max(MIN_CAPACITY, Integer.highestOneBit((int) needed - 1) << 1);
+    }
+
+    /**
+     * @param capacity ёмкость таблицы
+     * @return количество элементов, при превышении которого таблицу надо расширять
+     */
+    static int maxFill(int capacity) {
+        return Math.min(capacity - 1, (int) Math.ceil(capacity * LOAD_FACTOR));
+    }
+
+    /**
+     * Проверяет, надо ли перенести элемент из ячейки <code>pos</code> в освободившуюся ячейку <code>last</code>
+     * при удалении со сдвигом.
+     *
+     * @param last освободившаяся ячейка
+     * @param slot домашняя ячейка элемента
+     * @param pos текущая ячейка элемента
+     * @return true, если элемент можно перенести в <code>last</code>
+     */
+    static boolean canShift(int last, int slot, int pos) {
+        return last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos;
+    }
+}
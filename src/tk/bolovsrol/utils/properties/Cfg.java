@@ -1,13 +1,23 @@
 package tk.bolovsrol.utils.properties;
 
 import tk.bolovsrol.utils.UnexpectedBehaviourException;
+import tk.bolovsrol.utils.log.Log;
 import tk.bolovsrol.utils.log.LogDome;
+import tk.bolovsrol.utils.properties.settings.BooleanSetting;
+import tk.bolovsrol.utils.properties.settings.DurationSetting;
+import tk.bolovsrol.utils.properties.settings.IntSetting;
+import tk.bolovsrol.utils.properties.settings.LongSetting;
+import tk.bolovsrol.utils.properties.settings.StringSetting;
 import tk.bolovsrol.utils.properties.sources.EmptyReadOnlySource;
 import tk.bolovsrol.utils.properties.sources.FileReadOnlySource;
+import tk.bolovsrol.utils.properties.sources.PropertiesChangeListener;
+import tk.bolovsrol.utils.properties.sources.ProxyReadOnlySource;
 import tk.bolovsrol.utils.properties.sources.ReadOnlySource;
 import tk.bolovsrol.utils.properties.sources.SourceUnavailableException;
+import tk.bolovsrol.utils.properties.sources.WatchedFileReadOnlySource;
 import tk.bolovsrol.utils.time.Duration;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.text.DateFormat;
 import java.util.Date;
@@ -19,12 +29,21 @@ import java.util.regex.Pattern;
  * Статический конфиг, чтобы параметр везде не таскать.
  * <p/>
  * Делегирует все вызовы пропертям, которые в него надо воткнуть.
+ * <p/>
+ * Значения, которые нужно менять без перезапуска, следует держать не в статических константах,
+ * а в настройках {@link #newIntSetting(String, int)} и компании: настройки привязаны к конфигу
+ * через прокси, так что переживают и {@link #init}, и перечитывание файла,
+ * если конфиг инициализирован {@link #initWatched(String)}.
  *
  * @see Cfg#init(ReadOnlyProperties)
  */
 public final class Cfg {
 
-    private static ReadOnlyProperties delegate = EmptyReadOnlySource.EMPTY_PROPERTIES;
+    private static volatile ReadOnlyProperties delegate = EmptyReadOnlySource.EMPTY_PROPERTIES;
+
+    /** Всегда смотрит в текущий {@link #delegate}, к нему привязаны слушатели и настройки. */
+    private static final ProxyReadOnlySource LIVE_SOURCE = new ProxyReadOnlySource(delegate);
+    private static final ReadOnlyProperties LIVE = new ReadOnlyProperties(LIVE_SOURCE);
 
     private Cfg() {
     }
@@ -39,12 +58,66 @@ public final class Cfg {
 
     public static void init(ReadOnlyProperties properties) {
         delegate = properties;
+        LIVE_SOURCE.setDelegate(properties);
+    }
+
+    /**
+     * Инициализирует конфиг файлом, за которым следит тред-наблюдатель:
+     * когда файл меняется, конфиг перечитывается, а слушатели и настройки узнают об изменениях.
+     *
+     * @param filename файл конфига
+     * @throws UnexpectedBehaviourException файл не разбирается
+     * @throws IOException не удалось подписаться на изменения файла
+     * @see WatchedFileReadOnlySource
+     */
+    public static void initWatched(String filename) throws UnexpectedBehaviourException, IOException {
+        WatchedFileReadOnlySource source = new WatchedFileReadOnlySource(filename);
+        source.startWatching();
+        init(source);
     }
 
     public static ReadOnlyProperties getInstance() {
         return delegate;
     }
 
+    /**
+     * Возвращает проперти, которые всегда смотрят в текущий конфиг,
+     * даже если его потом переинициализируют.
+     *
+     * @return живые проперти
+     */
+    public static ReadOnlyProperties getLive() {
+        return LIVE;
+    }
+
+    // live
+
+    /**
+     * Регистрирует слушателя изменений ключа или ветки конфига.
+     * Слушатель переживает переинициализацию конфига и узнаёт о ней.
+     *
+     * @param keyOrBranch ключ или ветка, нул — все ключи
+     * @param listener слушатель
+     * @see ReadOnlySource#addChangeListener(String, PropertiesChangeListener)
+     */
+    public static void addChangeListener(String keyOrBranch, PropertiesChangeListener listener) {
+        LIVE.addChangeListener(keyOrBranch, listener);
+    }
+
+    public static void removeChangeListener(PropertiesChangeListener listener) {
+        LIVE.removeChangeListener(listener);
+    }
+
+	public static IntSetting newIntSetting(String key, int defaultValue) {return new IntSetting(LIVE, key, defaultValue, Log.getInstance());}
+
+	public static LongSetting newLongSetting(String key, long defaultValue) {return new LongSetting(LIVE, key, defaultValue, Log.getInstance());}
+
+	public static BooleanSetting newBooleanSetting(String key, boolean defaultValue) {return new BooleanSetting(LIVE, key, defaultValue, Log.getInstance());}
+
+	public static DurationSetting newDurationSetting(String key, Duration defaultValue) {return new DurationSetting(LIVE, key, defaultValue, Log.getInstance());}
+
+	public static StringSetting newStringSetting(String key, String defaultValue) {return new StringSetting(LIVE, key, defaultValue, Log.getInstance());}
+
     // delegation
 
 	public static ReadOnlySource getReadOnlySource() {return delegate.getReadOnlySource();}
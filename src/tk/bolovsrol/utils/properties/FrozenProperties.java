@@ -0,0 +1,140 @@
+package tk.bolovsrol.utils.properties;
+
+import tk.bolovsrol.utils.properties.sources.FrozenReadOnlySource;
+import tk.bolovsrol.utils.time.Duration;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Замороженные проперти: неизменяемый снимок {@link FrozenReadOnlySource}.
+ * <p/>
+ * Ветки {@link #getBranch(String)} ищут ключи в общем отсортированном массиве снимка,
+ * а числа, длительности и регэкспы разбираются один раз на ключ и дальше берутся из кэша.
+ * Непустые ветки тоже кэшируются, так что повторный {@link #getBranch(String)} — это поиск в хэш-карте;
+ * их не больше, чем разных префиксов у ключей снимка.
+ * <p/>
+ * Получаются методом {@link ReadOnlyProperties#freeze()}.
+ */
+public class FrozenProperties extends ReadOnlyProperties {
+
+    @FunctionalInterface private interface Parser<T> {
+        T parse(String key) throws InvalidPropertyValueFormatException;
+    }
+
+    private final FrozenReadOnlySource frozen;
+    private volatile ConcurrentHashMap<String, FrozenProperties> branches;
+
+    public FrozenProperties(FrozenReadOnlySource frozen) {
+        super(frozen);
+        this.frozen = frozen;
+    }
+
+    @Override public FrozenProperties freeze() {
+        return this;
+    }
+
+    @Override public FrozenProperties getBranch(String prefix) {
+        ConcurrentHashMap<String, FrozenProperties> branches = this.branches;
+        if (branches == null) {
+            synchronized (this) {
+                branches = this.branches;
+                if (branches == null) {
+                    branches = new ConcurrentHashMap<>();
+                    this.branches = branches;
+                }
+            }
+        }
+        FrozenProperties branch = branches.get(prefix);
+        if (branch == null) {
+            branch = new FrozenProperties(frozen.getBranch(prefix));
+            if (branch.size() > 0) {
+                FrozenProperties existing = branches.putIfAbsent(prefix, branch);
+                if (existing != null) {
+                    branch = existing;
+                }
+            }
+        }
+        return branch;
+    }
+
+    /** @return количество ключей */
+    public int size() {
+        return frozen.size();
+    }
+
+    /**
+     * Перебирает ключи и значения в порядке сортировки ключей, не копируя карту.
+     *
+     * @param action что делать с ключом и значением
+     */
+    public void forEach(BiConsumer<String, String> action) {
+        frozen.forEach(action);
+    }
+
+    private <T> T getCached(String key, Class<T> type, T defaultValue, Parser<T> parser) throws InvalidPropertyValueFormatException {
+        int index = frozen.indexOf(key);
+        if (index < 0) {
+            return defaultValue;
+        }
+        T value = frozen.getParsed(index, type);
+        if (value == null) {
+            value = parser.parse(key);
+            frozen.putParsed(index, type, value);
+        }
+        return value;
+    }
+
+    // ------ Integer
+    @Override public Integer getInteger(String key, Supplier<Integer> defaultValueSupplier) throws InvalidPropertyValueFormatException {
+        Integer value = getInteger(key, (Integer) null);
+        return value == null ? defaultValueSupplier.get() : value;
+    }
+
+    @Override public Integer getInteger(String key, Integer defaultValue) throws InvalidPropertyValueFormatException {
+        return getCached(key, Integer.class, defaultValue, k -> super.getInteger(k, (Integer) null));
+    }
+
+    // ------ Longs
+    @Override public Long getLong(String key, Supplier<Long> defaultValueSupplier) throws InvalidPropertyValueFormatException {
+        Long value = getLong(key, (Long) null);
+        return value == null ? defaultValueSupplier.get() : value;
+    }
+
+    @Override public Long getLong(String key, Long defaultValue) throws InvalidPropertyValueFormatException {
+        return getCached(key, Long.class, defaultValue, k -> super.getLong(k, (Long) null));
+    }
+
+    // ------ BigDecimal
+    @Override public BigDecimal getBigDecimal(String key, Supplier<BigDecimal> defaultValueSupplier) throws InvalidPropertyValueFormatException {
+        BigDecimal value = getBigDecimal(key, (BigDecimal) null);
+        return value == null ? defaultValueSupplier.get() : value;
+    }
+
+    @Override public BigDecimal getBigDecimal(String key, BigDecimal defaultValue) throws InvalidPropertyValueFormatException {
+        return getCached(key, BigDecimal.class, defaultValue, k -> super.getBigDecimal(k, (BigDecimal) null));
+    }
+
+    // ------ Durations
+    @Override public Duration getDuration(String key, Supplier<Duration> defaultValueSupplier) throws InvalidPropertyValueFormatException {
+        Duration value = getDuration(key, (Duration) null);
+        return value == null ? defaultValueSupplier.get() : value;
+    }
+
+    @Override public Duration getDuration(String key, Duration defaultValue) throws InvalidPropertyValueFormatException {
+        return getCached(key, Duration.class, defaultValue, k -> super.getDuration(k, (Duration) null));
+    }
+
+    // ------ регэкспы
+    @Override public Pattern getPattern(String key, Supplier<Pattern> defaultValueSupplier) throws InvalidPropertyValueFormatException {
+        Pattern value = getPattern(key, (Pattern) null);
+        return value == null ? defaultValueSupplier.get() : value;
+    }
+
+    @Override public Pattern getPattern(String key, Pattern defaultValue) throws InvalidPropertyValueFormatException {
+        return getCached(key, Pattern.class, defaultValue, k -> super.getPattern(k, (Pattern) null));
+    }
+}
@@ -0,0 +1,93 @@
+package tk.bolovsrol.utils.properties;
+
+import tk.bolovsrol.utils.benchmark.Comparer;
+import tk.bolovsrol.utils.benchmark.Repeater;
+import tk.bolovsrol.utils.properties.sources.FileReadOnlySource;
+import tk.bolovsrol.utils.properties.sources.IdentityMapReadOnlySource;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Сравнивает чтение значений из глубоких веток обычных пропертей, как маршрутизатор читает
+ * свой конфиг, с тем же чтением из замороженного снимка {@link FrozenProperties}.
+ * <p/>
+ * Запуск: <code>java tk.bolovsrol.utils.properties.FrozenPropertiesBenchmark [проходов] [итерации]</code>
+ */
+public class FrozenPropertiesBenchmark {
+
+    private static final int TENANTS = 50;
+    private static final int ROUTES = 20;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int t = 0; t < TENANTS; t++) {
+            for (int r = 0; r < ROUTES; r++) {
+                String prefix = "router.tenant" + t + ".route" + r + '.';
+                values.put(prefix + "port", String.valueOf(8000 + r));
+                values.put(prefix + "timeout", String.valueOf(r + 1));
+                values.put(prefix + "quota", String.valueOf(1000000L * t + r));
+                values.put(prefix + "host", "host" + r + ".tenant" + t);
+            }
+        }
+        ReadOnlyProperties plain = new ReadOnlyProperties(new ConfLikeSource(values));
+        FrozenProperties frozen = plain.freeze();
+
+        System.out.println("keys: " + frozen.size());
+        System.out.println("output: " + (pass(plain) == pass(frozen) && plain.dump().equals(frozen.dump()) ? "match" : "MISMATCH"));
+
+        long[] sink = new long[1];
+        Comparer comparer = new Comparer(
+              new Repeater() {
+                  @Override public void iteration() {
+                      for (int i = 0; i < count; i++) {
+                          sink[0] += pass(plain);
+                      }
+                  }
+              },
+              new Repeater() {
+                  @Override public void iteration() {
+                      for (int i = 0; i < count; i++) {
+                          sink[0] -= pass(frozen);
+                      }
+                  }
+              });
+        comparer.run(1, iterations);
+        System.out.println("lookup: " + comparer.getAverageReport());
+        System.out.println("sum: " + (sink[0] == 0L ? "match" : "MISMATCH"));
+    }
+
+    private static long pass(ReadOnlyProperties cfg) {
+        try {
+            long sum = 0L;
+            ReadOnlyProperties router = cfg.getBranch("router");
+            for (int t = 0; t < TENANTS; t++) {
+                ReadOnlyProperties tenant = router.getBranch("tenant" + t);
+                for (int r = 0; r < ROUTES; r++) {
+                    ReadOnlyProperties route = tenant.getBranch("route" + r);
+                    sum += route.getInteger("port", 0);
+                    sum += route.getDuration("timeout").getMillis();
+                    sum += route.getLong("quota", 0L);
+                    sum += route.get("host").length();
+                }
+            }
+            return sum;
+        } catch (InvalidPropertyValueFormatException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Как {@link FileReadOnlySource}, только без файла. */
+    private static class ConfLikeSource extends IdentityMapReadOnlySource {
+        ConfLikeSource(Map<String, String> values) {
+            super(new LinkedHashMap<>());
+            int line = 0;
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                source.put(entry.getKey(), new PropertyIdentityValue(entry.getValue(), "bench.cfg:" + ++line));
+            }
+        }
+    }
+}
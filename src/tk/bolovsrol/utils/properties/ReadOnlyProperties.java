@@ -9,7 +9,9 @@ import tk.bolovsrol.utils.UnexpectedBehaviourException;
 import tk.bolovsrol.utils.log.LogDome;
 import tk.bolovsrol.utils.properties.filters.BranchReadOnlySource;
 import tk.bolovsrol.utils.properties.sources.FileReadOnlySource;
+import tk.bolovsrol.utils.properties.sources.FrozenReadOnlySource;
 import tk.bolovsrol.utils.properties.sources.MapReadOnlySource;
+import tk.bolovsrol.utils.properties.sources.PropertiesChangeListener;
 import tk.bolovsrol.utils.properties.sources.ReadOnlySource;
 import tk.bolovsrol.utils.properties.sources.SourceUnavailableException;
 import tk.bolovsrol.utils.time.Duration;
@@ -81,6 +83,24 @@ public class ReadOnlyProperties implements ReadOnlySource {
         return new ReadOnlyProperties(new BranchReadOnlySource(prefix.endsWith(".") ? prefix : prefix + '.', ros));
     }
 
+    /**
+     * Замораживает текущие значения в неизменяемый снимок.
+     * <p/>
+     * В снимке ключи ищутся двоичным поиском по отсортированному массиву,
+     * ветки снимка не склеивают строки при поиске и не цепляют делегатов друг за друга,
+     * а разобранные числа, длительности и регэкспы кэшируются.
+     * Имеет смысл для больших конфигов с глубокими ветками, которые читают на горячем пути.
+     * <p/>
+     * Изменения исходных пропертей в снимок не попадают.
+     *
+     * @return снимок
+     * @throws SourceUnavailableException источник недоступен
+     * @see FrozenReadOnlySource
+     */
+    public FrozenProperties freeze() throws SourceUnavailableException {
+        return new FrozenProperties(FrozenReadOnlySource.freeze(ros));
+    }
+
     /**
      * Возвращает полное название ключа, как оно задано в конфиге,
      * невзирая на бранчи.
@@ -120,6 +140,32 @@ public class ReadOnlyProperties implements ReadOnlySource {
 		return ros.getIdentity(key);
 	}
 
+	@Override
+	public boolean isWatchable() {
+		return ros.isWatchable();
+	}
+
+	/**
+	 * Регистрирует у источника слушателя изменений ключа или ветки.
+	 * Если проперти не меняются ({@link #isWatchable()} false), слушатель не будет вызван никогда.
+	 * <p/>
+	 * Снимать слушателя нужно у этого же объекта: ветки, полученные {@link #getBranch(String)},
+	 * помнят своих слушателей сами.
+	 *
+	 * @param keyOrBranch ключ или ветка, нул — все ключи
+	 * @param listener слушатель
+	 * @see ReadOnlySource#addChangeListener(String, PropertiesChangeListener)
+	 */
+	@Override
+	public void addChangeListener(String keyOrBranch, PropertiesChangeListener listener) {
+		ros.addChangeListener(keyOrBranch, listener);
+	}
+
+	@Override
+	public void removeChangeListener(PropertiesChangeListener listener) {
+		ros.removeChangeListener(listener);
+	}
+
 	private <E> E assertNotNull(String key, E value) throws PropertyNotFoundException {
 		if (value == null) {
 			throw new PropertyNotFoundException(expand(key));
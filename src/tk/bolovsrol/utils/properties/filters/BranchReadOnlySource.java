@@ -1,22 +1,31 @@
 package tk.bolovsrol.utils.properties.filters;
 
 import tk.bolovsrol.utils.Spell;
+import tk.bolovsrol.utils.properties.sources.PropertiesChangeListener;
 import tk.bolovsrol.utils.properties.sources.ReadOnlySource;
 import tk.bolovsrol.utils.properties.sources.SourceUnavailableException;
 
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Позволяет обращаться к ветке пропертей:
  * т.е. к пропертям, все назыания которых начинаются
  * с заданного префикса.
+ * <p/>
+ * Если родитель меняется, слушатели регистрируются у него с префиксом ветки
+ * и получают локальные ключи, а дамп не кэшируется.
  */
 public class BranchReadOnlySource implements ReadOnlySource {
 
     protected final String prefix;
     private final ReadOnlySource parent;
     private Map<String, String> dump;
+    private final Map<PropertiesChangeListener, PropertiesChangeListener> adapters = new ConcurrentHashMap<>();
 
     public BranchReadOnlySource(String prefix, ReadOnlySource parent) {
         this.prefix = prefix;
@@ -36,18 +45,43 @@ public class BranchReadOnlySource implements ReadOnlySource {
     }
 
     @Override public Map<String, String> dump() throws SourceUnavailableException {
-        if (this.dump == null) {
+        Map<String, String> dump = this.dump;
+        if (dump == null) {
             Map<String, String> source = parent.dump();
-            Map<String, String> dump = new LinkedHashMap<>(source.size());
+            dump = new LinkedHashMap<>(source.size());
             for (Map.Entry<String, String> entry : source.entrySet()) {
                 String key = entry.getKey();
                 if (key.startsWith(prefix)) {
                     dump.put(key.substring(prefix.length()), entry.getValue());
                 }
             }
-            this.dump = dump;
+            if (!parent.isWatchable()) {
+                this.dump = dump;
+            }
+        }
+        return dump;
+    }
+
+    @Override public boolean isWatchable() {
+        return parent.isWatchable();
+    }
+
+    @Override public void addChangeListener(String keyOrBranch, PropertiesChangeListener listener) {
+        PropertiesChangeListener adapter = adapters.computeIfAbsent(listener, l -> changedKeys -> {
+            Set<String> localKeys = new LinkedHashSet<>();
+            for (String key : changedKeys) {
+                localKeys.add(key.substring(prefix.length()));
+            }
+            l.propertiesChanged(Collections.unmodifiableSet(localKeys));
+        });
+        parent.addChangeListener(keyOrBranch == null ? prefix : prefix + keyOrBranch, adapter);
+    }
+
+    @Override public void removeChangeListener(PropertiesChangeListener listener) {
+        PropertiesChangeListener adapter = adapters.remove(listener);
+        if (adapter != null) {
+            parent.removeChangeListener(adapter);
         }
-        return this.dump;
     }
 
     @Override
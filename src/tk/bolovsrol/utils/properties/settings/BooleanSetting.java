@@ -0,0 +1,40 @@
+package tk.bolovsrol.utils.properties.settings;
+
+import tk.bolovsrol.utils.log.LogDome;
+import tk.bolovsrol.utils.properties.ReadOnlyProperties;
+
+/** Логическая настройка. */
+public class BooleanSetting extends Setting {
+
+    private final boolean defaultValue;
+    private volatile boolean value;
+
+    /**
+     * @param properties проперти
+     * @param key ключ
+     * @param defaultValue значение, если ключа нет или значение кривое
+     * @param log куда ругаться на кривое значение и писать об изменениях, может быть нул
+     */
+    public BooleanSetting(ReadOnlyProperties properties, String key, boolean defaultValue, LogDome log) {
+        super(properties, key, log);
+        this.defaultValue = defaultValue;
+        this.value = properties.getBoolean(key, defaultValue);
+        bind();
+    }
+
+    public boolean get() {
+        return value;
+    }
+
+    @Override public Boolean getValue() {
+        return value;
+    }
+
+    @Override protected synchronized void refresh() {
+        boolean value = properties.getBoolean(key, defaultValue);
+        if (value != this.value) {
+            this.value = value;
+            changed(value);
+        }
+    }
+}
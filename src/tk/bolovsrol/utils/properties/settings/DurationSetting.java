@@ -0,0 +1,43 @@
+package tk.bolovsrol.utils.properties.settings;
+
+import tk.bolovsrol.utils.log.LogDome;
+import tk.bolovsrol.utils.properties.ReadOnlyProperties;
+import tk.bolovsrol.utils.time.Duration;
+
+import java.util.Objects;
+
+/** Настройка-длительность. */
+public class DurationSetting extends Setting {
+
+    private final Duration defaultValue;
+    private volatile Duration value;
+
+    /**
+     * @param properties проперти
+     * @param key ключ
+     * @param defaultValue значение, если ключа нет или значение кривое
+     * @param log куда ругаться на кривое значение и писать об изменениях, может быть нул
+     */
+    public DurationSetting(ReadOnlyProperties properties, String key, Duration defaultValue, LogDome log) {
+        super(properties, key, log);
+        this.defaultValue = defaultValue;
+        this.value = properties.getDuration(key, defaultValue, log);
+        bind();
+    }
+
+    public Duration get() {
+        return value;
+    }
+
+    @Override public Duration getValue() {
+        return value;
+    }
+
+    @Override protected synchronized void refresh() {
+        Duration value = properties.getDuration(key, defaultValue, log);
+        if (!Objects.equals(value, this.value)) {
+            this.value = value;
+            changed(value);
+        }
+    }
+}
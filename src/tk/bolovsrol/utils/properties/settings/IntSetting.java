@@ -0,0 +1,40 @@
+package tk.bolovsrol.utils.properties.settings;
+
+import tk.bolovsrol.utils.log.LogDome;
+import tk.bolovsrol.utils.properties.ReadOnlyProperties;
+
+/** Целочисленная настройка. */
+public class IntSetting extends Setting {
+
+    private final int defaultValue;
+    private volatile int value;
+
+    /**
+     * @param properties проперти
+     * @param key ключ
+     * @param defaultValue значение, если ключа нет или значение кривое
+     * @param log куда ругаться на кривое значение и писать об изменениях, может быть нул
+     */
+    public IntSetting(ReadOnlyProperties properties, String key, int defaultValue, LogDome log) {
+        super(properties, key, log);
+        this.defaultValue = defaultValue;
+        this.value = properties.getInteger(key, defaultValue, log);
+        bind();
+    }
+
+    public int get() {
+        return value;
+    }
+
+    @Override public Integer getValue() {
+        return value;
+    }
+
+    @Override protected synchronized void refresh() {
+        int value = properties.getInteger(key, defaultValue, log);
+        if (value != this.value) {
+            this.value = value;
+            changed(value);
+        }
+    }
+}
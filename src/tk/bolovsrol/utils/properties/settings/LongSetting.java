@@ -0,0 +1,40 @@
+package tk.bolovsrol.utils.properties.settings;
+
+import tk.bolovsrol.utils.log.LogDome;
+import tk.bolovsrol.utils.properties.ReadOnlyProperties;
+
+/** Настройка типа long. */
+public class LongSetting extends Setting {
+
+    private final long defaultValue;
+    private volatile long value;
+
+    /**
+     * @param properties проперти
+     * @param key ключ
+     * @param defaultValue значение, если ключа нет или значение кривое
+     * @param log куда ругаться на кривое значение и писать об изменениях, может быть нул
+     */
+    public LongSetting(ReadOnlyProperties properties, String key, long defaultValue, LogDome log) {
+        super(properties, key, log);
+        this.defaultValue = defaultValue;
+        this.value = properties.getLong(key, defaultValue, log);
+        bind();
+    }
+
+    public long get() {
+        return value;
+    }
+
+    @Override public Long getValue() {
+        return value;
+    }
+
+    @Override protected synchronized void refresh() {
+        long value = properties.getLong(key, defaultValue, log);
+        if (value != this.value) {
+            this.value = value;
+            changed(value);
+        }
+    }
+}
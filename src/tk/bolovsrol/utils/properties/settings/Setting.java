@@ -0,0 +1,70 @@
+package tk.bolovsrol.utils.properties.settings;
+
+import tk.bolovsrol.utils.Spell;
+import tk.bolovsrol.utils.log.LogDome;
+import tk.bolovsrol.utils.properties.ReadOnlyProperties;
+import tk.bolovsrol.utils.properties.sources.PropertiesChangeListener;
+
+import java.util.Set;
+
+/**
+ * Типизированная настройка: значение разбирается один раз и хранится готовым,
+ * а когда проперти меняются, разбирается заново.
+ * <p/>
+ * Это замена статическим константам вида
+ * <code>static final int X = Cfg.getInteger("x", 42, log)</code>:
+ * чтение значения — это чтение volatile-поля, без разбора строки,
+ * и при этом значение можно поменять в конфиге без перезапуска.
+ * <p/>
+ * Кривое значение в конфиге логируется, а настройка принимает значение по умолчанию.
+ * Изменения настройки логируются хинтом.
+ *
+ * @see tk.bolovsrol.utils.properties.Cfg#newIntSetting(String, int)
+ */
+public abstract class Setting implements PropertiesChangeListener {
+
+    protected final ReadOnlyProperties properties;
+    protected final String key;
+    protected final LogDome log;
+
+    protected Setting(ReadOnlyProperties properties, String key, LogDome log) {
+        this.properties = properties;
+        this.key = key;
+        this.log = log;
+    }
+
+    /** Регистрирует настройку у пропертей, вызывается в конце конструктора наследника. */
+    protected final void bind() {
+        properties.addChangeListener(key, this);
+    }
+
+    /** Отписывает настройку от изменений, значение замирает. */
+    public void unbind() {
+        properties.removeChangeListener(this);
+    }
+
+    @Override public void propertiesChanged(Set<String> changedKeys) {
+        refresh();
+    }
+
+    /** Разбирает значение заново и, если оно изменилось, запоминает. */
+    protected abstract void refresh();
+
+    /** Наследник вызывает, когда значение изменилось. */
+    protected void changed(Object value) {
+        if (log != null) {
+            log.hint("Setting " + properties.expand(key) + " changed to " + Spell.get(value));
+        }
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /** @return текущее значение в виде объекта */
+    public abstract Object getValue();
+
+    @Override public String toString() {
+        return properties.expand(key) + '=' + Spell.get(getValue());
+    }
+}
@@ -0,0 +1,42 @@
+package tk.bolovsrol.utils.properties.settings;
+
+import tk.bolovsrol.utils.log.LogDome;
+import tk.bolovsrol.utils.properties.ReadOnlyProperties;
+
+import java.util.Objects;
+
+/** Строковая настройка. */
+public class StringSetting extends Setting {
+
+    private final String defaultValue;
+    private volatile String value;
+
+    /**
+     * @param properties проперти
+     * @param key ключ
+     * @param defaultValue значение, если ключа нет или значение кривое
+     * @param log куда ругаться на кривое значение и писать об изменениях, может быть нул
+     */
+    public StringSetting(ReadOnlyProperties properties, String key, String defaultValue, LogDome log) {
+        super(properties, key, log);
+        this.defaultValue = defaultValue;
+        this.value = properties.get(key, defaultValue);
+        bind();
+    }
+
+    public String get() {
+        return value;
+    }
+
+    @Override public String getValue() {
+        return value;
+    }
+
+    @Override protected synchronized void refresh() {
+        String value = properties.get(key, defaultValue);
+        if (!Objects.equals(value, this.value)) {
+            this.value = value;
+            changed(value);
+        }
+    }
+}
@@ -67,6 +67,34 @@ public class DescendantReadOnlySource implements ReadOnlySource {
         return null;
     }
 
+    @Override
+    public boolean isWatchable() {
+        for (ReadOnlySource source : sources) {
+            if (source.isWatchable()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Регистрирует слушателя у всех источников. Об изменении значения,
+     * перекрытого более приоритетным источником, слушатель тоже узнает.
+     */
+    @Override
+    public void addChangeListener(String keyOrBranch, PropertiesChangeListener listener) {
+        for (ReadOnlySource source : sources) {
+            source.addChangeListener(keyOrBranch, listener);
+        }
+    }
+
+    @Override
+    public void removeChangeListener(PropertiesChangeListener listener) {
+        for (ReadOnlySource source : sources) {
+            source.removeChangeListener(listener);
+        }
+    }
+
     @Override public String toString() {
         StringDumpBuilder sdb = new StringDumpBuilder();
         for (Map.Entry<String, String> entry : dump().entrySet()) {
@@ -0,0 +1,269 @@
+package tk.bolovsrol.utils.properties.sources;
+
+import tk.bolovsrol.utils.Spell;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Неизменяемый снимок пропертей: ключи лежат отсортированным массивом,
+ * значения ищутся двоичным поиском.
+ * <p/>
+ * Ветка снимка — это просто диапазон того же массива и длина общего префикса,
+ * так что ветки любой глубины ищут ключи в общем массиве, не склеивая строк
+ * и не пробираясь через цепочку делегатов. Перебрать ветку можно
+ * {@link #forEach(BiConsumer)}, не копируя карту.
+ * <p/>
+ * Рядом со значениями лежит кэш разобранных значений, общий для снимка и всех его веток,
+ * см. {@link #getParsed(int, Class)}.
+ */
+public class FrozenReadOnlySource implements ReadOnlySource {
+
+    /** Массивы снимка, общие для всех веток. */
+    private static final class Table {
+        private final String[] keys;
+        private final String[] values;
+        private final String[] identities;
+        private final Parsed[] parsed;
+
+        private Table(String[] keys, String[] values, String[] identities) {
+            this.keys = keys;
+            this.values = values;
+            this.identities = identities;
+            this.parsed = new Parsed[keys.length];
+        }
+    }
+
+    /** Разобранное значение и его класс. Неизменяемый, так что публикуется гонкой безопасно. */
+    private static final class Parsed {
+        private final Class<?> type;
+        private final Object value;
+
+        private Parsed(Class<?> type, Object value) {
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+    private final Table table;
+    private final int from;
+    private final int to;
+    /** Длина префикса ветки в ключах таблицы. */
+    private final int offset;
+    /** Для ветки — снимок, от которого она отросла, для корня — источник, с которого сделан снимок. Нужен только для {@link #expand(String)}. */
+    private final ReadOnlySource parent;
+    /** Префикс ветки в ключах родителя, для корня нул. */
+    private final String branchPrefix;
+
+    private FrozenReadOnlySource(Table table, int from, int to, int offset, ReadOnlySource parent, String branchPrefix) {
+        this.table = table;
+        this.from = from;
+        this.to = to;
+        this.offset = offset;
+        this.parent = parent;
+        this.branchPrefix = branchPrefix;
+    }
+
+    /**
+     * Снимает текущие значения источника.
+     * <p/>
+     * Полные названия ключей для диагностики {@link #expand(String)}
+     * по-прежнему спрашиваются у исходного источника.
+     *
+     * @param source источник
+     * @return снимок
+     * @throws SourceUnavailableException источник недоступен
+     */
+    public static FrozenReadOnlySource freeze(ReadOnlySource source) throws SourceUnavailableException {
+        if (source instanceof FrozenReadOnlySource) {
+            return (FrozenReadOnlySource) source;
+        }
+        Map<String, String> dump = source.dump();
+        String[] keys = dump.keySet().toArray(new String[0]);
+        Arrays.sort(keys);
+        String[] values = new String[keys.length];
+        String[] identities = null;
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = dump.get(keys[i]);
+            String identity = source.getIdentity(keys[i]);
+            if (identity != null) {
+                if (identities == null) {
+                    identities = new String[keys.length];
+                }
+                identities[i] = identity;
+            }
+        }
+        return new FrozenReadOnlySource(new Table(keys, values, identities), 0, keys.length, 0, source, null);
+    }
+
+    /**
+     * Возвращает ветку снимка: ключи, которые начинаются с префикса, без префикса.
+     * <p/>
+     * Если префикс не заканчивается точкой, точка подразумевается,
+     * как у {@link tk.bolovsrol.utils.properties.ReadOnlyProperties#getBranch(String)}.
+     * Строки при этом не склеиваются.
+     *
+     * @param branchPrefix префикс
+     * @return ветка
+     */
+    public FrozenReadOnlySource getBranch(String branchPrefix) {
+        int length = branchPrefix.endsWith(".") ? branchPrefix.length() : branchPrefix.length() + 1;
+        int lo = from;
+        int hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (comparePrefix(table.keys[mid], offset, branchPrefix, length) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int start = lo;
+        hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (comparePrefix(table.keys[mid], offset, branchPrefix, length) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return new FrozenReadOnlySource(table, start, lo, offset + length, this, branchPrefix);
+    }
+
+    /**
+     * Сравнивает ключ таблицы без префикса ветки с искомым ключом.
+     */
+    private int compare(String tableKey, String key) {
+        int length = tableKey.length() - offset;
+        int common = Math.min(length, key.length());
+        for (int i = 0; i < common; i++) {
+            int diff = tableKey.charAt(offset + i) - key.charAt(i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length - key.length();
+    }
+
+    /**
+     * Сравнивает начало ключа таблицы без префикса ветки с префиксом,
+     * ключ, который начинается с префикса, считается равным ему.
+     * Если префикс короче prefixLength, то недостающий последний символ — точка.
+     */
+    private static int comparePrefix(String tableKey, int offset, String branchPrefix, int prefixLength) {
+        int length = tableKey.length() - offset;
+        int common = Math.min(length, prefixLength);
+        for (int i = 0; i < common; i++) {
+            int diff = tableKey.charAt(offset + i) - (i < branchPrefix.length() ? branchPrefix.charAt(i) : '.');
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length < prefixLength ? -1 : 0;
+    }
+
+    /**
+     * Ищет ключ в снимке.
+     *
+     * @param key ключ
+     * @return индекс ключа для {@link #getParsed(int, Class)}, либо отрицательное число, если ключа нет
+     */
+    public int indexOf(String key) {
+        if (key == null) {
+            return -1;
+        }
+        int lo = from;
+        int hi = to - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compare(table.keys[mid], key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Возвращает закэшированное разобранное значение ключа.
+     *
+     * @param index индекс ключа, см. {@link #indexOf(String)}
+     * @param type класс значения
+     * @param <T> класс значения
+     * @return значение или нул, если значение этого класса ещё не разбиралось
+     */
+    public <T> T getParsed(int index, Class<T> type) {
+        Parsed parsed = table.parsed[index];
+        return parsed != null && parsed.type == type ? type.cast(parsed.value) : null;
+    }
+
+    /**
+     * Кэширует разобранное значение ключа. На ключ хранится одно значение,
+     * если ключ читают разными типами, кэш будет перезаписываться.
+     *
+     * @param index индекс ключа, см. {@link #indexOf(String)}
+     * @param type класс значения
+     * @param value значение
+     * @param <T> класс значения
+     */
+    public <T> void putParsed(int index, Class<T> type, T value) {
+        table.parsed[index] = new Parsed(type, value);
+    }
+
+    /** @return количество ключей в снимке или ветке */
+    public int size() {
+        return to - from;
+    }
+
+    /**
+     * Перебирает ключи и значения в порядке сортировки ключей, не копируя карту.
+     *
+     * @param action что делать с ключом и значением
+     */
+    public void forEach(BiConsumer<String, String> action) {
+        for (int i = from; i < to; i++) {
+            action.accept(offset == 0 ? table.keys[i] : table.keys[i].substring(offset), table.values[i]);
+        }
+    }
+
+    @Override public String expand(String localBranchKey) {
+        if (branchPrefix == null) {
+            return parent.expand(localBranchKey);
+        }
+        return parent.expand(branchPrefix.endsWith(".") ? branchPrefix + localBranchKey : branchPrefix + '.' + localBranchKey);
+    }
+
+    @Override public String get(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : table.values[index];
+    }
+
+    @Override public boolean has(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override public Map<String, String> dump() {
+        Map<String, String> dump = new LinkedHashMap<>((to - from) * 2);
+        forEach(dump::put);
+        return dump;
+    }
+
+    @Override public String getIdentity(String key) {
+        if (table.identities == null) {
+            return null;
+        }
+        int index = indexOf(key);
+        return index < 0 ? null : table.identities[index];
+    }
+
+    @Override public String toString() {
+        return Spell.get(dump());
+    }
+}
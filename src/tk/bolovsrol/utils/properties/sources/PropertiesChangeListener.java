@@ -0,0 +1,23 @@
+package tk.bolovsrol.utils.properties.sources;
+
+import java.util.Set;
+
+/**
+ * Слушатель изменений пропертей.
+ *
+ * @see ReadOnlySource#addChangeListener(String, PropertiesChangeListener)
+ */
+@FunctionalInterface public interface PropertiesChangeListener {
+
+    /**
+     * Вызывается, когда значения пропертей изменились: новые значения уже доступны в источнике.
+     * <p/>
+     * Ключи локальные для источника, у которого слушатель регистрировали.
+     * Если что именно изменилось, неизвестно (например, источник целиком подменили,
+     * а сдампить его не получилось), набор пустой.
+     *
+     * @param changedKeys изменившиеся, добавленные и удалённые ключи
+     */
+    void propertiesChanged(Set<String> changedKeys);
+
+}
@@ -0,0 +1,119 @@
+package tk.bolovsrol.utils.properties.sources;
+
+import tk.bolovsrol.utils.log.Log;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Список слушателей изменений пропертей с фильтром по ключу или ветке
+ * для источников, значения которых могут меняться.
+ * <p/>
+ * Фильтр «a.b» пропускает ключ «a.b» и все ключи ветки «a.b.», фильтр «a.b.» — только ветку,
+ * нул — всё подряд. Слушатель получает только те ключи, которые прошли фильтр.
+ * <p/>
+ * Слушателей добавляют редко, а оповещают из разных тредов, поэтому список копируется при записи.
+ * Исключение, вылетевшее из слушателя, логируется и другим слушателям не мешает.
+ */
+public class PropertiesChangeNotifier {
+
+    private static final class Entry {
+        private final String keyOrBranch;
+        private final PropertiesChangeListener listener;
+
+        private Entry(String keyOrBranch, PropertiesChangeListener listener) {
+            this.keyOrBranch = keyOrBranch;
+            this.listener = listener;
+        }
+
+        private boolean accepts(String key) {
+            return keyOrBranch == null
+                  || key.startsWith(keyOrBranch)
+                  && (key.length() == keyOrBranch.length() || keyOrBranch.endsWith(".") || key.charAt(keyOrBranch.length()) == '.');
+        }
+    }
+
+    private final List<Entry> entries = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param keyOrBranch ключ или ветка, нул — все ключи
+     * @param listener слушатель
+     */
+    public void add(String keyOrBranch, PropertiesChangeListener listener) {
+        entries.add(new Entry(keyOrBranch, Objects.requireNonNull(listener)));
+    }
+
+    /**
+     * Удаляет все регистрации слушателя.
+     *
+     * @param listener слушатель
+     */
+    public void remove(PropertiesChangeListener listener) {
+        entries.removeIf(entry -> entry.listener == listener);
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Оповещает слушателей, чей фильтр пропускает хоть один изменившийся ключ.
+     * Пустой набор означает, что изменилось неизвестно что, его получат все.
+     *
+     * @param changedKeys изменившиеся ключи
+     */
+    public void fire(Set<String> changedKeys) {
+        for (Entry entry : entries) {
+            Set<String> keys;
+            if (entry.keyOrBranch == null || changedKeys.isEmpty()) {
+                keys = changedKeys;
+            } else {
+                keys = null;
+                for (String key : changedKeys) {
+                    if (entry.accepts(key)) {
+                        if (keys == null) {
+                            keys = new LinkedHashSet<>();
+                        }
+                        keys.add(key);
+                    }
+                }
+                if (keys == null) {
+                    continue;
+                }
+                keys = Collections.unmodifiableSet(keys);
+            }
+            try {
+                entry.listener.propertiesChanged(keys);
+            } catch (Exception e) {
+                Log.exception(e);
+            }
+        }
+    }
+
+    /**
+     * Сравнивает два дампа.
+     *
+     * @param previous было
+     * @param current стало
+     * @return ключи, которые появились, пропали или значения которых изменились
+     */
+    public static Set<String> diff(Map<String, String> previous, Map<String, String> current) {
+        Set<String> changed = new LinkedHashSet<>();
+        for (Map.Entry<String, String> entry : previous.entrySet()) {
+            if (!Objects.equals(entry.getValue(), current.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String key : current.keySet()) {
+            if (!previous.containsKey(key)) {
+                changed.add(key);
+            }
+        }
+        return Collections.unmodifiableSet(changed);
+    }
+}
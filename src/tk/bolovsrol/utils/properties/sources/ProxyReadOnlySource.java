@@ -1,15 +1,26 @@
 package tk.bolovsrol.utils.properties.sources;
 
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 
+/**
+ * Источник, который обращается к подменяемому делегату.
+ * <p/>
+ * Слушатели регистрируются у самого прокси, так что подмену делегата переживают:
+ * при подмене они узнают о разнице между старым и новым делегатом,
+ * а потом — об изменениях нового делегата, если тот меняется.
+ */
 public class ProxyReadOnlySource implements ReadOnlySource {
-    private ReadOnlySource delegate;
+    private volatile ReadOnlySource delegate;
+    private final PropertiesChangeNotifier notifier = new PropertiesChangeNotifier();
+    private final PropertiesChangeListener forwarder = notifier::fire;
 
     public ProxyReadOnlySource() {
     }
 
     public ProxyReadOnlySource(ReadOnlySource delegate) {
-        this.delegate = delegate;
+        setDelegate(delegate);
     }
 
     public ReadOnlySource getDelegate() {
@@ -17,7 +28,33 @@ public class ProxyReadOnlySource implements ReadOnlySource {
     }
 
     public void setDelegate(ReadOnlySource delegate) {
-        this.delegate = delegate;
+        ReadOnlySource previous;
+        synchronized (forwarder) {
+            previous = this.delegate;
+            if (previous == delegate) {
+                return;
+            }
+            if (previous != null) {
+                previous.removeChangeListener(forwarder);
+            }
+            this.delegate = delegate;
+            if (delegate != null) {
+                delegate.addChangeListener(null, forwarder);
+            }
+        }
+        if (previous != null && !notifier.isEmpty()) {
+            Set<String> changedKeys;
+            try {
+                changedKeys = PropertiesChangeNotifier.diff(previous.dump(), delegate == null ? Collections.emptyMap() : delegate.dump());
+                if (changedKeys.isEmpty()) {
+                    return;
+                }
+            } catch (SourceUnavailableException e) {
+                // неизвестно, что поменялось
+                changedKeys = Collections.emptySet();
+            }
+            notifier.fire(changedKeys);
+        }
     }
 
     @Override public String expand(String localBranchKey) {
@@ -40,6 +77,19 @@ public class ProxyReadOnlySource implements ReadOnlySource {
         return delegate.getIdentity(key);
     }
 
+    /** Делегата можно подменить, так что прокси всегда считается изменяемым. */
+    @Override public boolean isWatchable() {
+        return true;
+    }
+
+    @Override public void addChangeListener(String keyOrBranch, PropertiesChangeListener listener) {
+        notifier.add(keyOrBranch, listener);
+    }
+
+    @Override public void removeChangeListener(PropertiesChangeListener listener) {
+        notifier.remove(listener);
+    }
+
     @Override public String toString() {
 		return delegate.toString();
 	}
@@ -57,4 +57,37 @@ public interface ReadOnlySource {
     default String getIdentity(String key) throws SourceUnavailableException {
         return null;
     }
+
+    /**
+     * Сообщает, могут ли значения источника меняться на ходу с оповещением слушателей.
+     * <p>
+     * У большинства источников значения не меняются, и слушателей они просто игнорируют.
+     *
+     * @return true, если источник оповещает слушателей об изменениях
+     * @see #addChangeListener(String, PropertiesChangeListener)
+     */
+    default boolean isWatchable() {
+        return false;
+    }
+
+    /**
+     * Регистрирует слушателя изменений ключа или ветки.
+     * <p>
+     * Ключ «a.b» — это сам ключ и все ключи ветки «a.b.», ключ с точкой на конце — только ветка,
+     * нул — все ключи. Если источник не меняется, слушатель не будет вызван никогда.
+     *
+     * @param keyOrBranch ключ или ветка, нул — все ключи
+     * @param listener слушатель
+     * @see PropertiesChangeNotifier
+     */
+    default void addChangeListener(String keyOrBranch, PropertiesChangeListener listener) {
+    }
+
+    /**
+     * Снимает все регистрации слушателя.
+     *
+     * @param listener слушатель
+     */
+    default void removeChangeListener(PropertiesChangeListener listener) {
+    }
 }
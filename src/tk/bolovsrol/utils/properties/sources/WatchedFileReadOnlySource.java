@@ -0,0 +1,273 @@
+package tk.bolovsrol.utils.properties.sources;
+
+import tk.bolovsrol.utils.Spell;
+import tk.bolovsrol.utils.log.Log;
+import tk.bolovsrol.utils.properties.PropertyIdentityValue;
+import tk.bolovsrol.utils.properties.files.ConfFileParser;
+import tk.bolovsrol.utils.properties.files.ConfFileParsingException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Читатель пропертей из текстового файлика, который умеет перечитывать файл на ходу.
+ * <p/>
+ * Значения хранятся неизменяемым снимком, который при перечитывании подменяется целиком,
+ * так что читатели никогда не видят полуразобранный файл. Чтобы прочитать несколько
+ * согласованных значений, следует взять снимок {@link #getSnapshot()}.
+ * <p/>
+ * После {@link #startWatching()} тред-наблюдатель следит через {@link WatchService}
+ * за файлом и всеми подключёнными в него файлами и перечитывает конфиг, когда они меняются.
+ * Если новый конфиг не разбирается, остаются старые значения, а в лог пишется предупреждение.
+ * Слушатели узнают только о ключах, значения которых действительно изменились.
+ *
+ * @see ConfFileParser
+ * @see FileReadOnlySource
+ */
+public class WatchedFileReadOnlySource implements ReadOnlySource, Closeable {
+
+    /** Сколько ждать тишины после изменения файла, прежде чем перечитывать: редакторы пишут в несколько приёмов. */
+    public static final long DEFAULT_SETTLE_MILLIS = 200L;
+
+    private final File file;
+    private final long settleMillis;
+    private final PropertiesChangeNotifier notifier = new PropertiesChangeNotifier();
+    private final Object reloadLock = new Object();
+    private volatile Snapshot snapshot;
+    private Watcher watcher;
+
+    /** Разобранный конфиг и файлы, из которых он собран. */
+    private static final class Snapshot extends IdentityMapReadOnlySource {
+        private final Set<Path> files;
+
+        private Snapshot(Map<String, PropertyIdentityValue> source, Set<Path> files) {
+            super(Collections.unmodifiableMap(source));
+            this.files = files;
+        }
+    }
+
+    public WatchedFileReadOnlySource(String fileName) throws ConfFileParsingException {
+        this(new File(fileName));
+    }
+
+    public WatchedFileReadOnlySource(File file) throws ConfFileParsingException {
+        this(file, DEFAULT_SETTLE_MILLIS);
+    }
+
+    /**
+     * @param file файл конфига
+     * @param settleMillis сколько ждать тишины после изменения, прежде чем перечитывать
+     * @throws ConfFileParsingException файл не разбирается
+     */
+    public WatchedFileReadOnlySource(File file, long settleMillis) throws ConfFileParsingException {
+        this.file = file;
+        this.settleMillis = settleMillis;
+        this.snapshot = parse(file);
+    }
+
+    private static Snapshot parse(File file) throws ConfFileParsingException {
+        ConfFileParser parser = new ConfFileParser();
+        Map<String, PropertyIdentityValue> values = parser.parse(file);
+        Set<Path> files = new HashSet<>();
+        for (File f : parser.getFileModificationDates().keySet()) {
+            files.add(f.getAbsoluteFile().toPath().normalize());
+        }
+        return new Snapshot(values, files);
+    }
+
+    /**
+     * Запускает тред-наблюдатель. Повторный вызов ничего не делает.
+     *
+     * @throws IOException не удалось подписаться на изменения файлов
+     */
+    public void startWatching() throws IOException {
+        synchronized (reloadLock) {
+            if (watcher == null) {
+                Watcher watcher = new Watcher(FileSystems.getDefault().newWatchService());
+                try {
+                    watcher.register(snapshot.files);
+                } catch (IOException e) {
+                    watcher.close();
+                    throw e;
+                }
+                watcher.start();
+                this.watcher = watcher;
+            }
+        }
+    }
+
+    /** Останавливает тред-наблюдатель. Значения остаются доступны. */
+    @Override public void close() {
+        synchronized (reloadLock) {
+            if (watcher != null) {
+                watcher.close();
+                watcher = null;
+            }
+        }
+    }
+
+    /**
+     * Перечитывает файл и, если значения изменились, подменяет снимок и оповещает слушателей.
+     * Если файл не разбирается, оставляет прежние значения.
+     *
+     * @return true, если какие-то значения изменились
+     */
+    public boolean reload() {
+        synchronized (reloadLock) {
+            Snapshot fresh;
+            try {
+                fresh = parse(file);
+            } catch (ConfFileParsingException e) {
+                Log.warning("Cannot reload " + Spell.get(file) + ", keeping previous values: " + e.getMessage());
+                return false;
+            }
+            Snapshot previous = snapshot;
+            snapshot = fresh;
+            if (watcher != null && !fresh.files.equals(previous.files)) {
+                try {
+                    watcher.register(fresh.files);
+                } catch (IOException e) {
+                    Log.warning("Cannot watch files included into " + Spell.get(file) + ": " + e.getMessage());
+                }
+            }
+            Set<String> changedKeys = PropertiesChangeNotifier.diff(previous.dump(), fresh.dump());
+            if (changedKeys.isEmpty()) {
+                return false;
+            }
+            Log.hint("Reloaded " + Spell.get(file) + ", changed keys " + Spell.get(changedKeys));
+            notifier.fire(changedKeys);
+            return true;
+        }
+    }
+
+    /** @return неизменяемый снимок текущих значений */
+    public ReadOnlySource getSnapshot() {
+        return snapshot;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override public String get(String key) {
+        return snapshot.get(key);
+    }
+
+    @Override public boolean has(String key) {
+        return snapshot.has(key);
+    }
+
+    @Override public Map<String, String> dump() {
+        return snapshot.dump();
+    }
+
+    @Override public String getIdentity(String key) {
+        return snapshot.getIdentity(key);
+    }
+
+    @Override public boolean isWatchable() {
+        return true;
+    }
+
+    @Override public void addChangeListener(String keyOrBranch, PropertiesChangeListener listener) {
+        notifier.add(keyOrBranch, listener);
+    }
+
+    @Override public void removeChangeListener(PropertiesChangeListener listener) {
+        notifier.remove(listener);
+    }
+
+    @Override public String toString() {
+        return snapshot.toString();
+    }
+
+    /**
+     * Следит за каталогами файлов конфига: {@link WatchService} умеет следить только за каталогами.
+     */
+    private class Watcher extends Thread {
+        private final WatchService watchService;
+        private final Map<Path, WatchKey> directories = new HashMap<>();
+        private volatile Set<Path> files = Collections.emptySet();
+
+        Watcher(WatchService watchService) {
+            super("ConfWatcher-" + file.getName());
+            this.watchService = watchService;
+            setDaemon(true);
+        }
+
+        synchronized void register(Set<Path> files) throws IOException {
+            Set<Path> wanted = new HashSet<>();
+            for (Path path : files) {
+                Path directory = path.getParent();
+                wanted.add(directory);
+                if (!directories.containsKey(directory)) {
+                    directories.put(directory, directory.register(watchService,
+                          StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE));
+                }
+            }
+            for (Iterator<Map.Entry<Path, WatchKey>> it = directories.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Path, WatchKey> entry = it.next();
+                if (!wanted.contains(entry.getKey())) {
+                    entry.getValue().cancel();
+                    it.remove();
+                }
+            }
+            this.files = files;
+        }
+
+        void close() {
+            interrupt();
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                Log.exception(e);
+            }
+        }
+
+        @Override public void run() {
+            try {
+                while (!isInterrupted()) {
+                    if (drain(watchService.take())) {
+                        WatchKey key;
+                        while ((key = watchService.poll(settleMillis, TimeUnit.MILLISECONDS)) != null) {
+                            drain(key);
+                        }
+                        reload();
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException ignored) {
+                // закрыли
+            }
+        }
+
+        /** @return true, если событие касается файлов конфига */
+        private boolean drain(WatchKey key) {
+            boolean relevant = false;
+            Path directory = (Path) key.watchable();
+            Set<Path> files = this.files;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                      || files.contains(directory.resolve((Path) event.context()).normalize())) {
+                    relevant = true;
+                }
+            }
+            key.reset();
+            return relevant;
+        }
+    }
+}
@@ -2,8 +2,16 @@ package tk.bolovsrol.utils.scheduler;
 
 import tk.bolovsrol.utils.StringDumpBuilder;
 import tk.bolovsrol.utils.log.Log;
+import tk.bolovsrol.utils.time.SystemTimeSource;
+import tk.bolovsrol.utils.time.TimeSource;
 
+import java.util.Arrays;
 import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Шедулер является lightweight-заменой стандартному шедулеру.
@@ -11,6 +19,17 @@ import java.util.Date;
  * Зато этот шедулер можно юзать в виде синглтона или делать себе
  * специальную инстанцию, которой можно задавать
  * название рабочего треда.
+ * <p/>
+ * Расписание хранится в четверичной куче, каждая запись которой помнит свою позицию,
+ * поэтому и постановка, и отмена таска стоят O(log n). Таски с одинаковым временем
+ * выполняются в порядке постановки.
+ * <p/>
+ * Время запуска, переданное датой, при постановке переводится в дедлайн монотонных часов
+ * {@link TimeSource#nanoTime()}, так что перевод системных часов на расписание не влияет.
+ * В тестах шедулеру можно передать {@link tk.bolovsrol.utils.time.VirtualTimeSource}.
+ * <p/>
+ * По умолчанию таски выполняются в треде шедулера. Если шедулеру передан {@link Executor},
+ * наступившие таски выполняются в нём, и медленный таск не задерживает прочие.
  */
 public class Scheduler extends Thread {
 
@@ -20,21 +39,62 @@ public class Scheduler extends Thread {
 
     private final Object lock = new Object();
 
-    private SchedulerEntry<Task> top;
-    private SchedulerEntry<Task> bottom;
+    /** Исполнитель тасков или нул, если таски выполняются в треде шедулера. */
+    private final Executor executor;
+    private final TimeSource timeSource;
+
+    private SchedulerEntry<Task>[] heap = newHeap(64);
+    private int size = 0;
+    private long sequence = 0L;
+    /** Таск → одна из его записей в куче, остальные записи того же таска цепляются к ней. */
+    private final Map<Task, SchedulerEntry<Task>> index = new IdentityHashMap<>();
 
     public Scheduler(String name) {
         this(name, true);
     }
 
     public Scheduler(String name, boolean startImmediately) {
+        this(name, startImmediately, null);
+    }
+
+    /**
+     * Создаёт шедулер, выполняющий таски в указанном исполнителе.
+     *
+     * @param name название треда
+     * @param startImmediately запустить тред сразу
+     * @param executorOrNull исполнитель тасков или нул, чтобы выполнять таски в треде шедулера
+     */
+    public Scheduler(String name, boolean startImmediately, Executor executorOrNull) {
+        this(name, startImmediately, executorOrNull, SystemTimeSource.getStatic());
+    }
+
+    /**
+     * Создаёт шедулер, выполняющий таски в указанном исполнителе и отсчитывающий время по указанному источнику.
+     *
+     * @param name название треда
+     * @param startImmediately запустить тред сразу
+     * @param executorOrNull исполнитель тасков или нул, чтобы выполнять таски в треде шедулера
+     * @param timeSource источник времени
+     */
+    public Scheduler(String name, boolean startImmediately, Executor executorOrNull, TimeSource timeSource) {
         super(name);
+        this.executor = executorOrNull;
+        this.timeSource = timeSource;
         this.setDaemon(true);
         if (startImmediately) {
             this.start();
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private static SchedulerEntry<Task>[] newHeap(int capacity) {
+        return (SchedulerEntry<Task>[]) new SchedulerEntry<?>[capacity];
+    }
+
+    public TimeSource getTimeSource() {
+        return timeSource;
+    }
+
     public static Scheduler getStatic() {
         return StaticContainer.STATIC;
     }
@@ -59,94 +119,158 @@ public class Scheduler extends Thread {
      */
     public void schedule(Task task, Date activationOrNull) {
         if (activationOrNull == null) { return; }
+        schedule(task, activationOrNull, timeSource.toDeadlineNanos(activationOrNull.getTime()));
+    }
+
+    /**
+     * Ставит задание в очередь через указанное время после текущего момента.
+     *
+     * @param task задание, которое надо выполнить
+     * @param delayMillis через сколько миллисекунд выполнить задание
+     */
+    public void scheduleIn(Task task, long delayMillis) {
+        schedule(task, new Date(timeSource.currentTimeMillis() + delayMillis), timeSource.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis));
+    }
+
+    private void schedule(Task task, Date activation, long deadlineNanos) {
         synchronized (lock) {
-            SchedulerEntry<Task> newEntry = new SchedulerEntry<Task>(activationOrNull, task);
-            if (top == null) {
-                top = newEntry;
-                bottom = newEntry;
-            } else {
-                SchedulerEntry<Task> entry = bottom;
-                while (true) {
-                    if (!entry.getActivation().after(activationOrNull)) {
-                        // нашли первый таск с датой запуска меньше нужной нам.
-                        // запихнём наш таск за ним
-                        if (entry.isLast()) {
-                            bottom = newEntry;
-                        } else {
-                            entry.getNext().setPrev(newEntry);
-                            newEntry.setNext(entry.getNext());
-                        }
-                        entry.setNext(newEntry);
-                        newEntry.setPrev(entry);
-                        break;
-                    }
-                    if (entry.isFirst()) {
-                        top = newEntry;
-                        entry.setPrev(newEntry);
-                        newEntry.setNext(entry);
-                        break;
-                    }
-                    entry = entry.getPrev();
-                }
+            SchedulerEntry<Task> newEntry = new SchedulerEntry<>(activation, task, deadlineNanos, sequence++);
+            newEntry.setSameTaskNext(index.put(task, newEntry));
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size << 1);
+            }
+            siftUp(size++, newEntry);
+            if (newEntry.getHeapIndex() == 0) {
+                // новое задание самое раннее, пусть тред пересчитает время спячки
+                lock.notifyAll();
             }
-            lock.notifyAll();
         }
     }
 
+    /**
+     * Убирает таск из расписания. Если таск запланирован несколько раз, убирается самая ранняя его запись.
+     * <p/>
+     * Выполняющийся в данный момент таск в расписании не числится.
+     *
+     * @param task таск
+     * @return true, если таск был в расписании, иначе false
+     */
     public boolean cancel(Task task) {
         synchronized (lock) {
-            SchedulerEntry<Task> entry = top;
-            while (entry != null) {
-                if (entry.getTask() == task) {
-                    if (entry.isFirst()) {
-                        top = entry.getNext();
-                    } else {
-                        entry.getPrev().setNext(entry.getNext());
-                    }
-                    if (entry.isLast()) {
-                        bottom = entry.getPrev();
-                    } else {
-                        entry.getNext().setPrev(entry.getPrev());
-                    }
-                    return true;
+            SchedulerEntry<Task> entry = index.get(task);
+            if (entry == null) {
+                return false;
+            }
+            for (SchedulerEntry<Task> e = entry.getSameTaskNext(); e != null; e = e.getSameTaskNext()) {
+                if (e.precedes(entry)) {
+                    entry = e;
                 }
-                entry = entry.getNext();
             }
-            return false;
+            unindex(entry);
+            removeAt(entry.getHeapIndex());
+            return true;
         }
     }
 
-    private void removeTop() {
-        if (top.isLast()) {
-            top = null;
-            bottom = null;
+    /** @return количество записей в расписании */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return size;
+        }
+    }
+
+    private void unindex(SchedulerEntry<Task> entry) {
+        Task task = entry.getTask();
+        SchedulerEntry<Task> head = index.get(task);
+        if (head == entry) {
+            if (entry.getSameTaskNext() == null) {
+                index.remove(task);
+            } else {
+                index.put(task, entry.getSameTaskNext());
+            }
         } else {
-            top = top.getNext();
-            top.setPrev(null);
+            while (head.getSameTaskNext() != entry) {
+                head = head.getSameTaskNext();
+            }
+            head.setSameTaskNext(entry.getSameTaskNext());
+        }
+        entry.setSameTaskNext(null);
+    }
+
+    private void removeAt(int i) {
+        SchedulerEntry<Task> removed = heap[i];
+        removed.setHeapIndex(-1);
+        SchedulerEntry<Task> last = heap[--size];
+        heap[size] = null;
+        if (i < size) {
+            siftDown(i, last);
+            if (last.getHeapIndex() == i) {
+                siftUp(i, last);
+            }
+        }
+    }
+
+    private void siftUp(int i, SchedulerEntry<Task> entry) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 2;
+            SchedulerEntry<Task> p = heap[parent];
+            if (!entry.precedes(p)) {
+                break;
+            }
+            heap[i] = p;
+            p.setHeapIndex(i);
+            i = parent;
         }
+        heap[i] = entry;
+        entry.setHeapIndex(i);
+    }
+
+    private void siftDown(int i, SchedulerEntry<Task> entry) {
+        while (true) {
+            int firstChild = (i << 2) + 1;
+            if (firstChild >= size) {
+                break;
+            }
+            int best = firstChild;
+            int lastChild = Math.min(firstChild + 4, size);
+            for (int c = firstChild + 1; c < lastChild; c++) {
+                if (heap[c].precedes(heap[best])) {
+                    best = c;
+                }
+            }
+            if (!heap[best].precedes(entry)) {
+                break;
+            }
+            heap[i] = heap[best];
+            heap[i].setHeapIndex(i);
+            i = best;
+        }
+        heap[i] = entry;
+        entry.setHeapIndex(i);
     }
 
     @Override public void run() {
         try {
             while (!isInterrupted()) {
-                while (!isInterrupted()) {
-                    Task task;
-                    synchronized (lock) {
-                        while (top == null) {
+                Task task;
+                synchronized (lock) {
+                    while (true) {
+                        if (size == 0) {
                             lock.wait();
+                            continue;
                         }
-                        while (true) {
-                            long tts = top.getActivation().getTime() - System.currentTimeMillis();
-                            if (tts <= 0L) {
-                                break;
-                            }
-                            lock.wait(tts);
+                        long deadline = heap[0].getDeadlineNanos();
+                        if (timeSource.nanoTime() - deadline >= 0L) {
+                            break;
                         }
-                        task = top.getTask();
-                        removeTop();
+                        timeSource.waitUntil(lock, deadline);
                     }
-                    schedule(task, task.execute());
+                    SchedulerEntry<Task> top = heap[0];
+                    unindex(top);
+                    removeAt(0);
+                    task = top.getTask();
                 }
+                dispatch(task);
             }
         } catch (InterruptedException e) {
             // слипы вывалиться могут, если нас кто-нить прервёт
@@ -155,13 +279,35 @@ public class Scheduler extends Thread {
         }
     }
 
+    private void dispatch(Task task) {
+        if (executor == null) {
+            schedule(task, task.execute());
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    schedule(task, task.execute());
+                } catch (Throwable e) {
+                    Log.exception(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.warning("Executor rejected task " + task + ", executing in scheduler thread");
+            schedule(task, task.execute());
+        }
+    }
+
     @Override
     public String toString() {
+        SchedulerEntry<Task>[] entries;
+        synchronized (lock) {
+            entries = Arrays.copyOf(heap, size);
+        }
+        Arrays.sort(entries, SchedulerEntry::compare);
         StringDumpBuilder sdb = new StringDumpBuilder();
-        SchedulerEntry<Task> entry = top;
-        while (entry != null) {
+        for (SchedulerEntry<Task> entry : entries) {
             sdb.append(entry.toString());
-            entry = entry.getNext();
         }
         return sdb.toString();
     }
@@ -1,22 +1,44 @@
 package tk.bolovsrol.utils.scheduler;
 
 import tk.bolovsrol.utils.StringDumpBuilder;
+import tk.bolovsrol.utils.time.SystemTimeSource;
 
 import java.util.Date;
 
 /**
- *
+ * Запись расписания {@link Scheduler}: таск и время его запуска.
+ * <p>
+ * Запись знает своё место в куче шедулера, чтобы её можно было удалить, не перебирая кучу,
+ * и ссылается на следующую запись того же таска, если таск запланирован несколько раз.
+ * <p>
+ * Раньше записи были двусвязным списком, отсортированным по времени запуска.
+ * Вместе со списком пропали и пакетные методы <code>getNext()</code>, <code>getPrev()</code>,
+ * <code>setNext()</code>, <code>setPrev()</code>, <code>isFirst()</code> и <code>isLast()</code>:
+ * в куче соседи по времени не хранятся. Записи в порядке выполнения
+ * перечисляет {@link Scheduler#toString()}.
  */
 public class SchedulerEntry<T extends Task> {
     private final Date activation;
     private final T task;
+    /** Время запуска по монотонным часам шедулера. */
+    private final long deadlineNanos;
 
-    private SchedulerEntry<T> prev;
-    private SchedulerEntry<T> next;
+    /** Порядковый номер постановки, чтобы таски с одинаковым временем выполнялись в порядке постановки. */
+    private final long sequence;
+    /** Позиция в куче или -1, если запись уже не в куче. */
+    private int heapIndex = -1;
+    /** Следующая запись того же таска. */
+    private SchedulerEntry<T> sameTaskNext;
 
     public SchedulerEntry(Date activation, T task) {
+        this(activation, task, SystemTimeSource.getStatic().toDeadlineNanos(activation.getTime()), 0L);
+    }
+
+    SchedulerEntry(Date activation, T task, long deadlineNanos, long sequence) {
         this.activation = activation;
         this.task = task;
+        this.deadlineNanos = deadlineNanos;
+        this.sequence = sequence;
     }
 
     public Date getActivation() {
@@ -27,28 +49,48 @@ public class SchedulerEntry<T extends Task> {
         return task;
     }
 
-    boolean isFirst() {
-        return prev == null;
+    long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    /**
+     * Сравнивает записи по порядку выполнения.
+     *
+     * @param e1 одна запись
+     * @param e2 другая запись
+     * @return отрицательное число, если первую запись надо выполнить раньше второй, положительное, если позже, и 0 для одинаковых записей
+     */
+    static int compare(SchedulerEntry<?> e1, SchedulerEntry<?> e2) {
+        long diff = e1.deadlineNanos - e2.deadlineNanos;
+        if (diff != 0L) {
+            return diff < 0L ? -1 : 1;
+        }
+        return Long.compare(e1.sequence, e2.sequence);
     }
 
-    SchedulerEntry<T> getPrev() {
-        return prev;
+    /**
+     * @param that другая запись
+     * @return true, если эту запись надо выполнить раньше той
+     */
+    boolean precedes(SchedulerEntry<?> that) {
+        long diff = this.deadlineNanos - that.deadlineNanos;
+        return diff < 0L || (diff == 0L && this.sequence < that.sequence);
     }
 
-    void setPrev(SchedulerEntry<T> prev) {
-        this.prev = prev;
+    int getHeapIndex() {
+        return heapIndex;
     }
 
-    boolean isLast() {
-        return next == null;
+    void setHeapIndex(int heapIndex) {
+        this.heapIndex = heapIndex;
     }
 
-    SchedulerEntry<T> getNext() {
-        return next;
+    SchedulerEntry<T> getSameTaskNext() {
+        return sameTaskNext;
     }
 
-    void setNext(SchedulerEntry<T> next) {
-        this.next = next;
+    void setSameTaskNext(SchedulerEntry<T> sameTaskNext) {
+        this.sameTaskNext = sameTaskNext;
     }
 
     @Override
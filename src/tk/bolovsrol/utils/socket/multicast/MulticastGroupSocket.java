@@ -0,0 +1,103 @@
+package tk.bolovsrol.utils.socket.multicast;
+
+import tk.bolovsrol.utils.Spell;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.StandardSocketOptions;
+
+/**
+ * Сокет, подписанный на мультикаст-группу.
+ * <p/>
+ * Создаётся уже подписанным, пакеты отправляет в группу, а при закрытии отписывается.
+ * Свои пакеты сокет тоже получает, так что несколько участников группы
+ * можно запустить на одной машине, указав интерфейс <code>lo</code>.
+ */
+public class MulticastGroupSocket implements Closeable {
+
+    private final MulticastSocket socket;
+    private final InetSocketAddress groupAddress;
+    private final NetworkInterface networkInterface;
+
+    /**
+     * Создаёт сокет и подписывается на группу.
+     *
+     * @param factory фабрика сокетов
+     * @param group адрес группы
+     * @param port порт группы
+     * @param networkInterfaceName название сетевого интерфейса или нул для интерфейса по умолчанию
+     * @param timeToLive TTL исходящих пакетов
+     * @throws IOException не удалось создать сокет или подписаться на группу
+     */
+    public MulticastGroupSocket(MulticastSocketFactory factory, String group, int port, String networkInterfaceName, int timeToLive) throws IOException {
+        this.groupAddress = new InetSocketAddress(InetAddress.getByName(group), port);
+        if (networkInterfaceName == null) {
+            this.networkInterface = null;
+        } else {
+            this.networkInterface = NetworkInterface.getByName(networkInterfaceName);
+            if (networkInterface == null) {
+                throw new IOException("Network interface " + Spell.get(networkInterfaceName) + " not found");
+            }
+        }
+        this.socket = factory.newMulticastSocket(port);
+        try {
+            if (networkInterface != null) {
+                socket.setNetworkInterface(networkInterface);
+            }
+            socket.setTimeToLive(timeToLive);
+            socket.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, Boolean.TRUE);
+            socket.joinGroup(groupAddress, networkInterface);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Отправляет пакет в группу.
+     *
+     * @param packet буфер с пакетом
+     * @param length длина пакета в буфере
+     * @throws IOException
+     */
+    public void send(byte[] packet, int length) throws IOException {
+        socket.send(new DatagramPacket(packet, length, groupAddress));
+    }
+
+    /**
+     * Ждёт и принимает очередной пакет группы.
+     *
+     * @param packet куда принять пакет
+     * @throws IOException в том числе, если сокет закрыли
+     */
+    public void receive(DatagramPacket packet) throws IOException {
+        socket.receive(packet);
+    }
+
+    public InetSocketAddress getGroupAddress() {
+        return groupAddress;
+    }
+
+    /** @return сетевой интерфейс или нул, если используется интерфейс по умолчанию */
+    public NetworkInterface getNetworkInterface() {
+        return networkInterface;
+    }
+
+    /** Отписывается от группы и закрывает сокет. */
+    @Override public void close() throws IOException {
+        try {
+            socket.leaveGroup(groupAddress, networkInterface);
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Override public String toString() {
+        return Spell.get(groupAddress) + (networkInterface == null ? "" : " on " + networkInterface.getName());
+    }
+}
@@ -0,0 +1,27 @@
+package tk.bolovsrol.utils.socket.multicast;
+
+import java.io.IOException;
+import java.net.MulticastSocket;
+
+/**
+ * Устройство для создания мультикаст-сокетов.
+ */
+public interface MulticastSocketFactory {
+
+    /**
+     * Создаёт и возвращает мультикаст-сокет, забинденный на указанный порт.
+     *
+     * @param port порт
+     * @return новый мультикаст-сокет
+     * @throws IOException
+     */
+    MulticastSocket newMulticastSocket(int port) throws IOException;
+
+    /**
+     * Возвращает краткое (несколько букв) описание-идентификатор фабрики
+     * для человеческого восприятия.
+     *
+     * @return краткое описание фабрики
+     */
+    String getCaption();
+}
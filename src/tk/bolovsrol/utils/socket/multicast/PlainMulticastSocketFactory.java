@@ -0,0 +1,29 @@
+package tk.bolovsrol.utils.socket.multicast;
+
+import java.io.IOException;
+import java.net.MulticastSocket;
+
+public class PlainMulticastSocketFactory implements MulticastSocketFactory {
+    private static final PlainMulticastSocketFactory STATIC = new PlainMulticastSocketFactory();
+
+    public static PlainMulticastSocketFactory getStatic() {
+        return STATIC;
+    }
+
+    private PlainMulticastSocketFactory() {
+    }
+
+    @Override public MulticastSocket newMulticastSocket(int port) throws IOException {
+        return new MulticastSocket(port);
+    }
+
+    @Override public String getCaption() {
+        return "plain";
+    }
+
+    @Override public String toString() {
+        // не очень-то понятно, что тут показывать
+        return getCaption();
+    }
+
+}
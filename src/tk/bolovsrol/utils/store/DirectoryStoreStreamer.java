@@ -9,25 +9,44 @@ import tk.bolovsrol.utils.io.LineInputStream;
 import tk.bolovsrol.utils.io.LineOutputStream;
 import tk.bolovsrol.utils.log.LogDome;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.StringTokenizer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Делает ЭТО в файлы в указанной директории.
  * Переданные идентификаторы при необходимости инвалидируются и используются как имена файлов.
  * <p>
  * Прочитанный файл переименовывается в *.bak.
+ * <p>
+ * Файлы пишутся и читаются через буфер размером {@link Conf#bufferSize}, так что на каждую строку
+ * системного вызова не приходится. Если включено {@link Conf#compress сжатие}, файлы пишутся в gzip
+ * с расширением {@link #GZIP_SUFFIX}; при чтении сжатый файл предпочитается несжатому,
+ * так что сжатие можно включать и выключать, не теряя сохранённого.
  */
 public class DirectoryStoreStreamer implements StoreStreamer<DirectoryStoreStreamer.Conf> {
+
+    public static final String GZIP_SUFFIX = ".gz";
+
     private File path;
+    private int bufferSize;
+    private boolean compress;
 
     public DirectoryStoreStreamer() {
     }
 
     public static class Conf extends AutoConfiguration {
         @Param(desc = "путь к директории, в которой следует хранить информацию", mandatory = true) public String path;
+        @Param(desc = "размер буфера чтения и записи, байтов") public int bufferSize = 64 * 1024;
+        @Param(desc = "сжимать ли файлы gzip'ом") public boolean compress = false;
     }
 
     @Override public void init(LogDome log, Conf conf) throws UnexpectedBehaviourException {
@@ -37,6 +56,11 @@ public class DirectoryStoreStreamer implements StoreStreamer<DirectoryStoreStrea
         File path = new File(revealEnvironmentMacros(conf.path));
         log.trace("Store directory: " + Spell.get(path));
         validatePath(path);
+        if (conf.bufferSize <= 0) {
+            throw new UnexpectedBehaviourException("Buffer size must be positive, got " + conf.bufferSize);
+        }
+        this.bufferSize = conf.bufferSize;
+        this.compress = conf.compress;
         this.path = path;
     }
 
@@ -78,20 +102,82 @@ public class DirectoryStoreStreamer implements StoreStreamer<DirectoryStoreStrea
     }
 
     @Override public LineOutputStream newStoreOutputStream(String id) throws IOException {
-        File target = new File(path, id);
-        deleteViaBak(target);
-        return new LineOutputStream(new LazyFileOutputStream(target));
+        File plain = new File(path, id);
+        File gzipped = new File(path, id + GZIP_SUFFIX);
+        deleteViaBak(plain);
+        deleteViaBak(gzipped);
+        OutputStream os;
+        if (compress) {
+            os = new LazyGzipOutputStream(gzipped, bufferSize);
+        } else {
+            os = new LazyFileOutputStream(plain);
+        }
+        return new LineOutputStream(new BufferedOutputStream(os, bufferSize));
     }
 
     @Override public LineInputStream newStoreInputStream(String id) throws IOException {
-        File file = new File(path, id);
-        if (file.exists()) {
-            return new LineInputStream(new FileInputStream(file));
+        File gzipped = new File(path, id + GZIP_SUFFIX);
+        if (gzipped.exists()) {
+            InputStream is = Files.newInputStream(gzipped.toPath());
+            try {
+                return new LineInputStream(new GZIPInputStream(is, bufferSize), StandardCharsets.UTF_8, bufferSize);
+            } catch (IOException e) {
+                is.close();
+                throw e;
+            }
+        }
+        File plain = new File(path, id);
+        if (plain.exists()) {
+            return new LineInputStream(Files.newInputStream(plain.toPath()), StandardCharsets.UTF_8, bufferSize);
         } else {
             return null;
         }
     }
 
+    /**
+     * Заводит {@link GZIPOutputStream} только при первой записи: он пишет заголовок прямо в конструкторе,
+     * а файл без данных создавать не нужно, как и для несжатых файлов.
+     */
+    private static final class LazyGzipOutputStream extends OutputStream {
+        private final File file;
+        private final int bufferSize;
+        private GZIPOutputStream gzip;
+
+        private LazyGzipOutputStream(File file, int bufferSize) {
+            this.file = file;
+            this.bufferSize = bufferSize;
+        }
+
+        private GZIPOutputStream gzip() throws IOException {
+            if (gzip == null) {
+                gzip = new GZIPOutputStream(new FileOutputStream(file), bufferSize);
+            }
+            return gzip;
+        }
+
+        @Override public void write(int b) throws IOException {
+            gzip().write(b);
+        }
+
+        @Override public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                gzip().write(b, off, len);
+            }
+        }
+
+        @Override public void flush() throws IOException {
+            if (gzip != null) {
+                gzip.flush();
+            }
+        }
+
+        @Override public void close() throws IOException {
+            if (gzip != null) {
+                gzip.close();
+            }
+        }
+    }
+
     private static void deleteViaBak(File file) throws IOException {
         if (file.exists()) {
             File bak = new File(file.getAbsolutePath() + ".bak");
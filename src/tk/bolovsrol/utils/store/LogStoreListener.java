@@ -0,0 +1,30 @@
+package tk.bolovsrol.utils.store;
+
+import tk.bolovsrol.utils.Spell;
+import tk.bolovsrol.utils.log.LogDome;
+
+/** Пишет ход сохранения и восстановления и длительность по каждому объекту в лог. */
+public class LogStoreListener implements StoreListener {
+
+    private final LogDome log;
+
+    public LogStoreListener(LogDome log) {
+        this.log = log;
+    }
+
+    @Override public void stored(String id, long nanos, StoreException problem, int done, int total) {
+        if (problem == null) {
+            log.trace("Stored " + Spell.get(id) + " in " + nanos / 1_000_000L + " ms (" + done + '/' + total + ')');
+        } else {
+            log.warning("Store failed for " + Spell.get(id) + " in " + nanos / 1_000_000L + " ms (" + done + '/' + total + "). " + Spell.get(problem));
+        }
+    }
+
+    @Override public void restored(String id, long nanos, RestoreException problem, int done, int total) {
+        if (problem == null) {
+            log.trace("Restored " + Spell.get(id) + " in " + nanos / 1_000_000L + " ms (" + done + '/' + total + ')');
+        } else {
+            log.warning("Restore failed for " + Spell.get(id) + " in " + nanos / 1_000_000L + " ms (" + done + '/' + total + "). " + Spell.get(problem));
+        }
+    }
+}
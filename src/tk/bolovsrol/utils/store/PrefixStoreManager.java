@@ -63,9 +63,21 @@ public class PrefixStoreManager implements StoreManager {
 				return delegate.getStoreStreamer().newStoreOutputStream(prefix + id);
 			}
 
+			@Override public void abandon(String id, LineOutputStream los) throws IOException {
+				delegate.getStoreStreamer().abandon(prefix + id, los);
+			}
+
 			@Override public LineInputStream newStoreInputStream(String id) throws IOException {
 				return delegate.getStoreStreamer().newStoreInputStream(prefix + id);
 			}
+
+			@Override public void afterRestore(String id, Storeable storeable) throws Exception {
+				delegate.getStoreStreamer().afterRestore(prefix + id, storeable);
+			}
+
+			@Override public void afterUnregister(String id, Storeable storeable) throws IOException {
+				delegate.getStoreStreamer().afterUnregister(prefix + id, storeable);
+			}
 		};
 	}
 }
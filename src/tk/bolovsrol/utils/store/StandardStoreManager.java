@@ -6,11 +6,21 @@ import tk.bolovsrol.utils.io.LineOutputStream;
 import tk.bolovsrol.utils.syncro.LockQueuedSynchronizer;
 import tk.bolovsrol.utils.syncro.QueuedKey;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Менеджер реализует централизованное сохранение состояния объектов программы.
@@ -28,11 +38,18 @@ import java.util.concurrent.ConcurrentMap;
  * {@link Storeable#store(LineOutputStream)}.
  * <p/>
  * Менеджер делегирует задачи создания потоков отдельному сохранятелю {@link StoreStreamer}.
+ * <p/>
+ * Пачки {@link #forceStoreAll()} и {@link #registerAndRestoreAll(Map)} обрабатываются параллельно
+ * в пуле из заданного количества тредов (по умолчанию по числу процессоров); треды заводятся по мере
+ * надобности и умирают, простояв без дела. Один и тот же объект одновременно
+ * сохраняется или восстанавливается не более чем в одном треде.
+ * <p/>
+ * Ход и длительность операций по каждому идентификатору можно отслеживать {@link #setListener(StoreListener) слушателем}.
  */
 public class StandardStoreManager implements StoreManager {
 
     /** Генератор читателей и писателей. */
-    private final StoreStreamer storeStreamer;
+    private final StoreStreamer<?> storeStreamer;
 
     /** Хранилище. */
 	private final ConcurrentMap<String, Storeable> storeables = new ConcurrentHashMap<>();
@@ -40,8 +57,54 @@ public class StandardStoreManager implements StoreManager {
     /** Синхронизатор обращений к потокам. */
 	private final LockQueuedSynchronizer<String> synchronizer = new LockQueuedSynchronizer<>();
 
-    public StandardStoreManager(StoreStreamer storeStreamer) {
+    /** Пул для пачек или нул, если пачки обрабатываются по очереди в вызывающем треде. */
+    private final ThreadPoolExecutor executor;
+
+    private volatile StoreListener listener;
+
+    /** Ход обработки пачки. */
+    private static final class Batch {
+        final int total;
+        final AtomicInteger done = new AtomicInteger();
+
+        Batch(int total) {
+            this.total = total;
+        }
+    }
+
+    public StandardStoreManager(StoreStreamer<?> storeStreamer) {
+        this(storeStreamer, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param storeStreamer генератор читателей и писателей
+     * @param parallelism сколько объектов пачки обрабатывать одновременно; 1 — по очереди в вызывающем треде
+     */
+    public StandardStoreManager(StoreStreamer<?> storeStreamer, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive, got " + parallelism);
+        }
         this.storeStreamer = storeStreamer;
+        if (parallelism == 1) {
+            this.executor = null;
+        } else {
+            AtomicInteger threadCounter = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(parallelism, parallelism, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "StoreManager-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.executor.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    /**
+     * Устанавливает слушателя хода сохранения и восстановления.
+     *
+     * @param listener слушатель или нул
+     */
+    public void setListener(StoreListener listener) {
+        this.listener = listener;
     }
 
     /**
@@ -62,6 +125,29 @@ public class StandardStoreManager implements StoreManager {
      *                          или указанный идентификатор уже занят другим объектом
      */
     @Override public void registerAndRestore(String id, Storeable storeable) throws RestoreException {
+        registerAndRestore(id, storeable, new Batch(1));
+    }
+
+    private void registerAndRestore(String id, Storeable storeable, Batch batch) throws RestoreException {
+        long started = System.nanoTime();
+        try {
+            registerAndRestoreUntimed(id, storeable);
+        } catch (RestoreException e) {
+            notifyRestored(id, started, e, batch);
+            throw e;
+        }
+        notifyRestored(id, started, null, batch);
+    }
+
+    private void notifyRestored(String id, long started, RestoreException problem, Batch batch) {
+        int done = batch.done.incrementAndGet();
+        StoreListener l = listener;
+        if (l != null) {
+            l.restored(id, System.nanoTime() - started, problem, done, batch.total);
+        }
+    }
+
+    private void registerAndRestoreUntimed(String id, Storeable storeable) throws RestoreException {
 //        validateStoreableId(id);
         Storeable alreadyRegistered = storeables.putIfAbsent(id, storeable);
         if (alreadyRegistered == null) {
@@ -101,6 +187,7 @@ public class StandardStoreManager implements StoreManager {
                         lis.close();
                     }
                 }
+                storeStreamer.afterRestore(id, storeable);
             } finally {
                 key.release();
             }
@@ -116,30 +203,127 @@ public class StandardStoreManager implements StoreManager {
 
     /** Принудительно записывает информацию всех зарегистрированных {@link Storeable Storeables}. */
     @Override public Map<String, StoreException> forceStoreAll() {
-        Map<String, StoreException> fails = null;
-        for (Map.Entry<String, Storeable> entry : storeables.entrySet()) {
-            try {
-                forceStore(entry.getKey(), entry.getValue());
-            } catch (StoreException e) {
+        List<Map.Entry<String, Storeable>> entries = new ArrayList<>(storeables.entrySet());
+        Batch batch = new Batch(entries.size());
+        List<Callable<Void>> tasks = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Storeable> entry : entries) {
+            tasks.add(() -> {
+                forceStore(entry.getKey(), entry.getValue(), batch);
+                return null;
+            });
+        }
+        return runBatch(entries, tasks, StoreException.class, StoreException::new);
+    }
+
+    /**
+     * Регистрирует и восстанавливает пачку клиентов параллельно.
+     *
+     * @param storeables клиенты по идентификаторам
+     * @return карта клиентов, которые не смогли восстановиться, или null, если восстановились все
+     */
+    @Override public Map<String, RestoreException> registerAndRestoreAll(Map<String, ? extends Storeable> storeables) {
+        List<Map.Entry<String, ? extends Storeable>> entries = new ArrayList<>(storeables.entrySet());
+        Batch batch = new Batch(entries.size());
+        List<Callable<Void>> tasks = new ArrayList<>(entries.size());
+        for (Map.Entry<String, ? extends Storeable> entry : entries) {
+            tasks.add(() -> {
+                registerAndRestore(entry.getKey(), entry.getValue(), batch);
+                return null;
+            });
+        }
+        return runBatch(entries, tasks, RestoreException.class, RestoreException::new);
+    }
+
+    private interface ProblemWrapper<E extends Exception> {
+        E wrap(Throwable cause);
+    }
+
+    /**
+     * Выполняет задачи пачки и собирает их ошибки в порядке пачки.
+     * Ожидание не прерывается: бросить сохранение на полпути хуже, чем дождаться его;
+     * флаг прерывания восстанавливается в конце.
+     */
+    private <E extends Exception> Map<String, E> runBatch(List<? extends Map.Entry<String, ?>> entries, List<Callable<Void>> tasks, Class<E> problemClass, ProblemWrapper<E> wrapper) {
+        Map<String, E> fails = null;
+        if (executor == null || tasks.size() <= 1) {
+            for (int i = 0; i < tasks.size(); i++) {
+                try {
+                    tasks.get(i).call();
+                } catch (Exception e) {
+                    if (fails == null) {
+                        fails = new LinkedHashMap<>();
+                    }
+                    fails.put(entries.get(i).getKey(), problemClass.isInstance(e) ? problemClass.cast(e) : wrapper.wrap(e));
+                }
+            }
+            return fails;
+        }
+
+        List<Future<Void>> futures = new ArrayList<>(tasks.size());
+        for (Callable<Void> task : tasks) {
+            futures.add(executor.submit(task));
+        }
+        boolean interrupted = false;
+        for (int i = 0; i < futures.size(); i++) {
+            Throwable problem = null;
+            while (true) {
+                try {
+                    futures.get(i).get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    problem = e.getCause();
+                    break;
+                }
+            }
+            if (problem != null) {
                 if (fails == null) {
-					fails = new LinkedHashMap<>();
-				}
-				//noinspection ThrowableResultOfMethodCallIgnored
-				fails.put(entry.getKey(), e);
-			}
-		}
-		return fails;
-	}
+                    fails = new LinkedHashMap<>();
+                }
+                fails.put(entries.get(i).getKey(), problemClass.isInstance(problem) ? problemClass.cast(problem) : wrapper.wrap(problem));
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return fails;
+    }
+
+    private void forceStore(String id, Storeable storeable, Batch batch) throws StoreException {
+        long started = System.nanoTime();
+        try {
+            forceStore(id, storeable);
+        } catch (StoreException e) {
+            notifyStored(id, started, e, batch);
+            throw e;
+        }
+        notifyStored(id, started, null, batch);
+    }
+
+    private void notifyStored(String id, long started, StoreException problem, Batch batch) {
+        int done = batch.done.incrementAndGet();
+        StoreListener l = listener;
+        if (l != null) {
+            l.stored(id, System.nanoTime() - started, problem, done, batch.total);
+        }
+    }
 
     private void forceStore(String id, Storeable storeable) throws StoreException {
         try {
             QueuedKey key = synchronizer.enter(id);
             try {
                 LineOutputStream los = storeStreamer.newStoreOutputStream(id);
+                boolean stored = false;
                 try {
                     storeable.store(los);
+                    stored = true;
                 } finally {
-                    los.close();
+                    if (stored) {
+                        los.close();
+                    } else {
+                        storeStreamer.abandon(id, los);
+                    }
                 }
             } finally {
                 key.release();
@@ -163,7 +347,8 @@ public class StandardStoreManager implements StoreManager {
         if (storeable == null) {
             return false;
         } else {
-            forceStore(id, storeable);
+            forceStore(id, storeable, new Batch(1));
+            afterUnregister(id, storeable);
             return true;
         }
     }
@@ -182,13 +367,22 @@ public class StandardStoreManager implements StoreManager {
             Map.Entry<String, Storeable> entry = it.next();
             if (entry.getValue() == storeable) {
                 it.remove();
-                forceStore(entry.getKey(), storeable);
+                forceStore(entry.getKey(), storeable, new Batch(1));
+                afterUnregister(entry.getKey(), storeable);
                 return true;
             }
         }
         return false;
     }
 
+    private void afterUnregister(String id, Storeable storeable) throws StoreException {
+        try {
+            storeStreamer.afterUnregister(id, storeable);
+        } catch (IOException e) {
+            throw new StoreException("Failed releasing Storeable id=" + Spell.get(id), e);
+        }
+    }
+
 	@Override public StoreStreamer<?> getStoreStreamer() {
 		return storeStreamer;
 	}
@@ -0,0 +1,36 @@
+package tk.bolovsrol.utils.store;
+
+/**
+ * Слушатель хода сохранения и восстановления в {@link StandardStoreManager}.
+ * <p/>
+ * Методы вызываются из тредов, в которых работали сохранения и восстановления,
+ * в том числе параллельно, так что реализация должна быть потокобезопасной.
+ * <p/>
+ * Счётчики done и total относятся к текущей пачке: для {@link StoreManager#forceStoreAll()}
+ * и {@link StoreManager#registerAndRestoreAll(java.util.Map)} это все объекты пачки,
+ * для одиночной операции — единица и единица.
+ */
+public interface StoreListener {
+
+    /**
+     * Объект сохранён или не смог сохраниться.
+     *
+     * @param id идентификатор объекта
+     * @param nanos сколько заняло сохранение
+     * @param problem ошибка или нул
+     * @param done сколько объектов пачки уже обработано, включая этот
+     * @param total сколько объектов в пачке
+     */
+    void stored(String id, long nanos, StoreException problem, int done, int total);
+
+    /**
+     * Объект восстановлен или не смог восстановиться.
+     *
+     * @param id идентификатор объекта
+     * @param nanos сколько заняло восстановление
+     * @param problem ошибка или нул
+     * @param done сколько объектов пачки уже обработано, включая этот
+     * @param total сколько объектов в пачке
+     */
+    void restored(String id, long nanos, RestoreException problem, int done, int total);
+}
@@ -1,5 +1,6 @@
 package tk.bolovsrol.utils.store;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /** Диспетчер постоянного хранилища. */
@@ -14,6 +15,30 @@ public interface StoreManager {
      */
     void registerAndRestore(String id, Storeable storeable) throws RestoreException;
 
+    /**
+     * Регистрирует и восстанавливает пачку клиентов.
+     * <p/>
+     * Ошибка одного клиента не мешает остальным. Реализация может восстанавливать клиентов параллельно;
+     * эта реализация восстанавливает их по очереди.
+     *
+     * @param storeables клиенты по идентификаторам
+     * @return карта клиентов, которые не смогли восстановиться, или null, если восстановились все
+     */
+    default Map<String, RestoreException> registerAndRestoreAll(Map<String, ? extends Storeable> storeables) {
+        Map<String, RestoreException> fails = null;
+        for (Map.Entry<String, ? extends Storeable> entry : storeables.entrySet()) {
+            try {
+                registerAndRestore(entry.getKey(), entry.getValue());
+            } catch (RestoreException e) {
+                if (fails == null) {
+                    fails = new LinkedHashMap<>();
+                }
+                fails.put(entry.getKey(), e);
+            }
+        }
+        return fails;
+    }
+
     /**
      * Принудительно сохраняет состояние всех зарегистрированных клиентов.
      *
@@ -40,4 +40,44 @@ public interface StoreStreamer<C extends AutoConfiguration> {
      * @return поток для чтения или null
      */
     LineInputStream newStoreInputStream(String id) throws IOException;
+
+    /**
+     * Вызывается менеджером, если сохранение объекта в поток, выданный {@link #newStoreOutputStream(String)},
+     * не удалось. Поток следует закрыть, а стример может выбросить недописанное.
+     * <p/>
+     * По умолчанию поток просто закрывается.
+     *
+     * @param id идентификатор объекта
+     * @param los поток, который сохранение бросило
+     * @throws IOException
+     */
+    default void abandon(String id, LineOutputStream los) throws IOException {
+        los.close();
+    }
+
+    /**
+     * Вызывается менеджером после того, как объект восстановлен из {@link #newStoreInputStream(String)}
+     * (или восстанавливать было нечего). Стример, хранящий что-то помимо образа объекта,
+     * может тут это объекту передать.
+     * <p/>
+     * По умолчанию ничего не делает.
+     *
+     * @param id идентификатор объекта
+     * @param storeable восстановленный объект
+     * @throws Exception
+     */
+    default void afterRestore(String id, Storeable storeable) throws Exception {
+    }
+
+    /**
+     * Вызывается менеджером после последнего сохранения разрегистрированного объекта.
+     * <p/>
+     * По умолчанию ничего не делает.
+     *
+     * @param id идентификатор объекта
+     * @param storeable разрегистрированный объект
+     * @throws IOException
+     */
+    default void afterUnregister(String id, Storeable storeable) throws IOException {
+    }
 }
\ No newline at end of file
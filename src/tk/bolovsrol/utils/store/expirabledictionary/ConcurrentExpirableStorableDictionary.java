@@ -0,0 +1,226 @@
+package tk.bolovsrol.utils.store.expirabledictionary;
+
+import tk.bolovsrol.utils.UnexpectedBehaviourException;
+import tk.bolovsrol.utils.io.LineInputStream;
+import tk.bolovsrol.utils.io.LineOutputStream;
+import tk.bolovsrol.utils.store.RestoreException;
+import tk.bolovsrol.utils.store.StoreException;
+import tk.bolovsrol.utils.store.expirabledictionary.ExpirableStorableDictionary.KeyValueContainer;
+import tk.bolovsrol.utils.store.journal.Journal;
+import tk.bolovsrol.utils.store.journal.JournaledStoreable;
+import tk.bolovsrol.utils.stringserializer.StringDeserializer;
+import tk.bolovsrol.utils.stringserializer.StringSerializer;
+import tk.bolovsrol.utils.threads.IterationThread;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static tk.bolovsrol.utils.store.expirabledictionary.ExpirableStorableDictionary.PUT_RECORD;
+import static tk.bolovsrol.utils.store.expirabledictionary.ExpirableStorableDictionary.REMOVE_RECORD;
+import static tk.bolovsrol.utils.store.expirabledictionary.ExpirableStorableDictionary.journalRecord;
+
+/**
+ * То же, что {@link ExpirableStorableDictionary}, но для больших словарей, с которыми работают из многих тредов.
+ * <p>
+ * Словарь лежит в {@link ConcurrentHashMap}, чтение идёт без локов. Ключи дополнительно разложены
+ * по корзинам по времени значения шириной {@link #getBucketMillis()}, так что подчистка берёт только
+ * корзины, целиком ушедшие в прошлое, и проверяет только их ключи, не трогая остальной словарь.
+ * Значение, которое уже истекло, но чья корзина ещё не подчищена, {@link #get(Object)} не отдаёт.
+ * <p>
+ * Если значение ключа заменили, ключ остаётся и в старой корзине; подчистка увидит там свежее значение
+ * и пропустит его. Подчистка удаляет значение, только если в словаре лежит именно оно,
+ * так что одновременный put её не теряет.
+ * <p>
+ * {@link #store(LineOutputStream)} лока не берёт и пишет словарь по ходу изменений: запись, изменённая
+ * во время сохранения, может попасть в снимок как в старом, так и в новом виде. С {@link Journal журналом}
+ * это неважно — все изменения после начала снимка есть в журнале и проигрываются поверх.
+ * Изменения одного ключа попадают в журнал в том же порядке, что и в словарь.
+ * <p>
+ * Формат стора общий с {@link ExpirableStorableDictionary}, так что одно можно заменить другим.
+ */
+public class ConcurrentExpirableStorableDictionary<K, V extends ExpirableStorableDictionaryValue> extends IterationThread implements JournaledStoreable {
+
+    /** На сколько корзин по умолчанию делится время жизни. */
+    public static final int DEFAULT_BUCKETS_PER_LIFETIME = 64;
+
+    private final ConcurrentHashMap<K, V> dictionary = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<Long, Set<K>> buckets = new ConcurrentSkipListMap<>();
+    private final long lifeTime;
+    private final long bucketMillis;
+    private volatile Journal journal;
+
+    public ConcurrentExpirableStorableDictionary(long lifeTimeMillis) {
+        this(lifeTimeMillis, Math.max(1L, lifeTimeMillis / DEFAULT_BUCKETS_PER_LIFETIME));
+    }
+
+    /**
+     * @param lifeTimeMillis время жизни значения
+     * @param bucketMillis ширина корзины; чем шире, тем реже подчистка и тем дольше истёкшие значения занимают память
+     */
+    public ConcurrentExpirableStorableDictionary(long lifeTimeMillis, long bucketMillis) {
+        super("ExpirableStoreCleaner");
+        if (bucketMillis <= 0L) {
+            throw new IllegalArgumentException("Bucket width must be positive, got " + bucketMillis);
+        }
+        this.lifeTime = lifeTimeMillis;
+        this.bucketMillis = bucketMillis;
+    }
+
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    public V get(K key) {
+        V value = dictionary.get(key);
+        return value != null && isNotExpired(value, System.currentTimeMillis()) ? value : null;
+    }
+
+    public V remove(K key) {
+        Journal j = journal;
+        String record = j == null ? null : journalRecord(REMOVE_RECORD, key, null);
+        V value;
+        if (record == null) {
+            value = dictionary.remove(key);
+        } else {
+            Object[] previous = new Object[1];
+            dictionary.compute(key, (k, old) -> {
+                j.append(record);
+                previous[0] = old;
+                return null;
+            });
+            @SuppressWarnings("unchecked") V old = (V) previous[0];
+            value = old;
+        }
+        return value != null && isNotExpired(value, System.currentTimeMillis()) ? value : null;
+    }
+
+    public void put(K key, V value) {
+        Journal j = journal;
+        if (j == null) {
+            dictionary.put(key, value);
+        } else {
+            String record = journalRecord(PUT_RECORD, key, value);
+            dictionary.compute(key, (k, old) -> {
+                j.append(record);
+                return value;
+            });
+        }
+        index(key, value.getTime());
+    }
+
+    /**
+     * Кладёт ключ в корзину его времени. Если подчистка успела забрать корзину, пока мы в неё клали,
+     * кладём в новую.
+     */
+    private void index(K key, long time) {
+        Long bucket = Math.floorDiv(time, bucketMillis);
+        while (true) {
+            Set<K> keys = buckets.computeIfAbsent(bucket, b -> ConcurrentHashMap.newKeySet());
+            keys.add(key);
+            if (buckets.get(bucket) == keys) {
+                return;
+            }
+        }
+    }
+
+    @Override public void attachJournal(Journal journalOrNull) {
+        this.journal = journalOrNull;
+    }
+
+    @Override public void replay(String record) throws Exception {
+        KeyValueContainer<K, V> container = StringDeserializer.deserialize(record.substring(1));
+        if (record.charAt(0) == PUT_RECORD) {
+            if (isNotExpired(container.getValue(), System.currentTimeMillis())) {
+                dictionary.put(container.getKey(), container.getValue());
+                index(container.getKey(), container.getValue().getTime());
+            }
+        } else if (record.charAt(0) == REMOVE_RECORD) {
+            dictionary.remove(container.getKey());
+        } else {
+            throw new RestoreException("Unknown journal record " + record);
+        }
+    }
+
+    @Override
+    protected void work() throws Exception {
+        long now = System.currentTimeMillis();
+        forceClean(now);
+        // следующая подчистка — когда целиком истечёт самая старая оставшаяся корзина
+        Map.Entry<Long, Set<K>> oldest = buckets.firstEntry();
+        if (oldest == null) {
+            setIterationSleep(Math.max(1L, lifeTime / 10));
+        } else {
+            setIterationSleep(Math.max(1L, (oldest.getKey() + 1L) * bucketMillis + lifeTime - now));
+        }
+    }
+
+    /**
+     * Удаляет корзины, все значения которых истекли, и их ключи, если значения в словаре всё ещё оттуда.
+     *
+     * @param now текущее время
+     * @return сколько значений удалено
+     */
+    private int forceClean(long now) {
+        long horizon = now - lifeTime;
+        int removed = 0;
+        Map.Entry<Long, Set<K>> entry;
+        while ((entry = buckets.firstEntry()) != null && (entry.getKey() + 1L) * bucketMillis <= horizon) {
+            if (!buckets.remove(entry.getKey(), entry.getValue())) {
+                continue;
+            }
+            for (K key : entry.getValue()) {
+                V value = dictionary.get(key);
+                if (value != null && !isNotExpired(value, now) && dictionary.remove(key, value)) {
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public void store(LineOutputStream los) throws Exception {
+        try {
+            long now = System.currentTimeMillis();
+            StringBuilder sb = new StringBuilder(256);
+            KeyValueContainer<K, V> container = new KeyValueContainer<>();
+            for (Map.Entry<K, V> entry : dictionary.entrySet()) {
+                if (isNotExpired(entry.getValue(), now)) {
+                    container.key = entry.getKey();
+                    container.value = entry.getValue();
+                    sb.setLength(0);
+                    StringSerializer.serialize(container, sb);
+                    los.writeln(sb.toString());
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new StoreException(e);
+        }
+    }
+
+    @Override
+    public void restore(LineInputStream lis) throws Exception {
+        try {
+            long now = System.currentTimeMillis();
+            while (true) {
+                String item = lis.readLine();
+                if (item == null) {
+                    break;
+                }
+                KeyValueContainer<K, V> container = StringDeserializer.deserialize(item);
+                if (isNotExpired(container.getValue(), now) && dictionary.putIfAbsent(container.getKey(), container.getValue()) == null) {
+                    index(container.getKey(), container.getValue().getTime());
+                }
+            }
+        } catch (UnexpectedBehaviourException e) {
+            throw new RestoreException(e);
+        }
+    }
+
+    private boolean isNotExpired(ExpirableStorableDictionaryValue value, long now) {
+        return value.getTime() >= now - lifeTime;
+    }
+}
@@ -6,21 +6,33 @@ import tk.bolovsrol.utils.io.LineInputStream;
 import tk.bolovsrol.utils.io.LineOutputStream;
 import tk.bolovsrol.utils.store.RestoreException;
 import tk.bolovsrol.utils.store.StoreException;
-import tk.bolovsrol.utils.store.Storeable;
+import tk.bolovsrol.utils.store.journal.Journal;
+import tk.bolovsrol.utils.store.journal.JournaledStoreable;
 import tk.bolovsrol.utils.stringserializer.StringDeserializer;
 import tk.bolovsrol.utils.stringserializer.StringSerializable;
 import tk.bolovsrol.utils.stringserializer.StringSerializer;
 import tk.bolovsrol.utils.threads.IterationThread;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 /**
  * Стор словаря, {@link ExpirableStorableDictionaryValue} которого могут истекать и они регулярно подчищаются.
+ * <p>
+ * Если словарю вручили {@link Journal журнал}, он дописывает туда каждый put и remove,
+ * истечение значений не журналируется — оно и так пересчитывается при восстановлении.
+ * <p>
+ * Все операции идут под одним локом, а подчистка перебирает весь словарь. Для больших словарей,
+ * которые читают из многих тредов, есть {@link ConcurrentExpirableStorableDictionary}.
  */
-public class ExpirableStorableDictionary<K, V extends ExpirableStorableDictionaryValue> extends IterationThread implements Storeable {
+public class ExpirableStorableDictionary<K, V extends ExpirableStorableDictionaryValue> extends IterationThread implements JournaledStoreable {
+    static final char PUT_RECORD = '+';
+    static final char REMOVE_RECORD = '-';
+
     private Map<K, V> dictionary = new HashMap<>();
     private final long lifeTime;
+    private volatile Journal journal;
 
     public ExpirableStorableDictionary(long lifeTimeMillis) {
         super("ExpirableStoreCleaner");
@@ -30,7 +42,7 @@ public class ExpirableStorableDictionary<K, V extends ExpirableStorableDictionar
     public V get(K key) {
         synchronized (dictionary) {
             V value = dictionary.get(key);
-            if (isNotExpired(value)) {
+            if (value != null && isNotExpired(value)) {
                 return value;
             } else {
                 return null;
@@ -39,8 +51,10 @@ public class ExpirableStorableDictionary<K, V extends ExpirableStorableDictionar
     }
 
     public V remove(K key) {
+        String record = journal == null ? null : journalRecord(REMOVE_RECORD, key, null);
         synchronized (dictionary) {
             V value = dictionary.remove(key);
+            appendToJournal(record);
             if (value != null && isNotExpired(value)) {
                 return value;
             } else {
@@ -50,8 +64,47 @@ public class ExpirableStorableDictionary<K, V extends ExpirableStorableDictionar
     }
 
     public void put(K key, V value) {
+        String record = journal == null ? null : journalRecord(PUT_RECORD, key, value);
         synchronized (dictionary) {
             dictionary.put(key, value);
+            appendToJournal(record);
+        }
+    }
+
+    static <K, V> String journalRecord(char op, K key, V value) {
+        StringBuilder sb = new StringBuilder(128).append(op);
+        try {
+            StringSerializer.serialize(new KeyValueContainer<>(key, value), sb);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot serialize journal record for key " + key, e);
+        }
+        return sb.toString();
+    }
+
+    /** Дописывает запись в журнал; вызывать под локом словаря, чтобы записи шли в порядке изменений. */
+    private void appendToJournal(String record) {
+        Journal j = journal;
+        if (record != null && j != null) {
+            j.append(record);
+        }
+    }
+
+    @Override public void attachJournal(Journal journalOrNull) {
+        this.journal = journalOrNull;
+    }
+
+    @Override public void replay(String record) throws Exception {
+        KeyValueContainer<K, V> container = StringDeserializer.deserialize(record.substring(1));
+        synchronized (dictionary) {
+            if (record.charAt(0) == PUT_RECORD) {
+                if (isNotExpired(container.getValue())) {
+                    dictionary.put(container.getKey(), container.getValue());
+                }
+            } else if (record.charAt(0) == REMOVE_RECORD) {
+                dictionary.remove(container.getKey());
+            } else {
+                throw new RestoreException("Unknown journal record " + record);
+            }
         }
     }
 
@@ -74,9 +127,10 @@ public class ExpirableStorableDictionary<K, V extends ExpirableStorableDictionar
     private Long forceClean(Long now) {
         Long minTime = now;
         synchronized (dictionary) {
-            for (Map.Entry<K, V> entry : dictionary.entrySet()) {
+            for (Iterator<Map.Entry<K, V>> it = dictionary.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<K, V> entry = it.next();
                 if (!isNotExpired(entry.getValue())) {
-                    dictionary.remove(entry.getKey());
+                    it.remove();
                 } else if (minTime > entry.getValue().getTime()) {
                     minTime = entry.getValue().getTime();
                 }
@@ -88,10 +142,16 @@ public class ExpirableStorableDictionary<K, V extends ExpirableStorableDictionar
     @Override
     public void store(LineOutputStream los) throws Exception {
         try {
+            StringBuilder sb = new StringBuilder(256);
+            KeyValueContainer<K, V> container = new KeyValueContainer<>();
             synchronized (dictionary) {
                 for (Map.Entry<K, V> entry : dictionary.entrySet()) {
                     if (isNotExpired(entry.getValue())) {
-                        los.writeln(StringSerializer.serialize(new KeyValueContainer(entry.getKey(), entry.getValue())));
+                        container.key = entry.getKey();
+                        container.value = entry.getValue();
+                        sb.setLength(0);
+                        StringSerializer.serialize(container, sb);
+                        los.writeln(sb.toString());
                     }
                 }
             }
@@ -110,7 +170,7 @@ public class ExpirableStorableDictionary<K, V extends ExpirableStorableDictionar
                         break;
                     }
 
-                    KeyValueContainer container = StringDeserializer.deserialize(item);
+                    KeyValueContainer<K, V> container = StringDeserializer.deserialize(item);
                     if (!dictionary.containsKey(container.getKey())) {
                         if (isNotExpired(container.getValue())) {
                             dictionary.put(container.getKey(), container.getValue());
@@ -123,9 +183,17 @@ public class ExpirableStorableDictionary<K, V extends ExpirableStorableDictionar
         }
     }
 
-    private class KeyValueContainer implements StringSerializable {
-        private K key;
-        private V value;
+    /**
+     * Запись стора. Ключ и значение пишутся вместе с их классами,
+     * так что годятся любые типы, которые понимает {@link StringSerializer}.
+     * Формат общий с {@link ConcurrentExpirableStorableDictionary}.
+     */
+    static class KeyValueContainer<K, V> implements StringSerializable {
+        K key;
+        V value;
+
+        KeyValueContainer() {
+        }
 
         KeyValueContainer(K key, V value) {
             this.key = key;
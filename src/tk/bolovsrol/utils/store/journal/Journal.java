@@ -0,0 +1,328 @@
+package tk.bolovsrol.utils.store.journal;
+
+import tk.bolovsrol.utils.Spell;
+import tk.bolovsrol.utils.log.LogDome;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал изменений одного объекта: последовательность сегментов <code>&lt;id&gt;.journal.&lt;номер&gt;</code>.
+ * <p>
+ * Запись в сегменте — 4 байта длины, 4 байта CRC32 и сама запись в UTF-8. Если процесс упал посреди записи,
+ * хвост сегмента не сойдётся по длине или по контрольной сумме и при проигрывании будет отброшен.
+ * <p>
+ * {@link #append(String)} только копирует запись в буфер в памяти и сразу возвращается.
+ * Накопленное сбрасывается на диск с fsync пачкой — {@link JournalStoreStreamer} делает это
+ * раз в {@link JournalStoreStreamer.Conf#syncInterval}, а можно и самому вызвать {@link #sync()}.
+ * Сегмент, переросший {@link JournalStoreStreamer.Conf#segmentSize}, закрывается, и следующая пачка
+ * идёт в новый.
+ * <p>
+ * Перед снимком журнал переключается на новый сегмент; снимок помнит его номер, и после того, как снимок
+ * записан, более старые сегменты удаляются.
+ */
+public class Journal {
+
+    static final String SEGMENT_INFIX = ".journal.";
+
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final LogDome log;
+    private final String id;
+    private final Path dir;
+    private final long segmentSize;
+
+    /** Охраняет буфер дописываемых записей. */
+    private final Object appendLock = new Object();
+    private ByteBuffer pending = ByteBuffer.allocate(4096);
+    private ByteBuffer spare = ByteBuffer.allocate(4096);
+    private final CRC32 crc = new CRC32();
+    private boolean closed;
+
+    /** Охраняет файл и всё, что касается сегментов. */
+    private final Object writeLock = new Object();
+    private FileChannel channel;
+    private long segmentSeq;
+    private long segmentBytes;
+    private long bytesSinceSnapshot;
+    private long bytesAtSnapshotStart;
+
+    /** Снимки одного объекта делаются по очереди. */
+    private final Semaphore snapshotPermit = new Semaphore(1);
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private volatile JournaledStoreable storeable;
+
+    Journal(LogDome log, String id, Path dir, long segmentSize) {
+        this.log = log;
+        this.id = id;
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+    }
+
+    /** @return идентификатор объекта */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Дописывает запись в журнал. Запись попадёт на диск при ближайшем {@link #sync()}.
+     *
+     * @param record запись
+     * @throws IllegalStateException журнал закрыт
+     */
+    public void append(String record) {
+        byte[] payload = record.getBytes(StandardCharsets.UTF_8);
+        synchronized (appendLock) {
+            if (closed) {
+                throw new IllegalStateException("Journal " + Spell.get(id) + " is closed");
+            }
+            if (pending.remaining() < RECORD_HEADER_SIZE + payload.length) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() << 1, pending.position() + RECORD_HEADER_SIZE + payload.length));
+                pending.flip();
+                grown.put(pending);
+                pending = grown;
+            }
+            crc.reset();
+            crc.update(payload);
+            pending.putInt(payload.length);
+            pending.putInt((int) crc.getValue());
+            pending.put(payload);
+        }
+    }
+
+    /**
+     * Записывает накопленное в текущий сегмент и дожидается, пока оно окажется на диске.
+     *
+     * @throws IOException
+     */
+    public void sync() throws IOException {
+        synchronized (writeLock) {
+            ByteBuffer batch;
+            synchronized (appendLock) {
+                if (pending.position() == 0) {
+                    return;
+                }
+                batch = pending;
+                pending = spare;
+                spare = batch;
+            }
+            batch.flip();
+            try {
+                if (channel == null) {
+                    channel = FileChannel.open(segmentPath(segmentSeq), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                    segmentBytes = channel.size();
+                }
+                int size = batch.remaining();
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                channel.force(false);
+                segmentBytes += size;
+                bytesSinceSnapshot += size;
+                if (segmentBytes >= segmentSize) {
+                    closeSegment();
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /** Закрывает текущий сегмент, следующая запись пойдёт в новый. Вызывать под writeLock. */
+    private void closeSegment() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        segmentSeq++;
+        segmentBytes = 0L;
+    }
+
+    private Path segmentPath(long seq) {
+        return dir.resolve(id + SEGMENT_INFIX + seq);
+    }
+
+    /** @return номера сегментов этого объекта на диске по возрастанию */
+    private List<Long> listSegments() throws IOException {
+        String prefix = id + SEGMENT_INFIX;
+        List<Long> result = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(path -> {
+                String name = path.getFileName().toString();
+                if (name.startsWith(prefix)) {
+                    try {
+                        result.add(Long.parseLong(name.substring(prefix.length())));
+                    } catch (NumberFormatException ignored) {
+                        // чужой файл
+                    }
+                }
+            });
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Проигрывает объекту записи из сегментов, начиная с указанного, и готовит журнал к записи
+     * в новый сегмент, следующий за последним существующим.
+     *
+     * @param fromSeq первый сегмент после снимка
+     * @param target объект
+     * @throws Exception
+     */
+    void replay(long fromSeq, JournaledStoreable target) throws Exception {
+        long lastSeq = fromSeq - 1L;
+        int records = 0;
+        for (long seq : listSegments()) {
+            if (seq < fromSeq) {
+                continue;
+            }
+            lastSeq = seq;
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(segmentPath(seq)));
+            CRC32 check = new CRC32();
+            while (data.remaining() >= RECORD_HEADER_SIZE) {
+                int len = data.getInt();
+                int sum = data.getInt();
+                if (len < 0 || len > data.remaining()) {
+                    data.position(data.position() - RECORD_HEADER_SIZE);
+                    break;
+                }
+                check.reset();
+                check.update(data.array(), data.position(), len);
+                if ((int) check.getValue() != sum) {
+                    data.position(data.position() - RECORD_HEADER_SIZE);
+                    break;
+                }
+                target.replay(new String(data.array(), data.position(), len, StandardCharsets.UTF_8));
+                data.position(data.position() + len);
+                records++;
+            }
+            if (data.hasRemaining()) {
+                log.warning("Journal " + Spell.get(id) + " segment " + seq + " has " + data.remaining() + " bytes of torn tail, dropped");
+            }
+        }
+        synchronized (writeLock) {
+            this.segmentSeq = lastSeq + 1L;
+            this.segmentBytes = 0L;
+        }
+        log.trace("Journal " + Spell.get(id) + " replayed " + records + " records from segments " + fromSeq + ".." + lastSeq);
+    }
+
+    /**
+     * Начинает снимок: дожидается окончания предыдущего снимка, сбрасывает накопленное
+     * и переключается на новый сегмент.
+     *
+     * @return номер сегмента, с которого нужно будет проигрывать журнал поверх нового снимка
+     * @throws IOException
+     */
+    long beginSnapshot() throws IOException {
+        try {
+            snapshotPermit.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for previous snapshot of " + Spell.get(id));
+        }
+        try {
+            synchronized (writeLock) {
+                sync();
+                if (channel != null || segmentBytes > 0L) {
+                    closeSegment();
+                }
+                bytesAtSnapshotStart = bytesSinceSnapshot;
+                return segmentSeq;
+            }
+        } catch (IOException | RuntimeException e) {
+            snapshotPermit.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Завершает снимок.
+     *
+     * @param fromSeq номер, который вернул {@link #beginSnapshot()}
+     * @param committed снимок записан; тогда сегменты старше fromSeq больше не нужны
+     */
+    void endSnapshot(long fromSeq, boolean committed) {
+        try {
+            if (committed) {
+                synchronized (writeLock) {
+                    bytesSinceSnapshot -= bytesAtSnapshotStart;
+                }
+                try {
+                    for (long seq : listSegments()) {
+                        if (seq < fromSeq) {
+                            Files.deleteIfExists(segmentPath(seq));
+                        }
+                    }
+                } catch (IOException e) {
+                    log.warning("Cannot delete obsolete segments of journal " + Spell.get(id) + ". " + Spell.get(e));
+                }
+            }
+        } finally {
+            snapshotPermit.release();
+        }
+    }
+
+    /** @return сколько байтов записано в журнал после начала последнего снимка */
+    long getBytesSinceSnapshot() {
+        synchronized (writeLock) {
+            return bytesSinceSnapshot;
+        }
+    }
+
+    JournaledStoreable getStoreable() {
+        return storeable;
+    }
+
+    void setStoreable(JournaledStoreable storeable) {
+        this.storeable = storeable;
+    }
+
+    /** @return true, если автоматический снимок ещё не запланирован, и теперь он запланирован */
+    boolean scheduleCompaction() {
+        return compactionScheduled.compareAndSet(false, true);
+    }
+
+    void compactionDone() {
+        compactionScheduled.set(false);
+    }
+
+    /**
+     * Сбрасывает накопленное и закрывает журнал. Дописывать в закрытый журнал нельзя.
+     *
+     * @throws IOException
+     */
+    void close() throws IOException {
+        synchronized (writeLock) {
+            try {
+                sync();
+            } finally {
+                synchronized (appendLock) {
+                    closed = true;
+                }
+                if (channel != null) {
+                    channel.close();
+                    channel = null;
+                }
+            }
+        }
+    }
+
+    @Override public String toString() {
+        return "Journal " + Spell.get(id);
+    }
+}
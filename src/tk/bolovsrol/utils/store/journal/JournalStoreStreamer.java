@@ -0,0 +1,337 @@
+package tk.bolovsrol.utils.store.journal;
+
+import tk.bolovsrol.utils.Spell;
+import tk.bolovsrol.utils.UnexpectedBehaviourException;
+import tk.bolovsrol.utils.conf.AutoConfiguration;
+import tk.bolovsrol.utils.conf.Param;
+import tk.bolovsrol.utils.io.LineInputStream;
+import tk.bolovsrol.utils.io.LineOutputStream;
+import tk.bolovsrol.utils.log.LogDome;
+import tk.bolovsrol.utils.store.Storeable;
+import tk.bolovsrol.utils.store.StoreStreamer;
+import tk.bolovsrol.utils.threads.IterationThread;
+import tk.bolovsrol.utils.time.Duration;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Стример, который хранит объекты в директории в виде снимка и журнала изменений после него,
+ * так что при падении теряются только изменения последних {@link Conf#syncInterval миллисекунд}.
+ * <p>
+ * Снимок <code>&lt;id&gt;.snapshot</code> пишется во временный файл, сбрасывается на диск и атомарно
+ * подменяет предыдущий, так что недописанного снимка не бывает. Первой строкой снимка стример
+ * записывает номер сегмента журнала, с которого журнал нужно проигрывать поверх снимка;
+ * объект этой строки не видит.
+ * <p>
+ * Объекты {@link JournaledStoreable} после восстановления из снимка получают записи журнала
+ * и сам {@link Journal журнал}, куда затем дописывают изменения. Фоновый тред раз в {@link Conf#syncInterval}
+ * сбрасывает журналы на диск, а когда журнал объекта с последнего снимка перерастает
+ * {@link Conf#compactionThreshold}, делает новый снимок, и журнал до него удаляется.
+ * <p>
+ * Прочие объекты хранятся просто снимками.
+ */
+public class JournalStoreStreamer implements StoreStreamer<JournalStoreStreamer.Conf> {
+
+    public static final String SNAPSHOT_SUFFIX = ".snapshot";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String HEADER_PREFIX = "journal-from=";
+
+    public static class Conf extends AutoConfiguration {
+        @Param(desc = "путь к директории, в которой следует хранить информацию", mandatory = true)
+        public String path;
+
+        @Param(desc = "как часто сбрасывать журналы на диск; изменения за это время при падении теряются")
+        public Duration syncInterval = new Duration(10L);
+
+        @Param(desc = "размер сегмента журнала, байтов; переросший сегмент закрывается и начинается новый")
+        public long segmentSize = 16L * 1024L * 1024L;
+
+        @Param(desc = "объём журнала после снимка, байтов, при котором делается новый снимок; 0 — снимки только по требованию менеджера")
+        public long compactionThreshold = 256L * 1024L * 1024L;
+
+        @Param(desc = "размер буфера чтения и записи снимков, байтов")
+        public int bufferSize = 64 * 1024;
+    }
+
+    private LogDome log;
+    private Conf conf;
+    private Path dir;
+
+    private final ConcurrentMap<String, Journal> journals = new ConcurrentHashMap<>();
+    /** Номера сегментов, прочитанные из снимков и ждущие {@link #afterRestore(String, Storeable)}. */
+    private final ConcurrentMap<String, Long> replayFrom = new ConcurrentHashMap<>();
+
+    private Syncer syncer;
+    private ExecutorService compactor;
+
+    public JournalStoreStreamer() {
+    }
+
+    @Override public void init(LogDome log, Conf conf) throws UnexpectedBehaviourException, IOException {
+        if (dir != null) {
+            throw new IllegalStateException("Already initialized");
+        }
+        if (conf.segmentSize <= 0L || conf.bufferSize <= 0 || conf.compactionThreshold < 0L || conf.syncInterval.getMillis() <= 0L) {
+            throw new UnexpectedBehaviourException("Invalid journal configuration " + Spell.get(conf));
+        }
+        Path dir = Paths.get(conf.path);
+        Files.createDirectories(dir);
+        if (!Files.isDirectory(dir) || !Files.isWritable(dir)) {
+            throw new UnexpectedBehaviourException("Specified path " + Spell.get(dir) + " is not a writable directory");
+        }
+        log.trace("Journal store directory: " + Spell.get(dir));
+        this.log = log;
+        this.conf = conf;
+        this.dir = dir;
+        this.compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "JournalCompactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.syncer = new Syncer(log, conf.syncInterval);
+        this.syncer.start();
+    }
+
+    /**
+     * Сбрасывает все журналы на диск и останавливает фоновые треды.
+     * Журналы остаются открытыми, но дальше сбрасывать их нужно самому.
+     *
+     * @throws InterruptedException
+     */
+    public void shutdown() throws InterruptedException {
+        syncer.interrupt();
+        syncer.join();
+        compactor.shutdown();
+        syncAll();
+    }
+
+    /** Сбрасывает все журналы на диск. */
+    public void syncAll() {
+        for (Journal journal : journals.values()) {
+            try {
+                journal.sync();
+            } catch (IOException e) {
+                log.warning("Cannot sync " + journal + ". " + Spell.get(e));
+            }
+        }
+    }
+
+    private Journal journal(String id) {
+        return journals.computeIfAbsent(id, i -> new Journal(log, i, dir, conf.segmentSize));
+    }
+
+    @Override public LineOutputStream newStoreOutputStream(String id) throws IOException {
+        Journal journal = journal(id);
+        long fromSeq = journal.beginSnapshot();
+        try {
+            Path tmp = dir.resolve(id + SNAPSHOT_SUFFIX + TMP_SUFFIX);
+            FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            SnapshotOutputStream los = new SnapshotOutputStream(new SnapshotFile(journal, fromSeq, tmp, dir.resolve(id + SNAPSHOT_SUFFIX), channel), conf.bufferSize);
+            los.writeln(HEADER_PREFIX + fromSeq);
+            return los;
+        } catch (IOException | RuntimeException e) {
+            journal.endSnapshot(fromSeq, false);
+            throw e;
+        }
+    }
+
+    @Override public void abandon(String id, LineOutputStream los) throws IOException {
+        if (los instanceof SnapshotOutputStream) {
+            ((SnapshotOutputStream) los).abandon();
+        } else {
+            los.close();
+        }
+    }
+
+    @Override public LineInputStream newStoreInputStream(String id) throws IOException {
+        Path snapshot = dir.resolve(id + SNAPSHOT_SUFFIX);
+        if (!Files.exists(snapshot)) {
+            replayFrom.put(id, 0L);
+            return null;
+        }
+        LineInputStream lis = new LineInputStream(Files.newInputStream(snapshot), StandardCharsets.UTF_8, conf.bufferSize);
+        try {
+            String header = lis.readLine();
+            if (header == null || !header.startsWith(HEADER_PREFIX)) {
+                throw new IOException("Snapshot " + Spell.get(snapshot) + " has no journal header");
+            }
+            replayFrom.put(id, Long.parseLong(header.substring(HEADER_PREFIX.length())));
+            return lis;
+        } catch (IOException | RuntimeException e) {
+            lis.close();
+            throw e;
+        }
+    }
+
+    @Override public void afterRestore(String id, Storeable storeable) throws Exception {
+        Long fromSeq = replayFrom.remove(id);
+        if (storeable instanceof JournaledStoreable) {
+            JournaledStoreable journaled = (JournaledStoreable) storeable;
+            Journal journal = journal(id);
+            journal.replay(fromSeq == null ? 0L : fromSeq, journaled);
+            journal.setStoreable(journaled);
+            journaled.attachJournal(journal);
+        }
+    }
+
+    @Override public void afterUnregister(String id, Storeable storeable) throws IOException {
+        Journal journal = journals.remove(id);
+        if (storeable instanceof JournaledStoreable) {
+            ((JournaledStoreable) storeable).attachJournal(null);
+        }
+        if (journal != null) {
+            journal.setStoreable(null);
+            journal.close();
+        }
+    }
+
+    /** Делает снимок объекта по инициативе журнала. */
+    private void compact(Journal journal) {
+        try {
+            JournaledStoreable storeable = journal.getStoreable();
+            if (storeable == null) {
+                return;
+            }
+            LineOutputStream los = newStoreOutputStream(journal.getId());
+            boolean stored = false;
+            try {
+                storeable.store(los);
+                stored = true;
+            } finally {
+                if (stored) {
+                    los.close();
+                } else {
+                    abandon(journal.getId(), los);
+                }
+            }
+            log.trace("Compacted " + journal);
+        } catch (Exception e) {
+            log.warning("Cannot compact " + journal + ". " + Spell.get(e));
+        } finally {
+            journal.compactionDone();
+        }
+    }
+
+    /** Сбрасывает журналы и планирует снимки. */
+    private class Syncer extends IterationThread {
+        Syncer(LogDome log, Duration syncInterval) {
+            super("JournalSyncer", log, true, syncInterval, syncInterval);
+            setDaemon(true);
+        }
+
+        @Override protected void work() {
+            for (Journal journal : journals.values()) {
+                try {
+                    journal.sync();
+                } catch (IOException e) {
+                    log.warning("Cannot sync " + journal + ". " + Spell.get(e));
+                }
+                if (conf.compactionThreshold > 0L
+                        && journal.getStoreable() != null
+                        && journal.getBytesSinceSnapshot() >= conf.compactionThreshold
+                        && journal.scheduleCompaction()) {
+                    compactor.execute(() -> compact(journal));
+                }
+            }
+        }
+    }
+
+    /** Недописанный снимок: временный файл, который на закрытии сбрасывается на диск и подменяет прежний. */
+    private final class SnapshotFile extends OutputStream {
+        private final Journal journal;
+        private final long fromSeq;
+        private final Path tmp;
+        private final Path target;
+        private final FileChannel channel;
+        private boolean finished;
+
+        SnapshotFile(Journal journal, long fromSeq, Path tmp, Path target, FileChannel channel) {
+            this.journal = journal;
+            this.fromSeq = fromSeq;
+            this.tmp = tmp;
+            this.target = target;
+            this.channel = channel;
+        }
+
+        @Override public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer bb = ByteBuffer.wrap(b, off, len);
+            while (bb.hasRemaining()) {
+                channel.write(bb);
+            }
+        }
+
+        @Override public void close() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            boolean committed = false;
+            try {
+                channel.force(true);
+                channel.close();
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                syncDirectory();
+                committed = true;
+            } finally {
+                if (!committed) {
+                    channel.close();
+                    Files.deleteIfExists(tmp);
+                }
+                journal.endSnapshot(fromSeq, committed);
+            }
+        }
+
+        void abandon() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            try {
+                channel.close();
+                Files.deleteIfExists(tmp);
+            } finally {
+                journal.endSnapshot(fromSeq, false);
+            }
+        }
+    }
+
+    /** Чтобы переименование пережило падение, сбрасываем и саму директорию; где так нельзя, не получится и ладно. */
+    private void syncDirectory() {
+        try (FileChannel dirChannel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            dirChannel.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static final class SnapshotOutputStream extends LineOutputStream {
+        private final SnapshotFile file;
+
+        SnapshotOutputStream(SnapshotFile file, int bufferSize) {
+            super(new BufferedOutputStream(file, bufferSize), StandardCharsets.UTF_8);
+            this.file = file;
+        }
+
+        /** Выбрасывает недописанный снимок, прежний снимок и журнал остаются как были. */
+        void abandon() throws IOException {
+            file.abandon();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package tk.bolovsrol.utils.store.journal;
+
+import tk.bolovsrol.utils.store.Storeable;
+
+/**
+ * Объект, который помимо полного образа ({@link #store}) пишет в {@link Journal журнал}
+ * каждое своё изменение, так что при падении теряется только то, что не успело попасть на диск.
+ * <p>
+ * Работает с {@link JournalStoreStreamer}: менеджер сначала восстанавливает объект из последнего снимка
+ * методом {@link #restore}, затем стример передаёт объекту записи журнала, сделанные после снимка,
+ * методом {@link #replay(String)} и вручает сам журнал методом {@link #attachJournal(Journal)}.
+ * <p>
+ * Записи журнала могут повторять то, что уже попало в снимок, поэтому их применение должно давать
+ * тот же результат при повторе: «положить значение по ключу», «удалить ключ», но не «прибавить единицу».
+ * Записи одного объекта проигрываются в том же порядке, в каком были дописаны в журнал.
+ */
+public interface JournaledStoreable extends Storeable {
+
+    /**
+     * Применяет запись журнала, сделанную после последнего снимка.
+     *
+     * @param record запись, как её передали в {@link Journal#append(String)}
+     * @throws Exception
+     */
+    void replay(String record) throws Exception;
+
+    /**
+     * Вручает объекту журнал, в который тот будет дописывать изменения, или забирает его.
+     *
+     * @param journalOrNull журнал или нул, если писать в журнал больше не нужно
+     */
+    void attachJournal(Journal journalOrNull);
+}
@@ -0,0 +1,259 @@
+package tk.bolovsrol.utils.store.mapped;
+
+import tk.bolovsrol.utils.Spell;
+import tk.bolovsrol.utils.binaryserializer.ByteBufferInput;
+import tk.bolovsrol.utils.binaryserializer.ByteBufferOutput;
+import tk.bolovsrol.utils.binaryserializer.ClassDictionary;
+import tk.bolovsrol.utils.binaryserializer.DecodeException;
+import tk.bolovsrol.utils.binaryserializer.EncodeException;
+import tk.bolovsrol.utils.binaryserializer.SchemaDecoder;
+import tk.bolovsrol.utils.binaryserializer.SchemaEncoder;
+import tk.bolovsrol.utils.io.LineInputStream;
+import tk.bolovsrol.utils.io.LineOutputStream;
+import tk.bolovsrol.utils.log.LogDome;
+import tk.bolovsrol.utils.store.RestoreException;
+import tk.bolovsrol.utils.store.Storeable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Словарь со строковыми ключами, который живёт на диске, а не в куче: значения лежат в отображённых
+ * в память файлах {@link MappedStoreStreamer}, и каждое {@link #get(String)} декодирует значение прямо оттуда.
+ * <p>
+ * Ключи разложены по {@link Shard шардам} по хешу, у каждого шарда свои файлы и свой лок,
+ * так что писатели в разные шарды друг другу не мешают, а читатели не мешают никому, кроме
+ * писателя своего шарда.
+ * <p>
+ * Значения кодируются {@link SchemaEncoder}'ом, словарь классов хранится рядом в файле
+ * <code>&lt;id&gt;.classes</code> и дописывается до того, как на диск попадёт закодированное им значение.
+ * Требования к классам значений — как у {@link SchemaEncoder}.
+ * <p>
+ * Восстановление ничего не читает, кроме манифеста и словаря классов: файлы открываются
+ * стримером в {@link MappedStoreStreamer#afterRestore(String, Storeable)}. До этого словарь пользоваться нельзя.
+ * {@link #store(LineOutputStream)} сбрасывает шарды на диск и пишет манифест — количество шардов
+ * и размер куска, с которыми созданы файлы; при следующем открытии используются они, а не конфигурация.
+ */
+public class MappedDictionary<V extends Serializable> implements Storeable {
+
+    private static final String SHARDS_KEY = "shards=";
+    private static final String CHUNK_SIZE_KEY = "chunkSize=";
+    static final String CLASSES_SUFFIX = ".classes";
+
+    private volatile Shard[] shards;
+    private ClassDictionary classes;
+    private SchemaDecoder decoder;
+    private Path classesPath;
+    private volatile int savedRevision;
+    private final Object classesLock = new Object();
+
+    /** Из манифеста, 0 — манифеста не было. */
+    private int restoredShardCount;
+    private int restoredChunkSize;
+
+    public MappedDictionary() {
+    }
+
+    private Shard[] shards() {
+        Shard[] s = shards;
+        if (s == null) {
+            throw new IllegalStateException("Dictionary is not open, register it with a store manager over " + MappedStoreStreamer.class.getSimpleName());
+        }
+        return s;
+    }
+
+    private static Shard shard(Shard[] shards, int hash) {
+        return shards[(int) (((hash >>> 8) & 0xFFFFFFL) * shards.length >>> 24)];
+    }
+
+    /**
+     * @param key ключ
+     * @return значение или нул, если ключа нет
+     * @throws DecodeException значение не удалось декодировать
+     */
+    @SuppressWarnings("unchecked")
+    public V get(String key) throws DecodeException {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        int hash = Shard.hash(k);
+        return (V) shard(shards(), hash).get(k, hash, value -> decoder.decodeNext(new ByteBufferInput(value)));
+    }
+
+    public boolean containsKey(String key) throws DecodeException {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        int hash = Shard.hash(k);
+        return shard(shards(), hash).get(k, hash, value -> Boolean.TRUE) != null;
+    }
+
+    /**
+     * Кладёт значение ключа, заменяя прежнее.
+     *
+     * @param key ключ
+     * @param value значение
+     * @throws EncodeException класс значения не годится для сериализации
+     * @throws IOException запись не удалась
+     */
+    public void put(String key, V value) throws EncodeException, IOException {
+        Shard[] shards = shards();
+        ByteBufferOutput out = new ByteBufferOutput(256);
+        new SchemaEncoder(classes, out).append(value);
+        saveClassesIfChanged();
+        ByteBuffer encoded = out.getBuffer();
+        encoded.flip();
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        int hash = Shard.hash(k);
+        shard(shards, hash).put(k, hash, encoded);
+    }
+
+    /**
+     * Удаляет ключ. Прежнее значение не декодируется, поэтому и не возвращается.
+     *
+     * @param key ключ
+     * @return true, если ключ был
+     * @throws IOException запись не удалась
+     */
+    public boolean remove(String key) throws IOException {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        int hash = Shard.hash(k);
+        return shard(shards(), hash).remove(k, hash);
+    }
+
+    /** @return количество ключей */
+    public long size() {
+        long result = 0L;
+        for (Shard shard : shards()) {
+            result += shard.size();
+        }
+        return result;
+    }
+
+    /** Пишет словарь классов, если в нём что-то появилось с прошлой записи. */
+    private void saveClassesIfChanged() throws IOException {
+        if (classes.getRevision() == savedRevision) {
+            return;
+        }
+        synchronized (classesLock) {
+            int revision = classes.getRevision();
+            if (revision == savedRevision) {
+                return;
+            }
+            Path tmp = classesPath.resolveSibling(classesPath.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                classes.writeTo(Channels.newOutputStream(channel));
+                channel.force(true);
+            }
+            Files.move(tmp, classesPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            savedRevision = revision;
+        }
+    }
+
+    /**
+     * Открывает файлы словаря. Вызывается стримером после восстановления.
+     *
+     * @param log лог
+     * @param dir директория
+     * @param id идентификатор словаря
+     * @param conf конфигурация стримера; количество шардов и размер куска из манифеста важнее
+     * @throws IOException
+     * @throws DecodeException словарь классов испорчен
+     */
+    void open(LogDome log, Path dir, String id, MappedStoreStreamer.Conf conf) throws IOException, DecodeException {
+        if (shards != null) {
+            throw new IllegalStateException("Dictionary " + Spell.get(id) + " is already open");
+        }
+        int shardCount = restoredShardCount > 0 ? restoredShardCount : conf.shards;
+        int chunkSize = restoredChunkSize > 0 ? restoredChunkSize : conf.chunkSize;
+        if (restoredShardCount > 0 && (shardCount != conf.shards || chunkSize != conf.chunkSize)) {
+            log.warning("Dictionary " + Spell.get(id) + " was created with " + shardCount + " shards of " + chunkSize
+                  + "-byte chunks, keeping that instead of configured " + conf.shards + " shards of " + conf.chunkSize + "-byte chunks");
+        }
+        classesPath = dir.resolve(id + CLASSES_SUFFIX);
+        if (Files.exists(classesPath)) {
+            try (InputStream is = Files.newInputStream(classesPath)) {
+                classes = ClassDictionary.readFrom(is);
+            }
+        } else {
+            classes = new ClassDictionary();
+        }
+        savedRevision = classes.getRevision();
+        decoder = new SchemaDecoder(classes);
+        Shard[] opened = new Shard[shardCount];
+        try {
+            for (int i = 0; i < shardCount; i++) {
+                opened[i] = new Shard(log, dir.resolve(id + '.' + i + Shard.DATA_SUFFIX), dir.resolve(id + '.' + i + Shard.INDEX_SUFFIX), chunkSize, conf.indexCapacity);
+                opened[i].open();
+            }
+        } catch (IOException | RuntimeException e) {
+            for (Shard shard : opened) {
+                if (shard != null) {
+                    shard.close();
+                }
+            }
+            throw e;
+        }
+        restoredShardCount = shardCount;
+        restoredChunkSize = chunkSize;
+        shards = opened;
+    }
+
+    /**
+     * Сбрасывает всё на диск и закрывает файлы. Вызывается стримером после разрегистрации.
+     *
+     * @throws IOException
+     */
+    void close() throws IOException {
+        Shard[] s = shards;
+        if (s == null) {
+            return;
+        }
+        shards = null;
+        IOException problem = null;
+        for (Shard shard : s) {
+            try {
+                shard.close();
+            } catch (IOException e) {
+                problem = e;
+            }
+        }
+        if (problem != null) {
+            throw problem;
+        }
+    }
+
+    @Override public void store(LineOutputStream los) throws Exception {
+        Shard[] s = shards;
+        if (s != null) {
+            saveClassesIfChanged();
+            for (Shard shard : s) {
+                shard.flush();
+            }
+        }
+        if (restoredShardCount > 0) {
+            los.writeln(SHARDS_KEY + restoredShardCount);
+            los.writeln(CHUNK_SIZE_KEY + restoredChunkSize);
+        }
+    }
+
+    @Override public void restore(LineInputStream lis) throws Exception {
+        String line;
+        while ((line = lis.readLine()) != null) {
+            try {
+                if (line.startsWith(SHARDS_KEY)) {
+                    restoredShardCount = Integer.parseInt(line.substring(SHARDS_KEY.length()));
+                } else if (line.startsWith(CHUNK_SIZE_KEY)) {
+                    restoredChunkSize = Integer.parseInt(line.substring(CHUNK_SIZE_KEY.length()));
+                }
+            } catch (NumberFormatException e) {
+                throw new RestoreException("Bad manifest line " + Spell.get(line), e);
+            }
+        }
+    }
+}
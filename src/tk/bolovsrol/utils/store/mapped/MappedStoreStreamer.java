@@ -0,0 +1,177 @@
+package tk.bolovsrol.utils.store.mapped;
+
+import tk.bolovsrol.utils.Spell;
+import tk.bolovsrol.utils.UnexpectedBehaviourException;
+import tk.bolovsrol.utils.conf.AutoConfiguration;
+import tk.bolovsrol.utils.conf.Param;
+import tk.bolovsrol.utils.io.LineInputStream;
+import tk.bolovsrol.utils.io.LineOutputStream;
+import tk.bolovsrol.utils.log.LogDome;
+import tk.bolovsrol.utils.store.Storeable;
+import tk.bolovsrol.utils.store.StoreStreamer;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Стример для {@link MappedDictionary}: словари живут в отображённых в память файлах в указанной директории,
+ * а в стор через {@link #newStoreOutputStream(String)} пишется только манифест <code>&lt;id&gt;.manifest</code>.
+ * <p>
+ * После восстановления словаря стример открывает его файлы ({@link #afterRestore(String, Storeable)})
+ * и сразу записывает манифест, чтобы раскладка файлов не зависела от того, успел ли менеджер сохранить словарь.
+ * После разрегистрации файлы закрываются.
+ * <p>
+ * Прочие объекты хранятся целиком в файле манифеста, как у {@link tk.bolovsrol.utils.store.DirectoryStoreStreamer}.
+ * Файл пишется во временный и подменяет прежний, только если сохранение удалось.
+ */
+public class MappedStoreStreamer implements StoreStreamer<MappedStoreStreamer.Conf> {
+
+    public static final String MANIFEST_SUFFIX = ".manifest";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    public static class Conf extends AutoConfiguration {
+        @Param(desc = "путь к директории, в которой следует хранить информацию", mandatory = true)
+        public String path;
+
+        @Param(desc = "на сколько шардов делить словарь; у каждого шарда свои файлы и свой лок. Для существующего словаря берётся из манифеста")
+        public int shards = 16;
+
+        @Param(desc = "размер куска, которыми файл данных отображается в память, байтов; значение не может быть больше куска. Для существующего словаря берётся из манифеста")
+        public int chunkSize = 256 * 1024 * 1024;
+
+        @Param(desc = "начальное количество слотов индекса шарда; индекс растёт вдвое при заполнении на три четверти")
+        public int indexCapacity = 64 * 1024;
+
+        @Param(desc = "размер буфера записи манифеста, байтов")
+        public int bufferSize = 8 * 1024;
+    }
+
+    private LogDome log;
+    private Conf conf;
+    private Path dir;
+
+    public MappedStoreStreamer() {
+    }
+
+    @Override public void init(LogDome log, Conf conf) throws UnexpectedBehaviourException, IOException {
+        if (dir != null) {
+            throw new IllegalStateException("Already initialized");
+        }
+        if (conf.shards <= 0 || conf.chunkSize <= 0 || conf.indexCapacity <= 0 || conf.indexCapacity > Shard.MAX_CAPACITY || conf.bufferSize <= 0) {
+            throw new UnexpectedBehaviourException("Invalid mapped store configuration " + Spell.get(conf));
+        }
+        Path dir = Paths.get(conf.path);
+        Files.createDirectories(dir);
+        if (!Files.isDirectory(dir) || !Files.isWritable(dir)) {
+            throw new UnexpectedBehaviourException("Specified path " + Spell.get(dir) + " is not a writable directory");
+        }
+        log.trace("Mapped store directory: " + Spell.get(dir));
+        this.log = log;
+        this.conf = conf;
+        this.dir = dir;
+    }
+
+    @Override public LineOutputStream newStoreOutputStream(String id) throws IOException {
+        Path tmp = dir.resolve(id + MANIFEST_SUFFIX + TMP_SUFFIX);
+        return new ManifestOutputStream(new ManifestFile(tmp, dir.resolve(id + MANIFEST_SUFFIX)), conf.bufferSize);
+    }
+
+    @Override public void abandon(String id, LineOutputStream los) throws IOException {
+        if (los instanceof ManifestOutputStream) {
+            ((ManifestOutputStream) los).abandon();
+        } else {
+            los.close();
+        }
+    }
+
+    @Override public LineInputStream newStoreInputStream(String id) throws IOException {
+        Path manifest = dir.resolve(id + MANIFEST_SUFFIX);
+        if (!Files.exists(manifest)) {
+            return null;
+        }
+        return new LineInputStream(Files.newInputStream(manifest), StandardCharsets.UTF_8, conf.bufferSize);
+    }
+
+    @Override public void afterRestore(String id, Storeable storeable) throws Exception {
+        if (storeable instanceof MappedDictionary) {
+            MappedDictionary<?> dictionary = (MappedDictionary<?>) storeable;
+            dictionary.open(log, dir, id, conf);
+            LineOutputStream los = newStoreOutputStream(id);
+            boolean stored = false;
+            try {
+                dictionary.store(los);
+                stored = true;
+            } finally {
+                if (stored) {
+                    los.close();
+                } else {
+                    abandon(id, los);
+                }
+            }
+        }
+    }
+
+    @Override public void afterUnregister(String id, Storeable storeable) throws IOException {
+        if (storeable instanceof MappedDictionary) {
+            ((MappedDictionary<?>) storeable).close();
+        }
+    }
+
+    /** Временный файл, который на закрытии подменяет собой манифест. */
+    private static final class ManifestFile extends FilterOutputStream {
+        private final Path tmp;
+        private final Path target;
+        private boolean finished;
+
+        ManifestFile(Path tmp, Path target) throws IOException {
+            super(Files.newOutputStream(tmp));
+            this.tmp = tmp;
+            this.target = target;
+        }
+
+        @Override public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override public void close() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            super.close();
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        void abandon() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            try {
+                out.close();
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    private static final class ManifestOutputStream extends LineOutputStream {
+        private final ManifestFile file;
+
+        ManifestOutputStream(ManifestFile file, int bufferSize) {
+            super(new BufferedOutputStream(file, bufferSize), StandardCharsets.UTF_8);
+            this.file = file;
+        }
+
+        /** Выбрасывает недописанный манифест, прежний остаётся как был. */
+        void abandon() throws IOException {
+            file.abandon();
+        }
+    }
+}
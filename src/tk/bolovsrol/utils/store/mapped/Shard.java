@@ -0,0 +1,703 @@
+package tk.bolovsrol.utils.store.mapped;
+
+import tk.bolovsrol.utils.Spell;
+import tk.bolovsrol.utils.binaryserializer.DecodeException;
+import tk.bolovsrol.utils.log.LogDome;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Шард {@link MappedDictionary}: файл данных и файл индекса, оба отображены в память.
+ * <p>
+ * Файл данных — журнал записей, который только дописывается. Запись — 4 байта длины ключа плюс один,
+ * 4 байта длины значения (−1 у записи об удалении), 4 байта CRC32 ключа и значения, ключ и значение.
+ * Файл отображается кусками по {@link #chunkSize} байтов, запись кусок не пересекает: если не влезает
+ * в остаток куска, начинается со следующего, а остаток остаётся нулями.
+ * <p>
+ * Индекс — открытая адресация с линейным пробированием: заголовок и слоты по 16 байтов
+ * (позиция записи плюс один, 0 в пустом слоте; хеш ключа; длина записи). Индекс растёт вдвое,
+ * когда заполнен на три четверти; удаление сдвигает хвост цепочки назад, так что надгробий в индексе нет.
+ * <p>
+ * Заголовок индекса помечается грязным перед первым изменением после {@link #flush()} и чистым после него.
+ * Если при открытии индекс грязный или его нет, он строится заново чтением файла данных до первой
+ * испорченной записи. Так что после падения шард возвращается к состоянию, которое успело попасть на диск,
+ * а после {@link #flush()} на диске всё.
+ * <p>
+ * Когда мёртвых записей становится больше, чем живых, и больше куска, файл данных переписывается
+ * начисто — под локом записи, так что этот шард на это время недоступен.
+ * <p>
+ * Чтения идут параллельно под локом чтения, изменения — по одному под локом записи.
+ */
+final class Shard {
+
+    static final String DATA_SUFFIX = ".data";
+    static final String INDEX_SUFFIX = ".index";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /** «MSI1». */
+    private static final int INDEX_MAGIC = 0x4D534931;
+    private static final int STATE_CLEAN = 0;
+    private static final int STATE_DIRTY = 1;
+
+    private static final int H_MAGIC = 0;
+    private static final int H_STATE = 4;
+    private static final int H_CAPACITY = 8;
+    private static final int H_CHUNK_SIZE = 12;
+    private static final int H_COUNT = 16;
+    private static final int H_DATA_END = 24;
+    private static final int H_LIVE_BYTES = 32;
+    private static final int H_DEAD_BYTES = 40;
+    private static final int HEADER_SIZE = 64;
+
+    private static final int SLOT_SIZE = 16;
+    private static final int MIN_CAPACITY = 16;
+    /** Чтобы индекс влез в одно отображение. */
+    static final int MAX_CAPACITY = 1 << 26;
+
+    private static final int RECORD_HEADER_SIZE = 12;
+    private static final int TOMBSTONE = -1;
+
+    /** Читает значение из отображённого файла, пока шард держит лок. */
+    interface ValueReader<T> {
+        T read(ByteBuffer value) throws DecodeException;
+    }
+
+    private final LogDome log;
+    private final Path dataPath;
+    private final Path indexPath;
+    private final int chunkSize;
+    private final int initialCapacity;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final CRC32 crc = new CRC32();
+
+    private FileChannel dataChannel;
+    private MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private int capacity;
+    private long count;
+    private long dataEnd;
+    private long liveBytes;
+    private long deadBytes;
+    /** До сюда данные уже сброшены на диск. */
+    private long flushedEnd;
+    private boolean dirty;
+    private boolean closed;
+
+    Shard(LogDome log, Path dataPath, Path indexPath, int chunkSize, int initialCapacity) {
+        this.log = log;
+        this.dataPath = dataPath;
+        this.indexPath = indexPath;
+        this.chunkSize = chunkSize;
+        this.initialCapacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.min(MAX_CAPACITY, Math.max(1, initialCapacity - 1)) << 1));
+    }
+
+    /**
+     * Хеш ключа. Младшие биты выбирают слот, старшие — шард.
+     *
+     * @param key ключ
+     * @return хеш
+     */
+    static int hash(byte[] key) {
+        int h = 0x811C9DC5;
+        for (byte b : key) {
+            h = (h ^ b) * 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Открывает файлы шарда, при необходимости восстанавливая индекс.
+     *
+     * @throws IOException
+     */
+    void open() throws IOException {
+        lock.writeLock().lock();
+        try {
+            dataChannel = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long dataSize = dataChannel.size();
+            int chunkCount = (int) ((dataSize + chunkSize - 1L) / chunkSize);
+            if (chunkCount > 0) {
+                chunkForWrite(chunkCount - 1);
+            }
+            if (!loadIndex()) {
+                rebuildIndex();
+            }
+        } catch (IOException | RuntimeException e) {
+            closeChannels();
+            throw e;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** @return true, если индекс с диска годится */
+    private boolean loadIndex() throws IOException {
+        if (!Files.exists(indexPath)) {
+            return false;
+        }
+        FileChannel ch = FileChannel.open(indexPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = ch.size();
+        if (size >= HEADER_SIZE) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0L, size);
+            int cap = buf.getInt(H_CAPACITY);
+            if (buf.getInt(H_MAGIC) == INDEX_MAGIC
+                  && buf.getInt(H_STATE) == STATE_CLEAN
+                  && buf.getInt(H_CHUNK_SIZE) == chunkSize
+                  && cap >= MIN_CAPACITY && Integer.bitCount(cap) == 1
+                  && size == HEADER_SIZE + (long) cap * SLOT_SIZE
+                  && buf.getLong(H_DATA_END) <= (long) chunks.length * chunkSize) {
+                this.indexChannel = ch;
+                this.index = buf;
+                this.capacity = cap;
+                this.count = buf.getLong(H_COUNT);
+                this.dataEnd = buf.getLong(H_DATA_END);
+                this.liveBytes = buf.getLong(H_LIVE_BYTES);
+                this.deadBytes = buf.getLong(H_DEAD_BYTES);
+                this.flushedEnd = dataEnd;
+                return true;
+            }
+        }
+        ch.close();
+        log.warning("Index " + Spell.get(indexPath) + " is missing, stale or damaged, rebuilding");
+        return false;
+    }
+
+    /** Строит индекс заново, читая данные до первой испорченной записи. Вызывать под локом записи. */
+    private void rebuildIndex() throws IOException {
+        createIndex(initialCapacity);
+        count = 0L;
+        liveBytes = 0L;
+        deadBytes = 0L;
+        dataEnd = 0L;
+        dirty = true;
+        long total = (long) chunks.length * chunkSize;
+        long pos = 0L;
+        byte[] key = new byte[0];
+        while (pos < total) {
+            int c = (int) (pos / chunkSize);
+            int off = (int) (pos % chunkSize);
+            MappedByteBuffer chunk = chunks[c];
+            if (chunkSize - off < RECORD_HEADER_SIZE || chunk.getInt(off) == 0) {
+                pos = (long) (c + 1) * chunkSize;
+                continue;
+            }
+            int keyLen = chunk.getInt(off) - 1;
+            int valueLen = chunk.getInt(off + 4);
+            long size = (long) RECORD_HEADER_SIZE + keyLen + Math.max(valueLen, 0);
+            if (keyLen < 0 || valueLen < TOMBSTONE || off + size > chunkSize || !checksumMatches(chunk, off, keyLen, valueLen)) {
+                log.warning("Data file " + Spell.get(dataPath) + " has damaged record at " + pos + ", dropping the rest");
+                break;
+            }
+            if (key.length != keyLen) {
+                key = new byte[keyLen];
+            }
+            ByteBuffer src = chunk.duplicate();
+            src.position(off + RECORD_HEADER_SIZE);
+            src.get(key);
+            int hash = hash(key);
+            int slot = find(key, hash);
+            if (valueLen == TOMBSTONE) {
+                if (slot >= 0) {
+                    int oldSize = index.getInt(slotOffset(slot) + 12);
+                    liveBytes -= oldSize;
+                    deadBytes += oldSize;
+                    deleteSlot(slot);
+                    count--;
+                }
+                deadBytes += size;
+            } else {
+                if (slot >= 0) {
+                    int oldSize = index.getInt(slotOffset(slot) + 12);
+                    liveBytes -= oldSize;
+                    deadBytes += oldSize;
+                } else {
+                    slot = -slot - 1;
+                    count++;
+                }
+                writeSlot(slot, pos, hash, (int) size);
+                liveBytes += size;
+                if (count > (capacity >> 1) + (capacity >> 2) && capacity < MAX_CAPACITY) {
+                    growIndex();
+                }
+            }
+            pos += size;
+            dataEnd = pos;
+        }
+        dropTail();
+        flushedEnd = 0L;
+        flushUnderLock();
+        log.trace("Rebuilt index " + Spell.get(indexPath) + ": " + count + " keys, " + dataEnd + " bytes of data");
+    }
+
+    private boolean checksumMatches(MappedByteBuffer chunk, int off, int keyLen, int valueLen) {
+        ByteBuffer body = chunk.duplicate();
+        body.limit(off + RECORD_HEADER_SIZE + keyLen + Math.max(valueLen, 0)).position(off + RECORD_HEADER_SIZE);
+        crc.reset();
+        crc.update(body);
+        return (int) crc.getValue() == chunk.getInt(off + 8);
+    }
+
+    /** Обнуляет всё после конца данных, чтобы старые записи там не воскресли при следующем восстановлении. */
+    private void dropTail() throws IOException {
+        int keep = (int) ((dataEnd + chunkSize - 1L) / chunkSize);
+        if (keep < chunks.length) {
+            chunks = Arrays.copyOf(chunks, keep);
+            dataChannel.truncate((long) keep * chunkSize);
+        }
+        if (keep > 0 && dataEnd % chunkSize != 0L) {
+            ByteBuffer tail = chunks[keep - 1].duplicate();
+            tail.position((int) (dataEnd % chunkSize));
+            byte[] zeros = new byte[Math.min(64 * 1024, tail.remaining())];
+            while (tail.hasRemaining()) {
+                tail.put(zeros, 0, Math.min(zeros.length, tail.remaining()));
+            }
+        }
+    }
+
+    private void createIndex(int cap) throws IOException {
+        if (indexChannel != null) {
+            indexChannel.close();
+        }
+        indexChannel = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0L, HEADER_SIZE + (long) cap * SLOT_SIZE);
+        capacity = cap;
+        writeHeader(index, STATE_DIRTY);
+    }
+
+    private void writeHeader(MappedByteBuffer buf, int state) {
+        buf.putInt(H_MAGIC, INDEX_MAGIC);
+        buf.putInt(H_STATE, state);
+        buf.putInt(H_CAPACITY, capacity);
+        buf.putInt(H_CHUNK_SIZE, chunkSize);
+        buf.putLong(H_COUNT, count);
+        buf.putLong(H_DATA_END, dataEnd);
+        buf.putLong(H_LIVE_BYTES, liveBytes);
+        buf.putLong(H_DEAD_BYTES, deadBytes);
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private void writeSlot(int slot, long pos, int hash, int size) {
+        int so = slotOffset(slot);
+        index.putLong(so, pos + 1L);
+        index.putInt(so + 8, hash);
+        index.putInt(so + 12, size);
+    }
+
+    /** @return номер слота с ключом или −(номер свободного слота + 1) */
+    private int find(byte[] key, int hash) {
+        int mask = capacity - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int so = slotOffset(slot);
+            long pos1 = index.getLong(so);
+            if (pos1 == 0L) {
+                return -slot - 1;
+            }
+            if (index.getInt(so + 8) == hash && keyEquals(pos1 - 1L, key)) {
+                return slot;
+            }
+        }
+    }
+
+    private boolean keyEquals(long pos, byte[] key) {
+        MappedByteBuffer chunk = chunks[(int) (pos / chunkSize)];
+        int off = (int) (pos % chunkSize);
+        if (chunk.getInt(off) - 1 != key.length) {
+            return false;
+        }
+        off += RECORD_HEADER_SIZE;
+        for (int i = 0; i < key.length; i++) {
+            if (chunk.get(off + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Освобождает слот, сдвигая на его место записи, которые иначе стали бы недостижимы. */
+    private void deleteSlot(int slot) {
+        int mask = capacity - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; ; next = (next + 1) & mask) {
+            int no = slotOffset(next);
+            if (index.getLong(no) == 0L) {
+                break;
+            }
+            int home = index.getInt(no + 8) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                int ho = slotOffset(hole);
+                index.putLong(ho, index.getLong(no));
+                index.putInt(ho + 8, index.getInt(no + 8));
+                index.putInt(ho + 12, index.getInt(no + 12));
+                hole = next;
+            }
+        }
+        index.putLong(slotOffset(hole), 0L);
+    }
+
+    /** Переносит индекс во вдвое больший файл. */
+    private void growIndex() throws IOException {
+        int newCapacity = capacity << 1;
+        Path tmp = indexPath.resolveSibling(indexPath.getFileName() + TMP_SUFFIX);
+        FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            MappedByteBuffer grown = ch.map(FileChannel.MapMode.READ_WRITE, 0L, HEADER_SIZE + (long) newCapacity * SLOT_SIZE);
+            int mask = newCapacity - 1;
+            for (int s = 0; s < capacity; s++) {
+                int so = slotOffset(s);
+                long pos1 = index.getLong(so);
+                if (pos1 != 0L) {
+                    int hash = index.getInt(so + 8);
+                    int slot = hash & mask;
+                    while (grown.getLong(slotOffset(slot)) != 0L) {
+                        slot = (slot + 1) & mask;
+                    }
+                    int no = slotOffset(slot);
+                    grown.putLong(no, pos1);
+                    grown.putInt(no + 8, hash);
+                    grown.putInt(no + 12, index.getInt(so + 12));
+                }
+            }
+            Files.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            indexChannel.close();
+            indexChannel = ch;
+            index = grown;
+            capacity = newCapacity;
+            writeHeader(index, STATE_DIRTY);
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    private MappedByteBuffer chunkForWrite(int c) throws IOException {
+        if (c >= chunks.length) {
+            MappedByteBuffer[] grown = Arrays.copyOf(chunks, c + 1);
+            for (int i = chunks.length; i <= c; i++) {
+                grown[i] = dataChannel.map(FileChannel.MapMode.READ_WRITE, (long) i * chunkSize, chunkSize);
+            }
+            chunks = grown;
+        }
+        return chunks[c];
+    }
+
+    /** Дописывает запись в данные. Вызывать под локом записи. */
+    private long append(byte[] key, int valueLen, ByteBuffer value) throws IOException {
+        int size = RECORD_HEADER_SIZE + key.length + Math.max(valueLen, 0);
+        long pos = dataEnd;
+        if (pos % chunkSize + size > chunkSize) {
+            pos = (pos / chunkSize + 1L) * chunkSize;
+        }
+        ByteBuffer target = chunkForWrite((int) (pos / chunkSize)).duplicate();
+        target.position((int) (pos % chunkSize));
+        crc.reset();
+        crc.update(key);
+        if (value != null) {
+            crc.update(value.duplicate());
+        }
+        target.putInt(key.length + 1).putInt(valueLen).putInt((int) crc.getValue()).put(key);
+        if (value != null) {
+            target.put(value.duplicate());
+        }
+        dataEnd = pos + size;
+        return pos;
+    }
+
+    private void markDirty() {
+        if (!dirty) {
+            dirty = true;
+            index.putInt(H_STATE, STATE_DIRTY);
+            index.force();
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed || index == null) {
+            throw new IllegalStateException("Shard " + Spell.get(dataPath) + " is not open");
+        }
+    }
+
+    /**
+     * Ищет значение ключа и отдаёт его читателю, пока держит лок.
+     *
+     * @param key ключ
+     * @param hash {@link #hash(byte[]) хеш} ключа
+     * @param reader читатель значения
+     * @return прочитанное значение или нул, если ключа нет
+     * @throws DecodeException
+     */
+    <T> T get(byte[] key, int hash, ValueReader<T> reader) throws DecodeException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            int slot = find(key, hash);
+            if (slot < 0) {
+                return null;
+            }
+            long pos = index.getLong(slotOffset(slot)) - 1L;
+            MappedByteBuffer chunk = chunks[(int) (pos / chunkSize)];
+            int off = (int) (pos % chunkSize) + RECORD_HEADER_SIZE + key.length;
+            ByteBuffer value = chunk.duplicate();
+            value.limit(off + chunk.getInt((int) (pos % chunkSize) + 4)).position(off);
+            return reader.read(value);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Кладёт значение ключа, заменяя прежнее.
+     *
+     * @param key ключ
+     * @param hash {@link #hash(byte[]) хеш} ключа
+     * @param value значение от позиции до лимита
+     * @throws IOException
+     */
+    void put(byte[] key, int hash, ByteBuffer value) throws IOException {
+        int size = RECORD_HEADER_SIZE + key.length + value.remaining();
+        if (size > chunkSize) {
+            throw new IOException("Record of " + size + " bytes does not fit into chunk of " + chunkSize + " bytes");
+        }
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            int slot = find(key, hash);
+            if (slot < 0 && count + 1L >= capacity) {
+                throw new IOException("Index " + Spell.get(indexPath) + " is full, use more shards");
+            }
+            markDirty();
+            long pos = append(key, value.remaining(), value);
+            if (slot >= 0) {
+                int oldSize = index.getInt(slotOffset(slot) + 12);
+                liveBytes -= oldSize;
+                deadBytes += oldSize;
+            } else {
+                slot = -slot - 1;
+                count++;
+            }
+            writeSlot(slot, pos, hash, size);
+            liveBytes += size;
+            if (count > (capacity >> 1) + (capacity >> 2) && capacity < MAX_CAPACITY) {
+                growIndex();
+            }
+            compactIfWasteful();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Удаляет ключ.
+     *
+     * @param key ключ
+     * @param hash {@link #hash(byte[]) хеш} ключа
+     * @return true, если ключ был
+     * @throws IOException
+     */
+    boolean remove(byte[] key, int hash) throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            int slot = find(key, hash);
+            if (slot < 0) {
+                return false;
+            }
+            markDirty();
+            int oldSize = index.getInt(slotOffset(slot) + 12);
+            append(key, TOMBSTONE, null);
+            liveBytes -= oldSize;
+            deadBytes += oldSize + RECORD_HEADER_SIZE + key.length;
+            deleteSlot(slot);
+            count--;
+            compactIfWasteful();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    long size() {
+        lock.readLock().lock();
+        try {
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Уплотняет данные, если мёртвых байтов слишком много. Запись, которая это вызвала,
+     * уже состоялась, так что неудачу уплотнения не выкидываем, а пишем в лог,
+     * попробуем в другой раз.
+     */
+    private void compactIfWasteful() {
+        if (deadBytes > liveBytes && deadBytes >= chunkSize) {
+            try {
+                compact();
+            } catch (IOException | RuntimeException e) {
+                log.warning("Compacting " + Spell.get(dataPath) + " failed, keeping the old data file", e);
+            }
+        }
+    }
+
+    /**
+     * Переписывает живые записи в новый файл данных. Вызывать под локом записи.
+     * <p>
+     * Новые смещения копятся в сторонке и попадают в индекс только после того,
+     * как новый файл встал на место старого, так что при ошибке индекс
+     * по-прежнему указывает в старый файл.
+     */
+    private void compact() throws IOException {
+        long started = System.currentTimeMillis();
+        Path tmp = dataPath.resolveSibling(dataPath.getFileName() + TMP_SUFFIX);
+        FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            MappedByteBuffer[] newChunks = new MappedByteBuffer[0];
+            long[] newPos1 = new long[capacity];
+            long end = 0L;
+            for (int s = 0; s < capacity; s++) {
+                int so = slotOffset(s);
+                long pos1 = index.getLong(so);
+                if (pos1 == 0L) {
+                    continue;
+                }
+                long pos = pos1 - 1L;
+                int size = index.getInt(so + 12);
+                if (end % chunkSize + size > chunkSize) {
+                    end = (end / chunkSize + 1L) * chunkSize;
+                }
+                int c = (int) (end / chunkSize);
+                if (c >= newChunks.length) {
+                    newChunks = Arrays.copyOf(newChunks, c + 1);
+                    newChunks[c] = ch.map(FileChannel.MapMode.READ_WRITE, (long) c * chunkSize, chunkSize);
+                }
+                ByteBuffer src = chunks[(int) (pos / chunkSize)].duplicate();
+                src.limit((int) (pos % chunkSize) + size).position((int) (pos % chunkSize));
+                ByteBuffer dst = newChunks[c].duplicate();
+                dst.position((int) (end % chunkSize));
+                dst.put(src);
+                newPos1[s] = end + 1L;
+                end += size;
+            }
+            for (MappedByteBuffer chunk : newChunks) {
+                chunk.force();
+            }
+            Files.move(tmp, dataPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            for (int s = 0; s < capacity; s++) {
+                if (newPos1[s] != 0L) {
+                    index.putLong(slotOffset(s), newPos1[s]);
+                }
+            }
+            long was = dataEnd;
+            FileChannel old = dataChannel;
+            dataChannel = ch;
+            chunks = newChunks;
+            dataEnd = end;
+            deadBytes = 0L;
+            flushedEnd = 0L;
+            log.trace("Compacted " + Spell.get(dataPath) + " from " + was + " to " + end + " bytes in " + (System.currentTimeMillis() - started) + " ms");
+            closeReplaced(old);
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    /** Закрывает канал заменённого файла данных. Новый файл уже на месте, так что ошибка тут не страшна. */
+    private void closeReplaced(FileChannel old) {
+        try {
+            old.close();
+        } catch (IOException e) {
+            log.warning("Cannot close replaced data file of " + Spell.get(dataPath), e);
+        }
+    }
+
+    /**
+     * Сбрасывает изменённые куски данных и индекс на диск и помечает индекс чистым.
+     *
+     * @throws IOException
+     */
+    void flush() throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            flushUnderLock();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void flushUnderLock() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        for (int c = (int) (flushedEnd / chunkSize); c < chunks.length; c++) {
+            chunks[c].force();
+        }
+        flushedEnd = dataEnd;
+        writeHeader(index, STATE_CLEAN);
+        index.force();
+        dirty = false;
+    }
+
+    /**
+     * Сбрасывает всё на диск и закрывает файлы.
+     *
+     * @throws IOException
+     */
+    void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            try {
+                if (index != null) {
+                    flushUnderLock();
+                }
+            } finally {
+                closed = true;
+                closeChannels();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void closeChannels() throws IOException {
+        try {
+            if (dataChannel != null) {
+                dataChannel.close();
+            }
+        } finally {
+            if (indexChannel != null) {
+                indexChannel.close();
+            }
+        }
+    }
+
+    @Override public String toString() {
+        return "Shard " + Spell.get(dataPath);
+    }
+}
@@ -0,0 +1,623 @@
+package tk.bolovsrol.utils.stringserializer;
+
+import tk.bolovsrol.utils.Spell;
+import tk.bolovsrol.utils.StringUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Скомпилированный план сериализации одного класса {@link StringSerializable}:
+ * поля всей иерархии с готовыми {@link Codec.ValueCodec кодеками} и аксессорами на {@link MethodHandle},
+ * словарь полей по именам (включая {@link PreviousNames прежние}) и конструктор.
+ * <p>
+ * План строится один раз на класс и кешируется в {@link ClassValue}, так что сериализатор
+ * не лезет в рефлекшн и не перебирает таблицы {@link Codec} на каждом объекте.
+ * Значения дописываются прямо в общий {@link StringBuilder}, маскировка делается на месте
+ * и только для тех правил, результат которых может содержать маскируемые символы.
+ * <p>
+ * Формат строки тот же, что и раньше, см. {@link StringSerializable}.
+ */
+final class ClassPlan {
+
+	private static final ClassValue<ClassPlan> PLANS = new ClassValue<ClassPlan>() {
+		@Override protected ClassPlan computeValue(Class<?> type) {
+			return new ClassPlan(type);
+		}
+	};
+
+	/** Классы по именам, чтобы не звать {@link Class#forName(String)} на каждую строку. */
+	private static final ConcurrentMap<String, Class<?>> CLASSES = new ConcurrentHashMap<>();
+
+	// модификаторы полей, которые нам не нужны
+	private static final int FORBIDDEN_MODIFIERS = Modifier.STATIC | Modifier.TRANSIENT | Modifier.FINAL;
+
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+	final Class<?> entityClass;
+	/** Название класса и разделитель. */
+	private final String header;
+
+	private final MethodHandle constructor;
+	private final Exception constructorProblem;
+
+	/** Сериализуемые поля: сначала поля самого класса в порядке объявления, потом суперкласса и так далее. */
+	private final FieldPlan[] fields;
+	/** Те же поля по именам и прежним именам. */
+	private final Map<String, FieldPlan> fieldsByName;
+
+	/**
+	 * Возвращает план для класса, при необходимости строит его.
+	 *
+	 * @param cl класс
+	 * @return план
+	 */
+	static ClassPlan get(Class<?> cl) {
+		return PLANS.get(cl);
+	}
+
+	/**
+	 * Возвращает класс по имени, запоминая уже найденные.
+	 *
+	 * @param className полное название класса
+	 * @return класс
+	 * @throws ClassNotFoundException
+	 */
+	static Class<?> classForName(String className) throws ClassNotFoundException {
+		Class<?> cl = CLASSES.get(className);
+		if (cl == null) {
+			cl = Class.forName(className);
+			CLASSES.put(className, cl);
+		}
+		return cl;
+	}
+
+	private ClassPlan(Class<?> cl) {
+		this.entityClass = cl;
+		this.header = cl.getName() + Const.CLASS_DELIMITER;
+
+		MethodHandle ctor = null;
+		Exception ctorProblem = null;
+		try {
+			Constructor<?> c = cl.getDeclaredConstructor();
+			c.setAccessible(true);
+			ctor = MethodHandles.lookup().unreflectConstructor(c).asType(CONSTRUCTOR_TYPE);
+		} catch (Exception e) {
+			ctorProblem = e;
+		}
+		this.constructor = ctor;
+		this.constructorProblem = ctorProblem;
+
+		List<FieldPlan> fieldList = new ArrayList<>();
+		Map<String, FieldPlan> byName = new HashMap<>();
+		Class<?> c = cl;
+		do {
+			List<FieldPlan> declared = new ArrayList<>();
+			for (Field field : c.getDeclaredFields()) {
+				if ((field.getModifiers() & FORBIDDEN_MODIFIERS) == 0) {
+					FieldPlan fp = createFieldPlan(field);
+					declared.add(fp);
+					byName.putIfAbsent(field.getName(), fp);
+				}
+			}
+			// прежние имена уступают нынешним в том же классе, но не в суперклассах
+			for (FieldPlan fp : declared) {
+				PreviousNames previousNames = fp.field.getAnnotation(PreviousNames.class);
+				if (previousNames != null) {
+					for (String previousName : previousNames.value()) {
+						byName.putIfAbsent(previousName, fp);
+					}
+				}
+			}
+			fieldList.addAll(declared);
+		} while ((c = c.getSuperclass()) != null && c != Object.class);
+		this.fields = fieldList.toArray(new FieldPlan[fieldList.size()]);
+		this.fieldsByName = byName;
+	}
+
+	private static FieldPlan createFieldPlan(Field field) {
+		MethodHandle getter;
+		MethodHandle setter;
+		try {
+			field.setAccessible(true);
+			getter = MethodHandles.lookup().unreflectGetter(field);
+			setter = MethodHandles.lookup().unreflectSetter(field);
+		} catch (Exception e) {
+			return new BrokenFieldPlan(field, e);
+		}
+		Class<?> type = field.getType();
+		if (type == int.class) {
+			return new IntFieldPlan(field, getter, setter);
+		} else if (type == long.class) {
+			return new LongFieldPlan(field, getter, setter);
+		} else if (type.isPrimitive()) {
+			return new PrimitiveFieldPlan(field, getter, setter);
+		} else if (type.isArray()) {
+			return new ArrayFieldPlan(field, getter, setter);
+		} else {
+			return new ObjectFieldPlan(field, getter, setter);
+		}
+	}
+
+	/**
+	 * Дописывает сериализованный объект в буфер.
+	 *
+	 * @param source объект класса этого плана
+	 * @param target буфер
+	 * @throws IllegalAccessException не удалось прочитать значение поля
+	 */
+	void serialize(Object source, StringBuilder target) throws IllegalAccessException {
+		target.append(header);
+		boolean first = true;
+		for (FieldPlan fp : fields) {
+			if (fp.appendTo(target, source, first)) {
+				first = false;
+			}
+		}
+	}
+
+	/**
+	 * Воссоздаёт объект по его описанию.
+	 *
+	 * @param item сериализованная строка
+	 * @param from позиция сразу за названием класса и разделителем
+	 * @return объект класса этого плана
+	 * @throws Exception
+	 */
+	Object deserialize(String item, int from) throws Exception {
+		if (constructor == null) {
+			throw constructorProblem;
+		}
+		Object result;
+		try {
+			result = (Object) constructor.invokeExact();
+		} catch (Exception | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+
+		int len = item.length();
+		if (from >= len) {
+			return result;
+		}
+		int pos = from;
+		while (true) {
+			// ищем конец пары поле=значение, перешагивая замаскированные символы
+			int end = pos;
+			boolean masked = false;
+			while (end < len) {
+				char ch = item.charAt(end);
+				if (ch == Const.MASK_CHAR) {
+					masked = true;
+					end += 2;
+				} else if (ch == Const.CONNECTOR_CHAR) {
+					break;
+				} else {
+					end++;
+				}
+			}
+			if (end > len) {
+				end = len;
+			}
+
+			String piece;
+			int start;
+			int stop;
+			if (masked) {
+				piece = unmask(item, pos, end);
+				start = 0;
+				stop = piece.length();
+			} else {
+				piece = item;
+				start = pos;
+				stop = end;
+			}
+			while (start < stop && piece.charAt(start) <= ' ') {
+				start++;
+			}
+			while (stop > start && piece.charAt(stop - 1) <= ' ') {
+				stop--;
+			}
+			int eqPo = piece.indexOf(Const.EQ_CHAR, start);
+			if (eqPo < 0 || eqPo >= stop) {
+				throw new StringDeserializingException("No " + Const.EQ_CHAR + " in field definition " + Spell.get(piece.substring(start, stop)), null);
+			}
+			String fieldName = piece.substring(start, eqPo);
+			FieldPlan fp = fieldsByName.get(fieldName);
+			if (fp == null) {
+				throw new NoSuchFieldException(fieldName);
+			}
+			fp.put(result, piece.substring(eqPo + 1, stop));
+
+			if (end >= len) {
+				return result;
+			}
+			pos = end + 1;
+		}
+	}
+
+	private static String unmask(String source, int from, int to) {
+		StringBuilder sb = new StringBuilder(to - from);
+		for (int i = from; i < to; i++) {
+			char ch = source.charAt(i);
+			if (ch == Const.MASK_CHAR) {
+				if (++i < to) {
+					sb.append(source.charAt(i));
+				}
+			} else {
+				sb.append(ch);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static IllegalAccessException accessProblem(Field field, Throwable e) {
+		if (e instanceof RuntimeException) {
+			throw (RuntimeException) e;
+		} else if (e instanceof Error) {
+			throw (Error) e;
+		}
+		IllegalAccessException iae = new IllegalAccessException("Cannot access field " + Spell.get(field));
+		iae.initCause(e);
+		return iae;
+	}
+
+	/** Поле с аксессорами и правилом преобразования. */
+	abstract static class FieldPlan {
+		final Field field;
+		/** Название поля и знак равенства. */
+		final String nameEq;
+
+		FieldPlan(Field field) {
+			this.field = field;
+			this.nameEq = field.getName() + Const.EQ_CHAR;
+		}
+
+		/**
+		 * Дописывает поле в буфер, если его значение не нул.
+		 *
+		 * @param target буфер
+		 * @param source объект
+		 * @param first поле будет первым, разделитель перед ним не нужен
+		 * @return было ли дописано поле
+		 * @throws IllegalAccessException
+		 */
+		abstract boolean appendTo(StringBuilder target, Object source, boolean first) throws IllegalAccessException;
+
+		/**
+		 * Записывает значение в поле объекта.
+		 *
+		 * @param target объект
+		 * @param value размаскированное значение
+		 * @throws Exception
+		 */
+		abstract void put(Object target, String value) throws Exception;
+
+		final void appendName(StringBuilder target, boolean first) {
+			if (!first) {
+				target.append(Const.CONNECTOR_CHAR);
+			}
+			target.append(nameEq);
+		}
+	}
+
+	private static final class IntFieldPlan extends FieldPlan {
+		private final MethodHandle getter;
+		private final MethodHandle setter;
+
+		IntFieldPlan(Field field, MethodHandle getter, MethodHandle setter) {
+			super(field);
+			this.getter = getter.asType(MethodType.methodType(int.class, Object.class));
+			this.setter = setter.asType(MethodType.methodType(void.class, Object.class, int.class));
+		}
+
+		@Override boolean appendTo(StringBuilder target, Object source, boolean first) throws IllegalAccessException {
+			int value;
+			try {
+				value = (int) getter.invokeExact(source);
+			} catch (Throwable e) {
+				throw accessProblem(field, e);
+			}
+			appendName(target, first);
+			target.append(value);
+			return true;
+		}
+
+		@Override void put(Object target, String value) throws Exception {
+			int parsed;
+			try {
+				parsed = Integer.parseInt(value);
+			} catch (NumberFormatException e) {
+				throw StringDeserializingException.forField(field, value, int.class, e);
+			}
+			try {
+				setter.invokeExact(target, parsed);
+			} catch (Throwable e) {
+				throw accessProblem(field, e);
+			}
+		}
+	}
+
+	private static final class LongFieldPlan extends FieldPlan {
+		private final MethodHandle getter;
+		private final MethodHandle setter;
+
+		LongFieldPlan(Field field, MethodHandle getter, MethodHandle setter) {
+			super(field);
+			this.getter = getter.asType(MethodType.methodType(long.class, Object.class));
+			this.setter = setter.asType(MethodType.methodType(void.class, Object.class, long.class));
+		}
+
+		@Override boolean appendTo(StringBuilder target, Object source, boolean first) throws IllegalAccessException {
+			long value;
+			try {
+				value = (long) getter.invokeExact(source);
+			} catch (Throwable e) {
+				throw accessProblem(field, e);
+			}
+			appendName(target, first);
+			target.append(value);
+			return true;
+		}
+
+		@Override void put(Object target, String value) throws Exception {
+			long parsed;
+			try {
+				parsed = Long.parseLong(value);
+			} catch (NumberFormatException e) {
+				throw StringDeserializingException.forField(field, value, long.class, e);
+			}
+			try {
+				setter.invokeExact(target, parsed);
+			} catch (Throwable e) {
+				throw accessProblem(field, e);
+			}
+		}
+	}
+
+	/**
+	 * Прочие примитивы: через боксинг, у обёрток toString() тот же, что у примитивов.
+	 * Маскируются, как и остальные значения: char вполне может оказаться служебным символом.
+	 */
+	private static final class PrimitiveFieldPlan extends FieldPlan {
+		private final MethodHandle getter;
+		private final MethodHandle setter;
+		private final Class<?> type;
+
+		PrimitiveFieldPlan(Field field, MethodHandle getter, MethodHandle setter) {
+			super(field);
+			this.getter = getter.asType(GETTER_TYPE);
+			this.setter = setter.asType(SETTER_TYPE);
+			this.type = field.getType();
+		}
+
+		@Override boolean appendTo(StringBuilder target, Object source, boolean first) throws IllegalAccessException {
+			Object value;
+			try {
+				value = (Object) getter.invokeExact(source);
+			} catch (Throwable e) {
+				throw accessProblem(field, e);
+			}
+			appendName(target, first);
+			int mark = target.length();
+			target.append(value);
+			Codec.maskTail(target, mark);
+			return true;
+		}
+
+		@Override void put(Object target, String value) throws Exception {
+			Object parsed;
+			try {
+				parsed = parsePrimitive(value);
+			} catch (RuntimeException e) {
+				throw StringDeserializingException.forField(field, value, type, e);
+			}
+			try {
+				setter.invokeExact(target, parsed);
+			} catch (Throwable e) {
+				throw accessProblem(field, e);
+			}
+		}
+
+		private Object parsePrimitive(String value) {
+			if (type == boolean.class) {
+				return Boolean.parseBoolean(value);
+			} else if (type == char.class) {
+				return value.charAt(0);
+			} else if (type == byte.class) {
+				return Byte.parseByte(value);
+			} else if (type == short.class) {
+				return Short.parseShort(value);
+			} else if (type == float.class) {
+				return Float.parseFloat(value);
+			} else if (type == double.class) {
+				return Double.parseDouble(value);
+			} else {
+				throw new UnsupportedOperationException("Don't know how to deserialize primitive " + Spell.get(field));
+			}
+		}
+	}
+
+	private static final class ObjectFieldPlan extends FieldPlan {
+		private final MethodHandle getter;
+		private final MethodHandle setter;
+		private final Class<?> type;
+		private final Codec.ValueCodec codec;
+
+		ObjectFieldPlan(Field field, MethodHandle getter, MethodHandle setter) {
+			super(field);
+			this.getter = getter.asType(GETTER_TYPE);
+			this.setter = setter.asType(SETTER_TYPE);
+			this.type = field.getType();
+			this.codec = Codec.forType(type);
+		}
+
+		@Override boolean appendTo(StringBuilder target, Object source, boolean first) throws IllegalAccessException {
+			Object value;
+			try {
+				value = (Object) getter.invokeExact(source);
+			} catch (Throwable e) {
+				throw accessProblem(field, e);
+			}
+			if (value == null) {
+				return false;
+			}
+			appendName(target, first);
+			if (codec.safe) {
+				codec.append(target, value);
+			} else {
+				int mark = target.length();
+				codec.append(target, value);
+				Codec.maskTail(target, mark);
+			}
+			return true;
+		}
+
+		@Override void put(Object target, String value) throws Exception {
+			Object parsed;
+			try {
+				parsed = codec.parse(type, value);
+			} catch (UnsupportedOperationException | IllegalArgumentException e) {
+				throw e;
+			} catch (Exception e) {
+				throw StringDeserializingException.forField(field, value, codec.rule, e);
+			}
+			try {
+				setter.invokeExact(target, parsed);
+			} catch (Throwable e) {
+				throw accessProblem(field, e);
+			}
+		}
+	}
+
+	/**
+	 * Обрезает пробелы по краям только что добавленного элемента массива,
+	 * как это делал {@link tk.bolovsrol.utils.StringDumpBuilder}, которым массивы собирались раньше.
+	 *
+	 * @param target куда добавлен элемент
+	 * @param start где элемент начинается
+	 * @return false, если элемент оказался пустым и его надо выкинуть
+	 */
+	private static boolean trimItem(StringBuilder target, int start) {
+		int end = target.length();
+		while (end > start && target.charAt(end - 1) <= ' ') {
+			end--;
+		}
+		int from = start;
+		while (from < end && target.charAt(from) <= ' ') {
+			from++;
+		}
+		if (from == end) {
+			return false;
+		}
+		target.setLength(end);
+		if (from > start) {
+			target.delete(start, from);
+		}
+		return true;
+	}
+
+	/** Массив объектов, элементы через {@link Const#ARRAY_ITEM_DELIMITER}, пустые элементы пропускаются. */
+	private static final class ArrayFieldPlan extends FieldPlan {
+		private final MethodHandle getter;
+		private final MethodHandle setter;
+		private final Class<?> componentType;
+		private final Codec.ValueCodec codec;
+
+		ArrayFieldPlan(Field field, MethodHandle getter, MethodHandle setter) {
+			super(field);
+			this.getter = getter.asType(GETTER_TYPE);
+			this.setter = setter.asType(SETTER_TYPE);
+			this.componentType = field.getType().getComponentType();
+			this.codec = componentType.isPrimitive() ? null : Codec.forType(componentType);
+		}
+
+		@Override boolean appendTo(StringBuilder target, Object source, boolean first) throws IllegalAccessException {
+			Object value;
+			try {
+				value = (Object) getter.invokeExact(source);
+			} catch (Throwable e) {
+				throw accessProblem(field, e);
+			}
+			if (value == null) {
+				return false;
+			}
+			if (codec == null) {
+				throw new UnsupportedOperationException("Don't know how to serialize array of " + Spell.get(componentType.toString()));
+			}
+			appendName(target, first);
+			int mark = target.length();
+			for (Object item : (Object[]) value) {
+				int itemMark = target.length();
+				if (itemMark > mark) {
+					target.append(Const.ARRAY_ITEM_DELIMITER);
+				}
+				int itemStart = target.length();
+				codec.append(target, item);
+				if (!trimItem(target, itemStart)) {
+					target.setLength(itemMark);
+				}
+			}
+			if (!codec.safe) {
+				Codec.maskTail(target, mark);
+			}
+			return true;
+		}
+
+		@Override void put(Object target, String value) throws Exception {
+			if (codec == null) {
+				throw new UnsupportedOperationException("Don't know how to deserialize array of " + Spell.get(componentType));
+			}
+			Object arr;
+			try {
+				String[] arrayValues = StringUtils.parseDelimited(value, Const.ARRAY_ITEM_DELIMITER);
+				int len = arrayValues.length;
+				arr = Array.newInstance(componentType, len);
+				for (int i = 0; i < len; i++) {
+					Array.set(arr, i, codec.parse(componentType, arrayValues[i]));
+				}
+			} catch (UnsupportedOperationException | IllegalArgumentException e) {
+				throw e;
+			} catch (Exception e) {
+				throw StringDeserializingException.forField(field, value, codec.rule, e);
+			}
+			try {
+				setter.invokeExact(target, arr);
+			} catch (Throwable e) {
+				throw accessProblem(field, e);
+			}
+		}
+	}
+
+	/** Поле, до которого не дотянуться. Ругается, когда к нему обращаются. */
+	private static final class BrokenFieldPlan extends FieldPlan {
+		private final Exception problem;
+
+		BrokenFieldPlan(Field field, Exception problem) {
+			super(field);
+			this.problem = problem;
+		}
+
+		@Override boolean appendTo(StringBuilder target, Object source, boolean first) throws IllegalAccessException {
+			throw accessProblem(field, problem);
+		}
+
+		@Override void put(Object target, String value) throws Exception {
+			throw accessProblem(field, problem);
+		}
+	}
+}
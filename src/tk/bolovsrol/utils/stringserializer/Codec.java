@@ -1,21 +1,30 @@
 package tk.bolovsrol.utils.stringserializer;
 
+import tk.bolovsrol.utils.Spell;
 import tk.bolovsrol.utils.time.TwofacedTime;
 
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.math.BigDecimal;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Правила преобразования поля в строку и обратно.
  * <p>
  * Примитивы и объекты кодируются по-разному, но всё вроде бы очевидно.
  * Каждому сериализатору нужен соответствующий десериализатор.
+ * <p>
+ * Таблицы просматриваются не на каждое поле, а один раз на тип: {@link #forType(Class)}
+ * отдаёт готовый {@link ValueCodec}, который {@link ClassPlan} запоминает для поля.
  */
 final class Codec {
 
@@ -62,8 +71,270 @@ final class Codec {
 		OBJECT_DESEREALIZERS.put(StringSerializable.class, (fieldClass, value) -> StringDeserializer.deserialize(value));
 	}
 
+	/** Правила, результат которых заведомо не содержит маскируемых символов. */
+	private static final Set<Class<?>> SAFE_RULES = new HashSet<>(Arrays.asList(String.class, Integer.class, Long.class, Enum.class, BigDecimal.class, Date.class));
+
+	/** Символы, которые {@link URLEncoder} оставляет как есть. */
+	private static final boolean[] URL_SAFE = new boolean[128];
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	static {
+		for (char ch = 'a'; ch <= 'z'; ch++) {
+			URL_SAFE[ch] = true;
+		}
+		for (char ch = 'A'; ch <= 'Z'; ch++) {
+			URL_SAFE[ch] = true;
+		}
+		for (char ch = '0'; ch <= '9'; ch++) {
+			URL_SAFE[ch] = true;
+		}
+		URL_SAFE['.'] = true;
+		URL_SAFE['-'] = true;
+		URL_SAFE['*'] = true;
+		URL_SAFE['_'] = true;
+	}
+
+	private static final ClassValue<ValueCodec> VALUE_CODECS = new ClassValue<ValueCodec>() {
+		@Override protected ValueCodec computeValue(Class<?> type) {
+			return createValueCodec(type);
+		}
+	};
+
 	private Codec() {}
 
+	/**
+	 * Возвращает кодек для значений указанного (не примитивного) типа.
+	 * <p>
+	 * Если правила для типа нет, но значение может оказаться наследником, у которого правило есть
+	 * (поле типа Object, интерфейса или параметра-дженерика), то отдаётся кодек, который пишет
+	 * перед значением его класс: <code>&lt;класс&gt;:&lt;значение&gt;</code>.
+	 * Для прочих типов отдаётся кодек, который ругается {@link UnsupportedOperationException}.
+	 *
+	 * @param type тип поля или элемента массива
+	 * @return кодек
+	 */
+	static ValueCodec forType(Class<?> type) {
+		return VALUE_CODECS.get(type);
+	}
+
+	private static ValueCodec createValueCodec(Class<?> type) {
+		if (type == String.class) {
+			return STRING_CODEC;
+		}
+		for (Map.Entry<Class<?>, ObjectSerializer> entry : OBJECT_SERIALIZERS.entrySet()) {
+			Class<?> rule = entry.getKey();
+			if (rule.isAssignableFrom(type)) {
+				if (rule == StringSerializable.class) {
+					return NESTED_CODEC;
+				}
+				return new MappedValueCodec(rule, SAFE_RULES.contains(rule), entry.getValue(), OBJECT_DESEREALIZERS.get(rule));
+			}
+		}
+		if (type.isPrimitive() || type.isArray() || Modifier.isFinal(type.getModifiers())) {
+			return new UnsupportedValueCodec(type);
+		}
+		return DYNAMIC_CODEC;
+	}
+
+	/**
+	 * Дописывает строку в том же виде, что и <code>URLEncoder.encode(value, "UTF-8")</code>,
+	 * но без промежуточных буферов.
+	 *
+	 * @param target куда
+	 * @param value что
+	 */
+	static void appendUrlEncoded(StringBuilder target, String value) {
+		int len = value.length();
+		for (int i = 0; i < len; i++) {
+			char ch = value.charAt(i);
+			if (ch < 128) {
+				if (URL_SAFE[ch]) {
+					target.append(ch);
+				} else if (ch == ' ') {
+					target.append('+');
+				} else {
+					appendPercent(target, ch);
+				}
+			} else if (ch < 0x800) {
+				appendPercent(target, 0xc0 | (ch >> 6));
+				appendPercent(target, 0x80 | (ch & 0x3f));
+			} else if (Character.isSurrogate(ch)) {
+				if (Character.isHighSurrogate(ch) && i + 1 < len && Character.isLowSurrogate(value.charAt(i + 1))) {
+					int cp = Character.toCodePoint(ch, value.charAt(++i));
+					appendPercent(target, 0xf0 | (cp >> 18));
+					appendPercent(target, 0x80 | ((cp >> 12) & 0x3f));
+					appendPercent(target, 0x80 | ((cp >> 6) & 0x3f));
+					appendPercent(target, 0x80 | (cp & 0x3f));
+				} else {
+					// непарный суррогат кодировщик UTF-8 заменяет вопросом
+					appendPercent(target, '?');
+				}
+			} else {
+				appendPercent(target, 0xe0 | (ch >> 12));
+				appendPercent(target, 0x80 | ((ch >> 6) & 0x3f));
+				appendPercent(target, 0x80 | (ch & 0x3f));
+			}
+		}
+	}
+
+	private static void appendPercent(StringBuilder target, int b) {
+		target.append('%').append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+	}
+
+	/**
+	 * Раскодирует строку, закодированную {@link #appendUrlEncoded(StringBuilder, String)}.
+	 * Если раскодировать нечего, возвращает ту же строку.
+	 *
+	 * @param value закодированная строка
+	 * @return раскодированная строка
+	 */
+	static String urlDecode(String value) {
+		for (int i = value.length() - 1; i >= 0; i--) {
+			char ch = value.charAt(i);
+			if (ch == '%' || ch == '+') {
+				return URLDecoder.decode(value, StandardCharsets.UTF_8);
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Дописывает к target начиная с позиции from маски перед маскируемыми символами.
+	 *
+	 * @param target буфер
+	 * @param from начало немаскированного участка
+	 */
+	static void maskTail(StringBuilder target, int from) {
+		int len = target.length();
+		int i = from;
+		while (i < len && target.charAt(i) != Const.MASK_CHAR && target.charAt(i) != Const.CONNECTOR_CHAR) {
+			i++;
+		}
+		if (i == len) {
+			return;
+		}
+		String tail = target.substring(i);
+		target.setLength(i);
+		for (int j = 0; j < tail.length(); j++) {
+			char ch = tail.charAt(j);
+			if (ch == Const.MASK_CHAR || ch == Const.CONNECTOR_CHAR) {
+				target.append(Const.MASK_CHAR);
+			}
+			target.append(ch);
+		}
+	}
+
+	/**
+	 * Скомпилированное правило для значений одного типа.
+	 * <p>
+	 * Дописывает значение в буфер без маскировки, маскирует {@link ClassPlan}, если {@link #safe} не взведён.
+	 */
+	abstract static class ValueCodec {
+		/** Класс правила, для сообщений об ошибках. */
+		final Class<?> rule;
+		/** Результат заведомо не содержит маскируемых символов. */
+		final boolean safe;
+
+		ValueCodec(Class<?> rule, boolean safe) {
+			this.rule = rule;
+			this.safe = safe;
+		}
+
+		abstract void append(StringBuilder target, Object value) throws IllegalAccessException;
+
+		abstract Object parse(Class<?> fieldClass, String value) throws Exception;
+	}
+
+	private static final ValueCodec STRING_CODEC = new ValueCodec(String.class, true) {
+		@Override void append(StringBuilder target, Object value) {
+			appendUrlEncoded(target, (String) value);
+		}
+
+		@Override Object parse(Class<?> fieldClass, String value) {
+			return urlDecode(value);
+		}
+	};
+
+	/** Вложенный {@link StringSerializable} пишем прямо в общий буфер. */
+	private static final ValueCodec NESTED_CODEC = new ValueCodec(StringSerializable.class, false) {
+		@Override void append(StringBuilder target, Object value) throws IllegalAccessException {
+			ClassPlan.get(value.getClass()).serialize(value, target);
+		}
+
+		@Override Object parse(Class<?> fieldClass, String value) throws Exception {
+			return StringDeserializer.deserialize(value);
+		}
+	};
+
+	/** Значение поля нефинального типа без собственного правила: пишем класс значения, а за ним само значение. */
+	private static final ValueCodec DYNAMIC_CODEC = new ValueCodec(Object.class, false) {
+		@Override void append(StringBuilder target, Object value) throws IllegalAccessException {
+			Class<?> valueClass = value instanceof Enum ? ((Enum<?>) value).getDeclaringClass() : value.getClass();
+			ValueCodec codec = forType(valueClass);
+			if (codec == NESTED_CODEC) {
+				// и так начинается с названия класса
+				codec.append(target, value);
+			} else if (codec instanceof UnsupportedValueCodec || codec == this) {
+				throw new UnsupportedOperationException("Don't know how to serialize " + Spell.get(valueClass.toString()));
+			} else {
+				target.append(valueClass.getName()).append(Const.CLASS_DELIMITER);
+				codec.append(target, value);
+			}
+		}
+
+		@Override Object parse(Class<?> fieldClass, String value) throws Exception {
+			int po = value.indexOf((int) Const.CLASS_DELIMITER);
+			if (po < 0) {
+				throw new IllegalArgumentException("No value class in " + Spell.get(value));
+			}
+			Class<?> valueClass = ClassPlan.classForName(value.substring(0, po));
+			ValueCodec codec = forType(valueClass);
+			if (codec == NESTED_CODEC) {
+				return codec.parse(valueClass, value);
+			} else if (codec instanceof UnsupportedValueCodec || codec == this) {
+				throw new UnsupportedOperationException("Don't know how to deserialize " + Spell.get(valueClass));
+			} else {
+				return codec.parse(valueClass, value.substring(po + 1));
+			}
+		}
+	};
+
+	private static final class MappedValueCodec extends ValueCodec {
+		private final ObjectSerializer serializer;
+		private final ObjectDeserealizer deserealizer;
+
+		MappedValueCodec(Class<?> rule, boolean safe, ObjectSerializer serializer, ObjectDeserealizer deserealizer) {
+			super(rule, safe);
+			this.serializer = serializer;
+			this.deserealizer = deserealizer;
+		}
+
+		@Override void append(StringBuilder target, Object value) throws IllegalAccessException {
+			target.append(serializer.serialize(value));
+		}
+
+		@Override Object parse(Class<?> fieldClass, String value) throws Exception {
+			return deserealizer.deserialize(fieldClass, value);
+		}
+	}
+
+	private static final class UnsupportedValueCodec extends ValueCodec {
+		private final Class<?> type;
+
+		UnsupportedValueCodec(Class<?> type) {
+			super(type, true);
+			this.type = type;
+		}
+
+		@Override void append(StringBuilder target, Object value) {
+			throw new UnsupportedOperationException("Don't know how to serialize " + Spell.get(type.toString()));
+		}
+
+		@Override Object parse(Class<?> fieldClass, String value) {
+			throw new UnsupportedOperationException("Don't know how to deserialize " + Spell.get(type));
+		}
+	}
+
 	@FunctionalInterface public interface PrimitiveDeserealizer {
 		void deserialize(StringSerializable target, Field field, String value) throws IllegalArgumentException, IllegalAccessException;
 	}
@@ -0,0 +1,239 @@
+package tk.bolovsrol.utils.stringserializer;
+
+import tk.bolovsrol.utils.StringDumpBuilder;
+import tk.bolovsrol.utils.StringUtils;
+import tk.bolovsrol.utils.benchmark.Comparer;
+import tk.bolovsrol.utils.benchmark.Repeater;
+import tk.bolovsrol.utils.io.LineInputStream;
+import tk.bolovsrol.utils.io.LineOutputStream;
+import tk.bolovsrol.utils.store.expirabledictionary.ExpirableStorableDictionary;
+import tk.bolovsrol.utils.store.expirabledictionary.ExpirableStorableDictionaryValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Сравнивает сериализацию и десериализацию через {@link ClassPlan} с прежним рефлекшн-путём
+ * (getDeclaredFields, setAccessible, перебор таблиц {@link Codec} и URLEncoder на каждое поле каждого объекта),
+ * а также замеряет сохранение и восстановление {@link ExpirableStorableDictionary} на миллион записей.
+ * <p>
+ * Запуск: <code>java tk.bolovsrol.utils.stringserializer.StringSerializerBenchmark [количество объектов] [итерации]</code>
+ */
+public class StringSerializerBenchmark {
+
+	public enum Status {
+		NEW, ACTIVE, CLOSED
+	}
+
+	public static class Sample implements StringSerializable, ExpirableStorableDictionaryValue {
+		private Long time;
+		private long id;
+		private int count;
+		private String name;
+		private Status status;
+		private String[] tags;
+
+		public Sample() {
+		}
+
+		@Override public Long getTime() {
+			return time;
+		}
+	}
+
+	private static final int FORBIDDEN_MODIFIERS = Modifier.STATIC | Modifier.TRANSIENT | Modifier.FINAL;
+
+	/** Так объекты сериализовались до появления планов. */
+	private static String serializeReflectively(StringSerializable source) throws IllegalAccessException {
+		Class<?> entityClass = source.getClass();
+		StringDumpBuilder sdb = new StringDumpBuilder(Const.CONNECTOR_CHAR_AS_STRING);
+		do {
+			for (Field field : entityClass.getDeclaredFields()) {
+				field.setAccessible(true);
+				if ((field.getModifiers() & FORBIDDEN_MODIFIERS) == 0) {
+					String value = retrieveReflectively(source, field);
+					if (value != null) {
+						sdb.append(field.getName() + Const.EQ_CHAR + StringUtils.mask(value, Const.MASK_CHAR, Const.CONNECTOR_CHAR_AS_ARRAY));
+					}
+				}
+			}
+		} while ((entityClass = entityClass.getSuperclass()) != null && entityClass != Object.class);
+		return source.getClass().getName() + Const.CLASS_DELIMITER + sdb.toString();
+	}
+
+	private static String retrieveReflectively(StringSerializable source, Field field) throws IllegalAccessException {
+		Class<?> fieldClass = field.getType();
+		if (fieldClass.isPrimitive()) {
+			for (Map.Entry<Class<?>, Codec.PrimitiveSerializer> entry : Codec.PRIMITIVE_SERIALIZERS.entrySet()) {
+				if (entry.getKey().isAssignableFrom(fieldClass)) {
+					return entry.getValue().serialize(source, field);
+				}
+			}
+		} else {
+			Object value = field.get(source);
+			if (value == null) {
+				return null;
+			}
+			Class<?> ruleClass = fieldClass.isArray() ? fieldClass.getComponentType() : fieldClass;
+			for (Map.Entry<Class<?>, Codec.ObjectSerializer> entry : Codec.OBJECT_SERIALIZERS.entrySet()) {
+				if (entry.getKey().isAssignableFrom(ruleClass)) {
+					if (!fieldClass.isArray()) {
+						return entry.getValue().serialize(value);
+					}
+					StringDumpBuilder sdb = new StringDumpBuilder(Const.ARRAY_ITEM_DELIMITER_STR);
+					int len = Array.getLength(value);
+					for (int i = 0; i < len; i++) {
+						sdb.append(entry.getValue().serialize(Array.get(value, i)));
+					}
+					return sdb.toString();
+				}
+			}
+		}
+		throw new UnsupportedOperationException(fieldClass.toString());
+	}
+
+	/** Так объекты воссоздавались до появления планов. */
+	private static Object deserializeReflectively(String item) throws Exception {
+		int po = item.indexOf((int) Const.CLASS_DELIMITER);
+		Class<?> entityClass = Class.forName(item.substring(0, po));
+		Object result = entityClass.getConstructor().newInstance();
+		for (String fieldAndValue : StringUtils.parseDelimited(item.substring(po + 1), Const.CONNECTOR_CHAR, Const.MASK_CHAR, null)) {
+			int eqPo = fieldAndValue.indexOf(Const.EQ_CHAR);
+			Field field = entityClass.getDeclaredField(fieldAndValue.substring(0, eqPo));
+			field.setAccessible(true);
+			putReflectively(result, field, fieldAndValue.substring(eqPo + 1));
+		}
+		return result;
+	}
+
+	private static void putReflectively(Object target, Field field, String value) throws Exception {
+		Class<?> fieldClass = field.getType();
+		if (fieldClass.isPrimitive()) {
+			for (Map.Entry<Class<?>, Codec.PrimitiveDeserealizer> entry : Codec.PRIMITIVE_DESEREALIZERS.entrySet()) {
+				if (entry.getKey().isAssignableFrom(fieldClass)) {
+					entry.getValue().deserialize((StringSerializable) target, field, value);
+					return;
+				}
+			}
+		} else {
+			Class<?> ruleClass = fieldClass.isArray() ? fieldClass.getComponentType() : fieldClass;
+			for (Map.Entry<Class<?>, Codec.ObjectDeserealizer> entry : Codec.OBJECT_DESEREALIZERS.entrySet()) {
+				if (entry.getKey().isAssignableFrom(ruleClass)) {
+					if (!fieldClass.isArray()) {
+						field.set(target, entry.getValue().deserialize(fieldClass, value));
+						return;
+					}
+					String[] arrayValues = StringUtils.parseDelimited(value, Const.ARRAY_ITEM_DELIMITER);
+					Object arr = Array.newInstance(ruleClass, arrayValues.length);
+					for (int i = 0; i < arrayValues.length; i++) {
+						Array.set(arr, i, entry.getValue().deserialize(ruleClass, arrayValues[i]));
+					}
+					field.set(target, arr);
+					return;
+				}
+			}
+		}
+		throw new UnsupportedOperationException(fieldClass.toString());
+	}
+
+	public static void main(String[] args) throws Exception {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		long now = System.currentTimeMillis();
+		Status[] statuses = Status.values();
+		Sample[] samples = new Sample[count];
+		for (int i = 0; i < count; i++) {
+			Sample sample = new Sample();
+			sample.time = now - (i & 0xfff);
+			sample.id = i * 7919L;
+			sample.count = i & 0xffff;
+			sample.name = (i & 3) == 0 ? null : "sample #" + (i & 0xff) + ((i & 7) == 1 ? " & co" : "");
+			sample.status = statuses[i % statuses.length];
+			sample.tags = (i & 1) == 0 ? null : new String[]{"a", "tag " + (i & 0xf)};
+			samples[i] = sample;
+		}
+
+		String[] lines = new String[count];
+		long[] sink = new long[2];
+		Comparer serialize = new Comparer(
+			new Repeater() {
+				@Override public void iteration() {
+					try {
+						for (int i = 0; i < count; i++) {
+							lines[i] = serializeReflectively(samples[i]);
+							sink[0] += lines[i].length();
+						}
+					} catch (IllegalAccessException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			},
+			new Repeater() {
+				@Override public void iteration() {
+					StringBuilder sb = new StringBuilder(256);
+					try {
+						for (int i = 0; i < count; i++) {
+							sb.setLength(0);
+							StringSerializer.serialize(samples[i], sb);
+							sink[1] += sb.length();
+							if (i < 1000 && !sb.toString().equals(lines[i])) {
+								throw new IllegalStateException("Output differs: " + sb + " vs " + lines[i]);
+							}
+						}
+					} catch (IllegalAccessException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+		serialize.run(1, iterations);
+		System.out.println("serialize:   " + serialize.getAverageReport());
+		System.out.println("sizes:       " + (sink[0] == sink[1] ? "match" : "MISMATCH"));
+
+		Comparer deserialize = new Comparer(
+			new Repeater() {
+				@Override public void iteration() {
+					try {
+						for (String line : lines) {
+							deserializeReflectively(line);
+						}
+					} catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			},
+			new Repeater() {
+				@Override public void iteration() {
+					try {
+						for (String line : lines) {
+							StringDeserializer.deserialize(line);
+						}
+					} catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+		deserialize.run(1, iterations);
+		System.out.println("deserialize: " + deserialize.getAverageReport());
+
+		ExpirableStorableDictionary<String, Sample> dictionary = new ExpirableStorableDictionary<>(3_600_000L);
+		for (int i = 0; i < count; i++) {
+			dictionary.put("key" + i, samples[i]);
+		}
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(count * 128);
+		long start = System.nanoTime();
+		dictionary.store(new LineOutputStream(baos, StandardCharsets.UTF_8));
+		long storedAt = System.nanoTime();
+		ExpirableStorableDictionary<String, Sample> restored = new ExpirableStorableDictionary<>(3_600_000L);
+		restored.restore(new LineInputStream(new ByteArrayInputStream(baos.toByteArray()), StandardCharsets.UTF_8));
+		long restoredAt = System.nanoTime();
+		System.out.println("store:       " + (storedAt - start) / 1_000_000L + " ms, " + baos.size() + " bytes");
+		System.out.println("restore:     " + (restoredAt - storedAt) / 1_000_000L + " ms, "
+			+ (restored.get("key" + (count - 1)) != null ? "ok" : "MISSING"));
+	}
+}
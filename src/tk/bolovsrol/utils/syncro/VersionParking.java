@@ -1,8 +1,11 @@
 package tk.bolovsrol.utils.syncro;
 
 import tk.bolovsrol.utils.time.Duration;
+import tk.bolovsrol.utils.time.SystemTimeSource;
+import tk.bolovsrol.utils.time.TimeSource;
 
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.LockSupport;
 import java.util.function.BooleanSupplier;
@@ -11,6 +14,8 @@ import java.util.function.Supplier;
 /**
  * Одни треды паркуются тут в ожидании изменения версии, другой (другие) изменяют версию, рапарковывая всех.
  * Для собственно остановки тредов использует {@link LockSupport}.
+ * <p>
+ * Ожидание с таймаутом отсчитывается по монотонным часам переданного {@link TimeSource}.
  */
 public class VersionParking {
 
@@ -23,7 +28,18 @@ public class VersionParking {
     /** Текущая версия. */
     private AtomicInteger version = new AtomicInteger(0);
 
+    private final TimeSource timeSource;
+
     public VersionParking() {
+        this(SystemTimeSource.getStatic());
+    }
+
+    public VersionParking(TimeSource timeSource) {
+        this.timeSource = timeSource;
+    }
+
+    public TimeSource getTimeSource() {
+        return timeSource;
     }
 
     /** @return текущая версия парковки. */
@@ -73,11 +89,25 @@ public class VersionParking {
      * @throws InterruptedException
      */
     public int parkUntil(int version, long deadline) throws InterruptedException {
+        return parkUntilNanos(version, timeSource.toDeadlineNanos(deadline));
+    }
+
+    /**
+     * Возвращает управление, когда версия станет не version или монотонные часы дойдут до дедлайна или тред прервут.
+     * <p>
+     * В первых двух случаях возвращает актуальную версию, в последнем — выкидывает исключение.
+     *
+     * @param version версия, с которой нужно уйти
+     * @param deadlineNanos дедлайн в единицах {@link TimeSource#nanoTime()} источника времени парковки
+     * @return новая версия
+     * @throws InterruptedException
+     */
+    public int parkUntilNanos(int version, long deadlineNanos) throws InterruptedException {
         Thread currentThread = Thread.currentThread();
         park.add(currentThread);
         try {
-            while (this.version.get() == version && System.currentTimeMillis() < deadline) {
-                LockSupport.parkUntil(this, deadline);
+            while (this.version.get() == version && timeSource.nanoTime() - deadlineNanos < 0L) {
+                timeSource.parkUntil(this, deadlineNanos);
                 if (currentThread.isInterrupted()) {
                     throw new InterruptedException();
                 }
@@ -100,7 +130,7 @@ public class VersionParking {
      * @throws InterruptedException
      */
     public int parkMillis(int version, long millis) throws InterruptedException {
-        return parkUntil(version, System.currentTimeMillis() + millis);
+        return parkUntilNanos(version, timeSource.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
     }
 
     /**
@@ -1,7 +1,19 @@
 package tk.bolovsrol.utils.textformatter.compiling;
 
+import java.io.IOException;
+
 public interface CompiledFormatter {
     String format(KeywordEvaluator keywordEvaluator);
 
     String format(KeywordEvaluator keywordEvaluator, boolean strict) throws EvaluationFailedException;
+
+    /** Дописывает отформатированный шаблон в стрингбилдер. */
+    default void formatTo(StringBuilder sb, KeywordEvaluator keywordEvaluator, boolean strict) throws EvaluationFailedException {
+        sb.append(format(keywordEvaluator, strict));
+    }
+
+    /** Дописывает отформатированный шаблон в приёмник. */
+    default void formatTo(Appendable out, KeywordEvaluator keywordEvaluator, boolean strict) throws EvaluationFailedException, IOException {
+        out.append(format(keywordEvaluator, strict));
+    }
 }
@@ -0,0 +1,189 @@
+package tk.bolovsrol.utils.textformatter.compiling;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ограниченный кэш скомпилированных шаблонов, ключ — шаблон и настройки компилятора.
+ * <p/>
+ * Скомпилированный форматирователь потокобезопасен, так что один экземпляр отдаётся всем,
+ * кто попросит тот же шаблон. Поэтому полученному из кэша форматирователю не следует
+ * устанавливать вычислитель {@link ProxyingCompiledFormatter#setKeywordEvaluator(KeywordEvaluator)},
+ * нужно пользоваться методами, которые принимают вычислитель.
+ * <p/>
+ * Когда шаблонов становится больше ёмкости, выкидываются те, к которым не обращались
+ * с прошлой чистки (алгоритм «второго шанса»).
+ * <p/>
+ * Фабрики модификаторов компилятора сравниваются по ссылке на карту и счётчику её изменений:
+ * если после обращения к кэшу зарегистрировать или убрать компилятору фабрику, будет уже другой ключ.
+ */
+public final class CompiledTemplateCache {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final CompiledTemplateCache SHARED = new CompiledTemplateCache(DEFAULT_CAPACITY);
+
+    private static final TextFormatCompiler DEFAULT_COMPILER = new TextFormatCompiler();
+
+    private final int capacity;
+    private final ConcurrentHashMap<Key, Entry> entries;
+    private final Object evictionLock = new Object();
+
+    private static final class Key {
+        private final String template;
+        private final char macroOpenChar;
+        private final char macroCloseChar;
+        private final char modifierDelimiterChar;
+        private final char maskChar;
+        private final char[] quoteCharsOrNull;
+        private final Map<String, ValueModifierFactory> valueModifierFactoryMap;
+        private final int valueModifierFactoryMapVersion;
+        private final int hashCode;
+
+        private Key(TextFormatCompiler compiler, String template) {
+            this.template = template;
+            this.macroOpenChar = compiler.getMacroOpenChar();
+            this.macroCloseChar = compiler.getMacroCloseChar();
+            this.modifierDelimiterChar = compiler.getModifierDelimiterChar();
+            this.maskChar = compiler.getMaskChar();
+            this.quoteCharsOrNull = compiler.getQuoteCharsOrNull() == null ? null : compiler.getQuoteCharsOrNull().clone();
+            this.valueModifierFactoryMap = compiler.getValueModifierFactoryMap();
+            this.valueModifierFactoryMapVersion = compiler.getValueModifierFactoryMapVersion();
+            int hashCode = template.hashCode();
+            hashCode = 31 * hashCode + macroOpenChar;
+            hashCode = 31 * hashCode + macroCloseChar;
+            hashCode = 31 * hashCode + modifierDelimiterChar;
+            hashCode = 31 * hashCode + maskChar;
+            hashCode = 31 * hashCode + Arrays.hashCode(quoteCharsOrNull);
+            hashCode = 31 * hashCode + System.identityHashCode(valueModifierFactoryMap);
+            hashCode = 31 * hashCode + valueModifierFactoryMapVersion;
+            this.hashCode = hashCode;
+        }
+
+        @Override public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return hashCode == that.hashCode
+                  && macroOpenChar == that.macroOpenChar
+                  && macroCloseChar == that.macroCloseChar
+                  && modifierDelimiterChar == that.modifierDelimiterChar
+                  && maskChar == that.maskChar
+                  && valueModifierFactoryMap == that.valueModifierFactoryMap
+                  && valueModifierFactoryMapVersion == that.valueModifierFactoryMapVersion
+                  && template.equals(that.template)
+                  && Arrays.equals(quoteCharsOrNull, that.quoteCharsOrNull);
+        }
+
+        @Override public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static final class Entry {
+        private final ProxyingCompiledFormatter formatter;
+        private volatile boolean used;
+
+        private Entry(ProxyingCompiledFormatter formatter) {
+            this.formatter = formatter;
+            this.used = true;
+        }
+    }
+
+    /** @param capacity сколько шаблонов держать */
+    public CompiledTemplateCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive, got " + capacity);
+        }
+        this.capacity = capacity;
+        this.entries = new ConcurrentHashMap<>(Math.min(capacity, 64) * 2);
+    }
+
+    /** @return кэш, общий для всех, ёмкостью {@link #DEFAULT_CAPACITY} */
+    public static CompiledTemplateCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Возвращает шаблон, скомпилированный компилятором со стандартными настройками.
+     * <p/>
+     * Если переданный шаблон нул, то вернёт нул.
+     *
+     * @param template шаблон
+     * @return скомпилированный шаблон или нул
+     * @throws InvalidTemplateException шаблон кривой
+     */
+    public ProxyingCompiledFormatter get(String template) throws InvalidTemplateException {
+        return get(DEFAULT_COMPILER, template);
+    }
+
+    /**
+     * Возвращает шаблон, скомпилированный компилятором с настройками переданного компилятора.
+     * Сам переданный компилятор не используется, так что его можно держать общим.
+     * <p/>
+     * Если переданный шаблон нул, то вернёт нул.
+     *
+     * @param compiler компилятор, настройки которого следует использовать
+     * @param template шаблон
+     * @return скомпилированный шаблон или нул
+     * @throws InvalidTemplateException шаблон кривой
+     */
+    public ProxyingCompiledFormatter get(TextFormatCompiler compiler, String template) throws InvalidTemplateException {
+        if (template == null) {
+            return null;
+        }
+        Key key = new Key(compiler, template);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            // два треда могут скомпилировать один шаблон одновременно, ничего страшного
+            Entry candidate = new Entry(compiler.copy().compile(template));
+            entry = entries.putIfAbsent(key, candidate);
+            if (entry == null) {
+                if (entries.size() > capacity) {
+                    evict();
+                }
+                return candidate.formatter;
+            }
+        }
+        if (!entry.used) {
+            entry.used = true;
+        }
+        return entry.formatter;
+    }
+
+    private void evict() {
+        synchronized (evictionLock) {
+            int target = capacity - (capacity >> 2);
+            for (int pass = 0; pass < 2 && entries.size() > target; pass++) {
+                for (Iterator<Entry> it = entries.values().iterator(); it.hasNext() && entries.size() > target; ) {
+                    Entry entry = it.next();
+                    if (entry.used) {
+                        entry.used = false;
+                    } else {
+                        it.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    /** @return количество шаблонов в кэше */
+    public int size() {
+        return entries.size();
+    }
+
+    /** Выкидывает все шаблоны. */
+    public void clear() {
+        entries.clear();
+    }
+
+    @Override public String toString() {
+        return "CompiledTemplateCache{" + entries.size() + '/' + capacity + '}';
+    }
+}
@@ -0,0 +1,81 @@
+package tk.bolovsrol.utils.textformatter.compiling;
+
+import tk.bolovsrol.utils.textformatter.compiling.evaluators.EmptyEvaluator;
+
+/**
+ * Состояние одного форматирования: вычислитель ключевых слов, строгий режим
+ * и уже вычисленные значения секций.
+ * <p/>
+ * Скомпилированные секции общие для всех, кто форматирует шаблон, и сами ничего не запоминают.
+ * Секции, которые встречаются в шаблоне больше одного раза, получают у компилятора номер ячейки
+ * и складывают своё значение сюда, чтобы не вычислять его повторно в рамках одного форматирования.
+ * <p/>
+ * Контекст заводится на каждое форматирование и между тредами не передаётся.
+ */
+public final class EvaluationContext {
+
+    private static final EvaluationContext FOR_CONSTANTS = new EvaluationContext(EmptyEvaluator.INSTANCE, true, 0);
+
+    private final KeywordEvaluator keywordEvaluator;
+    private final boolean strict;
+    private final String[] values;
+
+    /**
+     * @param keywordEvaluator вычислитель ключевых слов
+     * @param strict строгий режим
+     * @param slotCount количество ячеек для значений секций
+     */
+    EvaluationContext(KeywordEvaluator keywordEvaluator, boolean strict, int slotCount) {
+        this.keywordEvaluator = keywordEvaluator;
+        this.strict = strict;
+        this.values = slotCount == 0 ? null : new String[slotCount];
+    }
+
+    /**
+     * Возвращает строгий контекст с пустым вычислителем, в котором при компиляции шаблона
+     * вычисляются постоянные секции, см. {@link ValueModifier#prepare(tk.bolovsrol.utils.textformatter.compiling.sections.Section[])}.
+     *
+     * @return контекст для постоянных секций
+     */
+    public static EvaluationContext forConstants() {
+        return FOR_CONSTANTS;
+    }
+
+    /** @return true, если форматирование строгое, и несоответствие шаблона ключевым словам — ошибка */
+    public boolean isStrict() {
+        return strict;
+    }
+
+    /**
+     * Вычисляет значение ключевого слова вычислителем этого форматирования.
+     *
+     * @param keyword ключевое слово
+     * @return значение ключевого слова или нул
+     * @see KeywordEvaluator#evaluate(String)
+     */
+    public String evaluate(String keyword) {
+        return keywordEvaluator.evaluate(keyword);
+    }
+
+    /**
+     * @param slot номер ячейки
+     * @return запомненное значение секции или нул, если значения ещё нет
+     */
+    public String getCached(int slot) {
+        return values[slot];
+    }
+
+    /**
+     * Запоминает значение секции.
+     *
+     * @param slot номер ячейки
+     * @param value значение
+     */
+    public void cache(int slot, String value) {
+        values[slot] = value;
+    }
+
+    @Override public String toString() {
+        return "EvaluationContext{" + keywordEvaluator + (strict ? ", strict}" : "}");
+    }
+}
@@ -0,0 +1,23 @@
+package tk.bolovsrol.utils.textformatter.compiling;
+
+/**
+ * Приёмник текстов, отформатированных {@link ParallelFormatter}'ом.
+ * <p/>
+ * Вызывается из разных тредов одновременно, так что должен быть потокобезопасным.
+ *
+ * @param <T> класс вычислителя
+ */
+@FunctionalInterface public interface FormattedTextSink<T> {
+
+    /**
+     * Принимает текст, отформатированный с использованием вычислителя.
+     * <p/>
+     * Текст действителен только до возврата из метода, потом буфер используется повторно.
+     * Если текст нужен дольше, следует сделать из него строку.
+     *
+     * @param keywordEvaluator вычислитель, с которым отформатирован текст
+     * @param text отформатированный текст
+     */
+    void accept(T keywordEvaluator, CharSequence text);
+
+}
@@ -0,0 +1,225 @@
+package tk.bolovsrol.utils.textformatter.compiling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Форматирует один шаблон множеством вычислителей параллельно в пуле {@link ForkJoinPool}
+ * и отдаёт тексты в общий приёмник {@link FormattedTextSink}, например, для рассылок.
+ * <p/>
+ * Каждый тред пишет в свой стрингбилдер, который переиспользуется от текста к тексту,
+ * так что строки на каждый текст не заводятся, если приёмнику они не нужны.
+ * Порядок, в котором тексты попадают в приёмник, не определён.
+ * <p/>
+ * В строгом режиме первая же ошибка вычисления прекращает форматирование: задачи
+ * проверяют общий флажок перед каждым текстом и новые тексты уже не берут.
+ * Метод выкидывает ошибку только после того, как все задачи закончились,
+ * так что после выхода из метода приёмник больше не вызывается. Но часть текстов
+ * к этому моменту может быть уже отправлена в приёмник.
+ */
+public class ParallelFormatter {
+
+    /** Сколько текстов форматировать в одной задаче, не деля её дальше. */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private final CompiledFormatter formatter;
+    private final ForkJoinPool pool;
+    private final int batchSize;
+    private final ThreadLocal<StringBuilder> buffers = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    /**
+     * Форматирует в общем пуле {@link ForkJoinPool#commonPool()}.
+     *
+     * @param formatter скомпилированный шаблон
+     */
+    public ParallelFormatter(CompiledFormatter formatter) {
+        this(formatter, ForkJoinPool.commonPool(), DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param formatter скомпилированный шаблон
+     * @param pool пул, в котором форматировать
+     * @param batchSize сколько текстов форматировать в одной задаче
+     */
+    public ParallelFormatter(CompiledFormatter formatter, ForkJoinPool pool, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive, got " + batchSize);
+        }
+        this.formatter = formatter;
+        this.pool = pool;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Форматирует шаблон каждым вычислителем списка и отдаёт тексты в приёмник.
+     *
+     * @param keywordEvaluators вычислители
+     * @param strict строгий режим
+     * @param sink приёмник
+     * @param <T> класс вычислителя
+     * @throws EvaluationFailedException только в строгом режиме: шаблон не соответствует ключевым словам
+     */
+    public <T extends KeywordEvaluator> void formatAll(List<T> keywordEvaluators, boolean strict, FormattedTextSink<? super T> sink) throws EvaluationFailedException {
+        if (keywordEvaluators.isEmpty()) {
+            return;
+        }
+        try {
+            pool.invoke(new RangeTask<>(keywordEvaluators, 0, keywordEvaluators.size(), strict, sink, new AtomicBoolean()));
+        } catch (EvaluationFailure e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Форматирует шаблон каждым вычислителем потока и отдаёт тексты в приёмник.
+     * Поток обрабатывается параллельно в пуле этого форматирователя.
+     *
+     * @param keywordEvaluators вычислители
+     * @param strict строгий режим
+     * @param sink приёмник
+     * @param <T> класс вычислителя
+     * @throws EvaluationFailedException только в строгом режиме: шаблон не соответствует ключевым словам
+     * @throws InterruptedException тред прервали, пока он ждал окончания; задачи тогда
+     * перестают брать новые тексты, но могут ещё дописывать начатые
+     */
+    public <T extends KeywordEvaluator> void formatAll(Stream<T> keywordEvaluators, boolean strict, FormattedTextSink<? super T> sink) throws EvaluationFailedException, InterruptedException {
+        AtomicBoolean failed = new AtomicBoolean();
+        try {
+            pool.submit(new SpliteratorTask<>(keywordEvaluators.parallel().spliterator(), strict, sink, failed)).get();
+        } catch (InterruptedException e) {
+            failed.set(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof EvaluationFailure) {
+                throw ((EvaluationFailure) cause).getCause();
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Форматирует текст и отдаёт его в приёмник. Если что-то пошло не так,
+     * поднимает общий флажок, чтобы остальные задачи не брали новых текстов.
+     */
+    private <T extends KeywordEvaluator> void format(T keywordEvaluator, boolean strict, FormattedTextSink<? super T> sink, AtomicBoolean failed) {
+        try {
+            StringBuilder sb = buffers.get();
+            sb.setLength(0);
+            try {
+                formatter.formatTo(sb, keywordEvaluator, strict);
+            } catch (EvaluationFailedException e) {
+                throw new EvaluationFailure(e);
+            }
+            sink.accept(keywordEvaluator, sb);
+        } catch (RuntimeException | Error e) {
+            failed.set(true);
+            throw e;
+        }
+    }
+
+    /**
+     * Выполняет свою часть работы и дожидается всех отправленных в пул подзадач,
+     * даже если своя часть упала, и только потом выкидывает ошибку, если она была.
+     */
+    private static void joinAfter(Runnable body, List<? extends ForkJoinTask<?>> forked) {
+        try {
+            body.run();
+        } finally {
+            for (ForkJoinTask<?> task : forked) {
+                task.quietlyJoin();
+            }
+        }
+        for (ForkJoinTask<?> task : forked) {
+            task.join();
+        }
+    }
+
+    /** Протаскивает проверяемое исключение через пул. */
+    private static class EvaluationFailure extends RuntimeException {
+        private static final long serialVersionUID = 6413227042489491083L;
+
+        EvaluationFailure(EvaluationFailedException cause) {
+            super(cause);
+        }
+
+        @Override public synchronized EvaluationFailedException getCause() {
+            return (EvaluationFailedException) super.getCause();
+        }
+    }
+
+    private class RangeTask<T extends KeywordEvaluator> extends RecursiveAction {
+        private static final long serialVersionUID = 3331148666495256032L;
+
+        private final List<T> keywordEvaluators;
+        private final int from;
+        private final int to;
+        private final boolean strict;
+        private final FormattedTextSink<? super T> sink;
+        private final AtomicBoolean failed;
+
+        RangeTask(List<T> keywordEvaluators, int from, int to, boolean strict, FormattedTextSink<? super T> sink, AtomicBoolean failed) {
+            this.keywordEvaluators = keywordEvaluators;
+            this.from = from;
+            this.to = to;
+            this.strict = strict;
+            this.sink = sink;
+            this.failed = failed;
+        }
+
+        @Override protected void compute() {
+            if (to - from <= batchSize) {
+                for (int i = from; i < to && !failed.get(); i++) {
+                    format(keywordEvaluators.get(i), strict, sink, failed);
+                }
+            } else if (!failed.get()) {
+                int middle = (from + to) >>> 1;
+                RangeTask<T> right = new RangeTask<>(keywordEvaluators, middle, to, strict, sink, failed);
+                right.fork();
+                joinAfter(new RangeTask<>(keywordEvaluators, from, middle, strict, sink, failed)::invoke, List.of(right));
+            }
+        }
+    }
+
+    private class SpliteratorTask<T extends KeywordEvaluator> extends RecursiveAction {
+        private static final long serialVersionUID = 3018448423559073818L;
+
+        private final Spliterator<T> keywordEvaluators;
+        private final boolean strict;
+        private final FormattedTextSink<? super T> sink;
+        private final AtomicBoolean failed;
+
+        SpliteratorTask(Spliterator<T> keywordEvaluators, boolean strict, FormattedTextSink<? super T> sink, AtomicBoolean failed) {
+            this.keywordEvaluators = keywordEvaluators;
+            this.strict = strict;
+            this.sink = sink;
+            this.failed = failed;
+        }
+
+        @Override protected void compute() {
+            List<SpliteratorTask<T>> forked = new ArrayList<>();
+            Spliterator<T> prefix;
+            while (keywordEvaluators.estimateSize() > batchSize && (prefix = keywordEvaluators.trySplit()) != null) {
+                SpliteratorTask<T> task = new SpliteratorTask<>(prefix, strict, sink, failed);
+                task.fork();
+                forked.add(task);
+            }
+            joinAfter(() -> {
+                while (!failed.get() && keywordEvaluators.tryAdvance(keywordEvaluator -> format(keywordEvaluator, strict, sink, failed))) {
+                    // всё делается в tryAdvance
+                }
+            }, forked);
+        }
+    }
+}
@@ -1,61 +1,100 @@
 package tk.bolovsrol.utils.textformatter.compiling;
 
-import tk.bolovsrol.utils.textformatter.compiling.evaluators.ProxyKeywordEvaluator;
+import tk.bolovsrol.utils.textformatter.compiling.evaluators.EmptyEvaluator;
+import tk.bolovsrol.utils.textformatter.compiling.sections.ConstSection;
 import tk.bolovsrol.utils.textformatter.compiling.sections.Section;
 
+import java.io.IOException;
+import java.util.Set;
+
 /**
  * Скомпилированный форматирователь.
  * <p/>
  * Следует создавать компилятором {@link TextFormatCompiler} либо статическим методом {@link #create(String)},
  * который сам вызовет компилятор.
  * <p/>
- * Форматирователь можно использовать параллельно, но только с одним и тем же вычислителем
- * ключевых слов. Иначе результат будет неопределённым.
+ * Секции шаблона ничего не запоминают, всё состояние форматирования лежит в {@link EvaluationContext},
+ * который заводится на каждый вызов. Поэтому методы, принимающие вычислитель, можно вызывать
+ * из любого количества тредов одновременно и с разными вычислителями, синхронизировать ничего не надо.
+ * <p/>
+ * Форматирователь запоминает, какой длины получался результат, и сразу заводит стрингбилдер
+ * подходящего размера. Шаблон без макросов не вычисляется вовсе.
+ * <p/>
+ * Методы {@link #format()} и {@link #format(boolean)} используют вычислитель, установленный
+ * {@link #setKeywordEvaluator(KeywordEvaluator)}, он общий для всех тредов.
  */
 public class ProxyingCompiledFormatter implements CompiledFormatter {
 
     private final String template;
     private final Section section;
-    private final ProxyKeywordEvaluator proxyKeywordEvaluator;
+    private final int slotCount;
+    private final Set<String> keywords;
+    /** Готовый результат, если шаблон постоянный, иначе нул. */
+    private final String constant;
+
+    /** Ожидаемая длина результата. */
+    private volatile int sizeHint;
+    private volatile KeywordEvaluator keywordEvaluator = EmptyEvaluator.INSTANCE;
 
     /**
      * Создаёт форматирователь секции.
      *
+     * @param template исходный шаблон
      * @param section корневая секция
-     * @param proxyKeywordEvaluator прокси-вычислитель
+     * @param slotCount количество ячеек, выданных компилятором секциям
+     * @param keywords ключевые слова шаблона
      */
-    ProxyingCompiledFormatter(String template, Section section, ProxyKeywordEvaluator proxyKeywordEvaluator) {
+    ProxyingCompiledFormatter(String template, Section section, int slotCount, Set<String> keywords) {
         this.template = template;
         this.section = section;
-        this.proxyKeywordEvaluator = proxyKeywordEvaluator;
+        this.slotCount = slotCount;
+        this.keywords = keywords;
+        this.constant = section instanceof ConstSection ? ((ConstSection) section).getValue() : null;
+        this.sizeHint = Math.max(16, template.length());
+    }
+
+    /**
+     * Создаёт форматирователь того же шаблона, с общими секциями, но со своим вычислителем
+     * для {@link #format()} и {@link #format(boolean)}.
+     *
+     * @param prototype исходный форматирователь
+     */
+    ProxyingCompiledFormatter(ProxyingCompiledFormatter prototype) {
+        this.template = prototype.template;
+        this.section = prototype.section;
+        this.slotCount = prototype.slotCount;
+        this.keywords = prototype.keywords;
+        this.constant = prototype.constant;
+        this.sizeHint = prototype.sizeHint;
     }
 
     /**
-     * Устанавливает вычислитель, который будет использоваться при форматировании.
+     * Устанавливает вычислитель, который будет использоваться методами {@link #format()} и {@link #format(boolean)}.
      *
      * @param keywordEvaluator актуальный вычислитель
      * @return this
      */
     public ProxyingCompiledFormatter setKeywordEvaluator(KeywordEvaluator keywordEvaluator) {
-        this.proxyKeywordEvaluator.setEvaluator(keywordEvaluator);
+        this.keywordEvaluator = keywordEvaluator;
         return this;
     }
 
     /**
-     * Устанавливает вычислитель, который будет использоваться при форматировании,
-     * и форматирует шаблон с его использованием.
+     * Форматирует шаблон с использованием переданного вычислителя.
      *
-     * @param keywordEvaluator актуальный вычислитель
+     * @param keywordEvaluator вычислитель ключевых слов для использования
      * @return отформатированный шаблон
      */
     @Override public String format(KeywordEvaluator keywordEvaluator) {
-        setKeywordEvaluator(keywordEvaluator);
-        return format();
+        try {
+            return format(keywordEvaluator, false);
+        } catch (EvaluationFailedException e) {
+            throw new RuntimeException("Evaluation exception thrown in non-strict mode, this shouldn't had happen.", e);
+        }
     }
 
     /**
-     * Устанавливает вычислитель, который будет использоваться при форматировании,
-     * и форматирует шаблон с его использованием.
+     * Форматирует шаблон с использованием переданного вычислителя.
      * <p/>
      * В строгом режиме при несоответствии шаблона ключевым словам (отсутствие либо неверный формат)
      * выкинет {@link EvaluationFailedException}.
@@ -66,8 +105,61 @@ public class ProxyingCompiledFormatter implements CompiledFormatter {
      * @throws EvaluationFailedException только в строгом режиме: шаблон не соответствует ключевым словам
      */
     @Override public String format(KeywordEvaluator keywordEvaluator, boolean strict) throws EvaluationFailedException {
-        setKeywordEvaluator(keywordEvaluator);
-        return format(strict);
+        if (constant != null) {
+            return constant;
+        }
+        StringBuilder sb = new StringBuilder(sizeHint);
+        appendFormatted(sb, keywordEvaluator, strict);
+        return sb.toString();
+    }
+
+    /**
+     * Дописывает отформатированный шаблон в переданный стрингбилдер.
+     *
+     * @param sb куда писать
+     * @param keywordEvaluator вычислитель ключевых слов для использования
+     * @param strict строгий режим
+     * @throws EvaluationFailedException только в строгом режиме: шаблон не соответствует ключевым словам
+     */
+    @Override public void formatTo(StringBuilder sb, KeywordEvaluator keywordEvaluator, boolean strict) throws EvaluationFailedException {
+        if (constant != null) {
+            sb.append(constant);
+            return;
+        }
+        sb.ensureCapacity(sb.length() + sizeHint);
+        appendFormatted(sb, keywordEvaluator, strict);
+    }
+
+    /**
+     * Дописывает отформатированный шаблон в переданный приёмник.
+     * <p/>
+     * Стрингбилдер получает текст напрямую, прочие приёмники — одним куском в конце.
+     *
+     * @param out куда писать
+     * @param keywordEvaluator вычислитель ключевых слов для использования
+     * @param strict строгий режим
+     * @throws EvaluationFailedException только в строгом режиме: шаблон не соответствует ключевым словам
+     * @throws IOException приёмнику не удалось записать
+     */
+    @Override public void formatTo(Appendable out, KeywordEvaluator keywordEvaluator, boolean strict) throws EvaluationFailedException, IOException {
+        if (out instanceof StringBuilder) {
+            formatTo((StringBuilder) out, keywordEvaluator, strict);
+        } else {
+            out.append(format(keywordEvaluator, strict));
+        }
+    }
+
+    private void appendFormatted(StringBuilder sb, KeywordEvaluator keywordEvaluator, boolean strict) throws EvaluationFailedException {
+        int start = sb.length();
+        section.appendTo(new EvaluationContext(keywordEvaluator, strict, slotCount), sb);
+        int length = sb.length() - start;
+        int hint = sizeHint;
+        if (length > hint) {
+            sizeHint = length;
+        } else if (length < hint - (hint >> 2)) {
+            // результаты стали заметно короче, потихоньку сползаем к ним
+            sizeHint = hint - ((hint - length) >> 3);
+        }
     }
 
     /**
@@ -78,11 +170,7 @@ public class ProxyingCompiledFormatter implements CompiledFormatter {
      * @return форматированный шаблон
      */
     public String format() {
-        try {
-            return format(false);
-        } catch (EvaluationFailedException e) {
-            throw new RuntimeException("Evaluation exception thrown in non-strict mode, this shouldn't had happen.", e);
-        }
+        return format(keywordEvaluator);
     }
 
     /**
@@ -98,8 +186,18 @@ public class ProxyingCompiledFormatter implements CompiledFormatter {
      * @throws EvaluationFailedException только в строгом режиме: шаблон не соответствует ключевым словам
      */
     public String format(boolean strict) throws EvaluationFailedException {
-        section.reset();
-        return section.evaluate(strict);
+        return format(keywordEvaluator, strict);
+    }
+
+    /**
+     * Возвращает ключевые слова, которые шаблон может запросить у вычислителя,
+     * в порядке появления в шаблоне. По ним можно заранее подготовить вычислитель,
+     * например, {@link tk.bolovsrol.utils.textformatter.compiling.evaluators.ReflectionAccessors#bind(java.util.Collection)}.
+     *
+     * @return неизменяемый набор ключевых слов
+     */
+    public Set<String> getKeywords() {
+        return keywords;
     }
 
     @Override public String toString() {
@@ -109,6 +207,9 @@ public class ProxyingCompiledFormatter implements CompiledFormatter {
     /**
      * Простая версия, создание форматирователя
      * {@link TextFormatCompiler компилятором} со стандартными настройками.
+     * <p/>
+     * Шаблон компилируется один раз и хранится в {@link CompiledTemplateCache#getShared() общем кэше},
+     * а возвращается отдельный экземпляр, которому можно устанавливать свой вычислитель.
      *
      * @param template шаблон
      * @return форматирователь
@@ -116,7 +217,8 @@ public class ProxyingCompiledFormatter implements CompiledFormatter {
      * @see TextFormatCompiler#compile(String)
      */
     public static ProxyingCompiledFormatter create(String template) throws InvalidTemplateException {
-        return new TextFormatCompiler().compile(template);
+        ProxyingCompiledFormatter cached = CompiledTemplateCache.getShared().get(template);
+        return cached == null ? null : new ProxyingCompiledFormatter(cached);
     }
 
 }
@@ -6,6 +6,9 @@ import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Обёртка, синхронизирующая обращения к форматирователю-делегату.
+ * <p>
+ * {@link ProxyingCompiledFormatter} в синхронизации не нуждается, обёртка нужна только
+ * для самодельных форматирователей, которые хранят состояние.
  */
 public class SynchronizedCompiledFormatter implements CompiledFormatter {
     private final CompiledFormatter delegate;
@@ -2,7 +2,7 @@ package tk.bolovsrol.utils.textformatter.compiling;
 
 import tk.bolovsrol.utils.Spell;
 import tk.bolovsrol.utils.StringUtils;
-import tk.bolovsrol.utils.textformatter.compiling.evaluators.ProxyKeywordEvaluator;
+import tk.bolovsrol.utils.textformatter.compiling.sections.CachingSection;
 import tk.bolovsrol.utils.textformatter.compiling.sections.ConstSection;
 import tk.bolovsrol.utils.textformatter.compiling.sections.MacroSection;
 import tk.bolovsrol.utils.textformatter.compiling.sections.ModifierSection;
@@ -10,9 +10,12 @@ import tk.bolovsrol.utils.textformatter.compiling.sections.MultiSection;
 import tk.bolovsrol.utils.textformatter.compiling.sections.Section;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 
 /**
@@ -31,6 +34,9 @@ import java.util.TreeMap;
  * <p>
  * Модификаторы по умолчаню определены в {@link CommonModifierFactories}. Компилятору можно указывать
  * дополнительные фабрики модификаторов.
+ * <p>
+ * Одинаковые секции собираются в одну. Таким секциям компилятор выдаёт ячейки в {@link EvaluationContext},
+ * чтобы при форматировании они вычислялись один раз.
  */
 public class TextFormatCompiler {
 
@@ -42,15 +48,15 @@ public class TextFormatCompiler {
 
     private static final Section[] EMPTY_SECTIONS = new Section[0];
 
-    /**
-     * Изначально используем прокси-вычислятель,
-     * а он при форматировании укажет на реальный.
-     */
-    private ProxyKeywordEvaluator proxyKeywordEvaluator;
-
     /** Кэш созданных секций для повторного использования. */
     private final Map<Section, Section> madeSections = new HashMap<>();
 
+    /** Количество выданных секциям ячеек. */
+    private int slotCount;
+
+    /** Ключевые слова, встретившиеся в шаблоне. */
+    private Set<String> keywords;
+
     /** Фабрика модификаторов. */
     private Map<String, ValueModifierFactory> valueModifierFactoryMap = CommonModifierFactories.MODIFIER_FACTORIES;
 
@@ -60,6 +66,9 @@ public class TextFormatCompiler {
      */
     private boolean defaultVmfm = true;
 
+    /** Счётчик изменений карты фабрик модификаторов, по нему кэш шаблонов замечает перерегистрацию. */
+    private int valueModifierFactoryMapVersion;
+
     /** Исходный шаблон. */
     private String globalSource;
 
@@ -102,10 +111,12 @@ public class TextFormatCompiler {
         if (template == null) {
             return null;
         }
-        proxyKeywordEvaluator = new ProxyKeywordEvaluator();
         madeSections.clear();
+        slotCount = 0;
+        keywords = new LinkedHashSet<>();
         globalSource = template;
-        return new ProxyingCompiledFormatter(template, compileSection(template, 0), proxyKeywordEvaluator);
+        Section section = compileSection(template, 0);
+        return new ProxyingCompiledFormatter(template, section, slotCount, Collections.unmodifiableSet(keywords));
     }
 
     /**
@@ -166,7 +177,8 @@ public class TextFormatCompiler {
         int spacePos = trimmedMacro.indexOf(' ');
         if (spacePos < 0) {
             // простой случай: это всего лишь макрос.
-            return registerSection(new MacroSection(trimmedMacro, proxyKeywordEvaluator));
+            keywords.add(trimmedMacro);
+            return registerSection(new MacroSection(trimmedMacro));
         } else {
             // сложный случай: макрос с модификаторами
             return processComplexMacro(macro, globalPos);
@@ -186,7 +198,8 @@ public class TextFormatCompiler {
         keySc.next();
         int pos = keySc.getTo();
 
-        Section section = registerSection(new MacroSection(keySc.getWord(), proxyKeywordEvaluator));
+        keywords.add(keySc.getWord());
+        Section section = registerSection(new MacroSection(keySc.getWord()));
 
         while (true) {
             int delimPos = StringUtils.getClosingPosition(macro, '\0', modifierDelimiterChar, pos, maskChar, quoteCharsOrNull);
@@ -232,6 +245,7 @@ public class TextFormatCompiler {
      * Регистрирует секцию, и возвращает секцию для использования.
      * <p>
      * Если такая же секция уже собрана, возвращает её, а переданную теряет.
+     * Повторно используемая секция получает ячейку для своего значения.
      *
      * @param section секция для регистрации
      * @param <S> класс секции
@@ -243,6 +257,8 @@ public class TextFormatCompiler {
         if (candidate == null) {
             candidate = section;
             madeSections.put(section, section);
+        } else if (candidate instanceof CachingSection && ((CachingSection) candidate).getSlot() < 0) {
+            ((CachingSection) candidate).setSlot(slotCount++);
         }
         return candidate;
     }
@@ -254,6 +270,33 @@ public class TextFormatCompiler {
         }
     }
 
+    /**
+     * Создаёт компилятор с такими же настройками. Компилятор не потокобезопасен,
+     * так что кэш шаблонов компилирует копией.
+     *
+     * @return новый компилятор
+     */
+    TextFormatCompiler copy() {
+        TextFormatCompiler result = new TextFormatCompiler();
+        result.valueModifierFactoryMap = valueModifierFactoryMap;
+        result.defaultVmfm = true;
+        result.valueModifierFactoryMapVersion = valueModifierFactoryMapVersion;
+        result.macroOpenChar = macroOpenChar;
+        result.macroCloseChar = macroCloseChar;
+        result.modifierDelimiterChar = modifierDelimiterChar;
+        result.maskChar = maskChar;
+        result.quoteCharsOrNull = quoteCharsOrNull;
+        return result;
+    }
+
+    Map<String, ValueModifierFactory> getValueModifierFactoryMap() {
+        return valueModifierFactoryMap;
+    }
+
+    int getValueModifierFactoryMapVersion() {
+        return valueModifierFactoryMapVersion;
+    }
+
     public char getMacroOpenChar() {
         return macroOpenChar;
     }
@@ -307,6 +350,7 @@ public class TextFormatCompiler {
         valueModifierFactoryMap.put(tag, factory);
         valueModifierFactoryMap.put(tag.toUpperCase(), factory);
         valueModifierFactoryMap.put(tag.toLowerCase(), factory);
+        valueModifierFactoryMapVersion++;
         return this;
     }
 
@@ -318,11 +362,20 @@ public class TextFormatCompiler {
     }
 
     public ValueModifierFactory unregisterValueModifierFactory(String tag) {
-        return defaultVmfm ? null : valueModifierFactoryMap.remove(tag);
+        if (defaultVmfm) {
+            return null;
+        }
+        ValueModifierFactory removed = valueModifierFactoryMap.remove(tag);
+        if (removed != null) {
+            valueModifierFactoryMapVersion++;
+        }
+        return removed;
     }
 
     /**
      * Сокращённый метод для простых случаев: компилирует шаблон и решает его переданным эвалюатором.
+     * <p>
+     * Скомпилированный шаблон берётся из {@link CompiledTemplateCache#getShared() общего кэша}.
      *
      * @param template
      * @param evaluator
@@ -330,6 +383,7 @@ public class TextFormatCompiler {
      * @throws InvalidTemplateException
      */
     public static String format(String template, KeywordEvaluator evaluator) throws InvalidTemplateException {
-        return new TextFormatCompiler().compile(template).format(evaluator);
+        ProxyingCompiledFormatter formatter = CompiledTemplateCache.getShared().get(template);
+        return formatter == null ? null : formatter.format(evaluator);
     }
 }
@@ -19,12 +19,29 @@ public interface ValueModifier {
      * не меньше {@link #getMinParameterCount()} и не больше {@link #getMaxParameterCount()}.
      * <p/>
      * Если модификация невозможно, возвращает нул.
+     * <p/>
+     * Один модификатор вызывается из разных тредов одновременно, так что всё, что относится
+     * к конкретному форматированию, берётся из контекста, а не хранится в полях.
      *
      * @param source     строка для модификации
      * @param parameters параметры
-     * @param strict
+     * @param context    контекст форматирования, в нём же вычисляются параметры
      * @return модифицированная строка или нул
      */
-    String eval(String source, Section[] parameters, boolean strict) throws EvaluationFailedException;
+    String eval(String source, Section[] parameters, EvaluationContext context) throws EvaluationFailedException;
+
+    /**
+     * Вызывается компилятором один раз, после того как количество параметров проверено.
+     * Модификатор может заранее разобрать {@link Section#isConstant() постоянные} параметры
+     * (скомпилировать регэксп, собрать формат даты), чтобы не делать это при каждом форматировании.
+     * Постоянные параметры вычисляются в {@link EvaluationContext#forConstants()}.
+     * <p/>
+     * Если параметр разобрать не удалось, ошибку следует оставить на время форматирования:
+     * в нестрогом режиме шаблон должен работать как раньше.
+     *
+     * @param parameters параметры
+     */
+    default void prepare(Section[] parameters) {
+    }
 
 }
@@ -0,0 +1,296 @@
+package tk.bolovsrol.utils.textformatter.compiling.evaluators;
+
+import tk.bolovsrol.utils.StringUtils;
+import tk.bolovsrol.utils.textformatter.compiling.KeywordEvaluator;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Общий на всю джаву кэш доступа к значениям ключевых слов объектов одного класса
+ * для {@link ReflectionGetterEvaluator} и {@link ReflectionFieldEvaluator}.
+ * <p/>
+ * Для каждого класса и режима (геттеры или поля, с переводом подчёркиваний в верблюжий стиль или без)
+ * заводится один экземпляр, он живёт в {@link ClassValue} и умирает вместе с классом.
+ * Ключевое слово находит свой геттер или поле один раз, дальше значение достаётся
+ * скомпилированной функцией: для геттеров её генерирует {@link LambdaMetafactory},
+ * а если не получилось (метод статический или класс не виден загрузчику этого класса) и для полей
+ * используется {@link MethodHandle}.
+ * <p/>
+ * Как и прежде при вызове через рефлекшн, всё, что выкинул геттер, включая {@link Error},
+ * глотается, и значением ключевого слова становится нул.
+ * <p/>
+ * Если шаблон и класс объектов известны заранее, ключевые слова шаблона можно связать
+ * сразу, при компиляции шаблона, и заодно проверить, что все они решаются:
+ * <pre>
+ * ReflectionAccessors.Binding binding = ReflectionAccessors.getters(Order.class, false).bind(formatter.getKeywords());
+ * ...
+ * String text = formatter.format(binding.evaluator(order));
+ * </pre>
+ */
+public final class ReflectionAccessors {
+
+    /** Достаёт из объекта строковое значение ключевого слова или нул, если не получилось. */
+    @FunctionalInterface public interface Accessor {
+        String get(Object source);
+    }
+
+    private static final Accessor MISSING = source -> null;
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static final ClassValue<ReflectionAccessors> GETTERS = new Cache(false, false);
+    private static final ClassValue<ReflectionAccessors> CAMEL_GETTERS = new Cache(false, true);
+    private static final ClassValue<ReflectionAccessors> FIELDS = new Cache(true, false);
+    private static final ClassValue<ReflectionAccessors> CAMEL_FIELDS = new Cache(true, true);
+
+    private static final class Cache extends ClassValue<ReflectionAccessors> {
+        private final boolean fields;
+        private final boolean underscoreToCamel;
+
+        private Cache(boolean fields, boolean underscoreToCamel) {
+            this.fields = fields;
+            this.underscoreToCamel = underscoreToCamel;
+        }
+
+        @Override protected ReflectionAccessors computeValue(Class<?> type) {
+            return new ReflectionAccessors(type, fields, underscoreToCamel);
+        }
+    }
+
+    private final Class<?> sourceClass;
+    private final boolean fields;
+    private final boolean underscoreToCamel;
+    private final ConcurrentHashMap<String, Accessor> accessors = new ConcurrentHashMap<>();
+
+    private ReflectionAccessors(Class<?> sourceClass, boolean fields, boolean underscoreToCamel) {
+        this.sourceClass = sourceClass;
+        this.fields = fields;
+        this.underscoreToCamel = underscoreToCamel;
+    }
+
+    /**
+     * @param sourceClass класс исследуемых объектов
+     * @param underscoreToCamel искать для ключей «c подчёркиваниями» соответствующие «верблюжьи» названия
+     * @return доступ к публичным геттерам объектов класса
+     * @see ReflectionGetterEvaluator
+     */
+    public static ReflectionAccessors getters(Class<?> sourceClass, boolean underscoreToCamel) {
+        return (underscoreToCamel ? CAMEL_GETTERS : GETTERS).get(sourceClass);
+    }
+
+    /**
+     * @param sourceClass класс исследуемых объектов
+     * @param underscoreToCamel искать для ключей «c подчёркиваниями» соответствующие «верблюжьи» названия
+     * @return доступ к полям объектов класса
+     * @see ReflectionFieldEvaluator
+     */
+    public static ReflectionAccessors fields(Class<?> sourceClass, boolean underscoreToCamel) {
+        return (underscoreToCamel ? CAMEL_FIELDS : FIELDS).get(sourceClass);
+    }
+
+    /**
+     * Возвращает функцию доступа к значению ключевого слова. Если ключевому слову ничего
+     * не соответствует, функция всегда возвращает нул.
+     *
+     * @param keyword ключевое слово
+     * @return функция доступа
+     */
+    public Accessor accessor(String keyword) {
+        Accessor accessor = accessors.get(keyword);
+        if (accessor == null) {
+            accessor = accessors.computeIfAbsent(keyword, fields ? this::resolveField : this::resolveGetter);
+        }
+        return accessor;
+    }
+
+    /**
+     * @param source исследуемый объект класса, для которого получен этот кэш
+     * @param keyword ключевое слово
+     * @return значение ключевого слова или нул
+     */
+    public String evaluate(Object source, String keyword) {
+        return accessor(keyword).get(source);
+    }
+
+    /**
+     * @param source исследуемый объект класса, для которого получен этот кэш
+     * @return вычислитель ключевых слов объекта
+     */
+    public KeywordEvaluator evaluator(Object source) {
+        return keyword -> evaluate(source, keyword);
+    }
+
+    /**
+     * Заранее находит функции доступа для переданных ключевых слов.
+     *
+     * @param keywords ключевые слова, обычно {@link tk.bolovsrol.utils.textformatter.compiling.ProxyingCompiledFormatter#getKeywords()}
+     * @return связка ключевых слов с функциями доступа
+     */
+    public Binding bind(Collection<String> keywords) {
+        Map<String, Accessor> bound = new HashMap<>(keywords.size() * 2);
+        for (String keyword : keywords) {
+            bound.put(keyword, accessor(keyword));
+        }
+        return new Binding(bound);
+    }
+
+    /** Ключевые слова шаблона, заранее связанные с функциями доступа. Неизменяемая, годится для всех тредов. */
+    public final class Binding {
+        private final Map<String, Accessor> bound;
+
+        private Binding(Map<String, Accessor> bound) {
+            this.bound = bound;
+        }
+
+        /**
+         * Позволяет ещё до форматирования узнать, каких значений шаблону не хватит.
+         *
+         * @return ключевые слова, которым у класса не нашлось ни геттера, ни поля
+         */
+        public Set<String> getMissingKeywords() {
+            Set<String> result = new LinkedHashSet<>();
+            for (Map.Entry<String, Accessor> entry : bound.entrySet()) {
+                if (entry.getValue() == MISSING) {
+                    result.add(entry.getKey());
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @param source исследуемый объект
+         * @return вычислитель ключевых слов объекта
+         */
+        public KeywordEvaluator evaluator(Object source) {
+            return keyword -> {
+                Accessor accessor = bound.get(keyword);
+                return (accessor == null ? accessor(keyword) : accessor).get(source);
+            };
+        }
+    }
+
+    private Accessor resolveGetter(String keyword) {
+        String name = formatName(keyword);
+        Method method;
+        try {
+            method = sourceClass.getMethod("get" + name);
+        } catch (NoSuchMethodException ignored) {
+            try {
+                method = sourceClass.getMethod("is" + name);
+            } catch (NoSuchMethodException ignoredToo) {
+                return MISSING;
+            }
+        }
+        Function<Object, String> formatter = ReflectionEvaluatorHelper.formatterFor(method.getReturnType());
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle handle;
+        try {
+            handle = lookup.unreflect(method);
+        } catch (IllegalAccessException ignored) {
+            // публичный метод непубличного класса
+            return MISSING;
+        }
+        if (!Modifier.isStatic(method.getModifiers()) && method.getReturnType() != void.class && isVisible(method.getDeclaringClass())) {
+            try {
+                Function<Object, Object> getter = metafactory(lookup, handle, method.getDeclaringClass());
+                return source -> {
+                    try {
+                        return formatter.apply(getter.apply(source));
+                    } catch (Throwable ignored) {
+                        // there's nothing we can do
+                        return null;
+                    }
+                };
+            } catch (Throwable ignored) {
+                // не вышло, обойдёмся хэндлом
+            }
+        }
+        return handleAccessor(handle, Modifier.isStatic(method.getModifiers()), formatter);
+    }
+
+    /**
+     * Лямбда заводится в загрузчике этого класса и должна сама видеть класс геттера.
+     * Если класс загружен, скажем, дочерним загрузчиком, метафабрика отработает,
+     * а лямбда упадёт с {@link NoClassDefFoundError} уже при вызове.
+     */
+    private static boolean isVisible(Class<?> cl) {
+        try {
+            return Class.forName(cl.getName(), false, ReflectionAccessors.class.getClassLoader()) == cl;
+        } catch (ClassNotFoundException | LinkageError ignored) {
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> metafactory(MethodHandles.Lookup lookup, MethodHandle handle, Class<?> declaringClass) throws Throwable {
+        CallSite site = LambdaMetafactory.metafactory(
+              lookup, "apply", MethodType.methodType(Function.class),
+              GETTER_TYPE, handle, MethodType.methodType(Object.class, declaringClass));
+        return (Function<Object, Object>) site.getTarget().invokeExact();
+    }
+
+    private Accessor resolveField(String keyword) {
+        String name = underscoreToCamel ? StringUtils.underscoreToCamel(keyword, false) : keyword;
+        for (Class<?> cl = sourceClass; cl != null; cl = cl.getSuperclass()) {
+            Field field;
+            try {
+                field = cl.getDeclaredField(name);
+            } catch (NoSuchFieldException ignored) {
+                // просто переходим к суперобъекту
+                continue;
+            }
+            try {
+                field.setAccessible(true);
+                MethodHandle handle = MethodHandles.lookup().unreflectGetter(field);
+                return handleAccessor(handle, Modifier.isStatic(field.getModifiers()), ReflectionEvaluatorHelper.formatterFor(field.getType()));
+            } catch (RuntimeException | IllegalAccessException ignored) {
+                // поле в закрытом модуле
+                return MISSING;
+            }
+        }
+        return MISSING;
+    }
+
+    private static Accessor handleAccessor(MethodHandle handle, boolean isStatic, Function<Object, String> formatter) {
+        MethodHandle getter = (isStatic ? MethodHandles.dropArguments(handle, 0, Object.class) : handle).asType(GETTER_TYPE);
+        return source -> {
+            try {
+                return formatter.apply((Object) getter.invokeExact(source));
+            } catch (Throwable ignored) {
+                // there's nothing we can do
+                return null;
+            }
+        };
+    }
+
+    private String formatName(String name) {
+        if (underscoreToCamel) {
+            name = StringUtils.underscoreToCamel(name, false);
+        }
+        switch (name.length()) {
+        case 0:
+            return "";
+        case 1:
+            return name.toUpperCase();
+        default:
+            return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        }
+    }
+
+    @Override public String toString() {
+        return "ReflectionAccessors{" + sourceClass.getName() + (fields ? ", fields" : ", getters") + (underscoreToCamel ? ", underscoreToCamel}" : "}");
+    }
+}
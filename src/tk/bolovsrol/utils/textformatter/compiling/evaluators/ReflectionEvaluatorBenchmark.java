@@ -0,0 +1,191 @@
+package tk.bolovsrol.utils.textformatter.compiling.evaluators;
+
+import tk.bolovsrol.utils.benchmark.Comparer;
+import tk.bolovsrol.utils.benchmark.Repeater;
+import tk.bolovsrol.utils.textformatter.compiling.KeywordEvaluator;
+import tk.bolovsrol.utils.textformatter.compiling.ProxyingCompiledFormatter;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Сравнивает рефлекшн-вычислители, какими они были (на каждый объект свой кэш методов и полей,
+ * {@link Method#invoke(Object, Object...)} и {@link Field#get(Object)}), с нынешними, которые берут
+ * скомпилированные функции доступа из общего кэша {@link ReflectionAccessors}, и со связкой,
+ * подготовленной по ключевым словам шаблона.
+ * <p/>
+ * На каждое форматирование, как и в жизни, заводится новый вычислитель.
+ * <p/>
+ * Запуск: <code>java tk.bolovsrol.utils.textformatter.compiling.evaluators.ReflectionEvaluatorBenchmark [форматирований] [итерации]</code>
+ */
+public class ReflectionEvaluatorBenchmark {
+
+    public static class Order {
+        private final String number;
+        private final String customer;
+        private final BigDecimal amount;
+        private final int items;
+        private final boolean paid;
+        private final Date created;
+
+        public Order(int i) {
+            this.number = "A-" + i;
+            this.customer = "Покупатель " + (i % 100);
+            this.amount = BigDecimal.valueOf(i * 37L, 2);
+            this.items = i % 7;
+            this.paid = (i & 1) == 0;
+            this.created = new Date(1500000000000L + i * 1000L);
+        }
+
+        public String getNumber() { return number; }
+
+        public String getCustomer() { return customer; }
+
+        public BigDecimal getAmount() { return amount; }
+
+        public int getItems() { return items; }
+
+        public boolean isPaid() { return paid; }
+
+        public Date getCreated() { return created; }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        ProxyingCompiledFormatter formatter = ProxyingCompiledFormatter.create(
+              "Заказ {number} для {customer}: {items} поз. на {amount} руб., оплачен: {paid}, создан {created}");
+        Order[] orders = new Order[1024];
+        for (int i = 0; i < orders.length; i++) {
+            orders[i] = new Order(i);
+        }
+        ReflectionAccessors.Binding binding = ReflectionAccessors.getters(Order.class, false).bind(formatter.getKeywords());
+
+        boolean match = true;
+        for (Order order : orders) {
+            String expected = formatter.format(new LegacyGetterEvaluator(order));
+            match &= expected.equals(formatter.format(new ReflectionGetterEvaluator(order)))
+                  && expected.equals(formatter.format(binding.evaluator(order)))
+                  && expected.equals(formatter.format(new LegacyFieldEvaluator(order)))
+                  && expected.equals(formatter.format(new ReflectionFieldEvaluator(order)));
+        }
+        System.out.println("output:  " + (match ? "match" : "MISMATCH"));
+
+        long[] sink = new long[1];
+        Comparer getters = new Comparer(
+              new Repeater() {
+                  @Override public void iteration() {
+                      for (int i = 0; i < count; i++) {
+                          sink[0] += formatter.format(new LegacyGetterEvaluator(orders[i & 1023])).length();
+                      }
+                  }
+              },
+              new Repeater() {
+                  @Override public void iteration() {
+                      for (int i = 0; i < count; i++) {
+                          sink[0] -= formatter.format(new ReflectionGetterEvaluator(orders[i & 1023])).length();
+                      }
+                  }
+              });
+        getters.run(1, iterations);
+        System.out.println("getters: " + getters.getAverageReport());
+
+        Comparer fields = new Comparer(
+              new Repeater() {
+                  @Override public void iteration() {
+                      for (int i = 0; i < count; i++) {
+                          sink[0] += formatter.format(new LegacyFieldEvaluator(orders[i & 1023])).length();
+                      }
+                  }
+              },
+              new Repeater() {
+                  @Override public void iteration() {
+                      for (int i = 0; i < count; i++) {
+                          sink[0] -= formatter.format(new ReflectionFieldEvaluator(orders[i & 1023])).length();
+                      }
+                  }
+              });
+        fields.run(1, iterations);
+        System.out.println("fields:  " + fields.getAverageReport());
+
+        Comparer bound = new Comparer(
+              new Repeater() {
+                  @Override public void iteration() {
+                      for (int i = 0; i < count; i++) {
+                          sink[0] += formatter.format(new ReflectionGetterEvaluator(orders[i & 1023])).length();
+                      }
+                  }
+              },
+              new Repeater() {
+                  @Override public void iteration() {
+                      for (int i = 0; i < count; i++) {
+                          sink[0] -= formatter.format(binding.evaluator(orders[i & 1023])).length();
+                      }
+                  }
+              });
+        bound.run(1, iterations);
+        System.out.println("bound:   " + bound.getAverageReport());
+        System.out.println("lengths: " + (sink[0] == 0L ? "match" : "MISMATCH"));
+    }
+
+    /** Прежний {@link ReflectionGetterEvaluator}. */
+    private static class LegacyGetterEvaluator implements KeywordEvaluator {
+        private final Object source;
+        private final Class<?> sourceClass;
+        private final Map<String, Method> methodCache = new TreeMap<>();
+
+        LegacyGetterEvaluator(Object source) {
+            this.source = source;
+            this.sourceClass = source.getClass();
+        }
+
+        @Override public String evaluate(String keyword) {
+            try {
+                Method method = methodCache.get(keyword);
+                if (method == null) {
+                    String name = Character.toUpperCase(keyword.charAt(0)) + keyword.substring(1);
+                    try {
+                        method = sourceClass.getMethod("get" + name);
+                    } catch (NoSuchMethodException ignored) {
+                        method = sourceClass.getMethod("is" + name);
+                    }
+                    methodCache.put(keyword, method);
+                }
+                return ReflectionEvaluatorHelper.formatterFor(method.getReturnType()).apply(method.invoke(source));
+            } catch (Exception ignored) {
+                return null;
+            }
+        }
+    }
+
+    /** Прежний {@link ReflectionFieldEvaluator}. */
+    private static class LegacyFieldEvaluator implements KeywordEvaluator {
+        private final Object source;
+        private final Class<?> sourceClass;
+        private final Map<String, Field> fieldCache = new TreeMap<>();
+
+        LegacyFieldEvaluator(Object source) {
+            this.source = source;
+            this.sourceClass = source.getClass();
+        }
+
+        @Override public String evaluate(String keyword) {
+            try {
+                Field field = fieldCache.get(keyword);
+                if (field == null) {
+                    field = sourceClass.getDeclaredField(keyword);
+                    field.setAccessible(true);
+                    fieldCache.put(keyword, field);
+                }
+                return ReflectionEvaluatorHelper.formatterFor(field.getType()).apply(field.get(source));
+            } catch (Exception ignored) {
+                return null;
+            }
+        }
+    }
+}
@@ -4,24 +4,34 @@ import tk.bolovsrol.utils.time.Duration;
 
 import java.math.BigDecimal;
 import java.util.Date;
+import java.util.function.Function;
 
 class ReflectionEvaluatorHelper {
     private ReflectionEvaluatorHelper() {
     }
 
-    public static String formatValue(Object value, Class<?> type) {
+    /**
+     * Выбирает, как превращать в строку значения объявленного типа. Выбор делается один раз
+     * при связывании ключевого слова с полем или геттером.
+     * <p/>
+     * Нул форматтер превращает в нул.
+     *
+     * @param type объявленный тип значения
+     * @return форматтер
+     */
+    public static Function<Object, String> formatterFor(Class<?> type) {
         if (String.class.isAssignableFrom(type)) {
-            return (String) value;
+            return value -> (String) value;
         } else if (BigDecimal.class.isAssignableFrom(type)) {
-            return ((BigDecimal) value).toPlainString();
+            return value -> value == null ? null : ((BigDecimal) value).toPlainString();
         } else if (Duration.class.isAssignableFrom(type)) {
-            return String.valueOf(((Duration) value).getMillis());
+            return value -> value == null ? null : String.valueOf(((Duration) value).getMillis());
 //        } else if (type.isPrimitive() || Number.class.isAssignableFrom(type) || type.isEnum() || Boolean.class.isAssignableFrom(type)) {
 //            return value.toString();
         } else if (Date.class.isAssignableFrom(type)) {
-            return String.valueOf(((Date) value).getTime());
+            return value -> value == null ? null : String.valueOf(((Date) value).getTime());
         } else {
-            return value.toString();
+            return value -> value == null ? null : value.toString();
         }
     }
 }
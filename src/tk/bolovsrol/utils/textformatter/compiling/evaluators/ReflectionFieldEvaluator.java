@@ -1,14 +1,10 @@
 package tk.bolovsrol.utils.textformatter.compiling.evaluators;
 
-import tk.bolovsrol.utils.StringUtils;
 import tk.bolovsrol.utils.textformatter.compiling.KeywordEvaluator;
 import tk.bolovsrol.utils.time.Duration;
 
-import java.lang.reflect.Field;
 import java.math.BigDecimal;
 import java.util.Date;
-import java.util.Map;
-import java.util.TreeMap;
 
 /**
  * Решает ключевые слова при помощи метода {@link Object#toString()} содержимого
@@ -22,13 +18,14 @@ import java.util.TreeMap;
  * <li>{@link Duration} — {@link Duration#getMillis()} и</li>
  * <li>{@link Date} — {@link Date#getTime()}.</li>
  * </ul>
+ * <p/>
+ * Найденные поля запоминаются для класса в {@link ReflectionAccessors}, так что заводить
+ * вычислитель на каждый объект дёшево.
  */
 public class ReflectionFieldEvaluator implements KeywordEvaluator {
 
     private final Object source;
-    private final Class<?> sourceClass;
-    private final Map<String, Field> fieldCache = new TreeMap<String, Field>();
-    private final boolean underscoreToCamel;
+    private final ReflectionAccessors accessors;
 
     /**
      * @param source            исследуемый объект
@@ -36,8 +33,7 @@ public class ReflectionFieldEvaluator implements KeywordEvaluator {
      */
     public ReflectionFieldEvaluator(Object source, boolean underscoreToCamel) {
         this.source = source;
-        this.sourceClass = source.getClass();
-        this.underscoreToCamel = underscoreToCamel;
+        this.accessors = ReflectionAccessors.fields(source.getClass(), underscoreToCamel);
     }
 
     public ReflectionFieldEvaluator(Object source) {
@@ -45,31 +41,6 @@ public class ReflectionFieldEvaluator implements KeywordEvaluator {
     }
 
     @Override public String evaluate(String keyword) {
-        try {
-            Field field = retrieveField(keyword);
-            return field == null ? null : ReflectionEvaluatorHelper.formatValue(field.get(source), field.getType());
-        } catch (Exception ignored) {
-            // there's nothing we can do
-            return null;
-        }
-    }
-
-    private Field retrieveField(String name) {
-        Field field = fieldCache.get(name);
-        if (field == null) {
-            Class<?> cl = this.sourceClass;
-            while (cl != null) {
-                try {
-                    field = cl.getDeclaredField(underscoreToCamel ? StringUtils.underscoreToCamel(name, false) : name);
-                    field.setAccessible(true);
-                    fieldCache.put(name, field);
-                    break;
-                } catch (NoSuchFieldException ignored) {
-                    // просто переходим к суперобъекту
-                }
-                cl = cl.getSuperclass();
-            }
-        }
-        return field;
+        return accessors.evaluate(source, keyword);
     }
 }
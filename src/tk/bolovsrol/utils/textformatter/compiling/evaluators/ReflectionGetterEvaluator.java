@@ -1,16 +1,11 @@
 package tk.bolovsrol.utils.textformatter.compiling.evaluators;
 
 import tk.bolovsrol.utils.StringDumpBuilder;
-import tk.bolovsrol.utils.StringUtils;
-import tk.bolovsrol.utils.reflectiondump.ExcludeFromReflectionDump;
 import tk.bolovsrol.utils.textformatter.compiling.KeywordEvaluator;
 import tk.bolovsrol.utils.time.Duration;
 
-import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.util.Date;
-import java.util.Map;
-import java.util.TreeMap;
 
 /**
  * Решает ключевые слова, используя публичные геттеры переданного объекта.
@@ -31,15 +26,16 @@ import java.util.TreeMap;
  * <li>{@link Date} → {@link Date#getTime()}.</li>
  * </ul>
  * Для объектов остальных типов возвращают {@link Object#toString()}.
+ * <p/>
+ * Найденные геттеры запоминаются для класса в {@link ReflectionAccessors}, так что заводить
+ * вычислитель на каждый объект дёшево.
  */
 public class ReflectionGetterEvaluator implements KeywordEvaluator {
 
     private final Object source;
     private final Class<?> sourceClass;
     private final boolean underscoreToCamel;
-
-    @ExcludeFromReflectionDump
-    private final Map<String, Method> methodCache = new TreeMap<>();
+    private final ReflectionAccessors accessors;
 
     /**
      * @param source            исследуемый объект
@@ -49,6 +45,7 @@ public class ReflectionGetterEvaluator implements KeywordEvaluator {
         this.source = source;
         this.sourceClass = source.getClass();
         this.underscoreToCamel = underscoreToCamel;
+        this.accessors = ReflectionAccessors.getters(sourceClass, underscoreToCamel);
     }
 
     public ReflectionGetterEvaluator(Object source) {
@@ -56,41 +53,7 @@ public class ReflectionGetterEvaluator implements KeywordEvaluator {
     }
 
     @Override public String evaluate(String keyword) {
-        try {
-            Method method = retrieveMethod(keyword);
-            return method == null ? null : ReflectionEvaluatorHelper.formatValue(method.invoke(source), method.getReturnType());
-        } catch (Exception ignored) {
-            // there's nothing we can do
-            return null;
-        }
-    }
-
-    private Method retrieveMethod(String name) throws NoSuchMethodException {
-        Method method = methodCache.get(name);
-        if (method == null) {
-            try {
-                method = sourceClass.getMethod("get" + formatName(name));
-            } catch (NoSuchMethodException ignored) {
-                method = sourceClass.getMethod("is" + formatName(name));
-            }
-            methodCache.put(name, method);
-        }
-        return method;
-    }
-
-    private String formatName(String name) {
-        if (underscoreToCamel) {
-            name = StringUtils.underscoreToCamel(name, false);
-        }
-        switch (name.length()) {
-        case 0:
-            return "";
-        case 1:
-            return name.toUpperCase();
-        default:
-            return Character.toUpperCase(name.charAt(0)) + name.substring(1);
-        }
-
+        return accessors.evaluate(source, keyword);
     }
 
     @Override public String toString() {
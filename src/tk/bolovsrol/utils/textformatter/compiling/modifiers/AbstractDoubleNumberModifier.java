@@ -1,6 +1,7 @@
 package tk.bolovsrol.utils.textformatter.compiling.modifiers;
 
 import tk.bolovsrol.utils.NumberUtils;
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifier;
 import tk.bolovsrol.utils.textformatter.compiling.modifiers.containers.BigDecimalContainer;
 import tk.bolovsrol.utils.textformatter.compiling.sections.Section;
@@ -29,9 +30,9 @@ public abstract class AbstractDoubleNumberModifier implements ValueModifier {
     }
 
     @Override
-    public String eval(String source, Section[] parameters, boolean strict) {
+    public String eval(String source, Section[] parameters, EvaluationContext context) {
         try {
-            return NumberUtils.getString(action(new BigDecimal(source), val2.get(parameters[0], strict)));
+            return NumberUtils.getString(action(new BigDecimal(source), val2.get(parameters[0], context)));
         } catch (Exception ignored) {
             return null;
         }
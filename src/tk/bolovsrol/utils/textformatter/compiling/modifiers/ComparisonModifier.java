@@ -1,5 +1,6 @@
 package tk.bolovsrol.utils.textformatter.compiling.modifiers;
 
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifier;
 import tk.bolovsrol.utils.textformatter.compiling.sections.Section;
@@ -31,12 +32,12 @@ public class ComparisonModifier implements ValueModifier {
     }
 
     @Override
-    public String eval(String source, Section[] parameters, boolean strict) throws EvaluationFailedException {
-        String specimen = parameters[0].evaluate(strict);
+    public String eval(String source, Section[] parameters, EvaluationContext context) throws EvaluationFailedException {
+        String specimen = parameters[0].evaluate(context);
         if (action.matches(source, specimen)) {
-            return parameters[1].evaluate(strict);
+            return parameters[1].evaluate(context);
         } else {
-            return parameters.length <= 2 ? "" : parameters[2].evaluate(strict);
+            return parameters.length <= 2 ? "" : parameters[2].evaluate(context);
         }
     }
 
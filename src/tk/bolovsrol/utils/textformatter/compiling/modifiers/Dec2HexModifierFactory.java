@@ -1,5 +1,6 @@
 package tk.bolovsrol.utils.textformatter.compiling.modifiers;
 
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifier;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifierFactory;
 import tk.bolovsrol.utils.textformatter.compiling.sections.Section;
@@ -22,7 +23,7 @@ public class Dec2HexModifierFactory implements ValueModifierFactory {
             }
 
             @Override
-            public String eval(String source, Section[] parameters, boolean strict) {
+            public String eval(String source, Section[] parameters, EvaluationContext context) {
                 try {
                     return new BigInteger(source).toString(16);
                 } catch (Exception ignored) {
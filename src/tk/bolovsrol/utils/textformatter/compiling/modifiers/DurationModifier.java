@@ -1,6 +1,7 @@
 package tk.bolovsrol.utils.textformatter.compiling.modifiers;
 
 import tk.bolovsrol.utils.Spell;
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifier;
 import tk.bolovsrol.utils.textformatter.compiling.sections.Section;
@@ -22,15 +23,15 @@ class DurationModifier implements ValueModifier {
     }
 
     @Override
-    public String eval(String source, Section[] parameters, boolean strict) throws EvaluationFailedException {
+    public String eval(String source, Section[] parameters, EvaluationContext context) throws EvaluationFailedException {
         try {
             long duration = Long.parseLong(source);
             TimeUtils.ForceFields forceFields = parameters.length > 0 ?
-                    TimeUtils.ForceFields.pickByShortcut(parameters[0].evaluate(strict)) :
+                    TimeUtils.ForceFields.pickByShortcut(parameters[0].evaluate(context)) :
                     TimeUtils.ForceFields.NOTHING;
             return TimeUtils.formatDuration(duration, forceFields);
         } catch (Exception e) {
-            if (strict) {
+            if (context.isStrict()) {
                 throw new EvaluationFailedException("String " + Spell.get(source) + " is not a duration", e);
             }
             return null;
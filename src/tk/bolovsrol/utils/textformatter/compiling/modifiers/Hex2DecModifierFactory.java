@@ -1,5 +1,6 @@
 package tk.bolovsrol.utils.textformatter.compiling.modifiers;
 
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifier;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifierFactory;
 import tk.bolovsrol.utils.textformatter.compiling.sections.Section;
@@ -22,7 +23,7 @@ public class Hex2DecModifierFactory implements ValueModifierFactory {
             }
 
             @Override
-            public String eval(String source, Section[] parameters, boolean strict) {
+            public String eval(String source, Section[] parameters, EvaluationContext context) {
                 try {
                     return new BigInteger(source, 16).toString();
                 } catch (Exception ignored) {
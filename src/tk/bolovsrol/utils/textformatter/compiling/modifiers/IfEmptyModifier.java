@@ -1,5 +1,6 @@
 package tk.bolovsrol.utils.textformatter.compiling.modifiers;
 
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifier;
 import tk.bolovsrol.utils.textformatter.compiling.sections.Section;
@@ -25,11 +26,11 @@ class IfEmptyModifier implements ValueModifier {
     }
 
     @Override
-    public String eval(String source, Section[] parameters, boolean strict) throws EvaluationFailedException {
+    public String eval(String source, Section[] parameters, EvaluationContext context) throws EvaluationFailedException {
         if (inverse ^ source.isEmpty()) {
-            return parameters[0].evaluate(strict);
+            return parameters[0].evaluate(context);
         } else {
-            return parameters.length <= 1 ? source : parameters[1].evaluate(strict);
+            return parameters.length <= 1 ? source : parameters[1].evaluate(context);
         }
     }
 
@@ -3,6 +3,7 @@ package tk.bolovsrol.utils.textformatter.compiling.modifiers;
 import tk.bolovsrol.utils.PatternCompileException;
 import tk.bolovsrol.utils.RegexUtils;
 import tk.bolovsrol.utils.Spell;
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifier;
 import tk.bolovsrol.utils.textformatter.compiling.modifiers.containers.PatternContainer;
@@ -33,16 +34,21 @@ class IfRegexModifier implements ValueModifier {
     }
 
     @Override
-    public String eval(String source, Section[] parameters, boolean strict) throws EvaluationFailedException {
+    public void prepare(Section[] parameters) {
+        specimen.prepare(parameters[0]);
+    }
+
+    @Override
+    public String eval(String source, Section[] parameters, EvaluationContext context) throws EvaluationFailedException {
         try {
-            Pattern specimen = this.specimen.get(parameters[0], strict);
+            Pattern specimen = this.specimen.get(parameters[0], context);
             if (inverse ^ RegexUtils.matches(specimen, source)) {
-                return parameters[1].evaluate(strict);
+                return parameters[1].evaluate(context);
             } else {
-                return parameters.length <= 2 ? "" : parameters[2].evaluate(strict);
+                return parameters.length <= 2 ? "" : parameters[2].evaluate(context);
             }
         } catch (PatternCompileException e) {
-            if (strict) {
+            if (context.isStrict()) {
                 throw new EvaluationFailedException("Could compile regexp from string " + Spell.get(source), e);
             }
             return null;
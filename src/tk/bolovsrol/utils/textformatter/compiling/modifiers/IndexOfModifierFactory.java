@@ -1,5 +1,6 @@
 package tk.bolovsrol.utils.textformatter.compiling.modifiers;
 
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifier;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifierFactory;
@@ -38,16 +39,16 @@ public class IndexOfModifierFactory implements ValueModifierFactory {
             }
 
             @Override
-            public String eval(String source, Section[] parameters, boolean strict) throws EvaluationFailedException {
+            public String eval(String source, Section[] parameters, EvaluationContext context) throws EvaluationFailedException {
                 int pos;
                 if (parameters.length > 1) {
-                    int from = this.from.get(parameters[1], strict);
+                    int from = this.from.get(parameters[1], context);
                     if (from < 0 || from >= source.length()) {
                         return "";
                     }
-                    pos = source.indexOf(needle.get(parameters[0], strict), from);
+                    pos = source.indexOf(needle.get(parameters[0], context), from);
                 } else {
-                    pos = source.indexOf(needle.get(parameters[0], strict));
+                    pos = source.indexOf(needle.get(parameters[0], context));
                 }
 
                 if (pos < 0) {
@@ -1,5 +1,6 @@
 package tk.bolovsrol.utils.textformatter.compiling.modifiers;
 
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifier;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifierFactory;
@@ -37,16 +38,16 @@ public class LastIndexOfModifierFactory implements ValueModifierFactory {
             }
 
             @Override
-            public String eval(String source, Section[] parameters, boolean strict) throws EvaluationFailedException {
+            public String eval(String source, Section[] parameters, EvaluationContext context) throws EvaluationFailedException {
                 int pos;
                 if (parameters.length > 1) {
-                    int from = this.from.get(parameters[1], strict);
+                    int from = this.from.get(parameters[1], context);
                     if (from < 0 || from >= source.length()) {
                         return "";
                     }
-                    pos = source.lastIndexOf(needle.get(parameters[0], strict), from);
+                    pos = source.lastIndexOf(needle.get(parameters[0], context), from);
                 } else {
-                    pos = source.lastIndexOf(needle.get(parameters[0], strict));
+                    pos = source.lastIndexOf(needle.get(parameters[0], context));
                 }
 
                 if (pos < 0) {
@@ -1,5 +1,6 @@
 package tk.bolovsrol.utils.textformatter.compiling.modifiers;
 
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifier;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifierFactory;
 import tk.bolovsrol.utils.textformatter.compiling.sections.Section;
@@ -19,7 +20,7 @@ public class LengthModifierFactory implements ValueModifierFactory {
             }
 
             @Override
-            public String eval(String source, Section[] parameters, boolean strict) {
+            public String eval(String source, Section[] parameters, EvaluationContext context) {
                 return String.valueOf(source.length());
             }
 
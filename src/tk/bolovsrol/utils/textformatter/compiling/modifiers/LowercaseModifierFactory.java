@@ -1,5 +1,6 @@
 package tk.bolovsrol.utils.textformatter.compiling.modifiers;
 
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifier;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifierFactory;
 import tk.bolovsrol.utils.textformatter.compiling.sections.Section;
@@ -21,7 +22,7 @@ public class LowercaseModifierFactory implements ValueModifierFactory {
             }
 
             @Override
-            public String eval(String source, Section[] parameters, boolean strict) {
+            public String eval(String source, Section[] parameters, EvaluationContext context) {
                 return source.toLowerCase();
             }
         };
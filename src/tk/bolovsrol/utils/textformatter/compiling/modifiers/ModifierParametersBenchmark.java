@@ -0,0 +1,86 @@
+package tk.bolovsrol.utils.textformatter.compiling.modifiers;
+
+import tk.bolovsrol.utils.benchmark.Comparer;
+import tk.bolovsrol.utils.benchmark.Repeater;
+import tk.bolovsrol.utils.textformatter.compiling.ProxyingCompiledFormatter;
+import tk.bolovsrol.utils.textformatter.compiling.evaluators.MapEvaluator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Сравнивает шаблон, нагруженный регэкспами и датами, с параметрами модификаторов,
+ * которые приходят из вычислителя, — так регэкспы и форматы дат собираются заново
+ * при каждом форматировании, как раньше было всегда, — с тем же шаблоном с постоянными параметрами,
+ * которые модификаторы разбирают один раз при компиляции.
+ * <p/>
+ * Запуск: <code>java tk.bolovsrol.utils.textformatter.compiling.modifiers.ModifierParametersBenchmark [форматирований] [итерации]</code>
+ */
+public class ModifierParametersBenchmark {
+
+    private static final String PHONE_REGEX = "^\\+7(9\\d\\d)";
+    private static final String MAIL_REGEX = "@(mail|list|bk)\\.ru$";
+    private static final String DATE_PATTERN = "dd.MM.yyyy HH:mm";
+    private static final String DAY_PATTERN = "yyyy-MM-dd";
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        ProxyingCompiledFormatter dynamic = ProxyingCompiledFormatter.create(
+              "{phone if-regex {phoneRegex} mobile landline}, {mail if-regex {mailRegex} mailru other}, "
+                    + "{mail replace {mailRegex} @***}, создан {created date {datePattern}}, "
+                    + "оплачен {paid date {dayPattern}}, доставлен {delivered date {datePattern}}");
+        ProxyingCompiledFormatter constant = ProxyingCompiledFormatter.create(
+              "{phone if-regex " + quote(PHONE_REGEX) + " mobile landline}, {mail if-regex " + quote(MAIL_REGEX) + " mailru other}, "
+                    + "{mail replace " + quote(MAIL_REGEX) + " @***}, создан {created date \"" + DATE_PATTERN + "\"}, "
+                    + "оплачен {paid date \"" + DAY_PATTERN + "\"}, доставлен {delivered date \"" + DATE_PATTERN + "\"}");
+
+        MapEvaluator[] evaluators = new MapEvaluator[1024];
+        for (int i = 0; i < evaluators.length; i++) {
+            Map<String, String> values = new HashMap<>();
+            values.put("phone", (i & 1) == 0 ? "+7916" + (1000000 + i) : "+7495" + (1000000 + i));
+            values.put("mail", "user" + i + ((i % 3) == 0 ? "@mail.ru" : "@example.com"));
+            values.put("created", String.valueOf(1500000000000L + i * 3600000L));
+            values.put("paid", String.valueOf(1500000000000L + i * 7200000L));
+            values.put("delivered", String.valueOf(1500000000000L + i * 86400000L));
+            values.put("phoneRegex", PHONE_REGEX);
+            values.put("mailRegex", MAIL_REGEX);
+            values.put("datePattern", DATE_PATTERN);
+            values.put("dayPattern", DAY_PATTERN);
+            evaluators[i] = new MapEvaluator(values);
+        }
+
+        boolean match = true;
+        for (MapEvaluator evaluator : evaluators) {
+            match &= dynamic.format(evaluator, true).equals(constant.format(evaluator, true));
+        }
+        System.out.println("sample: " + constant.format(evaluators[0]));
+        System.out.println("output: " + (match ? "match" : "MISMATCH"));
+
+        long[] sink = new long[1];
+        Comparer comparer = new Comparer(
+              new Repeater() {
+                  @Override public void iteration() {
+                      for (int i = 0; i < count; i++) {
+                          sink[0] += dynamic.format(evaluators[i & 1023]).length();
+                      }
+                  }
+              },
+              new Repeater() {
+                  @Override public void iteration() {
+                      for (int i = 0; i < count; i++) {
+                          sink[0] -= constant.format(evaluators[i & 1023]).length();
+                      }
+                  }
+              });
+        comparer.run(1, iterations);
+        System.out.println("format: " + comparer.getAverageReport());
+        System.out.println("length: " + (sink[0] == 0L ? "match" : "MISMATCH"));
+    }
+
+    /** Бэкслэш маскируется и в макросе, и в параметре, так что в постоянном параметре его нужно учетверить. */
+    private static String quote(String regex) {
+        return '"' + regex.replace("\\", "\\\\\\\\") + '"';
+    }
+}
@@ -1,5 +1,6 @@
 package tk.bolovsrol.utils.textformatter.compiling.modifiers;
 
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifier;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifierFactory;
 import tk.bolovsrol.utils.textformatter.compiling.modifiers.containers.IntContainer;
@@ -30,10 +31,10 @@ public class NumberRoundModifierFactory implements ValueModifierFactory {
             }
 
             @Override
-            public String eval(String source, Section[] parameters, boolean strict) {
+            public String eval(String source, Section[] parameters, EvaluationContext context) {
                 try {
                     BigDecimal number = new BigDecimal(source);
-                    BigDecimal roundedNumber = number.setScale(parameters.length > 0 ? decimalDigitsCount.get(parameters[0], strict) : 0, RoundingMode.HALF_UP);
+                    BigDecimal roundedNumber = number.setScale(parameters.length > 0 ? decimalDigitsCount.get(parameters[0], context) : 0, RoundingMode.HALF_UP);
                     return roundedNumber.toPlainString();
                 } catch (Exception ignored) {
                     return null;
@@ -1,6 +1,7 @@
 package tk.bolovsrol.utils.textformatter.compiling.modifiers;
 
 import tk.bolovsrol.utils.Spell;
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifier;
 import tk.bolovsrol.utils.textformatter.compiling.sections.Section;
@@ -23,27 +24,27 @@ class NumericCaseModifier implements ValueModifier {
     }
 
     @Override
-    public String eval(String source, Section[] parameters, boolean strict) throws EvaluationFailedException {
+    public String eval(String source, Section[] parameters, EvaluationContext context) throws EvaluationFailedException {
         try {
-            int index = getNumericCaseIndex(new BigDecimal(source), strict);
+            int index = getNumericCaseIndex(new BigDecimal(source), context);
             if (parameters.length == 2) {
-                return index == 0 ? "" : parameters[index - 1].evaluate(strict);
+                return index == 0 ? "" : parameters[index - 1].evaluate(context);
             } else {
-                return parameters[index].evaluate(strict);
+                return parameters[index].evaluate(context);
             }
         } catch (NumberFormatException e) {
-            if (strict) {
+            if (context.isStrict()) {
                 throw new EvaluationFailedException("String " + Spell.get(source) + " is not a number", e);
             }
             return null;
         }
     }
 
-    private static int getNumericCaseIndex(BigDecimal number, boolean strict) throws EvaluationFailedException {
+    private static int getNumericCaseIndex(BigDecimal number, EvaluationContext context) throws EvaluationFailedException {
         try {
             return getNumericCaseIndex(number.intValueExact());
         } catch (ArithmeticException e) {
-            if (strict) {
+            if (context.isStrict()) {
                 throw new EvaluationFailedException("Number " + Spell.get(number) + " is not an integer", e);
             }
             return 1;
@@ -1,5 +1,6 @@
 package tk.bolovsrol.utils.textformatter.compiling.modifiers;
 
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifier;
 import tk.bolovsrol.utils.textformatter.compiling.sections.Section;
@@ -33,17 +34,17 @@ public class NumericComparisonModifier implements ValueModifier {
     }
 
     @Override
-    public String eval(String source, Section[] parameters, boolean strict) throws EvaluationFailedException {
+    public String eval(String source, Section[] parameters, EvaluationContext context) throws EvaluationFailedException {
         try {
             BigDecimal sourceBd = new BigDecimal(source);
-            BigDecimal specimenBd = new BigDecimal(parameters[0].evaluate(strict));
+            BigDecimal specimenBd = new BigDecimal(parameters[0].evaluate(context));
             if (action.matches(sourceBd, specimenBd)) {
-                return parameters[1].evaluate(strict);
+                return parameters[1].evaluate(context);
             }
         } catch (NumberFormatException e) {
             // если один из компонентов не число, то сравнение даёт false
         }
-        return parameters.length <= 2 ? "" : parameters[2].evaluate(strict);
+        return parameters.length <= 2 ? "" : parameters[2].evaluate(context);
     }
 
     public static final NumericComparisonModifier EQUALS = new NumericComparisonModifier((a, b) -> a.compareTo(b) == 0);
@@ -1,6 +1,7 @@
 package tk.bolovsrol.utils.textformatter.compiling.modifiers;
 
 import tk.bolovsrol.utils.box.Box;
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifier;
 import tk.bolovsrol.utils.textformatter.compiling.sections.Section;
@@ -37,7 +38,7 @@ public class NumericUniModifier implements ValueModifier {
     }
 
     @Override
-    public String eval(String source, Section[] parameters, boolean strict) throws EvaluationFailedException {
+    public String eval(String source, Section[] parameters, EvaluationContext context) throws EvaluationFailedException {
         try {
             BigDecimal sourceBd = new BigDecimal(source);
             BigDecimal resultBd = Box.with(action.transform(sourceBd)).getOr(sourceBd);
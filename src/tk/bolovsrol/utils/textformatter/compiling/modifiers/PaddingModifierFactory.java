@@ -1,6 +1,7 @@
 package tk.bolovsrol.utils.textformatter.compiling.modifiers;
 
 import tk.bolovsrol.utils.StringUtils;
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifier;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifierFactory;
@@ -35,12 +36,12 @@ public class PaddingModifierFactory implements ValueModifierFactory {
             }
 
             @Override
-            public String eval(String source, Section[] parameters, boolean strict) throws EvaluationFailedException {
+            public String eval(String source, Section[] parameters, EvaluationContext context) throws EvaluationFailedException {
                 StringUtils.Padding padding;
                 if (this.padding != null) {
                     padding = this.padding;
                 } else {
-                    String val0 = parameters[0].evaluate(strict);
+                    String val0 = parameters[0].evaluate(context);
                     if (val0.equals("<") || val0.startsWith("l") || val0.startsWith("L")) {
                         padding = StringUtils.Padding.LEFT;
                     } else if (val0.equals(">") || val0.startsWith("r") || val0.startsWith("R")) {
@@ -53,8 +54,8 @@ public class PaddingModifierFactory implements ValueModifierFactory {
                     }
                 }
 
-                int minLen = this.minLen.get(parameters[1], strict);
-                String fill = parameters[2].evaluate(strict);
+                int minLen = this.minLen.get(parameters[1], context);
+                String fill = parameters[2].evaluate(context);
 
                 return StringUtils.pad(source, minLen, fill, padding);
             }
@@ -1,5 +1,6 @@
 package tk.bolovsrol.utils.textformatter.compiling.modifiers;
 
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifier;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifierFactory;
 import tk.bolovsrol.utils.textformatter.compiling.modifiers.containers.IntContainer;
@@ -30,10 +31,10 @@ public class RadixModifierFactory implements ValueModifierFactory {
             }
 
             @Override
-            public String eval(String source, Section[] parameters, boolean strict) {
+            public String eval(String source, Section[] parameters, EvaluationContext context) {
                 try {
-                    int from = this.from.get(parameters[0], strict);
-                    int to = this.to.get(parameters[1], strict);
+                    int from = this.from.get(parameters[0], context);
+                    int to = this.to.get(parameters[1], context);
                     return new BigInteger(source, from).toString(to);
                 } catch (Exception ignored) {
                     return null;
@@ -3,8 +3,10 @@ package tk.bolovsrol.utils.textformatter.compiling.modifiers;
 import tk.bolovsrol.utils.PatternCompileException;
 import tk.bolovsrol.utils.RegexUtils;
 import tk.bolovsrol.utils.Spell;
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifier;
+import tk.bolovsrol.utils.textformatter.compiling.modifiers.containers.PatternContainer;
 import tk.bolovsrol.utils.textformatter.compiling.sections.Section;
 
 /**
@@ -12,6 +14,8 @@ import tk.bolovsrol.utils.textformatter.compiling.sections.Section;
  */
 class ReplaceModifier implements ValueModifier {
 
+    private final PatternContainer pattern = new PatternContainer();
+
     @Override
     public int getMinParameterCount() {
         return 2;
@@ -23,13 +27,17 @@ class ReplaceModifier implements ValueModifier {
     }
 
     @Override
-    public String eval(String source, Section[] parameters, boolean strict) throws EvaluationFailedException {
-        String patternStr = parameters[0].evaluate(strict);
+    public void prepare(Section[] parameters) {
+        pattern.prepare(parameters[0]);
+    }
+
+    @Override
+    public String eval(String source, Section[] parameters, EvaluationContext context) throws EvaluationFailedException {
         try {
-            return RegexUtils.getMatcher(patternStr, source).replaceAll(parameters[1].evaluate(strict));
+            return RegexUtils.getMatcher(pattern.get(parameters[0], context), source).replaceAll(parameters[1].evaluate(context));
         } catch (PatternCompileException e) {
-            if (strict) {
-                throw new EvaluationFailedException("Could compile pattern " + Spell.get(patternStr), e);
+            if (context.isStrict()) {
+                throw new EvaluationFailedException("Could compile pattern " + Spell.get(parameters[0]), e);
             }
             return null;
         }
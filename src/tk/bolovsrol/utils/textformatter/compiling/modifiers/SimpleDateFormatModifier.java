@@ -1,23 +1,21 @@
 package tk.bolovsrol.utils.textformatter.compiling.modifiers;
 
 import tk.bolovsrol.utils.Spell;
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifier;
-import tk.bolovsrol.utils.textformatter.compiling.modifiers.containers.SimpleDateFormatContainer;
+import tk.bolovsrol.utils.textformatter.compiling.modifiers.containers.DateFormatContainer;
 import tk.bolovsrol.utils.textformatter.compiling.sections.Section;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-
 /**
- *
+ * Форматирует время в миллисекундах по шаблону {@link java.text.SimpleDateFormat}, см. {@link DateFormatContainer}.
  */
 class SimpleDateFormatModifier implements ValueModifier {
 
-    private final SimpleDateFormatContainer sdf;
+    private final DateFormatContainer format;
 
     public SimpleDateFormatModifier(boolean durationMode) {
-        sdf = new SimpleDateFormatContainer(durationMode);
+        format = new DateFormatContainer(durationMode);
     }
 
     @Override
@@ -31,23 +29,28 @@ class SimpleDateFormatModifier implements ValueModifier {
     }
 
     @Override
-    public String eval(String source, Section[] parameters, boolean strict) throws EvaluationFailedException {
-        Date date;
+    public void prepare(Section[] parameters) {
+        format.prepare(parameters[0]);
+    }
+
+    @Override
+    public String eval(String source, Section[] parameters, EvaluationContext context) throws EvaluationFailedException {
+        long millis;
         try {
-            date = new Date(Long.parseLong(source));
+            millis = Long.parseLong(source);
         } catch (Exception e) {
-            if (strict) {
+            if (context.isStrict()) {
                 throw new EvaluationFailedException("Cannot parse " + Spell.get(source) + "  as number", e);
             } else {
                 return null;
             }
         }
-        SimpleDateFormat sdf = this.sdf.get(parameters[0], strict);
+        DateFormatContainer.DateFormatter formatter = this.format.get(parameters[0], context);
         try {
-            return sdf.format(date);
+            return formatter.format(millis);
         } catch (Exception e) {
-            if (strict) {
-                throw new EvaluationFailedException("Cannot format " + Spell.get(source) + " with pattern " + Spell.get(sdf) + " as date ", e);
+            if (context.isStrict()) {
+                throw new EvaluationFailedException("Cannot format " + Spell.get(source) + " with pattern " + Spell.get(parameters[0]) + " as date ", e);
             } else {
                 return null;
             }
@@ -1,5 +1,6 @@
 package tk.bolovsrol.utils.textformatter.compiling.modifiers;
 
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifier;
 import tk.bolovsrol.utils.textformatter.compiling.modifiers.containers.IntContainer;
@@ -42,9 +43,9 @@ class SubstringByDelimiterModifier implements ValueModifier {
     }
 
     @Override
-    public String eval(String source, Section[] parameters, boolean strict) throws EvaluationFailedException {
-        String specimen = specimenCont.get(parameters[0], strict);
-        int fromPos = parameters.length > 2 ? fromPosCont.get(parameters[2], strict) : first ? 0 : -1;
+    public String eval(String source, Section[] parameters, EvaluationContext context) throws EvaluationFailedException {
+        String specimen = specimenCont.get(parameters[0], context);
+        int fromPos = parameters.length > 2 ? fromPosCont.get(parameters[2], context) : first ? 0 : -1;
 
         if (fromPos < 0) {
             fromPos = source.length() + fromPos;
@@ -52,7 +53,7 @@ class SubstringByDelimiterModifier implements ValueModifier {
 
         int index = first ? source.indexOf(specimen, fromPos) : source.lastIndexOf(specimen, fromPos);
         if (index < 0) {
-            return parameters.length > 1 ? ifEmptyCont.get(parameters[1], strict) : "";
+            return parameters.length > 1 ? ifEmptyCont.get(parameters[1], context) : "";
         } else {
             return until ? source.substring(0, index) : source.substring(index + specimen.length());
         }
@@ -1,5 +1,6 @@
 package tk.bolovsrol.utils.textformatter.compiling.modifiers;
 
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifier;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifierFactory;
 import tk.bolovsrol.utils.textformatter.compiling.modifiers.containers.IntContainer;
@@ -34,10 +35,10 @@ public class SubstringModifierFactory implements ValueModifierFactory {
             }
 
             @Override
-            public String eval(String source, Section[] parameters, boolean strict) {
+            public String eval(String source, Section[] parameters, EvaluationContext context) {
                 int from, to;
                 try {
-                    from = this.from.get(parameters[0], strict);
+                    from = this.from.get(parameters[0], context);
                     if (from < 0) {
                         from = source.length() + from;
                         if (from < 0) {
@@ -46,7 +47,7 @@ public class SubstringModifierFactory implements ValueModifierFactory {
                     }
 
                     if (parameters.length > 1) {
-                        to = this.to.get(parameters[1], strict);
+                        to = this.to.get(parameters[1], context);
                         if (to < 0) {
                             to = source.length() + to;
                         }
@@ -1,6 +1,7 @@
 package tk.bolovsrol.utils.textformatter.compiling.modifiers;
 
 import tk.bolovsrol.utils.StringUtils;
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifier;
 import tk.bolovsrol.utils.textformatter.compiling.modifiers.containers.EnumContainer;
@@ -37,13 +38,13 @@ class TrimModifier implements ValueModifier {
     }
 
     @Override
-    public String eval(String source, Section[] parameters, boolean strict) throws EvaluationFailedException {
+    public String eval(String source, Section[] parameters, EvaluationContext context) throws EvaluationFailedException {
         try {
             CharsFilter charsFilter;
             if (this.charsFilter != null) {
                 charsFilter = this.charsFilter;
             } else {
-                charsFilter = new CharsFilter(parameters[0].evaluate(strict));
+                charsFilter = new CharsFilter(parameters[0].evaluate(context));
                 if (parameters[0].isConstant()) {
                     this.charsFilter = charsFilter;
                 }
@@ -53,11 +54,11 @@ class TrimModifier implements ValueModifier {
             if (parameters.length == 1) {
                 trimMode = StringUtils.TrimMode.BOTH;
             } else {
-                trimMode = this.trimMode.get(parameters[1], strict);
+                trimMode = this.trimMode.get(parameters[1], context);
             }
             return StringUtils.trim(source, charsFilter, trimMode);
         } catch (Exception e) {
-            if (strict) {
+            if (context.isStrict()) {
                 throw new EvaluationFailedException("Cannot apply trim modifier", e);
             }
             return null;
@@ -1,5 +1,6 @@
 package tk.bolovsrol.utils.textformatter.compiling.modifiers;
 
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifier;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifierFactory;
@@ -33,9 +34,9 @@ public class WithoutPrefixModifierFactory implements ValueModifierFactory {
             }
 
             @Override
-            public String eval(String source, Section[] parameters, boolean strict) throws EvaluationFailedException {
+            public String eval(String source, Section[] parameters, EvaluationContext context) throws EvaluationFailedException {
                 for (Section parameter : parameters) {
-                    String val = parameter.evaluate(strict);
+                    String val = parameter.evaluate(context);
                     if (source.startsWith(val)) {
                         return source.substring(val.length());
                     }
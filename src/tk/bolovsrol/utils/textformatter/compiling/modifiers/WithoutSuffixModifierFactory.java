@@ -1,5 +1,6 @@
 package tk.bolovsrol.utils.textformatter.compiling.modifiers;
 
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifier;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifierFactory;
@@ -33,9 +34,9 @@ public class WithoutSuffixModifierFactory implements ValueModifierFactory {
             }
 
             @Override
-            public String eval(String source, Section[] parameters, boolean strict) throws EvaluationFailedException {
+            public String eval(String source, Section[] parameters, EvaluationContext context) throws EvaluationFailedException {
                 for (Section parameter : parameters) {
-                    String val = parameter.evaluate(strict);
+                    String val = parameter.evaluate(context);
                     if (source.endsWith(val)) {
                         return source.substring(0, source.length() - val.length());
                     }
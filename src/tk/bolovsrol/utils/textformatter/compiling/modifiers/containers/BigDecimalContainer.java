@@ -1,5 +1,6 @@
 package tk.bolovsrol.utils.textformatter.compiling.modifiers.containers;
 
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
 import tk.bolovsrol.utils.textformatter.compiling.sections.Section;
 
@@ -11,11 +12,11 @@ import java.math.BigDecimal;
 public class BigDecimalContainer {
     private BigDecimal value;
 
-    public BigDecimal get(Section section, boolean strict) throws NumberFormatException, EvaluationFailedException {
+    public BigDecimal get(Section section, EvaluationContext context) throws NumberFormatException, EvaluationFailedException {
         if (value != null) {
             return value;
         }
-        BigDecimal value = new BigDecimal(section.evaluate(strict));
+        BigDecimal value = new BigDecimal(section.evaluate(context));
         if (section.isConstant()) {
             this.value = value;
         }
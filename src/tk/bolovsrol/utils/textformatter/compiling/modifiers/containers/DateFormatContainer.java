@@ -0,0 +1,200 @@
+package tk.bolovsrol.utils.textformatter.compiling.modifiers.containers;
+
+import tk.bolovsrol.utils.Spell;
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
+import tk.bolovsrol.utils.textformatter.compiling.sections.Section;
+
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.zone.ZoneOffsetTransition;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Формат даты для параметра модификатора. Шаблон задаётся в синтаксисе {@link SimpleDateFormat}.
+ * <p/>
+ * Если шаблон состоит только из полей, которые {@link DateTimeFormatter} понимает точно так же
+ * (год не длиннее четырёх букв, месяц и день числами, часы, минуты, секунды,
+ * миллисекунды «SSS»), форматирует потокобезопасный {@link DateTimeFormatter},
+ * иначе — {@link SimpleDateFormat}, у каждого треда свой.
+ * <p/>
+ * Одинаково они выводят только годы с 1583 по 9999: раньше {@link SimpleDateFormat} считает
+ * по юлианскому календарю, а годы длиннее четырёх цифр {@link DateTimeFormatter} пишет с плюсом.
+ * Кроме того, {@link SimpleDateFormat} не знает переходов часовых поясов до 1900 года,
+ * а {@link DateTimeFormatter} знает, вплоть до местного солнечного времени, так что
+ * в поясах с переходами он берётся только после 1900 года и первого перехода.
+ * Время за этими пределами всегда форматирует {@link SimpleDateFormat}.
+ * <p/>
+ * Постоянный параметр разбирается один раз, обычно ещё при компиляции шаблона.
+ */
+public class DateFormatContainer {
+
+    /** Форматирует время в миллисекундах. */
+    @FunctionalInterface public interface DateFormatter {
+        String format(long millis);
+    }
+
+    /**
+     * Пределы, в которых {@link DateTimeFormatter} форматирует так же, как {@link SimpleDateFormat},
+     * с запасом в сутки на часовой пояс.
+     */
+    private static final long DATE_TIME_FORMATTER_MIN_MILLIS = Instant.parse("1583-01-02T00:00:00Z").toEpochMilli();
+    private static final long DATE_TIME_FORMATTER_MAX_MILLIS = Instant.parse("9999-12-31T00:00:00Z").toEpochMilli();
+    private static final long DATE_TIME_FORMATTER_ZONED_MIN_MILLIS = Instant.parse("1900-01-02T00:00:00Z").toEpochMilli();
+
+    private volatile DateFormatter value;
+    private final boolean durationMode;
+
+    /** @param durationMode не учитывать часовой пояс, показывать длительность */
+    public DateFormatContainer(boolean durationMode) {
+        this.durationMode = durationMode;
+    }
+
+    /**
+     * Заранее разбирает постоянный параметр. Если не разбирается, ошибка
+     * случится при форматировании.
+     *
+     * @param section параметр
+     */
+    public void prepare(Section section) {
+        if (section.isConstant()) {
+            try {
+                value = compile(section.evaluate(EvaluationContext.forConstants()), true);
+            } catch (Exception ignored) {
+                // ругнёмся при форматировании
+            }
+        }
+    }
+
+    public DateFormatter get(Section section, EvaluationContext context) throws EvaluationFailedException {
+        DateFormatter cached = this.value;
+        if (cached != null) {
+            return cached;
+        }
+        String pattern = section.evaluate(context);
+        DateFormatter value;
+        try {
+            value = compile(pattern, section.isConstant());
+        } catch (Exception e) {
+            if (context.isStrict()) {
+                throw new EvaluationFailedException("Error compiling date format with pattern " + Spell.get(pattern), e);
+            } else {
+                return null;
+            }
+        }
+        if (section.isConstant()) {
+            this.value = value;
+        }
+        return value;
+    }
+
+    /**
+     * @param pattern шаблон {@link SimpleDateFormat}
+     * @param shared форматтер будут использовать разные треды
+     * @return форматтер
+     */
+    private DateFormatter compile(String pattern, boolean shared) {
+        DateFormatter simple = compileSimpleDateFormat(pattern, shared);
+        if (isDateTimeFormatterCompatible(pattern)) {
+            try {
+                ZoneId zone = durationMode ? ZoneOffset.UTC : ZoneId.systemDefault();
+                DateTimeFormatter formatter = DateTimeFormatter.ofPattern(pattern).withZone(zone);
+                List<ZoneOffsetTransition> transitions = zone.getRules().getTransitions();
+                long min = transitions.isEmpty() ? DATE_TIME_FORMATTER_MIN_MILLIS
+                      : Math.max(DATE_TIME_FORMATTER_ZONED_MIN_MILLIS, transitions.get(0).getInstant().toEpochMilli());
+                return millis -> {
+                    if (millis >= min && millis < DATE_TIME_FORMATTER_MAX_MILLIS) {
+                        try {
+                            return formatter.format(Instant.ofEpochMilli(millis));
+                        } catch (RuntimeException ignored) {
+                            // пусть разбирается SimpleDateFormat
+                        }
+                    }
+                    return simple.format(millis);
+                };
+            } catch (IllegalArgumentException ignored) {
+                // пусть разбирается SimpleDateFormat
+            }
+        }
+        return simple;
+    }
+
+    private DateFormatter compileSimpleDateFormat(String pattern, boolean shared) {
+        SimpleDateFormat sdf = new SimpleDateFormat(pattern);
+        if (durationMode) {
+            sdf.setTimeZone(TimeZone.getTimeZone("GMT"));
+        }
+        if (!shared) {
+            return millis -> sdf.format(new Date(millis));
+        }
+        ThreadLocal<SimpleDateFormat> local = ThreadLocal.withInitial(() -> (SimpleDateFormat) sdf.clone());
+        return millis -> local.get().format(new Date(millis));
+    }
+
+    /**
+     * Проверяет, что шаблон {@link SimpleDateFormat} значит для {@link DateTimeFormatter} то же самое.
+     * Буквы допускаются только такие, которые оба форматтера выводят одинаково,
+     * а символы, зарезервированные {@link DateTimeFormatter}'ом, — только в кавычках.
+     *
+     * @param pattern шаблон
+     * @return true, если шаблон можно отдать {@link DateTimeFormatter}'у
+     */
+    static boolean isDateTimeFormatterCompatible(String pattern) {
+        int length = pattern.length();
+        int i = 0;
+        while (i < length) {
+            char ch = pattern.charAt(i);
+            if (ch == '\'') {
+                int close = pattern.indexOf('\'', i + 1);
+                if (close < 0) {
+                    return false;
+                }
+                i = close + 1;
+                continue;
+            }
+            if (ch == '[' || ch == ']' || ch == '{' || ch == '}' || ch == '#') {
+                return false;
+            }
+            if ((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z')) {
+                int count = 1;
+                while (i + count < length && pattern.charAt(i + count) == ch) {
+                    count++;
+                }
+                switch (ch) {
+                    case 'y':
+                        // на длинных годах DateTimeFormatter выходит за свои пределы ширины
+                        if (count > 4) {
+                            return false;
+                        }
+                        break;
+                    case 'M':
+                    case 'd':
+                    case 'H':
+                    case 'h':
+                    case 'm':
+                    case 's':
+                        if (count > 2) {
+                            return false;
+                        }
+                        break;
+                    case 'S':
+                        if (count != 3) {
+                            return false;
+                        }
+                        break;
+                    default:
+                        return false;
+                }
+                i += count;
+                continue;
+            }
+            i++;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,64 @@
+package tk.bolovsrol.utils.textformatter.compiling.modifiers.containers;
+
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
+import tk.bolovsrol.utils.textformatter.compiling.ProxyingCompiledFormatter;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Проверяет, что модификаторы date и dur выводят ровно то же, что {@link SimpleDateFormat}
+ * с тем же шаблоном, и для шаблонов, которые берёт {@link java.time.format.DateTimeFormatter},
+ * и для остальных: на граничных и случайных значениях за ±12 тысяч лет.
+ * <p/>
+ * Часовой пояс задаётся как обычно: <code>java -Duser.timezone=Asia/Kolkata
+ * tk.bolovsrol.utils.textformatter.compiling.modifiers.containers.DateFormatContainerCheck [количество значений]</code>
+ */
+public class DateFormatContainerCheck {
+
+    private static final String[] PATTERNS = {
+          "dd.MM.yyyy HH:mm:ss", "yyyy-MM-dd HH:mm:ss.SSS", "d.M.yy h:m:s", "y", "yyy",
+          "yyyyy", "yyyyyyyyyyy/", "dd MMM yyyy", "EEE", "SS", "'Дата:' dd.MM",
+    };
+
+    private static final long[] EDGES = {
+          0L, -62135596800000L, -12219292800000L, -2208988800000L, 253402300799999L, 253402300800000L,
+    };
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        int values = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        Random random = new Random(1L);
+        for (String pattern : PATTERNS) {
+            for (boolean durationMode : new boolean[]{false, true}) {
+                ProxyingCompiledFormatter formatter = ProxyingCompiledFormatter.create("{t " + (durationMode ? "dur" : "date") + " \"" + pattern + "\"}");
+                SimpleDateFormat sdf = new SimpleDateFormat(pattern);
+                if (durationMode) {
+                    sdf.setTimeZone(TimeZone.getTimeZone("GMT"));
+                }
+                int mismatches = 0;
+                for (int i = 0; i < EDGES.length + values; i++) {
+                    long millis = i < EDGES.length ? EDGES[i] : random.nextLong() % 400000000000000L;
+                    String expected = sdf.format(new Date(millis));
+                    String actual;
+                    try {
+                        actual = formatter.format(keyword -> String.valueOf(millis), true);
+                    } catch (EvaluationFailedException | RuntimeException e) {
+                        actual = e.toString();
+                    }
+                    if (!expected.equals(actual) && mismatches++ < 3) {
+                        System.out.println(pattern + (durationMode ? " (dur) " : " ") + millis + ": expected " + expected + ", got " + actual);
+                    }
+                }
+                if (mismatches > 0) {
+                    failures++;
+                }
+            }
+        }
+        System.out.println(failures == 0 ? "date formats: ok" : "date formats: " + failures + " patterns differ");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+}
@@ -1,5 +1,6 @@
 package tk.bolovsrol.utils.textformatter.compiling.modifiers.containers;
 
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
 import tk.bolovsrol.utils.textformatter.compiling.sections.Section;
 
@@ -14,11 +15,11 @@ public class EnumContainer<E extends Enum<E>> {
         this.clas = clas;
     }
 
-    public E get(Section section, boolean strict) throws IllegalArgumentException, EvaluationFailedException {
+    public E get(Section section, EvaluationContext context) throws IllegalArgumentException, EvaluationFailedException {
         if (value != null) {
             return value;
         }
-        E value = Enum.valueOf(clas, section.evaluate(strict).toUpperCase());
+        E value = Enum.valueOf(clas, section.evaluate(context).toUpperCase());
         if (section.isConstant()) {
             this.value = value;
         }
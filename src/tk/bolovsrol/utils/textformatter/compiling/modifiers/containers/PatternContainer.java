@@ -2,22 +2,40 @@ package tk.bolovsrol.utils.textformatter.compiling.modifiers.containers;
 
 import tk.bolovsrol.utils.PatternCompileException;
 import tk.bolovsrol.utils.RegexUtils;
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
 import tk.bolovsrol.utils.textformatter.compiling.sections.Section;
 
 import java.util.regex.Pattern;
 
 /**
- *
+ * Регэксп для параметра модификатора. Постоянный параметр компилируется один раз.
  */
 public class PatternContainer {
-    private Pattern value;
+    private volatile Pattern value;
 
-    public Pattern get(Section section, boolean strict) throws PatternCompileException, EvaluationFailedException {
-        if (value != null) {
-            return value;
+    /**
+     * Заранее компилирует постоянный параметр. Если не компилируется, ошибка
+     * случится при форматировании.
+     *
+     * @param section параметр
+     */
+    public void prepare(Section section) {
+        if (section.isConstant()) {
+            try {
+                value = RegexUtils.compilePattern(section.evaluate(EvaluationContext.forConstants()));
+            } catch (Exception ignored) {
+                // ругнёмся при форматировании
+            }
+        }
+    }
+
+    public Pattern get(Section section, EvaluationContext context) throws PatternCompileException, EvaluationFailedException {
+        Pattern cached = this.value;
+        if (cached != null) {
+            return cached;
         }
-        Pattern value = RegexUtils.compilePattern(section.evaluate(strict));
+        Pattern value = RegexUtils.compilePattern(section.evaluate(context));
         if (section.isConstant()) {
             this.value = value;
         }
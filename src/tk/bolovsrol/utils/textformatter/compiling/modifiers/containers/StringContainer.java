@@ -1,5 +1,6 @@
 package tk.bolovsrol.utils.textformatter.compiling.modifiers.containers;
 
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
 import tk.bolovsrol.utils.textformatter.compiling.sections.Section;
 
@@ -9,11 +10,11 @@ import tk.bolovsrol.utils.textformatter.compiling.sections.Section;
 public class StringContainer {
     private String value;
 
-    public String get(Section section, boolean strict) throws NumberFormatException, EvaluationFailedException {
+    public String get(Section section, EvaluationContext context) throws NumberFormatException, EvaluationFailedException {
         if (value != null) {
             return value;
         }
-        String value = section.evaluate(strict);
+        String value = section.evaluate(context);
         if (section.isConstant()) {
             this.value = value;
         }
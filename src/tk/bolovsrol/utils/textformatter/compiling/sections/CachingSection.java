@@ -0,0 +1,51 @@
+package tk.bolovsrol.utils.textformatter.compiling.sections;
+
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
+
+/**
+ * Секция, значение которой запоминается в контексте форматирования, если компилятор
+ * выдал ей ячейку. Ячейку выдают секциям, которые встречаются в шаблоне больше одного раза,
+ * прочие вычисляются сразу.
+ */
+public abstract class CachingSection implements Section {
+
+    private int slot = -1;
+
+    /** @return номер ячейки в контексте или -1, если значение не запоминается */
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * Назначает секции ячейку в контексте форматирования. Вызывается компилятором до того,
+     * как шаблон отдан в использование.
+     *
+     * @param slot номер ячейки
+     */
+    public void setSlot(int slot) {
+        this.slot = slot;
+    }
+
+    @Override
+    public final String evaluate(EvaluationContext context) throws EvaluationFailedException {
+        if (slot < 0) {
+            return compute(context);
+        }
+        String value = context.getCached(slot);
+        if (value == null) {
+            value = compute(context);
+            context.cache(slot, value);
+        }
+        return value;
+    }
+
+    /**
+     * Вычисляет значение секции.
+     *
+     * @param context контекст форматирования
+     * @return значение секции, не нул
+     */
+    protected abstract String compute(EvaluationContext context) throws EvaluationFailedException;
+
+}
@@ -1,5 +1,7 @@
 package tk.bolovsrol.utils.textformatter.compiling.sections;
 
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
+
 /** Просто строка текста.. */
 public class ConstSection implements Section {
 
@@ -16,13 +18,13 @@ public class ConstSection implements Section {
     }
 
     @Override
-    public String evaluate(boolean strict) {
+    public String evaluate(EvaluationContext context) {
         return value;
     }
 
-    @Override
-    public void reset() {
-        // nothing to do
+    /** @return текст секции */
+    public String getValue() {
+        return value;
     }
 
     @Override
@@ -1,20 +1,17 @@
 package tk.bolovsrol.utils.textformatter.compiling.sections;
 
 import tk.bolovsrol.utils.Spell;
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
 import tk.bolovsrol.utils.textformatter.compiling.KeywordEvaluator;
 
-/** Макрозначение, возвращённое вычислятелем {@link KeywordEvaluator}-а. */
-public class MacroSection implements Section {
+/** Макрозначение, возвращённое вычислятелем {@link KeywordEvaluator}-а контекста. */
+public class MacroSection extends CachingSection {
 
     private final String keyword;
-    private final KeywordEvaluator keywordEvaluator;
 
-    private String value;
-
-    public MacroSection(String keyword, KeywordEvaluator keywordEvaluator) {
+    public MacroSection(String keyword) {
         this.keyword = keyword;
-        this.keywordEvaluator = keywordEvaluator;
     }
 
     @Override
@@ -22,24 +19,17 @@ public class MacroSection implements Section {
         return false;
     }
 
-    @Override public String evaluate(boolean strict) throws EvaluationFailedException {
+    @Override protected String compute(EvaluationContext context) throws EvaluationFailedException {
+        String value = context.evaluate(keyword);
         if (value == null) {
-            value = keywordEvaluator.evaluate(keyword);
-            if (value == null) {
-                if (strict) {
-                    throw new EvaluationFailedException("Keyword " + Spell.get(keyword) + " is not defined or inacceptable");
-                }
-                value = "";
+            if (context.isStrict()) {
+                throw new EvaluationFailedException("Keyword " + Spell.get(keyword) + " is not defined or inacceptable");
             }
+            value = "";
         }
         return value;
     }
 
-    @Override
-    public void reset() {
-        value = null;
-    }
-
     @Override
     public int hashCode() {
         return keyword.hashCode();
@@ -1,6 +1,7 @@
 package tk.bolovsrol.utils.textformatter.compiling.sections;
 
 import tk.bolovsrol.utils.Spell;
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
 import tk.bolovsrol.utils.textformatter.compiling.InvalidValueModifierException;
 import tk.bolovsrol.utils.textformatter.compiling.ValueModifier;
@@ -8,19 +9,18 @@ import tk.bolovsrol.utils.textformatter.compiling.ValueModifier;
 import java.util.Arrays;
 
 /** Модификатор значения делегированной секции модификатором {@link ValueModifier}. */
-public class ModifierSection implements Section {
+public class ModifierSection extends CachingSection {
 
     private final Section sourceSection;
     private final ValueModifier valueModifier;
     private final Section[] modifierParameters;
 
-    private String value;
-
     public ModifierSection(Section sourceSection, ValueModifier valueModifier, Section[] modifierParameters) throws InvalidValueModifierException {
         this.sourceSection = sourceSection;
         this.valueModifier = valueModifier;
         this.modifierParameters = modifierParameters;
         check(valueModifier, modifierParameters);
+        valueModifier.prepare(modifierParameters);
     }
 
     private static void check(ValueModifier valueModifier, Section[] modifierParameters) throws InvalidValueModifierException {
@@ -46,29 +46,18 @@ public class ModifierSection implements Section {
     }
 
     @Override
-    public String evaluate(boolean strict) throws EvaluationFailedException {
+    protected String compute(EvaluationContext context) throws EvaluationFailedException {
+        String unmodifiedValue = sourceSection.evaluate(context);
+        String value = valueModifier.eval(unmodifiedValue, modifierParameters, context);
         if (value == null) {
-            String unmodifiedValue = sourceSection.evaluate(strict);
-            value = valueModifier.eval(unmodifiedValue, modifierParameters, strict);
-            if (value == null) {
-                if (strict) {
-                    throw new EvaluationFailedException("Cannot modify value " + Spell.get(unmodifiedValue) + " with modifier " + valueModifier);
-                }
-                return "";
+            if (context.isStrict()) {
+                throw new EvaluationFailedException("Cannot modify value " + Spell.get(unmodifiedValue) + " with modifier " + valueModifier);
             }
+            return "";
         }
         return value;
     }
 
-    @Override
-    public void reset() {
-        value = null;
-        sourceSection.reset();
-        for (Section modifierParameter : modifierParameters) {
-            modifierParameter.reset();
-        }
-    }
-
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -1,18 +1,49 @@
 package tk.bolovsrol.utils.textformatter.compiling.sections;
 
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
 
+import java.util.ArrayList;
 import java.util.List;
 
-/** Последовательность нескольких секций. */
-public class MultiSection implements Section {
+/**
+ * Последовательность нескольких секций.
+ * <p/>
+ * Идущие подряд постоянные секции склеиваются в одну при создании.
+ */
+public class MultiSection extends CachingSection {
 
     private final List<Section> sections;
-
-    private String value;
+    private final Section[] parts;
+    private final int constLength;
 
     public MultiSection(List<Section> sections) {
         this.sections = sections;
+        List<Section> parts = new ArrayList<>(sections.size());
+        StringBuilder consts = null;
+        int constLength = 0;
+        for (Section section : sections) {
+            if (section instanceof ConstSection) {
+                String value = ((ConstSection) section).getValue();
+                constLength += value.length();
+                if (consts == null) {
+                    consts = new StringBuilder(value);
+                } else {
+                    consts.append(value);
+                }
+            } else {
+                if (consts != null) {
+                    parts.add(new ConstSection(consts.toString()));
+                    consts = null;
+                }
+                parts.add(section);
+            }
+        }
+        if (consts != null) {
+            parts.add(new ConstSection(consts.toString()));
+        }
+        this.parts = parts.toArray(new Section[parts.size()]);
+        this.constLength = constLength;
     }
 
     @Override
@@ -22,22 +53,32 @@ public class MultiSection implements Section {
     }
 
     @Override
-    public String evaluate(boolean strict) throws EvaluationFailedException {
+    protected String compute(EvaluationContext context) throws EvaluationFailedException {
+        StringBuilder sb = new StringBuilder(constLength + 32 * parts.length);
+        appendParts(context, sb);
+        return sb.toString();
+    }
+
+    @Override
+    public void appendTo(EvaluationContext context, StringBuilder sb) throws EvaluationFailedException {
+        int slot = getSlot();
+        if (slot < 0) {
+            appendParts(context, sb);
+            return;
+        }
+        String value = context.getCached(slot);
         if (value == null) {
-            StringBuilder sb = new StringBuilder(32 * sections.size());
-            for (Section section : sections) {
-                sb.append(section.evaluate(strict));
-            }
-            value = sb.toString();
+            int start = sb.length();
+            appendParts(context, sb);
+            context.cache(slot, sb.substring(start));
+        } else {
+            sb.append(value);
         }
-        return value;
     }
 
-    @Override
-    public void reset() {
-        value = null;
-        for (Section section : sections) {
-            section.reset();
+    private void appendParts(EvaluationContext context, StringBuilder sb) throws EvaluationFailedException {
+        for (Section part : parts) {
+            part.appendTo(context, sb);
         }
     }
 
@@ -1,24 +1,40 @@
 package tk.bolovsrol.utils.textformatter.compiling.sections;
 
+import tk.bolovsrol.utils.textformatter.compiling.EvaluationContext;
 import tk.bolovsrol.utils.textformatter.compiling.EvaluationFailedException;
 
-/** Секция шаблона. */
+/**
+ * Секция шаблона.
+ * <p/>
+ * Секция не хранит состояния форматирования, всё нужное ей лежит в {@link EvaluationContext},
+ * так что одну и ту же секцию можно вычислять из нескольких тредов одновременно.
+ */
 public interface Section {
 
     /**
-     * @return true тогда и только тогда, когда результат {@link #evaluate(boolean)}
+     * @return true тогда и только тогда, когда результат {@link #evaluate(EvaluationContext)}
      *         не зависит от внешних факторов.
      */
     boolean isConstant();
 
     /**
-     * Вычисляет значение секции в соответствии с актуальным вычислятелем.
+     * Вычисляет значение секции в соответствии с вычислятелем контекста.
      *
+     * @param context контекст форматирования
      * @return значение секции
      */
-    String evaluate(boolean strict) throws EvaluationFailedException;
+    String evaluate(EvaluationContext context) throws EvaluationFailedException;
 
-    /** Сбрасывает возможные внутренние кэши секции. */
-    void reset();
+    /**
+     * Дописывает значение секции в стрингбилдер.
+     * <p/>
+     * Составные секции пишут туда части по очереди, не собирая промежуточную строку.
+     *
+     * @param context контекст форматирования
+     * @param sb куда писать
+     */
+    default void appendTo(EvaluationContext context, StringBuilder sb) throws EvaluationFailedException {
+        sb.append(evaluate(context));
+    }
 
 }
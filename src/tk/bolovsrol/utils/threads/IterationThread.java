@@ -6,6 +6,10 @@ import tk.bolovsrol.utils.log.Log;
 import tk.bolovsrol.utils.log.LogDome;
 import tk.bolovsrol.utils.properties.Cfg;
 import tk.bolovsrol.utils.time.Duration;
+import tk.bolovsrol.utils.time.SystemTimeSource;
+import tk.bolovsrol.utils.time.TimeSource;
+
+import java.util.concurrent.TimeUnit;
 
 /**
  * Квантовый тред повыполняется-повыполняется, да поспит.
@@ -14,6 +18,8 @@ import tk.bolovsrol.utils.time.Duration;
  * <p>
  * Достаточно заимплементить метод {@link #work()},
  * в котором выполнять периодическое действие.
+ * <p>
+ * Паузы отсчитываются по монотонным часам {@link TimeSource}, для тестов его можно подменить.
  */
 public abstract class IterationThread extends HaltableThread {
 
@@ -28,6 +34,7 @@ public abstract class IterationThread extends HaltableThread {
     protected long errorSleep;
     protected long aliveNotifyTimeout;
     protected String aliveNotifyMessage;
+    protected TimeSource timeSource = SystemTimeSource.getStatic();
 
     protected IterationThread(String name) {
         this(name, Log.getInstance());
@@ -107,6 +114,14 @@ public abstract class IterationThread extends HaltableThread {
         this.aliveNotifyMessage = aliveNotifyMessage;
     }
 
+    public TimeSource getTimeSource() {
+        return timeSource;
+    }
+
+    public void setTimeSource(TimeSource timeSource) {
+        this.timeSource = timeSource;
+    }
+
     public boolean isSleepBeforeFirstIteration() {
         return sleepBeforeFirstIteration;
     }
@@ -164,7 +179,7 @@ public abstract class IterationThread extends HaltableThread {
      * @throws InterruptedException
      */
     protected void sleepAfterError() throws InterruptedException {
-        Thread.sleep(errorSleep);
+        timeSource.sleepMillis(errorSleep);
     }
 
     /**
@@ -179,8 +194,13 @@ public abstract class IterationThread extends HaltableThread {
         try {
             synchronized (this) {
                 // it's ok if we wake up earlier
-                //noinspection WaitNotInLoop,UnconditionalWait
-                this.wait(iterationSleep);
+                if (iterationSleep == 0L) {
+                    // как и wait(0), ноль означает спать до побудки
+                    //noinspection WaitNotInLoop,UnconditionalWait
+                    this.wait();
+                } else {
+                    timeSource.waitUntil(this, timeSource.nanoTime() + TimeUnit.MILLISECONDS.toNanos(iterationSleep));
+                }
             }
         } catch (InterruptedException e) {
             throw new QuitException(e);
@@ -202,7 +222,7 @@ public abstract class IterationThread extends HaltableThread {
     /** Уведомляет в лог о том, что сервис жив, даже если он ничего и не пишет. */
     protected void notifyAlive() {
         try {
-            if (aliveNotifyTimeout > 0L && System.currentTimeMillis() - log.getLatestDate().getTime() > aliveNotifyTimeout) {
+            if (aliveNotifyTimeout > 0L && timeSource.currentTimeMillis() - log.getLatestDate().getTime() > aliveNotifyTimeout) {
                 log.info(aliveNotifyMessage);
             }
         } catch (NullPointerException e) {
@@ -8,6 +8,7 @@ import tk.bolovsrol.utils.log.LogDome;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.concurrent.TimeUnit;
 
 /** Методы, связанные со спячкой или ожиданием. */
 public final class SleepUtils {
@@ -98,12 +99,26 @@ public final class SleepUtils {
      * @throws InterruptedException
      */
     public static void sleepUntil(long wakeMillis) throws InterruptedException {
+        sleepUntil(SystemTimeSource.getStatic(), wakeMillis);
+    }
+
+    /**
+     * Возвращает управление, когда указанный момент времени уже наступил по часам переданного источника времени.
+     * <p/>
+     * Спит по монотонным часам, но после пробуждения сверяется с настенными,
+     * так что перевод часов вперёд или назад во время спячки учитывается.
+     *
+     * @param timeSource источник времени
+     * @param wakeMillis настенное время пробуждения, мс
+     * @throws InterruptedException
+     */
+    public static void sleepUntil(TimeSource timeSource, long wakeMillis) throws InterruptedException {
         while (true) {
-            long now = System.currentTimeMillis();
+            long now = timeSource.currentTimeMillis();
             if (now >= wakeMillis) {
                 return;
             }
-            Thread.sleep(wakeMillis - now);
+            timeSource.sleepMillis(wakeMillis - now);
         }
     }
 
@@ -204,8 +219,18 @@ public final class SleepUtils {
      * @throws InterruptedException ололо!
      */
     public static void sleepAtLeast(long millis) throws InterruptedException {
-        sleepUntil(new Date(System.currentTimeMillis() + millis));
+        SystemTimeSource.getStatic().sleepMillis(millis);
+    }
 
+    /**
+     * Спит по меньшей мере указанное количество миллисекунд по монотонным часам переданного источника времени.
+     *
+     * @param timeSource источник времени
+     * @param millis время спячки
+     * @throws InterruptedException
+     */
+    public static void sleepAtLeast(TimeSource timeSource, long millis) throws InterruptedException {
+        timeSource.sleepMillis(millis);
     }
 
     /**
@@ -243,16 +268,28 @@ public final class SleepUtils {
         if (condition.isReady()) {
             return true;
         }
-        long sleepUntil = System.currentTimeMillis() + maxTime;
+        return waitCondition(SystemTimeSource.getStatic(), maxTime, condition);
+    }
+
+    /**
+     * То же, что {@link #waitCondition(long, Condition)}, но время отсчитывается по переданному источнику.
+     *
+     * @param timeSource источник времени
+     * @param maxTime максимальное время ожидания, мс
+     * @param condition условие
+     * @return true, если сработало условие, false, если условие не сработало, но уже истёк таймаут
+     * @throws InterruptedException
+     */
+    public static boolean waitCondition(TimeSource timeSource, long maxTime, Condition condition) throws InterruptedException {
+        long deadline = timeSource.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxTime);
         while (true) {
             if (condition.isReady()) {
                 return true;
             }
-            long timeToSleep = sleepUntil - System.currentTimeMillis();
-            if (timeToSleep <= 0L) {
+            if (timeSource.nanoTime() - deadline >= 0L) {
                 return false;
             }
-            condition.wait(timeToSleep);
+            timeSource.waitUntil(condition, deadline);
         }
     }
 
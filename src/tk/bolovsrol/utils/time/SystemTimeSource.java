@@ -0,0 +1,42 @@
+package tk.bolovsrol.utils.time;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/** Системное время: {@link System#nanoTime()} и {@link System#currentTimeMillis()}. */
+public final class SystemTimeSource implements TimeSource {
+    private static final SystemTimeSource STATIC = new SystemTimeSource();
+
+    public static SystemTimeSource getStatic() {
+        return STATIC;
+    }
+
+    private SystemTimeSource() {
+    }
+
+    @Override public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Override public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override public void waitUntil(Object monitor, long deadlineNanos) throws InterruptedException {
+        long tts = deadlineNanos - System.nanoTime();
+        if (tts > 0L) {
+            TimeUnit.NANOSECONDS.timedWait(monitor, tts);
+        }
+    }
+
+    @Override public void parkUntil(Object blocker, long deadlineNanos) {
+        long tts = deadlineNanos - System.nanoTime();
+        if (tts > 0L) {
+            LockSupport.parkNanos(blocker, tts);
+        }
+    }
+
+    @Override public String toString() {
+        return "system";
+    }
+}
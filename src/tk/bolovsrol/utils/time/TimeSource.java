@@ -0,0 +1,79 @@
+package tk.bolovsrol.utils.time;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Источник времени: монотонные часы для отсчёта интервалов, настенные часы для дат
+ * и способы подождать, пока монотонные часы не дойдут до нужного момента.
+ * <p>
+ * Обычно используется {@link SystemTimeSource}. В тестах можно подсунуть
+ * {@link VirtualTimeSource}, время которого двигают вручную, тогда код с тысячами таймеров
+ * отрабатывает мгновенно и воспроизводимо.
+ * <p>
+ * Дедлайны указываются в единицах {@link #nanoTime()}, поэтому перевод настенных часов
+ * на ожидание не влияет.
+ */
+public interface TimeSource {
+
+    /** @return монотонное время, нс; имеет смысл только разница двух значений */
+    long nanoTime();
+
+    /** @return настенное время, мс с начала эпохи */
+    long currentTimeMillis();
+
+    /**
+     * Ждёт на мониторе, пока монотонное время не достигнет дедлайна или пока монитор не пнут.
+     * <p>
+     * Вызывать нужно, удерживая монитор. Как и {@link Object#wait(long)},
+     * метод может вернуть управление раньше, вызывающий обязан перепроверить условие.
+     *
+     * @param monitor монитор
+     * @param deadlineNanos дедлайн в единицах {@link #nanoTime()}
+     * @throws InterruptedException
+     */
+    void waitUntil(Object monitor, long deadlineNanos) throws InterruptedException;
+
+    /**
+     * Паркует текущий тред, пока монотонное время не достигнет дедлайна, или пока тред не распаркуют или не прервут.
+     * Как и {@link java.util.concurrent.locks.LockSupport#parkNanos(Object, long)}, может вернуть управление раньше.
+     *
+     * @param blocker объект, на котором паркуемся, для треддампов
+     * @param deadlineNanos дедлайн в единицах {@link #nanoTime()}
+     */
+    void parkUntil(Object blocker, long deadlineNanos);
+
+    /**
+     * Возвращает управление, когда монотонное время достигнет дедлайна.
+     *
+     * @param deadlineNanos дедлайн в единицах {@link #nanoTime()}
+     * @throws InterruptedException
+     */
+    default void sleepUntil(long deadlineNanos) throws InterruptedException {
+        Object monitor = new Object();
+        synchronized (monitor) {
+            while (nanoTime() - deadlineNanos < 0L) {
+                waitUntil(monitor, deadlineNanos);
+            }
+        }
+    }
+
+    /**
+     * Спит не меньше указанного количества миллисекунд.
+     *
+     * @param millis время спячки
+     * @throws InterruptedException
+     */
+    default void sleepMillis(long millis) throws InterruptedException {
+        sleepUntil(nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    /**
+     * Переводит настенное время в дедлайн монотонных часов, исходя из текущей разницы между ними.
+     *
+     * @param wallMillis настенное время, мс
+     * @return соответствующее значение {@link #nanoTime()}
+     */
+    default long toDeadlineNanos(long wallMillis) {
+        return nanoTime() + TimeUnit.MILLISECONDS.toNanos(wallMillis - currentTimeMillis());
+    }
+}
@@ -0,0 +1,176 @@
+package tk.bolovsrol.utils.time;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Виртуальное время, которое идёт только тогда, когда его двигают методами {@link #advance(long)} и компанией.
+ * <p>
+ * Ожидающие треды {@link #waitUntil(Object, long)} и {@link #parkUntil(Object, long)} регистрируются
+ * в источнике, и сдвиг времени будит тех, чей дедлайн наступил. Поэтому тест может, не засыпая,
+ * прогнать расписание на сутки вперёд: двигать время к {@link #getNextDeadline() ближайшему дедлайну},
+ * пока таковые имеются.
+ * <p>
+ * Настенное время отсчитывается от указанного при создании момента с той же скоростью.
+ */
+public class VirtualTimeSource implements TimeSource {
+
+    private static final class Waiter {
+        final Object monitor;
+        final Thread thread;
+        final long deadlineNanos;
+
+        Waiter(Object monitor, Thread thread, long deadlineNanos) {
+            this.monitor = monitor;
+            this.thread = thread;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        void wake() {
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            } else {
+                synchronized (monitor) {
+                    monitor.notifyAll();
+                }
+            }
+        }
+    }
+
+    private final AtomicLong nanos;
+    private final long baseNanos;
+    private final long baseWallMillis;
+    private final Set<Waiter> waiters = ConcurrentHashMap.newKeySet();
+
+    /** Создаёт виртуальное время, настенные часы которого начинают с текущего системного времени. */
+    public VirtualTimeSource() {
+        this(System.currentTimeMillis());
+    }
+
+    /**
+     * Создаёт виртуальное время, настенные часы которого начинают с указанного момента.
+     *
+     * @param startWallMillis начальное настенное время, мс
+     */
+    public VirtualTimeSource(long startWallMillis) {
+        this.baseNanos = 0L;
+        this.nanos = new AtomicLong(baseNanos);
+        this.baseWallMillis = startWallMillis;
+    }
+
+    @Override public long nanoTime() {
+        return nanos.get();
+    }
+
+    @Override public long currentTimeMillis() {
+        return baseWallMillis + TimeUnit.NANOSECONDS.toMillis(nanos.get() - baseNanos);
+    }
+
+    @Override public void waitUntil(Object monitor, long deadlineNanos) throws InterruptedException {
+        if (nanos.get() - deadlineNanos >= 0L) {
+            return;
+        }
+        Waiter waiter = new Waiter(monitor, null, deadlineNanos);
+        waiters.add(waiter);
+        try {
+            // монитор у нас, так что двигающий время не сможет нас пнуть, пока мы не заснём
+            if (nanos.get() - deadlineNanos < 0L) {
+                monitor.wait();
+            }
+        } finally {
+            waiters.remove(waiter);
+        }
+    }
+
+    @Override public void parkUntil(Object blocker, long deadlineNanos) {
+        if (nanos.get() - deadlineNanos >= 0L) {
+            return;
+        }
+        Waiter waiter = new Waiter(null, Thread.currentThread(), deadlineNanos);
+        waiters.add(waiter);
+        try {
+            // распарковка до парковки не теряется
+            if (nanos.get() - deadlineNanos < 0L) {
+                LockSupport.park(blocker);
+            }
+        } finally {
+            waiters.remove(waiter);
+        }
+    }
+
+    /**
+     * Сдвигает время вперёд и будит тех, чей дедлайн наступил.
+     *
+     * @param deltaNanos сдвиг, нс, неотрицательный
+     */
+    public void advance(long deltaNanos) {
+        if (deltaNanos < 0L) {
+            throw new IllegalArgumentException("Time cannot go backwards, delta " + deltaNanos);
+        }
+        wakeDue(nanos.addAndGet(deltaNanos));
+    }
+
+    /**
+     * Сдвигает время вперёд на указанное количество миллисекунд.
+     *
+     * @param deltaMillis сдвиг, мс
+     */
+    public void advanceMillis(long deltaMillis) {
+        advance(TimeUnit.MILLISECONDS.toNanos(deltaMillis));
+    }
+
+    /**
+     * Сдвигает время к указанному моменту, если он ещё не наступил.
+     *
+     * @param targetNanos момент в единицах {@link #nanoTime()}
+     */
+    public void advanceTo(long targetNanos) {
+        long now = nanos.accumulateAndGet(targetNanos, (current, target) -> target - current > 0L ? target : current);
+        wakeDue(now);
+    }
+
+    /**
+     * Сдвигает время к ближайшему дедлайну ожидающих тредов.
+     *
+     * @return true, если было к чему двигаться, false, если никто не ждёт
+     */
+    public boolean advanceToNextDeadline() {
+        Long next = getNextDeadline();
+        if (next == null) {
+            return false;
+        }
+        advanceTo(next);
+        return true;
+    }
+
+    /** @return ближайший дедлайн ожидающих тредов или нул, если никто не ждёт */
+    public Long getNextDeadline() {
+        Long result = null;
+        for (Waiter waiter : waiters) {
+            if (result == null || waiter.deadlineNanos - result < 0L) {
+                result = waiter.deadlineNanos;
+            }
+        }
+        return result;
+    }
+
+    /** @return количество тредов, ожидающих наступления своего дедлайна */
+    public int getWaiterCount() {
+        return waiters.size();
+    }
+
+    private void wakeDue(long now) {
+        for (Waiter waiter : waiters) {
+            if (now - waiter.deadlineNanos >= 0L) {
+                waiter.wake();
+            }
+        }
+    }
+
+    @Override public String toString() {
+        return "virtual:" + nanos.get();
+    }
+}
@@ -1,11 +1,50 @@
 package tk.bolovsrol.utils.xml;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
+/**
+ * Печататель элементов.
+ * <p>
+ * Наследник реализует {@link #appendXmlTo(StringBuilder, Element)}, как и раньше.
+ * Если он к тому же переопределит {@link #print(XmlOutput, Element)}, печатающий в {@link XmlOutput},
+ * то один и тот же код сгодится и для строки, и для записи прямо в поток
+ * ({@link #writeTo(OutputStream, Element)}) без промежуточной строки целиком;
+ * {@link #appendXmlTo(StringBuilder, Element)} тогда сводится к {@link #appendPrintedTo(StringBuilder, Element)}.
+ */
 public abstract class AbstractXmlPrinter {
 
+    /**
+     * Печатать ли через {@link #appendXmlTo(StringBuilder, Element)}: так и есть, если класс переопределяет
+     * его ниже, чем {@link #print(XmlOutput, Element)}, например, наследник {@link XmlPrinter}
+     * со своим {@link #appendXmlTo(StringBuilder, Element)}.
+     */
+    private static final ClassValue<Boolean> PRINTS_THROUGH_APPEND = new ClassValue<Boolean>() {
+        @Override protected Boolean computeValue(Class<?> type) {
+            Class<?> appendClass = declaringClass(type, "appendXmlTo", StringBuilder.class, Element.class);
+            Class<?> printClass = declaringClass(type, "print", XmlOutput.class, Element.class);
+            return appendClass != printClass && printClass.isAssignableFrom(appendClass);
+        }
+    };
+
+    private static Class<?> declaringClass(Class<?> type, String name, Class<?>... parameterTypes) {
+        for (Class<?> cl = type; cl != null; cl = cl.getSuperclass()) {
+            try {
+                cl.getDeclaredMethod(name, parameterTypes);
+                return cl;
+            } catch (NoSuchMethodException ignored) {
+                // смотрим выше
+            }
+        }
+        return AbstractXmlPrinter.class;
+    }
+
     private Charset charset;
 
     protected AbstractXmlPrinter() {
@@ -31,10 +70,47 @@ public abstract class AbstractXmlPrinter {
     }
 
     protected byte[] toBytes(Element element, Charset charset) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("<?xml version=\"1.0\" encoding=\"").append(charset.name()).append("\"?>");
-        appendXmlTo(sb, element);
-        return XmlUtils.encodeNumericCharacterReferences(sb.toString(), charset).getBytes(charset);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+        try {
+            writeTo(baos, element, charset);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Пишет документ с декларацией в поток в кодировке печатателя.
+     * Символы, не помещающиеся в кодировку, заменяются на «&amp;#код;».
+     * Поток не закрывается.
+     *
+     * @param out поток
+     * @param element корневой элемент
+     * @throws IOException
+     */
+    public void writeTo(OutputStream out, Element element) throws IOException {
+        writeTo(out, element, charset);
+    }
+
+    protected void writeTo(OutputStream out, Element element, Charset charset) throws IOException {
+        XmlOutput xo = new XmlOutput(out, charset);
+        xo.append("<?xml version=\"1.0\" encoding=\"").append(charset.name()).append("\"?>");
+        printElement(xo, element);
+        xo.flush();
+    }
+
+    /**
+     * Пишет xml-представление элемента (и всех его детей) во врайтер, без декларации.
+     * Врайтер не закрывается.
+     *
+     * @param writer врайтер
+     * @param element элемент
+     * @throws IOException
+     */
+    public void writeTo(Writer writer, Element element) throws IOException {
+        XmlOutput xo = new XmlOutput(writer);
+        printElement(xo, element);
+        xo.flush();
     }
 
     /**
@@ -56,6 +132,64 @@ public abstract class AbstractXmlPrinter {
      */
     public abstract void appendXmlTo(StringBuilder sb, Element element);
 
+    /**
+     * Печатает xml-представление элемента (и всех его детей).
+     * <p>
+     * Здесь это xml из {@link #appendXmlTo(StringBuilder, Element)}, собранный в строку;
+     * чтобы писать в поток без промежуточной строки, наследник печатает сам.
+     *
+     * @param xo приёмник
+     * @param element элемент
+     * @throws IOException
+     */
+    protected void print(XmlOutput xo, Element element) throws IOException {
+        printAppended(xo, element);
+    }
+
+    /**
+     * Реализация {@link #appendXmlTo(StringBuilder, Element)} для наследников,
+     * переопределивших {@link #print(XmlOutput, Element)}.
+     *
+     * @param sb
+     * @param element
+     */
+    protected final void appendPrintedTo(StringBuilder sb, Element element) {
+        XmlOutput xo = new XmlOutput(sb);
+        try {
+            print(xo, element);
+            xo.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Печатает ребёнка элемента. Наследник, печатающий детей через этот метод, а не прямо через
+     * {@link #print(XmlOutput, Element)}, уважает {@link #appendXmlTo(StringBuilder, Element)},
+     * переопределённый уже в его собственных наследниках, на каждом уровне, как это было раньше.
+     *
+     * @param xo приёмник
+     * @param child ребёнок
+     * @throws IOException
+     */
+    protected final void printChild(XmlOutput xo, Element child) throws IOException {
+        printElement(xo, child);
+    }
+
+    private void printElement(XmlOutput xo, Element element) throws IOException {
+        if (PRINTS_THROUGH_APPEND.get(getClass())) {
+            printAppended(xo, element);
+        } else {
+            print(xo, element);
+        }
+    }
+
+    private void printAppended(XmlOutput xo, Element element) throws IOException {
+        StringBuilder sb = new StringBuilder(256);
+        appendXmlTo(sb, element);
+        xo.append(sb.toString());
+    }
+
 
     public void setCharset(String charsetName) {
         setCharset(Charset.forName(charsetName));
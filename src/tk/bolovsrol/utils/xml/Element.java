@@ -10,28 +10,49 @@ import tk.bolovsrol.utils.properties.PlainProperties;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * Lightweight XML element.
  * <p/>
  * Умеет хранить в себе атрибуты и прицеплять детишек. Ну и отцеплять.
+ * <p/>
+ * Всё, чего у элемента нет, не занимает места: список детей заводится с первым ребёнком,
+ * а атрибуты, пока их немного, лежат в массиве «имя, значение, имя, значение...».
+ * Карта атрибутов {@link CaseInsensitiveLinkedHashMap} и проперти над ней заводятся,
+ * только когда их попросят через {@link #attributesMap()}, {@link #attributes()} или {@link #a()},
+ * либо когда атрибутов становится больше {@link #ATTRIBUTE_ARRAY_LIMIT}; с этого момента атрибуты живут в карте.
  */
 public class Element {
 
+    /** Сколько атрибутов держать в массиве, прежде чем завести карту. */
+    public static final int ATTRIBUTE_ARRAY_LIMIT = 8;
+
     private Element parent;
 
-    private final ArrayList<Element> childElements = new ArrayList<>();
+    /** Дети, нул — детей нет. */
+    private ArrayList<Element> childElements;
 
-    private final CaseInsensitiveLinkedHashMap<String> attributesMap = new CaseInsensitiveLinkedHashMap<>();
-    private final PlainProperties attributes = new PlainProperties(attributesMap);
+    /** Атрибуты, пока карты нет: имя, значение, имя, значение... */
+    private String[] attributeArray;
+    private int attributeCount;
+    /** Карта атрибутов, если её завели, тогда массива уже нет. */
+    private CaseInsensitiveLinkedHashMap<String> attributesMap;
+    private PlainProperties attributes;
 
     private final String name;
 
+    /** Формат даты для атрибутов и текста по умолчанию, настоящий {@link SimpleDateFormat} заводится при первой надобности. */
+    protected final DateFormat valueDateFormat = new LazySimpleDateFormat(DATE_VALUE_FORMAT_PATTERN);
+
 	public static final String DATE_VALUE_FORMAT_PATTERN = "yyyy-MM-dd'T'HH:mm:ss.SSS";
 	public static final Element[] EMPTY_ELEMENT_ARRAY = new Element[0];
 
@@ -66,6 +87,9 @@ public class Element {
      * @see #a()
      */
     public PlainProperties attributes() {
+        if (attributes == null) {
+            attributes = new PlainProperties(attributesMap());
+        }
         return attributes;
     }
 
@@ -77,7 +101,7 @@ public class Element {
      * @see #attributes()
      */
     public PlainProperties a() {
-        return attributes;
+        return attributes();
     }
 
     /**
@@ -92,7 +116,7 @@ public class Element {
         if (value == null) {
             dropAttribute(name);
         } else {
-            attributesMap.put(name, value);
+            putAttribute(name, value);
         }
         return this;
     }
@@ -109,7 +133,7 @@ public class Element {
         if (value == null) {
             dropAttribute(name);
         } else {
-            attributesMap.put(name, value.name());
+            putAttribute(name, value.name());
         }
         return this;
     }
@@ -122,7 +146,7 @@ public class Element {
      * @param value
      */
     public Element setAttribute(String name, int value) {
-        attributesMap.put(name, String.valueOf(value));
+        putAttribute(name, String.valueOf(value));
         return this;
     }
 
@@ -133,7 +157,7 @@ public class Element {
      * @param value
      */
     public Element setAttribute(String name, long value) {
-        attributesMap.put(name, String.valueOf(value));
+        putAttribute(name, String.valueOf(value));
         return this;
     }
 
@@ -144,7 +168,7 @@ public class Element {
      * @param value
      */
     public Element setAttribute(String name, double value) {
-        attributesMap.put(name, String.valueOf(value));
+        putAttribute(name, String.valueOf(value));
         return this;
     }
 
@@ -153,13 +177,11 @@ public class Element {
         if (value == null) {
             dropAttribute(name);
         } else {
-            attributesMap.put(name, value.toString());
+            putAttribute(name, value.toString());
         }
         return this;
     }
 
-    protected final DateFormat valueDateFormat = new SimpleDateFormat(DATE_VALUE_FORMAT_PATTERN);
-
     /**
      * Устанавливает атрибут элемента в виде форматированной записи даты.
      *
@@ -170,7 +192,7 @@ public class Element {
         if (value == null) {
             dropAttribute(name);
         } else {
-            attributesMap.put(name, valueDateFormat.format(value));
+            putAttribute(name, valueDateFormat.format(value));
         }
         return this;
     }
@@ -185,7 +207,7 @@ public class Element {
         if (value == null) {
             dropAttribute(name);
         } else {
-            attributesMap.put(name, dateFormat.format(value));
+            putAttribute(name, dateFormat.format(value));
         }
         return this;
     }
@@ -197,7 +219,74 @@ public class Element {
      * @return значение удалённого атрибута или null, если атрибута не было.
      */
     public String dropAttribute(String name) {
-        return attributesMap.remove(name);
+        if (attributesMap != null) {
+            return attributesMap.remove(name);
+        }
+        int i = indexOfAttribute(name);
+        if (i < 0) {
+            return null;
+        }
+        String value = attributeArray[i + 1];
+        int tail = attributeCount * 2 - i - 2;
+        System.arraycopy(attributeArray, i + 2, attributeArray, i, tail);
+        attributeCount--;
+        attributeArray[attributeCount * 2] = null;
+        attributeArray[attributeCount * 2 + 1] = null;
+        return value;
+    }
+
+    private void putAttribute(String name, String value) {
+        if (attributesMap != null) {
+            attributesMap.put(name, value);
+            return;
+        }
+        int i = indexOfAttribute(name);
+        if (i >= 0) {
+            attributeArray[i + 1] = value;
+        } else if (attributeCount == ATTRIBUTE_ARRAY_LIMIT) {
+            inflateAttributes().put(name, value);
+        } else {
+            if (attributeArray == null) {
+                attributeArray = new String[2];
+            } else if (attributeArray.length == attributeCount * 2) {
+                attributeArray = Arrays.copyOf(attributeArray, attributeCount * 4);
+            }
+            attributeArray[attributeCount * 2] = name;
+            attributeArray[attributeCount * 2 + 1] = value;
+            attributeCount++;
+        }
+    }
+
+    /**
+     * @return индекс имени атрибута в массиве или -1; имена сравниваются без учёта регистра
+     * так же, как в карте: через {@link String#toLowerCase()}
+     */
+    private int indexOfAttribute(String name) {
+        if (name == null || attributeCount == 0) {
+            return -1;
+        }
+        String key = name.toLowerCase();
+        for (int i = 0, end = attributeCount * 2; i < end; i += 2) {
+            String attrName = attributeArray[i];
+            if (attrName == name || attrName.toLowerCase().equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Переселяет атрибуты из массива в карту. */
+    private CaseInsensitiveLinkedHashMap<String> inflateAttributes() {
+        if (attributesMap == null) {
+            CaseInsensitiveLinkedHashMap<String> map = new CaseInsensitiveLinkedHashMap<>(Math.max(16, attributeCount * 2));
+            for (int i = 0, end = attributeCount * 2; i < end; i += 2) {
+                map.put(attributeArray[i], attributeArray[i + 1]);
+            }
+            attributesMap = map;
+            attributeArray = null;
+            attributeCount = 0;
+        }
+        return attributesMap;
     }
 
     /**
@@ -207,11 +296,36 @@ public class Element {
      * @return true, если есть
      */
     public boolean hasAttribute(String name) {
-        return attributesMap.containsKey(name);
+        return attributesMap != null ? attributesMap.containsKey(name) : indexOfAttribute(name) >= 0;
     }
 
     public boolean hasAttributes() {
-        return !attributesMap.isEmpty();
+        return attributesMap != null ? !attributesMap.isEmpty() : attributeCount > 0;
+    }
+
+    /** @return количество атрибутов */
+    public int getAttributeCount() {
+        return attributesMap != null ? attributesMap.size() : attributeCount;
+    }
+
+    /**
+     * Возвращает атрибуты для перебора, не заводя карту атрибутов, если её ещё нет.
+     * Изменения в элементе в уже полученном наборе не отражаются и наоборот.
+     *
+     * @return пары имя-значение в порядке добавления
+     */
+    public Iterable<Map.Entry<String, String>> attributeEntries() {
+        if (attributesMap != null) {
+            return attributesMap.entrySet();
+        }
+        if (attributeCount == 0) {
+            return Collections.emptyList();
+        }
+        List<Map.Entry<String, String>> result = new ArrayList<>(attributeCount);
+        for (int i = 0, end = attributeCount * 2; i < end; i += 2) {
+            result.add(new AbstractMap.SimpleImmutableEntry<>(attributeArray[i], attributeArray[i + 1]));
+        }
+        return result;
     }
 
     /**
@@ -221,7 +335,11 @@ public class Element {
      * @return значение атрибута
      */
     public String getAttribute(String name) {
-        return attributesMap.get(name);
+        if (attributesMap != null) {
+            return attributesMap.get(name);
+        }
+        int i = indexOfAttribute(name);
+        return i < 0 ? null : attributeArray[i + 1];
     }
 
     public String getAttributeOrDie(String name) throws UnexpectedBehaviourException {
@@ -253,7 +371,14 @@ public class Element {
      * @see #attributes()
      */
     public CaseInsensitiveLinkedHashMap<String> getAttributesMap() {
-        return new CaseInsensitiveLinkedHashMap<>(attributesMap);
+        if (attributesMap != null) {
+            return new CaseInsensitiveLinkedHashMap<>(attributesMap);
+        }
+        CaseInsensitiveLinkedHashMap<String> copy = new CaseInsensitiveLinkedHashMap<>();
+        for (int i = 0, end = attributeCount * 2; i < end; i += 2) {
+            copy.put(attributeArray[i], attributeArray[i + 1]);
+        }
+        return copy;
     }
 
     /**
@@ -270,7 +395,7 @@ public class Element {
      * @see #attributes()
      */
     public CaseInsensitiveLinkedHashMap<String> attributesMap() {
-        return attributesMap;
+        return inflateAttributes();
     }
 
     /**
@@ -280,8 +405,16 @@ public class Element {
      * @param attributesMap новые атрибуты.
      */
     public void setAttributesMap(Map<String, String> attributesMap) {
-        this.attributesMap.clear();
-        this.attributesMap.putAll(attributesMap);
+        if (this.attributesMap != null) {
+            this.attributesMap.clear();
+            this.attributesMap.putAll(attributesMap);
+        } else {
+            attributeArray = null;
+            attributeCount = 0;
+            for (Map.Entry<String, String> entry : attributesMap.entrySet()) {
+                putAttribute(entry.getKey(), entry.getValue());
+            }
+        }
     }
 
     public void addTextData(String value, TextData.Type type) {
@@ -382,7 +515,7 @@ public class Element {
         if (child.hasParent()) {
             throw new IllegalStateException("Element has parent already");
         }
-        childElements.add(child);
+        children().add(child);
         child.parent = this;
     }
 
@@ -416,7 +549,7 @@ public class Element {
                 throw new IllegalStateException("Child element has parent already");
             }
         }
-        childElements.addAll(children);
+        children().addAll(children);
         for (Element child : children) {
             child.parent = this;
         }
@@ -438,7 +571,7 @@ public class Element {
         if (child.hasParent()) {
             throw new IllegalStateException("Element has parent already");
         }
-        childElements.add(pos, child);
+        children().add(pos, child);
         child.parent = this;
     }
 
@@ -474,7 +607,7 @@ public class Element {
                 throw new IllegalStateException("Child element has parent already");
             }
         }
-        childElements.addAll(pos, children);
+        children().addAll(pos, children);
         for (Element child : children) {
             child.parent = this;
         }
@@ -566,11 +699,18 @@ public class Element {
     }
 
 	public ArrayList<Element> childElements() {
-		return childElements;
+		return children();
 	}
 
+    private ArrayList<Element> children() {
+        if (childElements == null) {
+            childElements = new ArrayList<>(2);
+        }
+        return childElements;
+    }
+
 	public Element[] getChildren() {
-		return childElements.toArray(new Element[childElements.size()]);
+		return childElements == null ? EMPTY_ELEMENT_ARRAY : childElements.toArray(new Element[childElements.size()]);
 	}
 
     public Element getFirstChild() {
@@ -647,11 +787,11 @@ public class Element {
     }
 
     public boolean hasChildren() {
-        return !childElements.isEmpty();
+        return childElements != null && !childElements.isEmpty();
     }
 
     public Element[] getChildren(String name) {
-        if (childElements.isEmpty()) {
+        if (childElements == null || childElements.isEmpty()) {
             return EMPTY_ELEMENT_ARRAY;
         }
 
@@ -685,7 +825,7 @@ public class Element {
     }
 
     public Element getChild(String name, int index) {
-        if (childElements.isEmpty() || childElements.size() <= index) {
+        if (childElements == null || childElements.size() <= index) {
             return null;
         }
 
@@ -719,6 +859,9 @@ public class Element {
     }
 
     public void removeAllChildren() {
+        if (childElements == null) {
+            return;
+        }
         for (Element child : childElements) {
             child.parent = null;
         }
@@ -736,11 +879,11 @@ public class Element {
     }
 
     public int getChildrenCount() {
-        return childElements.size();
+        return childElements == null ? 0 : childElements.size();
     }
 
     public int getChildrenCount(String name) {
-        if (childElements.isEmpty()) {
+        if (childElements == null || childElements.isEmpty()) {
             return 0;
         }
 
@@ -757,10 +900,10 @@ public class Element {
     public String toString() {
         StringBuilder sb = new StringBuilder(256)
                 .append(Spell.get(name));
-        if (!attributesMap.isEmpty()) {
-            sb.append(" attrs: ").append(Spell.get(attributesMap));
+        if (hasAttributes()) {
+            sb.append(" attrs: ").append(Spell.get(attributesMap != null ? attributesMap : getAttributesMap()));
         }
-        if (!childElements.isEmpty()) {
+        if (hasChildren()) {
             sb.append(" children: ").append(Spell.get(childElements));
         }
         return sb.toString();
@@ -776,9 +919,16 @@ public class Element {
      */
     public Element copy() {
         Element copy = new Element(name);
-        copy.attributesMap.putAll(this.attributesMap);
-        for (Element element : childElements) {
-            copy.addChild(element.copy());
+        if (attributesMap != null) {
+            copy.setAttributesMap(attributesMap);
+        } else if (attributeCount > 0) {
+            copy.attributeArray = Arrays.copyOf(attributeArray, attributeCount * 2);
+            copy.attributeCount = attributeCount;
+        }
+        if (childElements != null) {
+            for (Element element : childElements) {
+                copy.addChild(element.copy());
+            }
         }
         return copy;
     }
@@ -799,13 +949,32 @@ public class Element {
     public boolean equals(Element that) {
         return this == that ||
                 (this.name.equals(that.name)
-                        && this.attributesMap.equals(that.attributesMap)
-                        && this.childElements.equals(that.childElements)
+                        && this.attributesEqual(that)
+                        && this.getChildrenCount() == that.getChildrenCount()
+                        && (this.childElements == null || this.childElements.isEmpty() || this.childElements.equals(that.childElements))
                 );
     }
 
+    private boolean attributesEqual(Element that) {
+        if (this.getAttributeCount() != that.getAttributeCount()) {
+            return false;
+        }
+        for (Map.Entry<String, String> entry : attributeEntries()) {
+            String value = entry.getValue();
+            // нул в значении отличаем от отсутствия атрибута
+            if (!Objects.equals(value, that.getAttribute(entry.getKey())) || value == null && !that.hasAttribute(entry.getKey())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public int hashCode() {
-        return this.name.hashCode() ^ this.attributesMap.hashCode() ^ this.childElements.hashCode();
+        int hash = this.name.hashCode();
+        for (Map.Entry<String, String> entry : attributeEntries()) {
+            hash += entry.getKey().toLowerCase().hashCode() ^ Objects.hashCode(entry.getValue());
+        }
+        return childElements == null || childElements.isEmpty() ? hash : hash ^ this.childElements.hashCode();
     }
 }
\ No newline at end of file
@@ -0,0 +1,67 @@
+package tk.bolovsrol.utils.xml;
+
+import tk.bolovsrol.utils.objectsize.ObjectSizeCalculator;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Меряет, сколько кучи занимает разобранный {@link XmlParser}'ом каталог: как он есть,
+ * с лениво заведёнными детьми и атрибутами, и после того, как у каждого элемента попросили
+ * карту атрибутов, проперти, список детей и формат даты — то есть так, как элементы
+ * раньше лежали всегда.
+ * <p>
+ * {@link ObjectSizeCalculator} лазит рефлекшном в поля JDK, так что на новых джавах нужно
+ * открыть ему пакеты:
+ * <code>java --add-opens java.base/java.lang=ALL-UNNAMED --add-opens java.base/java.util=ALL-UNNAMED
+ * --add-opens java.base/java.text=ALL-UNNAMED --add-opens java.base/java.math=ALL-UNNAMED
+ * --add-opens java.base/sun.util.calendar=ALL-UNNAMED --add-opens java.base/sun.util.locale=ALL-UNNAMED
+ * tk.bolovsrol.utils.xml.ElementHeapBenchmark [количество записей]</code>
+ */
+public class ElementHeapBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+        StringBuilder sb = new StringBuilder(records * 200);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<catalog>\n");
+        for (int i = 0; i < records; i++) {
+            sb.append("  <item id=\"").append(i).append("\" type=\"").append(i % 3 == 0 ? "book" : "disc").append("\">\n")
+                  .append("    <title>Наименование ").append(i).append("</title>\n")
+                  .append("    <price currency=\"RUB\">").append(i % 1000).append(".99</price>\n")
+                  .append("    <available/>\n")
+                  .append("  </item>\n");
+        }
+        sb.append("</catalog>\n");
+        byte[] document = sb.toString().getBytes(StandardCharsets.UTF_8);
+        sb = null;
+
+        Element catalog = new XmlParser().parse(document);
+        int elements = count(catalog);
+        System.out.println("document:  " + document.length / 1024L + " KB, " + elements + " elements");
+
+        long compact = ObjectSizeCalculator.getObjectSize(catalog);
+        System.out.println("compact:   " + compact / 1024L + " KB, " + compact / elements + " bytes per element");
+
+        inflate(catalog);
+        long eager = ObjectSizeCalculator.getObjectSize(catalog);
+        System.out.println("eager:     " + eager / 1024L + " KB, " + eager / elements + " bytes per element");
+        System.out.println(String.format("ratio:     %.2f times", (double) eager / compact));
+    }
+
+    private static int count(Element el) {
+        int result = 1;
+        for (Element child : el.getChildren()) {
+            result += count(child);
+        }
+        return result;
+    }
+
+    private static void inflate(Element el) {
+        el.attributes();
+        el.childElements();
+        el.valueDateFormat.getCalendar();
+        for (Element child : el.getChildren()) {
+            inflate(child);
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package tk.bolovsrol.utils.xml;
 
-import tk.bolovsrol.utils.StringUtils;
-
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.Map;
 
@@ -12,7 +11,7 @@ public class IndentXmlPrinter extends AbstractXmlPrinter {
     private boolean textDataOnSameLine = true;
 
     private int level;
-    private StringBuilder sb;
+    private XmlOutput xo;
 
     public IndentXmlPrinter() {
     }
@@ -23,30 +22,40 @@ public class IndentXmlPrinter extends AbstractXmlPrinter {
 
     @Override
     public byte[] toBytes(Element element, Charset charset) {
-        level = 0;
         return super.toBytes(element, charset);
     }
 
     @Override
-    public String toXmlString(Element element) {
-        level = 0;
-        return super.toXmlString(element);
+    public void appendXmlTo(StringBuilder sb, Element element) {
+        appendPrintedTo(sb, element);
     }
 
-    private void appendIndent() {
+    @Override
+    protected void print(XmlOutput xo, Element element) throws IOException {
+        XmlOutput outer = this.xo;
+        if (outer == null) {
+            level = 0;
+        }
+        this.xo = xo;
+        try {
+            printElement(element);
+        } finally {
+            this.xo = outer;
+        }
+    }
+
+    private void appendIndent() throws IOException {
         for (int i = level; i > 0; i--) {
-            sb.append(indentTile);
+            xo.append(indentTile);
         }
     }
 
-    private void newLine() {
-        sb.append('\n');
+    private void newLine() throws IOException {
+        xo.append('\n');
     }
 
-    /** Добавляет xml-представление элемента (и всех его детей) к стрингбуфферу. */
-    @Override
-    public void appendXmlTo(StringBuilder sb, Element element) {
-        this.sb = sb;
+    /** Печатает xml-представление элемента (и всех его детей). */
+    private void printElement(Element element) throws IOException {
         if (element instanceof TextData) {
             appendIndent();
             TextData td = (TextData) element;
@@ -54,18 +63,18 @@ public class IndentXmlPrinter extends AbstractXmlPrinter {
             newLine();
         } else {
             appendIndent();
-            this.sb.append('<').append(element.getName());
+            xo.append('<').append(element.getName());
             {
-                for (Map.Entry<String, String> attr : element.attributesMap().entrySet()) {
-                    this.sb.append(' ').append(attr.getKey()).append("=\"").append(XmlUtils.xmlInvalidate(attr.getValue())).append('"');
+                for (Map.Entry<String, String> attr : element.attributeEntries()) {
+                    xo.append(' ').append(attr.getKey()).append("=\"").appendEscaped(attr.getValue()).append('"');
                 }
             }
             {
                 if (!element.hasChildren()) {
-                    this.sb.append("/>");
+                    xo.append("/>");
                     newLine();
                 } else {
-                    this.sb.append('>');
+                    xo.append('>');
                     if (element.getChildrenCount() == 1 && element.getFirstChild() instanceof TextData) {
                         // спецслучай
                         if (!textDataOnSameLine) {
@@ -84,27 +93,25 @@ public class IndentXmlPrinter extends AbstractXmlPrinter {
                         level++;
                         Element[] childrenEls = element.getChildren();
                         for (Element childrenEl : childrenEls) {
-                            appendXmlTo(sb, childrenEl);
+                            printChild(xo, childrenEl);
                         }
                         level--;
                         appendIndent();
                     }
-                    this.sb.append("</").append(element.getName()).append('>');
+                    xo.append("</").append(element.getName()).append('>');
                     newLine();
                 }
             }
         }
     }
 
-    private void writeTextData(TextData td) {
+    private void writeTextData(TextData td) throws IOException {
         switch (td.getType()) {
             case CDATA:
-                sb.append("<![CDATA[")
-                        .append(StringUtils.substitute(td.getValue(), "]]", "]]]><![CDATA[]"))
-                        .append("]]>");
+                xo.appendCData(td.getValue());
                 break;
             case TEXT:
-                sb.append(XmlUtils.xmlInvalidate(td.getValue()));
+                xo.appendEscaped(td.getValue());
                 break;
         }
     }
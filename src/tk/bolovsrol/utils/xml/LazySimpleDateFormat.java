@@ -0,0 +1,105 @@
+package tk.bolovsrol.utils.xml;
+
+import java.text.AttributedCharacterIterator;
+import java.text.DateFormat;
+import java.text.FieldPosition;
+import java.text.NumberFormat;
+import java.text.ParseException;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * {@link SimpleDateFormat}, который заводится при первом обращении.
+ * <p>
+ * Сам по себе весит несколько полей, так что элементу, у которого дат не спрашивают,
+ * тяжёлый формат с календарём и числовым форматом не достаётся.
+ * Все методы передаются настоящему формату, в том числе и настройки.
+ */
+class LazySimpleDateFormat extends DateFormat {
+    private static final long serialVersionUID = 1L;
+
+    private final String pattern;
+    private SimpleDateFormat delegate;
+
+    LazySimpleDateFormat(String pattern) {
+        this.pattern = pattern;
+    }
+
+    private SimpleDateFormat delegate() {
+        if (delegate == null) {
+            delegate = new SimpleDateFormat(pattern);
+        }
+        return delegate;
+    }
+
+    @Override public StringBuffer format(Date date, StringBuffer toAppendTo, FieldPosition fieldPosition) {
+        return delegate().format(date, toAppendTo, fieldPosition);
+    }
+
+    @Override public AttributedCharacterIterator formatToCharacterIterator(Object obj) {
+        return delegate().formatToCharacterIterator(obj);
+    }
+
+    @Override public Date parse(String source) throws ParseException {
+        return delegate().parse(source);
+    }
+
+    @Override public Date parse(String source, ParsePosition pos) {
+        return delegate().parse(source, pos);
+    }
+
+    @Override public Object parseObject(String source, ParsePosition pos) {
+        return delegate().parseObject(source, pos);
+    }
+
+    @Override public void setCalendar(Calendar newCalendar) {
+        delegate().setCalendar(newCalendar);
+    }
+
+    @Override public Calendar getCalendar() {
+        return delegate().getCalendar();
+    }
+
+    @Override public void setNumberFormat(NumberFormat newNumberFormat) {
+        delegate().setNumberFormat(newNumberFormat);
+    }
+
+    @Override public NumberFormat getNumberFormat() {
+        return delegate().getNumberFormat();
+    }
+
+    @Override public void setTimeZone(TimeZone zone) {
+        delegate().setTimeZone(zone);
+    }
+
+    @Override public TimeZone getTimeZone() {
+        return delegate().getTimeZone();
+    }
+
+    @Override public void setLenient(boolean lenient) {
+        delegate().setLenient(lenient);
+    }
+
+    @Override public boolean isLenient() {
+        return delegate().isLenient();
+    }
+
+    @Override public Object clone() {
+        return delegate().clone();
+    }
+
+    @Override public boolean equals(Object obj) {
+        return obj instanceof LazySimpleDateFormat ? delegate().equals(((LazySimpleDateFormat) obj).delegate()) : delegate().equals(obj);
+    }
+
+    @Override public int hashCode() {
+        return pattern.hashCode();
+    }
+
+    @Override public String toString() {
+        return delegate().toString();
+    }
+}
@@ -19,7 +19,7 @@ public final class NamespaceUtils {
      */
     public static String getNamespace(Element el, String namespaceUri) {
         while (true) {
-            for (Map.Entry<String, String> attribute : el.attributesMap().entrySet()) {
+            for (Map.Entry<String, String> attribute : el.attributeEntries()) {
                 if (attribute.getKey().startsWith("xmlns") && attribute.getValue().equals(namespaceUri)) {
                     if (attribute.getKey().length() == "xmlns".length()) {
                         return "";
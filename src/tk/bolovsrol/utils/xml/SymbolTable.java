@@ -0,0 +1,82 @@
+package tk.bolovsrol.utils.xml;
+
+/**
+ * Таблица имён на время разбора одного документа: одинаковые имена элементов и атрибутов
+ * становятся одним и тем же объектом строки, и новая строка создаётся, только если такого имени ещё не было.
+ * <p>
+ * В отличие от {@link String#intern()}, таблица умирает вместе с парсером.
+ */
+final class SymbolTable {
+
+    private String[] table = new String[64];
+    private int size;
+
+    /** @return строка с символами из буфера, та же, что в прошлый раз для тех же символов */
+    String intern(char[] buf, int from, int len) {
+        int hash = 0;
+        for (int i = from, end = from + len; i < end; i++) {
+            hash = 31 * hash + buf[i];
+        }
+        int mask = table.length - 1;
+        for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+            String symbol = table[i];
+            if (symbol == null) {
+                return add(i, new String(buf, from, len));
+            }
+            if (symbol.length() == len && symbol.hashCode() == hash && matches(symbol, buf, from)) {
+                return symbol;
+            }
+        }
+    }
+
+    /** @return строка с символами последовательности, та же, что в прошлый раз для тех же символов */
+    String intern(CharSequence seq) {
+        int len = seq.length();
+        int hash = 0;
+        for (int i = 0; i < len; i++) {
+            hash = 31 * hash + seq.charAt(i);
+        }
+        int mask = table.length - 1;
+        for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+            String symbol = table[i];
+            if (symbol == null) {
+                return add(i, seq.toString());
+            }
+            if (symbol.length() == len && symbol.hashCode() == hash && symbol.contentEquals(seq)) {
+                return symbol;
+            }
+        }
+    }
+
+    private static boolean matches(String symbol, char[] buf, int from) {
+        for (int i = symbol.length() - 1; i >= 0; i--) {
+            if (symbol.charAt(i) != buf[from + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private String add(int slot, String symbol) {
+        table[slot] = symbol;
+        if (++size * 2 > table.length) {
+            String[] old = table;
+            table = new String[old.length * 2];
+            int mask = table.length - 1;
+            for (String s : old) {
+                if (s != null) {
+                    int i = spread(s.hashCode()) & mask;
+                    while (table[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    table[i] = s;
+                }
+            }
+        }
+        return symbol;
+    }
+}
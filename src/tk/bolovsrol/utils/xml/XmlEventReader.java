@@ -0,0 +1,579 @@
+package tk.bolovsrol.utils.xml;
+
+import tk.bolovsrol.utils.Spell;
+import tk.bolovsrol.utils.StringUtils;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Потоковый читатель xml: вместо того, чтобы строить всё дерево, как {@link XmlParser},
+ * отдаёт документ по событиям — открытие элемента с атрибутами, текст, CDATA, закрытие элемента.
+ * Документ читается из потока и декодируется по мере чтения, в памяти держится только буфер
+ * и стек имён открытых элементов.
+ * <p>
+ * Нужные поддеревья можно собрать в {@link Element}'ы методом {@link #readElement()}, например,
+ * обрабатывать ленту по одной записи:
+ * <pre>
+ * try (XmlEventReader reader = new XmlEventReader(in)) {
+ *     while (reader.nextElement("record")) {
+ *         Element record = reader.readElement();
+ *         ...
+ *     }
+ * }
+ * </pre>
+ * Текст и атрибуты разбираются так же, как у {@link XmlParser}, так что собранные элементы
+ * совпадают с тем, что построил бы он. Так же читается только первый корневой элемент,
+ * что после него — не интересует; директивы, комментарии и DOCTYPE пропускаются.
+ * <p>
+ * Читатель не синхронизирован.
+ */
+public class XmlEventReader implements Closeable {
+
+    /** Сколько байтов начала потока просматривать в поисках декларации с кодировкой. */
+    private static final int PROLOG_PEEK_SIZE = 1024;
+    private static final int BUFFER_SIZE = 8192;
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+    private static final int DIAGNOSTIC_SIZE = 40;
+
+    private static final String CDATA_HEADER = "[CDATA["; // без начального "<!".
+    private static final String CDATA_CONTINUATION = "<![CDATA[";
+    private static final String COMMENT_HEADER = "--"; // без начального "<!".
+    private static final String COMMENT_TERMINATOR = "-->";
+    private static final String CDATA_TERMINATOR = "]]>";
+
+    public enum Event {
+        /** Открылся элемент, доступны {@link #getName()} и атрибуты. */
+        START_ELEMENT,
+        /** Закрылся элемент, доступно {@link #getName()}. */
+        END_ELEMENT,
+        /** Текст, доступен {@link #getText()}. */
+        TEXT,
+        /** Секция CDATA (соседние секции склеиваются), доступна {@link #getText()}. */
+        CDATA,
+        /** Корневой элемент закрылся, дальше ничего не будет. */
+        END_DOCUMENT
+    }
+
+    private final Reader reader;
+    private final char[] buf = new char[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+    /** Сколько символов ушло из буфера, для диагностики. */
+    private long offset;
+
+    private boolean trimWhitespaces = false;
+
+    private final ArrayList<String> openElements = new ArrayList<>();
+    private boolean rootClosed;
+    private boolean pendingEnd;
+
+    private Event event;
+    private String name;
+    private boolean emptyElementTag;
+    private final ArrayList<String> attributeNames = new ArrayList<>();
+    private final ArrayList<String> attributeValues = new ArrayList<>();
+    private String text;
+    private final StringBuilder sb = new StringBuilder(256);
+    private final SymbolTable symbols = new SymbolTable();
+
+    /**
+     * Создаёт читателя потока в кодировке из декларации документа, а если её там нет, то в UTF-8.
+     *
+     * @param in поток
+     * @throws IOException
+     * @throws ElementParsingException кодировка в декларации не поддерживается
+     */
+    public XmlEventReader(InputStream in) throws IOException, ElementParsingException {
+        this(in, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Создаёт читателя потока в кодировке из декларации документа, а если её там нет, то в указанной.
+     *
+     * @param in поток
+     * @param defaultCharset кодировка на случай, если в документе она не указана
+     * @throws IOException
+     * @throws ElementParsingException кодировка в декларации не поддерживается
+     */
+    public XmlEventReader(InputStream in, Charset defaultCharset) throws IOException, ElementParsingException {
+        this(newReader(in, defaultCharset));
+    }
+
+    /**
+     * Создаёт читателя уже декодированного документа.
+     *
+     * @param reader источник символов
+     */
+    public XmlEventReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    private static Reader newReader(InputStream source, Charset defaultCharset) throws IOException, ElementParsingException {
+        InputStream in = new BufferedInputStream(source, BUFFER_SIZE);
+        in.mark(PROLOG_PEEK_SIZE);
+        byte[] prolog = new byte[PROLOG_PEEK_SIZE];
+        int len = 0;
+        int n;
+        while (len < prolog.length && (n = in.read(prolog, len, prolog.length - len)) >= 0) {
+            len += n;
+        }
+        in.reset();
+        Charset documentCharset = XmlParser.retrieveCharset(Arrays.copyOf(prolog, len));
+        return new InputStreamReader(in, documentCharset != null ? documentCharset : defaultCharset != null ? defaultCharset : StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Устанавливает режим обрезания пробелов, как {@link XmlParser#setTrimWhitespaces(boolean)}:
+     * текст обрезается, а пустой текст не отдаётся вовсе.
+     *
+     * @param trimWhitespaces true включить, false выключить
+     * @return this
+     */
+    public XmlEventReader setTrimWhitespaces(boolean trimWhitespaces) {
+        this.trimWhitespaces = trimWhitespaces;
+        return this;
+    }
+
+    public boolean isTrimWhitespaces() {
+        return trimWhitespaces;
+    }
+
+    /**
+     * Читает следующее событие.
+     *
+     * @return событие
+     * @throws IOException
+     * @throws ElementParsingException документ кривой
+     */
+    public Event next() throws IOException, ElementParsingException {
+        if (pendingEnd) {
+            pendingEnd = false;
+            return closeElement();
+        }
+        if (event == Event.END_DOCUMENT) {
+            return event;
+        }
+        text = null;
+        while (true) {
+            if (openElements.isEmpty()) {
+                if (rootClosed) {
+                    name = null;
+                    return event = Event.END_DOCUMENT;
+                }
+                if (peekChar() == BYTE_ORDER_MARK) {
+                    pos++;
+                }
+                skipWhitespace();
+                if (nextChar() != '<') {
+                    throwException("prespace", "[<]");
+                }
+                char ch = peekChar();
+                if (ch == '?') {
+                    skipUntil(">");
+                } else if (ch == '!') {
+                    pos++;
+                    if (skipIf(COMMENT_HEADER)) {
+                        skipUntil(COMMENT_TERMINATOR);
+                    } else {
+                        skipUntil(">");
+                    }
+                } else {
+                    return openElement();
+                }
+                continue;
+            }
+
+            if (!ensure(1)) {
+                throw new ElementParsingException("Closing tag for element " + Spell.get(currentElementName()) + " is missing at the end of document near " + Spell.get(getDiagnosticSubstring()) + '.');
+            }
+            if (buf[pos] != '<') {
+                String textData = XmlUtils.decodeNumericCharacterReferences(readText());
+                if (trimWhitespaces) {
+                    textData = StringUtils.trim(textData, StringUtils.WHITESPACE_FILTER, StringUtils.TrimMode.BOTH);
+                    if (textData.isEmpty()) {
+                        continue;
+                    }
+                }
+                text = XmlUtils.xmlDeinvalidate(textData);
+                return event = Event.TEXT;
+            }
+            pos++;
+
+            char ch = peekChar();
+            if (ch == '!') {
+                pos++;
+                if (skipIf(CDATA_HEADER)) {
+                    text = XmlUtils.decodeNumericCharacterReferences(readCData());
+                    return event = Event.CDATA;
+                }
+                if (skipIf(COMMENT_HEADER)) {
+                    skipUntil(COMMENT_TERMINATOR);
+                    continue;
+                }
+                throwException("element content", "[<![CDATA[] or [<!--]");
+            }
+            if (ch == '/') {
+                pos++;
+                String closingName = readName();
+                if (!closingName.equals(currentElementName())) {
+                    throw new ElementParsingException("Element " + Spell.get(closingName) + " is closed at pos " + position() + " near " + Spell.get(getDiagnosticSubstring()) + " while inner element " + Spell.get(currentElementName()) + " remains open.");
+                }
+                skipWhitespace();
+                if (nextChar() != '>') {
+                    throwException("element definition", "[>]");
+                }
+                emptyElementTag = false;
+                return closeElement();
+            }
+            return openElement();
+        }
+    }
+
+    /**
+     * Пропускает события до открытия следующего элемента.
+     *
+     * @return true, если элемент открылся, false, если документ закончился
+     * @throws IOException
+     * @throws ElementParsingException документ кривой
+     */
+    public boolean nextElement() throws IOException, ElementParsingException {
+        Event e;
+        while ((e = next()) != Event.END_DOCUMENT) {
+            if (e == Event.START_ELEMENT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Пропускает события до открытия следующего элемента с указанным именем на любой глубине.
+     *
+     * @param elementName имя элемента
+     * @return true, если элемент открылся, false, если документ закончился
+     * @throws IOException
+     * @throws ElementParsingException документ кривой
+     */
+    public boolean nextElement(String elementName) throws IOException, ElementParsingException {
+        while (nextElement()) {
+            if (name.equals(elementName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Собирает текущий открытый элемент со всеми детьми в {@link Element} и дочитывает до его закрытия,
+     * текущим событием становится {@link Event#END_ELEMENT} этого элемента.
+     *
+     * @return элемент без родителя
+     * @throws IOException
+     * @throws ElementParsingException документ кривой
+     * @throws IllegalStateException текущее событие не {@link Event#START_ELEMENT}
+     */
+    public Element readElement() throws IOException, ElementParsingException {
+        if (event != Event.START_ELEMENT) {
+            throw new IllegalStateException("Current event is " + event + ", not " + Event.START_ELEMENT);
+        }
+        Element root = newElement();
+        Element el = root;
+        while (true) {
+            switch (next()) {
+                case START_ELEMENT:
+                    Element child = newElement();
+                    el.addChild(child);
+                    el = child;
+                    break;
+                case TEXT:
+                    el.addChild(new TextData(text, TextData.Type.TEXT));
+                    break;
+                case CDATA:
+                    el.addChild(new TextData(text, TextData.Type.CDATA));
+                    break;
+                case END_ELEMENT:
+                    // как у XmlParser: в <tag></tag> спрятан текст нулевой длины
+                    if (!trimWhitespaces && !emptyElementTag && !el.hasChildren()) {
+                        el.addChild(new TextData("", TextData.Type.TEXT));
+                    }
+                    if (el == root) {
+                        return root;
+                    }
+                    el = el.getParent();
+                    break;
+                default:
+                    throw new ElementParsingException("Unexpected end of document inside element " + Spell.get(el.getName()));
+            }
+        }
+    }
+
+    /**
+     * Пропускает текущий открытый элемент со всеми детьми,
+     * текущим событием становится {@link Event#END_ELEMENT} этого элемента.
+     *
+     * @throws IOException
+     * @throws ElementParsingException документ кривой
+     * @throws IllegalStateException текущее событие не {@link Event#START_ELEMENT}
+     */
+    public void skipElement() throws IOException, ElementParsingException {
+        if (event != Event.START_ELEMENT) {
+            throw new IllegalStateException("Current event is " + event + ", not " + Event.START_ELEMENT);
+        }
+        int depth = openElements.size();
+        while (next() != Event.END_ELEMENT || openElements.size() >= depth) {
+            // пропускаем
+        }
+    }
+
+    private Element newElement() {
+        Element el = new Element(name);
+        for (int i = 0; i < attributeNames.size(); i++) {
+            el.setAttribute(attributeNames.get(i), attributeValues.get(i));
+        }
+        return el;
+    }
+
+    /** @return текущее событие или null, если чтение ещё не начиналось */
+    public Event getEvent() {
+        return event;
+    }
+
+    /** @return имя элемента для {@link Event#START_ELEMENT} и {@link Event#END_ELEMENT} */
+    public String getName() {
+        return name;
+    }
+
+    /** @return текст для {@link Event#TEXT} и {@link Event#CDATA} */
+    public String getText() {
+        return text;
+    }
+
+    /** @return количество открытых элементов, включая только что открытый */
+    public int getDepth() {
+        return openElements.size();
+    }
+
+    /** @return количество атрибутов у только что открытого элемента */
+    public int getAttributeCount() {
+        return attributeNames.size();
+    }
+
+    public String getAttributeName(int index) {
+        return attributeNames.get(index);
+    }
+
+    public String getAttributeValue(int index) {
+        return attributeValues.get(index);
+    }
+
+    /**
+     * Отдаёт значение атрибута только что открытого элемента, имя без учёта регистра, как у {@link Element}.
+     *
+     * @param attributeName имя атрибута
+     * @return значение или null, если атрибута нет
+     */
+    public String getAttribute(String attributeName) {
+        for (int i = attributeNames.size() - 1; i >= 0; i--) {
+            if (attributeNames.get(i).equalsIgnoreCase(attributeName)) {
+                return attributeValues.get(i);
+            }
+        }
+        return null;
+    }
+
+    @Override public void close() throws IOException {
+        reader.close();
+    }
+
+    // ---- разбор
+
+    // вызывать, когда pos на первом символе имени после «<»
+    private Event openElement() throws IOException, ElementParsingException {
+        name = readName();
+        attributeNames.clear();
+        attributeValues.clear();
+        skipWhitespace();
+        while (Character.isLetter(peekChar())) {
+            String attrName = readName();
+            skipWhitespace();
+            if (nextChar() != '=') {
+                throwException("attribute definition", "[=]");
+            }
+            skipWhitespace();
+            char attributeQuote = nextChar();
+            if (attributeQuote != '"' && attributeQuote != '\'') {
+                throwException("attribute definition", "[\"] or [']");
+            }
+            sb.setLength(0);
+            char ch;
+            while ((ch = nextChar()) != attributeQuote) {
+                sb.append(ch);
+            }
+            attributeNames.add(attrName);
+            attributeValues.add(XmlUtils.xmlDeinvalidate(XmlUtils.decodeNumericCharacterReferences(sb.toString())));
+            skipWhitespace();
+        }
+        openElements.add(name);
+        char ch = nextChar();
+        if (ch == '/') {
+            if (nextChar() != '>') {
+                throwException("element definition", "[>]");
+            }
+            emptyElementTag = true;
+            pendingEnd = true;
+        } else if (ch != '>') {
+            throwException("element definition", "[>]");
+        }
+        return event = Event.START_ELEMENT;
+    }
+
+    private Event closeElement() {
+        name = openElements.remove(openElements.size() - 1);
+        attributeNames.clear();
+        attributeValues.clear();
+        if (openElements.isEmpty()) {
+            rootClosed = true;
+        }
+        return event = Event.END_ELEMENT;
+    }
+
+    private String currentElementName() {
+        return openElements.get(openElements.size() - 1);
+    }
+
+    private String readName() throws IOException, ElementParsingException {
+        sb.setLength(0);
+        while (true) {
+            char ch = peekChar();
+            if (!(Character.isLetterOrDigit(ch) || ch == '-' || ch == '_' || ch == ':')) {
+                return symbols.intern(sb);
+            }
+            sb.append(ch);
+            pos++;
+        }
+    }
+
+    // до «<» или конца данных
+    private String readText() throws IOException {
+        sb.setLength(0);
+        while (ensure(1)) {
+            int mark = pos;
+            while (pos < limit && buf[pos] != '<') {
+                pos++;
+            }
+            sb.append(buf, mark, pos - mark);
+            if (pos < limit) {
+                break;
+            }
+        }
+        return sb.toString();
+    }
+
+    // после «<![CDATA[», склеивает соседние секции
+    private String readCData() throws IOException, ElementParsingException {
+        sb.setLength(0);
+        while (true) {
+            char ch = nextChar();
+            if (ch == ']' && skipIf(CDATA_TERMINATOR.substring(1))) {
+                if (!skipIf(CDATA_CONTINUATION)) {
+                    return sb.toString();
+                }
+            } else {
+                sb.append(ch);
+            }
+        }
+    }
+
+    private void skipUntil(String terminator) throws IOException, ElementParsingException {
+        char first = terminator.charAt(0);
+        String rest = terminator.substring(1);
+        while (nextChar() != first || !skipIf(rest)) {
+            // пропускаем
+        }
+    }
+
+    private void skipWhitespace() throws IOException, ElementParsingException {
+        while (Character.isWhitespace(peekChar())) {
+            pos++;
+        }
+    }
+
+    /** Пропускает образец, если данные с него начинаются. */
+    private boolean skipIf(String sample) throws IOException {
+        int len = sample.length();
+        if (!ensure(len)) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (buf[pos + i] != sample.charAt(i)) {
+                return false;
+            }
+        }
+        pos += len;
+        return true;
+    }
+
+    private char peekChar() throws IOException, ElementParsingException {
+        if (!ensure(1)) {
+            throw new ElementParsingException("Out of data.");
+        }
+        return buf[pos];
+    }
+
+    private char nextChar() throws IOException, ElementParsingException {
+        char ch = peekChar();
+        pos++;
+        return ch;
+    }
+
+    /**
+     * Дочитывает буфер так, чтобы в нём было не меньше указанного количества непрочитанных символов.
+     *
+     * @return false, если данные кончились раньше
+     */
+    private boolean ensure(int count) throws IOException {
+        if (limit - pos >= count) {
+            return true;
+        }
+        // немного прочитанного оставляем для диагностики
+        int keep = Math.min(pos, DIAGNOSTIC_SIZE);
+        int shift = pos - keep;
+        if (shift > 0) {
+            System.arraycopy(buf, shift, buf, 0, limit - shift);
+            offset += shift;
+            limit -= shift;
+            pos = keep;
+        }
+        while (limit - pos < count) {
+            int n = reader.read(buf, limit, buf.length - limit);
+            if (n < 0) {
+                return false;
+            }
+            limit += n;
+        }
+        return true;
+    }
+
+    private long position() {
+        return offset + pos;
+    }
+
+    private void throwException(String where, String shouldBe) throws ElementParsingException {
+        String ch = pos > 0 && pos <= limit ? String.valueOf(buf[pos - 1]) : "";
+        throw new ElementParsingException("Unexpected char in " + where + " at pos " + (position() - 1) + ": [" + ch + "] near " + Spell.get(getDiagnosticSubstring()) + ", should be " + shouldBe);
+    }
+
+    private String getDiagnosticSubstring() {
+        int from = Math.max(0, pos - DIAGNOSTIC_SIZE);
+        return new String(buf, from, Math.min(limit, pos + 1) - from);
+    }
+}
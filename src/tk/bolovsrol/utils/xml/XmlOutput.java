@@ -0,0 +1,208 @@
+package tk.bolovsrol.utils.xml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+
+/**
+ * Приёмник для печатателей xml: копит символы в буфере постоянного размера и сливает их
+ * в стрингбилдер, во врайтер или, кодируя, в поток. Экранирование текста и атрибутов,
+ * разбиение CDATA делаются прямо при копировании, без промежуточных строк.
+ * <p>
+ * При записи в поток символы, которые в кодировку не помещаются, заменяются последовательностями «&amp;#код;»,
+ * как это делает {@link XmlUtils#encodeNumericCharacterReferences(String, Charset)}.
+ * <p>
+ * Пока не вызван {@link #flush()}, часть данных может оставаться в буфере.
+ */
+public final class XmlOutput {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final StringBuilder sb;
+    private final Writer writer;
+    private final OutputStream out;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer bytes;
+
+    private final char[] buf = new char[BUFFER_SIZE];
+    private int len;
+
+    /** Пишет в стрингбилдер. */
+    public XmlOutput(StringBuilder sb) {
+        this(sb, null, null, null);
+    }
+
+    /** Пишет во врайтер. */
+    public XmlOutput(Writer writer) {
+        this(null, writer, null, null);
+    }
+
+    /** Пишет в поток в указанной кодировке. */
+    public XmlOutput(OutputStream out, Charset charset) {
+        this(null, null, out, charset.newEncoder());
+    }
+
+    private XmlOutput(StringBuilder sb, Writer writer, OutputStream out, CharsetEncoder encoder) {
+        this.sb = sb;
+        this.writer = writer;
+        this.out = out;
+        this.encoder = encoder;
+        this.bytes = encoder == null ? null : ByteBuffer.allocate((int) (BUFFER_SIZE * encoder.maxBytesPerChar()) + 64);
+    }
+
+    public XmlOutput append(char ch) throws IOException {
+        if (len == buf.length) {
+            drain(false);
+        }
+        buf[len++] = ch;
+        return this;
+    }
+
+    public XmlOutput append(String str) throws IOException {
+        int from = 0;
+        int length = str.length();
+        while (from < length) {
+            if (len == buf.length) {
+                drain(false);
+            }
+            int count = Math.min(length - from, buf.length - len);
+            str.getChars(from, from + count, buf, len);
+            len += count;
+            from += count;
+        }
+        return this;
+    }
+
+    /**
+     * Добавляет текст, экранированный как {@link XmlUtils#xmlInvalidate(String)}.
+     *
+     * @param str текст
+     * @return this
+     * @throws IOException
+     */
+    public XmlOutput appendEscaped(String str) throws IOException {
+        for (int i = 0, length = str.length(); i < length; i++) {
+            char ch = str.charAt(i);
+            switch (ch) {
+                case '&':
+                    append("&amp;");
+                    break;
+                case '"':
+                    append("&quot;");
+                    break;
+                case '\'':
+                    append("&apos;");
+                    break;
+                case '<':
+                    append("&lt;");
+                    break;
+                case '>':
+                    append("&gt;");
+                    break;
+                default:
+                    append(ch);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Добавляет секцию CDATA, разбивая её на несколько в местах, где встречается «]]».
+     *
+     * @param str содержимое
+     * @return this
+     * @throws IOException
+     */
+    public XmlOutput appendCData(String str) throws IOException {
+        append("<![CDATA[");
+        int length = str.length();
+        int i = 0;
+        while (i < length) {
+            char ch = str.charAt(i);
+            if (ch == ']' && i + 1 < length && str.charAt(i + 1) == ']') {
+                append("]]]><![CDATA[]");
+                i += 2;
+            } else {
+                append(ch);
+                i++;
+            }
+        }
+        append("]]>");
+        return this;
+    }
+
+    /**
+     * Сливает всё накопленное в приёмник и сбрасывает приёмник. Приёмник не закрывается.
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        drain(true);
+        if (writer != null) {
+            writer.flush();
+        } else if (out != null) {
+            out.flush();
+        }
+    }
+
+    private void drain(boolean endOfInput) throws IOException {
+        if (sb != null) {
+            sb.append(buf, 0, len);
+            len = 0;
+        } else if (writer != null) {
+            writer.write(buf, 0, len);
+            len = 0;
+        } else {
+            encode(endOfInput);
+        }
+    }
+
+    /** Кодирует буфер в поток; недокодированный остаток (половинку суррогатной пары) оставляет в начале буфера. */
+    private void encode(boolean endOfInput) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(buf, 0, len);
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, endOfInput);
+            if (result.isUnderflow()) {
+                break;
+            }
+            if (result.isOverflow()) {
+                writeBytes();
+            } else {
+                // не помещается в кодировку или одинокий суррогат
+                for (int i = result.length(); i > 0; i--) {
+                    char ch = chars.get();
+                    int codePoint = ch;
+                    if (i > 1 && Character.isHighSurrogate(ch) && Character.isLowSurrogate(chars.get(chars.position()))) {
+                        codePoint = Character.toCodePoint(ch, chars.get());
+                        i--;
+                    }
+                    if (bytes.remaining() < 64) {
+                        writeBytes();
+                    }
+                    encoder.encode(CharBuffer.wrap("&#" + codePoint + ';'), bytes, endOfInput);
+                }
+            }
+        }
+        int remaining = chars.remaining();
+        System.arraycopy(buf, chars.position(), buf, 0, remaining);
+        len = remaining;
+        if (endOfInput) {
+            while (encoder.flush(bytes).isOverflow()) {
+                writeBytes();
+            }
+            encoder.reset();
+        }
+        writeBytes();
+    }
+
+    private void writeBytes() throws IOException {
+        bytes.flip();
+        out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+        bytes.clear();
+    }
+}
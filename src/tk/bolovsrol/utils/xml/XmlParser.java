@@ -6,6 +6,8 @@ import tk.bolovsrol.utils.StringUtils;
 import tk.bolovsrol.utils.UnexpectedBehaviourException;
 import tk.bolovsrol.utils.http.HttpRequest;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
@@ -16,6 +18,9 @@ import java.nio.charset.StandardCharsets;
  * Умеет понимать атрибуты, вложенные элементы и простые символьные данные.
  * <p>
  * Xml-директивы в начале буфера -- игнорирует!
+ * <p>
+ * Для больших документов есть {@link XmlEventReader}, который читает поток по событиям
+ * и собирает элементы только для нужных поддеревьев.
  */
 public class XmlParser {
 
@@ -26,6 +31,7 @@ public class XmlParser {
     private static final char[] COMMENT_TERMINATOR = "-->".toCharArray();
 
     private char[] buf;
+    private SymbolTable symbols;
     private int pos;
     private boolean trimWhitespaces = false;
 
@@ -72,6 +78,26 @@ public class XmlParser {
         return parse(decode(buf, defaultEncoding));
     }
 
+    /**
+     * Парсит документ из потока от начала и до завершения первого элемента.
+     * <p>
+     * Поток декодируется по мере чтения, так что документ целиком ни в байтах, ни в строке в памяти не лежит,
+     * только получившееся дерево. Кодировка берётся из декларации, если её там нет — кодировка парсера по умолчанию.
+     * Поток не закрывается.
+     *
+     * @param in поток
+     * @return корневой элемент
+     * @throws IOException
+     * @throws ElementParsingException ошибка парсинга
+     */
+    public Element parse(InputStream in) throws IOException, ElementParsingException {
+        XmlEventReader reader = new XmlEventReader(in, defaultCharset).setTrimWhitespaces(trimWhitespaces);
+        if (!reader.nextElement()) {
+            throw new ElementParsingException("No data");
+        }
+        return reader.readElement();
+    }
+
     /**
      * Парсит тело хттп-запроса в качестве документа.
      * Проверяет, что у документа Content-Type <code>text/xml</code>.
@@ -131,6 +157,7 @@ public class XmlParser {
         }
         this.buf = buf;
         this.pos = from;
+        this.symbols = new SymbolTable();
 
         checkBounds();
         // пропускаем всякие директивы
@@ -263,7 +290,7 @@ public class XmlParser {
     private String getName() throws ElementParsingException {
         int mark = pos;
         skipCharacters();
-        return String.valueOf(buf, mark, pos - mark);
+        return symbols.intern(buf, mark, pos - mark);
     }
 
     private String getCData() throws ElementParsingException {
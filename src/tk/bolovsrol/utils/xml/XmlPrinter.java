@@ -1,7 +1,6 @@
 package tk.bolovsrol.utils.xml;
 
-import tk.bolovsrol.utils.StringUtils;
-
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.Map;
 
@@ -18,43 +17,46 @@ public class XmlPrinter extends AbstractXmlPrinter {
         super(charsetName);
     }
 
+    @Override
+    public void appendXmlTo(StringBuilder sb, Element element) {
+        appendPrintedTo(sb, element);
+    }
+
     /**
-     * Добавляет xml-представление элемента (и всех его детей) к стрингбуфферу.
+     * Печатает xml-представление элемента (и всех его детей).
      *
-     * @param sb
+     * @param xo
      * @param element
      */
     @Override
-    public void appendXmlTo(StringBuilder sb, Element element) {
+    protected void print(XmlOutput xo, Element element) throws IOException {
         if (element instanceof TextData) {
             TextData td = (TextData) element;
             switch (td.getType()) {
                 case CDATA:
-                    sb.append("<![CDATA[")
-                            .append(StringUtils.substitute(td.getValue(), "]]", "]]]><![CDATA[]"))
-                            .append("]]>");
+                    xo.appendCData(td.getValue());
                     break;
                 case TEXT:
-                    sb.append(XmlUtils.xmlInvalidate(((TextData) element).getValue()));
+                    xo.appendEscaped(td.getValue());
                     break;
             }
         } else {
-            sb.append('<').append(element.getName());
+            xo.append('<').append(element.getName());
             {
-                for (Map.Entry<String, String> attr : element.attributesMap().entrySet()) {
-                    sb.append(' ').append(attr.getKey()).append("=\"").append(XmlUtils.xmlInvalidate(attr.getValue())).append('"');
+                for (Map.Entry<String, String> attr : element.attributeEntries()) {
+                    xo.append(' ').append(attr.getKey()).append("=\"").appendEscaped(attr.getValue()).append('"');
                 }
             }
             {
                 if (!element.hasChildren()) {
-                    sb.append("/>");
+                    xo.append("/>");
                 } else {
-                    sb.append('>');
+                    xo.append('>');
                     Element[] childrenEls = element.getChildren();
                     for (Element childrenEl : childrenEls) {
-                        appendXmlTo(sb, childrenEl);
+                        printChild(xo, childrenEl);
                     }
-                    sb.append("</").append(element.getName()).append('>');
+                    xo.append("</").append(element.getName()).append('>');
                 }
             }
         }